@@ -0,0 +1,64 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.XRayDebuggerApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The application without its web server, on a file database and data directories
+ * of its own, for benchmarks that go through the real services.
+ */
+final class BenchContext implements AutoCloseable {
+
+    private final Path directory;
+    private final ConfigurableApplicationContext context;
+
+    /**
+     * @param properties extra {@code key=value} settings, e.g. {@code xray.storage.backend=log}
+     */
+    BenchContext(String... properties) {
+        try {
+            directory = Files.createTempDirectory("xray-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> settings = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:file:" + directory.resolve("db") + ";DB_CLOSE_ON_EXIT=FALSE",
+                "spring.h2.console.enabled=false",
+                "logging.level.root=WARN",
+                "logging.level.com.equalcollective=WARN",
+                "xray.storage.log.directory=" + directory.resolve("trace-log"),
+                "xray.storage.archive.directory=" + directory.resolve("archive"),
+                "xray.storage.shards.url=jdbc:h2:file:" + directory.resolve("shards") + "/db-%d;DB_CLOSE_ON_EXIT=FALSE"));
+        settings.addAll(List.of(properties));
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // passed as command line arguments, since application.properties overrides default properties
+        context = new SpringApplicationBuilder(XRayDebuggerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(settings.stream().map(setting -> "--" + setting).toArray(String[]::new));
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.demo.MockData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The demo's {@code apply_filters} payloads at any scale: the 50 mock products
+ * repeated, with distinct asins, and an evaluation shaped like the pipeline's
+ * {@code CandidateEvaluation} for each against a $29.99 reference.
+ */
+final class FilterPayloads {
+
+    private static final double MIN_PRICE = 14.995;
+    private static final double MAX_PRICE = 59.98;
+    private static final double MIN_RATING = 3.8;
+    private static final int MIN_REVIEWS = 100;
+
+    private FilterPayloads() {
+    }
+
+    static List<MockData.Product> candidates(int count) {
+        List<MockData.Product> products = new ArrayList<>(count);
+        for (int i = 0; products.size() < count; i++) {
+            for (MockData.Product product : MockData.getCandidateProducts()) {
+                if (products.size() == count) {
+                    break;
+                }
+                product.setAsin(product.getAsin() + "_" + i);
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    static List<Map<String, Object>> evaluations(List<MockData.Product> candidates) {
+        List<Map<String, Object>> evaluations = new ArrayList<>(candidates.size());
+        for (MockData.Product candidate : candidates) {
+            evaluations.add(evaluation(candidate));
+        }
+        return evaluations;
+    }
+
+    private static Map<String, Object> evaluation(MockData.Product product) {
+        boolean passesPrice = product.getPrice() >= MIN_PRICE && product.getPrice() <= MAX_PRICE;
+        boolean passesRating = product.getRating() >= MIN_RATING;
+        boolean passesReviews = product.getReviews() >= MIN_REVIEWS;
+        return Map.of(
+                "asin", product.getAsin(),
+                "title", product.getTitle(),
+                "metrics", Map.of(
+                        "price", product.getPrice(),
+                        "rating", product.getRating(),
+                        "reviews", product.getReviews()),
+                "filterResults", Map.of(
+                        "price_range", Map.of("passed", passesPrice,
+                                "detail", String.format("$%.2f is within $%.2f-$%.2f", product.getPrice(), MIN_PRICE, MAX_PRICE)),
+                        "min_rating", Map.of("passed", passesRating,
+                                "detail", String.format("%.1f >= %.1f", product.getRating(), MIN_RATING)),
+                        "min_reviews", Map.of("passed", passesReviews,
+                                "detail", String.format("%d >= %d", product.getReviews(), MIN_REVIEWS))),
+                "qualified", passesPrice && passesRating && passesReviews);
+    }
+}
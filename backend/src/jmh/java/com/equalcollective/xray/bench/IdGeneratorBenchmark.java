@@ -0,0 +1,59 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.service.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one step id from {@link TimeOrderedIdGenerator}, against the previous
+ * {@code "step_"} plus eight hex characters of a random UUID. How many of the previous
+ * ids it took before one repeated is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private TimeOrderedIdGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = new TimeOrderedIdGenerator(new XRayProperties());
+        Set<String> seen = new HashSet<>();
+        while (seen.add(randomId())) {
+            // until the first collision
+        }
+        System.out.printf("%nrandom 8-hex ids: first collision after %,d ids%n", seen.size());
+    }
+
+    @Benchmark
+    public String timeOrdered() {
+        return generator.next("step_");
+    }
+
+    @Benchmark
+    public String random() {
+        return randomId();
+    }
+
+    private static String randomId() {
+        return "step_" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,100 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.demo.CompetitorFilters;
+import com.equalcollective.xray.demo.MockData;
+import com.equalcollective.xray.service.XRayTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The demo's {@code apply_filters} step with its per-candidate evaluations built
+ * eagerly into a {@code StepRecord}, or lazily in the {@code recordStep} lambda. With
+ * {@code traced=false} head sampling keeps only execution summaries, so the lambda is
+ * never called. Run with {@code -prof gc} for allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LazyStepBenchmark {
+
+    private static final double REFERENCE_PRICE = 29.99;
+
+    @Param({"10000"})
+    public int candidates;
+
+    @Param({"false", "true"})
+    public boolean traced;
+
+    private BenchContext context;
+    private XRayTracer tracer;
+    private List<MockData.Product> products;
+    private String executionId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new BenchContext("xray.tracer.sampling.head-rate=" + (traced ? "1.0" : "0.0"));
+        tracer = context.bean(XRayTracer.class);
+        products = FilterPayloads.candidates(candidates);
+    }
+
+    @Setup(Level.Iteration)
+    public void startExecution() {
+        executionId = tracer.startExecution(Map.of("pipeline", "lazy_step_benchmark"));
+    }
+
+    @Benchmark
+    public long eager() {
+        long passed = qualified();
+        tracer.recordStep(executionId, XRayTracer.StepRecord.builder()
+                .stepName("apply_filters")
+                .input(Map.of("candidates_count", products.size()))
+                .output(Map.of("passed", passed))
+                .metadata(Map.of("evaluations", FilterPayloads.evaluations(products)))
+                .build());
+        return passed;
+    }
+
+    @Benchmark
+    public long lazy() {
+        long passed = qualified();
+        tracer.recordStep(executionId, "apply_filters", step -> step
+                .input(Map.of("candidates_count", products.size()))
+                .output(Map.of("passed", passed))
+                .metadata(Map.of("evaluations", FilterPayloads.evaluations(products))));
+        return passed;
+    }
+
+    @TearDown(Level.Iteration)
+    public void endExecution() {
+        tracer.endExecution(executionId);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private long qualified() {
+        return products.stream()
+                .filter(product -> CompetitorFilters.DEFAULT.qualifies(product, REFERENCE_PRICE))
+                .count();
+    }
+}
@@ -0,0 +1,79 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.demo.MockData;
+import com.equalcollective.xray.storage.JsonPayloadConverter;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.equalcollective.xray.storage.PayloadStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading an {@code apply_filters} payload through {@link JsonPayloadConverter}:
+ * the demo's candidates and their evaluations, with the 50 mock products repeated to
+ * {@code candidates}. Write is serialize plus encode, read is decode plus parse. The
+ * stored size is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadCompressionBenchmark {
+
+    @Param({"50", "1000", "10000"})
+    public int candidates;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private JsonPayloadConverter converter;
+    private JsonNode payload;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() {
+        // Indented like the application's mapper, which the converter must not follow
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        XRayProperties properties = new XRayProperties();
+        properties.getStorage().getCompression().setEnabled(compressed);
+        PayloadCodec codec = new PayloadCodec(properties);
+        // Nothing here is deduplicated, so the store never reaches the database
+        converter = new JsonPayloadConverter(objectMapper, codec, new PayloadStore(null, objectMapper, codec, properties));
+        List<MockData.Product> products = FilterPayloads.candidates(candidates);
+        Map<String, Object> filterPayload = new LinkedHashMap<>();
+        filterPayload.put("candidates", products);
+        filterPayload.put("evaluations", FilterPayloads.evaluations(products));
+        payload = objectMapper.valueToTree(filterPayload);
+        stored = converter.convertToDatabaseColumn(payload);
+        System.out.printf("%n%d candidates, compressed=%s: stored %,d bytes%n", candidates, compressed, stored.length);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return converter.convertToDatabaseColumn(payload);
+    }
+
+    @Benchmark
+    public JsonNode read() {
+        return converter.convertToEntityAttribute(stored);
+    }
+}
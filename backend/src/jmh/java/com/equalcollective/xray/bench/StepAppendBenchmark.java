@@ -0,0 +1,77 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.service.XRayTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code recordStep} against an execution that already has {@code recordedSteps}
+ * steps, on the default synchronous JPA path. Appending writes one row, so the time per
+ * step should not depend on how many came before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StepAppendBenchmark {
+
+    private static final XRayTracer.StepRecord STEP = XRayTracer.StepRecord.builder()
+            .stepName("fetch")
+            .input(Map.of("keyword", "water bottle", "limit", 50))
+            .output(Map.of("candidates", List.of("B0A1", "B0A2", "B0A3")))
+            .reasoning("Fetched candidates for the keyword")
+            .build();
+
+    @Param({"0", "1000", "10000"})
+    public int recordedSteps;
+
+    private BenchContext context;
+    private XRayTracer tracer;
+    private String executionId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new BenchContext();
+        tracer = context.bean(XRayTracer.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void startExecution() {
+        executionId = tracer.startExecution(Map.of("pipeline", "step_append_benchmark"));
+        for (int i = 0; i < recordedSteps; i++) {
+            tracer.recordStep(executionId, STEP);
+        }
+    }
+
+    @Benchmark
+    public void recordStep() {
+        tracer.recordStep(executionId, STEP);
+    }
+
+    @TearDown(Level.Iteration)
+    public void endExecution() {
+        tracer.endExecution(executionId);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+}
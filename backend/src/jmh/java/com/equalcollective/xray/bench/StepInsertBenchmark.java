@@ -0,0 +1,116 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.service.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Inserting a batch of 100 step rows, with 600-byte payloads, into an H2 file table
+ * that already holds {@code storedRows}, keyed by random UUIDs or by time-ordered ids.
+ * Random keys land all over the primary key index, so each batch touches pages that
+ * have to be read and rewritten; time-ordered keys are appended at its right edge. The
+ * rows inserted and the file size are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StepInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"uuid", "ordered"})
+    public String ids;
+
+    @Param({"250000"})
+    public int storedRows;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement insert;
+    private Supplier<String> stepIds;
+    private final byte[] payload = new byte[600];
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+        try {
+            directory = Files.createTempDirectory("xray-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (ids.equals("uuid")) {
+            stepIds = () -> "step_" + UUID.randomUUID();
+        } else {
+            TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(new XRayProperties());
+            stepIds = () -> generator.next("step_");
+        }
+        new Random(1).nextBytes(payload);
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db"), "sa", "");
+        connection.createStatement().execute("CREATE TABLE xray_steps (step_id VARCHAR(255) PRIMARY KEY, " +
+                "execution_id VARCHAR(255), step_name VARCHAR(255), output_data VARBINARY)");
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement("INSERT INTO xray_steps VALUES (?, ?, ?, ?)");
+        for (int row = 0; row < storedRows; row += BATCH_SIZE) {
+            insertBatch();
+        }
+    }
+
+    @Benchmark
+    public int[] insertBatch() throws SQLException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            insert.setString(1, stepIds.get());
+            insert.setString(2, "exec_bench");
+            insert.setString(3, "fetch");
+            insert.setBytes(4, payload);
+            insert.addBatch();
+        }
+        int[] inserted = insert.executeBatch();
+        connection.commit();
+        return inserted;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+        ResultSet count = connection.createStatement().executeQuery("SELECT COUNT(*) FROM xray_steps");
+        count.next();
+        long rows = count.getLong(1);
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            System.out.printf("%nids=%s: %,d rows, database file %,d MB%n", ids, rows,
+                    directory.resolve("db.mv.db").toFile().length() >> 20);
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.equalcollective.xray.bench;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.equalcollective.xray.service.TraceIngestService;
+import com.equalcollective.xray.service.TraceStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk ingestion and the reads behind the execution API on each {@code TraceStore}
+ * backend. The store is filled with {@code storedRuns} two-step runs, one in seven of
+ * them failed, like the runs behind the measurements in the README. {@code ingest}
+ * writes one batch of 20 more runs per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraceStoreBenchmark {
+
+    private static final int RUNS_PER_BATCH = 20;
+    private static final int STEPS_PER_RUN = 2;
+
+    @Param({"jpa", "log", "sharded"})
+    public String backend;
+
+    @Param({"2000"})
+    public int storedRuns;
+
+    private BenchContext context;
+    private TraceIngestService ingestService;
+    private TraceStore store;
+    private String executionId;
+    private int ingested;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        context = new BenchContext("xray.storage.backend=" + backend,
+                "xray.ingest.batch-size=" + RUNS_PER_BATCH * (STEPS_PER_RUN + 2));
+        ingestService = context.bean(TraceIngestService.class);
+        store = context.bean(TraceStore.class);
+        for (int run = 0; run < storedRuns; run += RUNS_PER_BATCH) {
+            ingestService.ingest(runs("stored", run, Math.min(RUNS_PER_BATCH, storedRuns - run)));
+        }
+        executionId = "stored_" + storedRuns / 2;
+    }
+
+    @Benchmark
+    public TraceIngestService.IngestResult ingest() throws IOException {
+        TraceIngestService.IngestResult result = ingestService.ingest(runs("ingested", ingested, RUNS_PER_BATCH));
+        ingested += RUNS_PER_BATCH;
+        return result;
+    }
+
+    @Benchmark
+    public Optional<XRayExecution> findExecution() {
+        return store.findExecution(executionId);
+    }
+
+    @Benchmark
+    public Optional<List<StepSummary>> findStepSummaries() {
+        return store.findStepSummaries(executionId);
+    }
+
+    @Benchmark
+    public List<ExecutionSummary> listNewest() {
+        return store.searchSummaries(new ExecutionFilter(), null, null, 50);
+    }
+
+    @Benchmark
+    public List<ExecutionSummary> listFailed() {
+        return store.searchSummaries(ExecutionFilter.builder().outcome(ExecutionOutcome.FAILED).build(),
+                null, null, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * NDJSON for {@code count} runs, numbered from {@code first}.
+     */
+    private static ByteArrayInputStream runs(String prefix, int first, int count) {
+        StringBuilder ndjson = new StringBuilder();
+        for (int run = first; run < first + count; run++) {
+            String id = prefix + "_" + run;
+            ndjson.append("{\"type\":\"start\",\"executionId\":\"").append(id)
+                    .append("\",\"context\":{\"pipeline\":\"competitor_selection\",\"run\":").append(run).append("}}\n");
+            for (int step = 0; step < STEPS_PER_RUN; step++) {
+                ndjson.append("{\"type\":\"step\",\"executionId\":\"").append(id)
+                        .append("\",\"stepName\":\"stage_").append(step)
+                        .append("\",\"input\":{\"keyword\":\"insulated bottle\",\"limit\":50,\"page\":").append(step)
+                        .append("},\"output\":{\"count\":").append(run % 100)
+                        .append(",\"asins\":[\"B0C").append(run).append("1\",\"B0C").append(run).append("2\",\"B0C")
+                        .append(run).append("3\"]},\"reasoning\":\"Fetched candidates by relevance\"}\n");
+            }
+            ndjson.append("{\"type\":\"").append(run % 7 == 0 ? "fail" : "end").append("\",\"executionId\":\"")
+                    .append(id).append("\",\"reason\":\"No qualified products found\"}\n");
+        }
+        return new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
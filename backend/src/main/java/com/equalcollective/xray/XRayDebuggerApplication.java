@@ -2,6 +2,7 @@ package com.equalcollective.xray;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -12,6 +13,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  * Provides REST API for debugging multi-step decision pipelines.
  */
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class XRayDebuggerApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,407 @@
+package com.equalcollective.xray.analytics;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.service.TraceEvent;
+import com.equalcollective.xray.service.TraceStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Maintains the analytics rollups as executions run, so queries never scan traces.
+ * <p>
+ * The tracer reports every execution start and end and every timed step, including
+ * those of executions that sampling keeps only as a summary, so percentiles are not
+ * skewed towards the executions that were stored in full; bulk ingestion reports what
+ * it wrote. Samples go into hourly rollups in memory, which are merged into the
+ * stored hour and day rows every {@code flush-interval-ms}. Reads combine the stored
+ * rows with what is still in memory.
+ * <p>
+ * Candidate counts of evaluation steps (see {@link FilterCounts}) are taken from the
+ * steps the writer stores, before their payloads are interned, and collected the same
+ * way once the write commits.
+ * <p>
+ * The pipeline and start time of each execution are kept in memory while it runs. An
+ * execution this process did not see start is looked up in the {@link TraceStore}
+ * once, and the answer remembered, so steps never cost a query. Executions with no
+ * call for the tracer's {@code abandon-after-ms} are forgotten by the same background
+ * thread that flushes.
+ */
+@Component
+@Slf4j
+public class AnalyticsRecorder {
+
+    private final XRayProperties.Analytics settings;
+    private final AnalyticsStore store;
+    /**
+     * The store's writers report to this recorder, so it is resolved on first lookup.
+     */
+    private final ObjectProvider<TraceStore> traceStore;
+
+    /**
+     * Pipeline and start time of executions in progress, by id, including ones that
+     * were looked up and not found.
+     */
+    private final Map<String, OpenExecution> open = new ConcurrentHashMap<>();
+
+    private final long forgetAfterNanos;
+
+    private final Map<RollupKey, Rollup> pending = new ConcurrentHashMap<>();
+
+    private final Map<RollupKey, FilterCounts> pendingFilters = new ConcurrentHashMap<>();
+
+    /**
+     * Held for writing while a flush moves rollups from memory to the database, so a
+     * read sees each of them exactly once.
+     */
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService flusher;
+
+    public AnalyticsRecorder(XRayProperties properties, AnalyticsStore store,
+                             ObjectProvider<TraceStore> traceStore) {
+        this.settings = properties.getAnalytics();
+        this.store = store;
+        this.traceStore = traceStore;
+        long forgetAfterMs = properties.getTracer().getAbandonAfterMs();
+        this.forgetAfterNanos = TimeUnit.MILLISECONDS.toNanos(forgetAfterMs);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "xray-analytics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isEnabled()) {
+            flusher.scheduleWithFixedDelay(this::flush, settings.getFlushIntervalMs(),
+                    settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+            if (forgetAfterMs > 0) {
+                long interval = Math.min(Math.max(forgetAfterMs / 4, 1000), 60_000);
+                flusher.scheduleWithFixedDelay(this::forgetQuietly, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public void executionStarted(String executionId, String pipeline, LocalDateTime startTime) {
+        if (settings.isEnabled() && open.size() < settings.getMaxOpenExecutions()) {
+            open.put(executionId, new OpenExecution(pipeline != null ? pipeline : "", startTime));
+        }
+    }
+
+    public void stepTimed(String executionId, String stepName, LocalDateTime timestamp, long durationNanos) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        lookup(executionId, false).ifPresent(execution ->
+                update(new RollupKey(execution.getPipeline(), stepName, Resolution.HOUR.bucketOf(timestamp)),
+                        rollup -> rollup.histogram.record(durationNanos)));
+    }
+
+    public void executionFinished(String executionId, LocalDateTime endTime,
+                                  ExecutionOutcome outcome, String failureReason) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        lookup(executionId, true).ifPresent(execution -> {
+            long durationNanos = Duration.between(execution.getStartTime(), endTime).toNanos();
+            update(new RollupKey(execution.getPipeline(), "", Resolution.HOUR.bucketOf(endTime)), rollup -> {
+                rollup.histogram.record(durationNanos);
+                if (outcome == ExecutionOutcome.FAILED) {
+                    rollup.recordFailure(failureReason, settings.getMaxFailureReasons());
+                }
+            });
+        });
+    }
+
+    /**
+     * Counts the candidates of a step that is being stored, if it is an evaluation
+     * step. They are recorded once the current transaction commits, or right away
+     * outside of one.
+     */
+    public void stepWritten(String executionId, XRayStep step) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        FilterCounts counts = FilterCounts.of(step.getMetadata(), settings.getMaxFilterSets());
+        if (counts == null) {
+            return;
+        }
+        LocalDateTime timestamp = step.getTimestamp() != null ? step.getTimestamp() : LocalDateTime.now();
+        String stepName = step.getStepName();
+        afterCommit(() -> lookup(executionId, false).ifPresent(execution ->
+                updateFilters(new RollupKey(execution.getPipeline(), stepName, Resolution.HOUR.bucketOf(timestamp)),
+                        pendingCounts -> pendingCounts.merge(counts, settings.getMaxFilterSets()))));
+    }
+
+    /**
+     * Records trace events that were written without going through the tracer.
+     */
+    public void recordAll(List<TraceEvent> events) {
+        for (TraceEvent event : events) {
+            switch (event.getType()) {
+                case EXECUTION_STARTED -> {
+                    XRayExecution execution = event.getExecution();
+                    execution.promotePipeline();
+                    executionStarted(execution.getExecutionId(), execution.getPipeline(), execution.getStartTime());
+                }
+                case STEP_RECORDED -> {
+                    if (event.getStep().getDurationNanos() != null) {
+                        stepTimed(event.getExecutionId(), event.getStep().getStepName(),
+                                event.getStep().getTimestamp(), event.getStep().getDurationNanos());
+                    }
+                }
+                case EXECUTION_FINISHED -> executionFinished(event.getExecutionId(), event.getEndTime(),
+                        event.getOutcome(), event.getFailureReason());
+            }
+        }
+    }
+
+    /**
+     * Rollups with {@code from <= bucket_start < to} at the given resolution, stored or
+     * still in memory; the bounds should be aligned to the resolution.
+     *
+     * @param pipeline null for every pipeline, empty for executions without one
+     * @param stepName null for every step and whole executions, empty for whole executions only
+     */
+    Map<RollupKey, Rollup> read(Resolution resolution, LocalDateTime from, LocalDateTime to,
+                                String pipeline, String stepName) {
+        flushLock.readLock().lock();
+        try {
+            Map<RollupKey, Rollup> rollups = store.read(resolution, from, to, pipeline, stepName);
+            pending.forEach((key, rollup) -> {
+                if ((pipeline == null || pipeline.equals(key.getPipeline()))
+                        && (stepName == null || stepName.equals(key.getStepName()))
+                        && !key.getBucketStart().isBefore(from) && key.getBucketStart().isBefore(to)) {
+                    Rollup bucket = rollups.computeIfAbsent(key.atResolution(resolution), k -> new Rollup());
+                    synchronized (rollup) {
+                        bucket.merge(rollup, settings.getMaxFailureReasons());
+                    }
+                }
+            });
+            return rollups;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Candidate counts of evaluation steps with {@code from <= bucket_start < to} at
+     * the given resolution, stored or still in memory.
+     *
+     * @param pipeline null for every pipeline, empty for executions without one
+     * @param stepName null for every evaluation step
+     */
+    Map<RollupKey, FilterCounts> readFilters(Resolution resolution, LocalDateTime from, LocalDateTime to,
+                                             String pipeline, String stepName) {
+        flushLock.readLock().lock();
+        try {
+            Map<RollupKey, FilterCounts> counts = store.readFilters(resolution, from, to, pipeline, stepName);
+            pendingFilters.forEach((key, pendingCounts) -> {
+                if ((pipeline == null || pipeline.equals(key.getPipeline()))
+                        && (stepName == null || stepName.equals(key.getStepName()))
+                        && !key.getBucketStart().isBefore(from) && key.getBucketStart().isBefore(to)) {
+                    FilterCounts bucket = counts.computeIfAbsent(key.atResolution(resolution), k -> new FilterCounts());
+                    synchronized (pendingCounts) {
+                        bucket.merge(pendingCounts, settings.getMaxFilterSets());
+                    }
+                }
+            });
+            return counts;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the rollups and filter counts collected so far into the database. If
+     * that fails they are put back and retried on the next flush.
+     */
+    void flush() {
+        if (pending.isEmpty() && pendingFilters.isEmpty()) {
+            return;
+        }
+        flushLock.writeLock().lock();
+        try {
+            Map<RollupKey, Rollup> batch = new HashMap<>();
+            for (RollupKey key : pending.keySet()) {
+                Rollup rollup = pending.remove(key);
+                synchronized (rollup) {
+                    rollup.closed = true;
+                }
+                batch.put(key, rollup);
+            }
+            Map<RollupKey, FilterCounts> filterBatch = new HashMap<>();
+            for (RollupKey key : pendingFilters.keySet()) {
+                FilterCounts counts = pendingFilters.remove(key);
+                synchronized (counts) {
+                    counts.closed = true;
+                }
+                filterBatch.put(key, counts);
+            }
+            try {
+                store.merge(batch, filterBatch, settings.getMaxFailureReasons(), settings.getMaxFilterSets());
+                log.debug("Flushed {} analytics rollups and {} filter counts", batch.size(), filterBatch.size());
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush {} analytics rollups and {} filter counts, will retry: {}",
+                        batch.size(), filterBatch.size(), e.toString());
+                batch.forEach((key, rollup) -> update(key, pendingRollup ->
+                        pendingRollup.merge(rollup, settings.getMaxFailureReasons())));
+                filterBatch.forEach((key, counts) -> updateFilters(key, pendingCounts ->
+                        pendingCounts.merge(counts, settings.getMaxFilterSets())));
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void update(RollupKey key, Consumer<Rollup> change) {
+        while (true) {
+            Rollup rollup = pending.computeIfAbsent(key, k -> new Rollup());
+            synchronized (rollup) {
+                // a rollup taken by a flush is replaced by a fresh one on the next attempt
+                if (!rollup.closed) {
+                    change.accept(rollup);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void updateFilters(RollupKey key, Consumer<FilterCounts> change) {
+        while (true) {
+            FilterCounts counts = pendingFilters.computeIfAbsent(key, k -> new FilterCounts());
+            synchronized (counts) {
+                if (!counts.closed) {
+                    change.accept(counts);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Executions not started since this process came up are looked up in the store,
+     * once: the result is remembered, found or not. When {@code max-open-executions}
+     * leaves no room to remember it, a step is not counted rather than costing a query.
+     */
+    private Optional<OpenExecution> lookup(String executionId, boolean finished) {
+        OpenExecution execution = finished ? open.remove(executionId) : open.get(executionId);
+        if (execution == null) {
+            if (!finished && open.size() >= settings.getMaxOpenExecutions()) {
+                return Optional.empty();
+            }
+            execution = traceStore.getObject().findSummary(executionId)
+                    .map(summary -> new OpenExecution(
+                            summary.getPipeline() != null ? summary.getPipeline() : "", summary.getStartTime()))
+                    .orElseGet(() -> new OpenExecution(null, null));
+            if (!finished) {
+                OpenExecution raced = open.putIfAbsent(executionId, execution);
+                execution = raced != null ? raced : execution;
+            }
+        }
+        execution.touch();
+        return execution.isKnown() ? Optional.of(execution) : Optional.empty();
+    }
+
+    /**
+     * Forgets executions with no call for {@code abandon-after-ms}, such as ones that
+     * are never ended.
+     *
+     * @return the number of executions forgotten
+     */
+    int forgetStale() {
+        long now = System.nanoTime();
+        int forgotten = 0;
+        for (Map.Entry<String, OpenExecution> entry : open.entrySet()) {
+            if (now - entry.getValue().getLastActive() >= forgetAfterNanos
+                    && open.remove(entry.getKey(), entry.getValue())) {
+                forgotten++;
+            }
+        }
+        return forgotten;
+    }
+
+    private void forgetQuietly() {
+        try {
+            int forgotten = forgetStale();
+            if (forgotten > 0) {
+                log.debug("Forgot {} executions with no analytics call for {} ms", forgotten,
+                        TimeUnit.NANOSECONDS.toMillis(forgetAfterNanos));
+            }
+        } catch (RuntimeException e) {
+            log.error("Forgetting stale executions failed", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Pipeline and start time of an execution in progress; both null if it was not found.
+     */
+    private static class OpenExecution {
+
+        private final String pipeline;
+        private final LocalDateTime startTime;
+        private volatile long lastActive = System.nanoTime();
+
+        OpenExecution(String pipeline, LocalDateTime startTime) {
+            this.pipeline = pipeline;
+            this.startTime = startTime;
+        }
+
+        void touch() {
+            lastActive = System.nanoTime();
+        }
+
+        boolean isKnown() {
+            return pipeline != null;
+        }
+
+        String getPipeline() {
+            return pipeline;
+        }
+
+        LocalDateTime getStartTime() {
+            return startTime;
+        }
+
+        long getLastActive() {
+            return lastActive;
+        }
+    }
+}
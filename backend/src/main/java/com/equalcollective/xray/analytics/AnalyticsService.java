@@ -0,0 +1,352 @@
+package com.equalcollective.xray.analytics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Answers analytics queries from the rollups kept by {@link AnalyticsRecorder}.
+ * <p>
+ * Ranges up to two days are read from hourly rollups and longer ones from daily
+ * rollups, so a query over months merges a few hundred rows per series at most. The
+ * range is widened to whole buckets and the bounds actually covered are returned.
+ * Percentiles are within about 3% of the recorded durations.
+ */
+@Service
+public class AnalyticsService {
+
+    private static final Duration MAX_HOURLY_RANGE = Duration.ofDays(2);
+
+    private final AnalyticsRecorder recorder;
+
+    public AnalyticsService(AnalyticsRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Duration percentiles per pipeline and step over the whole range.
+     *
+     * @param pipeline null for every pipeline
+     * @param stepName null for every step and whole executions
+     */
+    public LatencyReport latency(String pipeline, String stepName, LocalDateTime from, LocalDateTime to) {
+        Range range = Range.of(from, to);
+        Map<RollupKey, Rollup> rollups = recorder.read(range.resolution, range.from, range.to,
+                key(pipeline), key(stepName));
+
+        Map<RollupKey, Rollup> series = new TreeMap<>(Comparator
+                .comparing(RollupKey::getPipeline)
+                .thenComparing(RollupKey::getStepName));
+        rollups.forEach((key, rollup) -> series
+                .computeIfAbsent(new RollupKey(key.getPipeline(), key.getStepName(), null), k -> new Rollup())
+                .merge(rollup, Integer.MAX_VALUE));
+
+        List<LatencySeries> result = new ArrayList<>();
+        series.forEach((key, rollup) -> result.add(new LatencySeries(
+                label(key.getPipeline()), label(key.getStepName()), percentiles(rollup))));
+        return new LatencyReport(range.from, range.to, range.resolution, result);
+    }
+
+    /**
+     * Duration percentiles of one step, or of whole executions, bucket by bucket.
+     *
+     * @param pipeline null to combine every pipeline
+     * @param stepName null for whole executions
+     */
+    public LatencyTimeline timeline(String pipeline, String stepName, LocalDateTime from, LocalDateTime to) {
+        Range range = Range.of(from, to);
+        Map<RollupKey, Rollup> rollups = recorder.read(range.resolution, range.from, range.to,
+                key(pipeline), stepName != null ? stepName : "");
+
+        Map<LocalDateTime, Rollup> buckets = new TreeMap<>();
+        rollups.forEach((key, rollup) -> buckets
+                .computeIfAbsent(key.getBucketStart(), k -> new Rollup())
+                .merge(rollup, Integer.MAX_VALUE));
+
+        List<TimelinePoint> points = new ArrayList<>();
+        buckets.forEach((bucketStart, rollup) -> points.add(new TimelinePoint(bucketStart, percentiles(rollup))));
+        return new LatencyTimeline(pipeline, stepName, range.from, range.to, range.resolution, points);
+    }
+
+    /**
+     * Failure rate and most common failure reasons per pipeline.
+     *
+     * @param pipeline null for every pipeline
+     */
+    public FailureReport failures(String pipeline, LocalDateTime from, LocalDateTime to, int topReasons) {
+        Range range = Range.of(from, to);
+        Map<RollupKey, Rollup> rollups = recorder.read(range.resolution, range.from, range.to, key(pipeline), "");
+
+        Map<String, Rollup> pipelines = new TreeMap<>();
+        rollups.forEach((key, rollup) -> pipelines
+                .computeIfAbsent(key.getPipeline(), k -> new Rollup())
+                .merge(rollup, Integer.MAX_VALUE));
+
+        List<PipelineFailures> result = new ArrayList<>();
+        pipelines.forEach((name, rollup) -> {
+            List<ReasonCount> reasons = rollup.failureReasons.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(topReasons)
+                    .map(reason -> new ReasonCount(reason.getKey(), reason.getValue()))
+                    .toList();
+            long executions = rollup.getCount();
+            result.add(new PipelineFailures(label(name), executions, rollup.failures,
+                    executions > 0 ? (double) rollup.failures / executions : 0, reasons));
+        });
+        return new FailureReport(range.from, range.to, range.resolution, result);
+    }
+
+    /**
+     * How an evaluation step's filters narrowed down its candidates: per-filter pass
+     * rates, the funnel with the filters applied in {@code order}, and pass rates
+     * bucket by bucket.
+     *
+     * @param pipeline null for every pipeline
+     * @param stepName null to combine every evaluation step
+     * @param order    filters to apply first in the funnel; the others follow, those
+     *                 that failed the most candidates first
+     */
+    public FunnelReport funnel(String pipeline, String stepName, LocalDateTime from, LocalDateTime to,
+                               List<String> order) {
+        Range range = Range.of(from, to);
+        Map<RollupKey, FilterCounts> counts = recorder.readFilters(range.resolution, range.from, range.to,
+                key(pipeline), key(stepName));
+
+        FilterCounts total = new FilterCounts();
+        Map<LocalDateTime, FilterCounts> buckets = new TreeMap<>();
+        counts.forEach((key, bucketCounts) -> {
+            total.merge(bucketCounts, Integer.MAX_VALUE);
+            buckets.computeIfAbsent(key.getBucketStart(), k -> new FilterCounts())
+                    .merge(bucketCounts, Integer.MAX_VALUE);
+        });
+
+        List<FilterStats> filters = new ArrayList<>();
+        total.filters.forEach((name, filter) -> filters.add(new FilterStats(name, filter[0], filter[1],
+                filter[0] - filter[1], (double) filter[1] / filter[0], total.failedSets.getOrDefault(name, 0L))));
+        filters.sort(Comparator.comparingLong(FilterStats::getFailed).reversed()
+                .thenComparing(FilterStats::getName));
+
+        List<String> stageOrder = new ArrayList<>(new LinkedHashSet<>(order));
+        stageOrder.retainAll(total.filters.keySet());
+        filters.stream().map(FilterStats::getName).filter(name -> !stageOrder.contains(name)).forEach(stageOrder::add);
+
+        long[] eliminated = new long[stageOrder.size()];
+        total.failedSets.forEach((set, candidates) -> {
+            // a candidate leaves the funnel at the first filter it failed
+            int stage = FilterCounts.namesOf(set).stream()
+                    .mapToInt(stageOrder::indexOf)
+                    .filter(index -> index >= 0)
+                    .min().orElse(-1);
+            if (stage >= 0) {
+                eliminated[stage] += candidates;
+            }
+        });
+        long unattributed = total.failedSets.getOrDefault(FilterCounts.OTHER_SETS, 0L);
+        long remaining = total.getCandidates() - unattributed;
+        List<FunnelStage> stages = new ArrayList<>();
+        for (int i = 0; i < stageOrder.size(); i++) {
+            stages.add(new FunnelStage(stageOrder.get(i), remaining, eliminated[i], remaining - eliminated[i]));
+            remaining -= eliminated[i];
+        }
+
+        List<FunnelPoint> points = new ArrayList<>();
+        buckets.forEach((bucketStart, bucketCounts) -> {
+            Map<String, Double> passRates = new TreeMap<>();
+            bucketCounts.filters.forEach((name, filter) -> passRates.put(name, (double) filter[1] / filter[0]));
+            points.add(new FunnelPoint(bucketStart, bucketCounts.getCandidates(), bucketCounts.getQualified(), passRates));
+        });
+
+        return new FunnelReport(pipeline, stepName, range.from, range.to, range.resolution,
+                total.getCandidates(), total.getQualified(), unattributed, filters, stages, points);
+    }
+
+    private static Percentiles percentiles(Rollup rollup) {
+        LatencyHistogram histogram = rollup.histogram;
+        return new Percentiles(histogram.getTotalCount(), rollup.failures,
+                histogram.valueAtPercentile(50), histogram.valueAtPercentile(95),
+                histogram.valueAtPercentile(99), histogram.getMax());
+    }
+
+    /**
+     * API parameter to stored key: null stays null (any), blank is not a valid filter.
+     */
+    private static String key(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Stored key to API value: empty pipelines and the execution rollup become null.
+     */
+    private static String label(String key) {
+        return key.isEmpty() ? null : key;
+    }
+
+    private static class Range {
+        final Resolution resolution;
+        final LocalDateTime from;
+        final LocalDateTime to;
+
+        private Range(Resolution resolution, LocalDateTime from, LocalDateTime to) {
+            this.resolution = resolution;
+            this.from = from;
+            this.to = to;
+        }
+
+        static Range of(LocalDateTime from, LocalDateTime to) {
+            if (!from.isBefore(to)) {
+                throw new IllegalArgumentException("from must be before to");
+            }
+            Resolution resolution = Duration.between(from, to).compareTo(MAX_HOURLY_RANGE) > 0
+                    ? Resolution.DAY : Resolution.HOUR;
+            return new Range(resolution, resolution.bucketOf(from), resolution.ceiling(to));
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Percentiles {
+        private long count;
+        /** Failed executions; zero for steps. */
+        private long failures;
+        private Long p50Nanos;
+        private Long p95Nanos;
+        private Long p99Nanos;
+        private Long maxNanos;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LatencySeries {
+        private String pipeline;
+        /** Null for whole executions. */
+        private String stepName;
+        private Percentiles latency;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LatencyReport {
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Resolution resolution;
+        private List<LatencySeries> series;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TimelinePoint {
+        private LocalDateTime bucketStart;
+        private Percentiles latency;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LatencyTimeline {
+        private String pipeline;
+        private String stepName;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Resolution resolution;
+        private List<TimelinePoint> points;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReasonCount {
+        private String reason;
+        private long count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PipelineFailures {
+        private String pipeline;
+        private long executions;
+        private long failed;
+        private double failureRate;
+        private List<ReasonCount> topReasons;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FailureReport {
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Resolution resolution;
+        private List<PipelineFailures> pipelines;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FilterStats {
+        private String name;
+        private long evaluated;
+        private long passed;
+        private long failed;
+        private double passRate;
+        /** Candidates that failed this filter and no other. */
+        private long soleEliminations;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FunnelStage {
+        private String filter;
+        private long remainingBefore;
+        /** Candidates that failed this filter and none applied before it. */
+        private long eliminated;
+        private long remainingAfter;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FunnelPoint {
+        private LocalDateTime bucketStart;
+        private long candidates;
+        private long qualified;
+        /** Filter name to the share of the candidates it evaluated that passed. */
+        private Map<String, Double> passRates;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FunnelReport {
+        private String pipeline;
+        private String stepName;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Resolution resolution;
+        private long candidates;
+        /** Candidates that passed every filter. */
+        private long qualified;
+        /** Candidates that failed a set of filters beyond the per-bucket limit, left out of the stages. */
+        private long unattributed;
+        /** Filters that failed the most candidates first. */
+        private List<FilterStats> filters;
+        private List<FunnelStage> stages;
+        private List<FunnelPoint> points;
+    }
+}
@@ -0,0 +1,212 @@
+package com.equalcollective.xray.analytics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and merges rollup rows in {@code xray_analytics_rollups} and
+ * {@code xray_filter_funnel_rollups} over plain JDBC.
+ */
+@Component
+public class AnalyticsStore {
+
+    private static final String FILTER = "FILTER";
+    private static final String FAILED_SET = "FAILED_SET";
+
+    private static final TypeReference<Map<String, Long>> REASONS = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    public AnalyticsStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                          ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Adds hourly rollups and filter counts to the stored hour and day rows, in one transaction.
+     */
+    void merge(Map<RollupKey, Rollup> hourly, Map<RollupKey, FilterCounts> hourlyFilters,
+               int maxReasons, int maxSets) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Resolution resolution : Resolution.values()) {
+                Map<RollupKey, Rollup> buckets = new HashMap<>();
+                hourly.forEach((key, rollup) -> buckets
+                        .computeIfAbsent(key.atResolution(resolution), k -> new Rollup())
+                        .merge(rollup, maxReasons));
+                buckets.forEach((key, rollup) -> mergeRow(resolution, key, rollup, maxReasons));
+
+                Map<RollupKey, FilterCounts> filterBuckets = new HashMap<>();
+                hourlyFilters.forEach((key, counts) -> filterBuckets
+                        .computeIfAbsent(key.atResolution(resolution), k -> new FilterCounts())
+                        .merge(counts, maxSets));
+                filterBuckets.forEach((key, counts) -> mergeFilterRows(resolution, key, counts, maxSets));
+            }
+        });
+    }
+
+    private void mergeRow(Resolution resolution, RollupKey key, Rollup rollup, int maxReasons) {
+        List<Rollup> stored = jdbcTemplate.query(
+                "SELECT histogram, failure_count, failure_reasons FROM xray_analytics_rollups " +
+                "WHERE resolution = ? AND pipeline = ? AND step_name = ? AND bucket_start = ?",
+                (rs, row) -> toRollup(rs),
+                resolution.name(), key.getPipeline(), key.getStepName(), Timestamp.valueOf(key.getBucketStart()));
+        Rollup merged = rollup;
+        if (!stored.isEmpty()) {
+            merged = stored.get(0);
+            merged.merge(rollup, maxReasons);
+        }
+        jdbcTemplate.update(
+                "MERGE INTO xray_analytics_rollups " +
+                "(resolution, pipeline, step_name, bucket_start, sample_count, failure_count, histogram, failure_reasons) " +
+                "KEY (resolution, pipeline, step_name, bucket_start) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                resolution.name(), key.getPipeline(), key.getStepName(), Timestamp.valueOf(key.getBucketStart()),
+                merged.getCount(), merged.failures, merged.histogram.toBytes(),
+                merged.failureReasons.isEmpty() ? null : writeReasons(merged.failureReasons));
+    }
+
+    private void mergeFilterRows(Resolution resolution, RollupKey key, FilterCounts counts, int maxSets) {
+        Object[] bucket = {resolution.name(), key.getPipeline(), key.getStepName(), Timestamp.valueOf(key.getBucketStart())};
+        FilterCounts merged = new FilterCounts();
+        jdbcTemplate.query(
+                "SELECT kind, name, candidates, passed FROM xray_filter_funnel_rollups " +
+                "WHERE resolution = ? AND pipeline = ? AND step_name = ? AND bucket_start = ?",
+                (RowCallbackHandler) rs -> addRow(merged, rs), bucket);
+        merged.merge(counts, maxSets);
+
+        List<Object[]> rows = new ArrayList<>();
+        merged.filters.forEach((name, filter) -> rows.add(row(bucket, FILTER, name, filter[0], filter[1])));
+        merged.failedSets.forEach((set, count) -> rows.add(row(bucket, FAILED_SET, set, count, 0L)));
+        jdbcTemplate.batchUpdate(
+                "MERGE INTO xray_filter_funnel_rollups " +
+                "(resolution, pipeline, step_name, bucket_start, kind, name, candidates, passed) " +
+                "KEY (resolution, pipeline, step_name, bucket_start, kind, name) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                rows);
+    }
+
+    /**
+     * Stored filter counts with {@code from <= bucket_start < to}.
+     *
+     * @param pipeline null for every pipeline
+     * @param stepName null for every evaluation step
+     */
+    Map<RollupKey, FilterCounts> readFilters(Resolution resolution, LocalDateTime from, LocalDateTime to,
+                                             String pipeline, String stepName) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT pipeline, step_name, bucket_start, kind, name, candidates, passed " +
+                "FROM xray_filter_funnel_rollups WHERE resolution = ? AND bucket_start >= ? AND bucket_start < ?");
+        List<Object> params = new ArrayList<>(List.of(resolution.name(), Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        if (pipeline != null) {
+            sql.append(" AND pipeline = ?");
+            params.add(pipeline);
+        }
+        if (stepName != null) {
+            sql.append(" AND step_name = ?");
+            params.add(stepName);
+        }
+        Map<RollupKey, FilterCounts> counts = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            RollupKey key = new RollupKey(rs.getString(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
+            addRow(counts.computeIfAbsent(key, k -> new FilterCounts()), rs, 4);
+        }, params.toArray());
+        return counts;
+    }
+
+    private static void addRow(FilterCounts counts, ResultSet rs) throws SQLException {
+        addRow(counts, rs, 1);
+    }
+
+    /**
+     * Adds a stored row as it is; rows already stored were within the limit of sets.
+     */
+    private static void addRow(FilterCounts counts, ResultSet rs, int firstColumn) throws SQLException {
+        String name = rs.getString(firstColumn + 1);
+        if (FILTER.equals(rs.getString(firstColumn))) {
+            counts.filters.put(name, new long[]{rs.getLong(firstColumn + 2), rs.getLong(firstColumn + 3)});
+        } else {
+            counts.failedSets.merge(name, rs.getLong(firstColumn + 2), Long::sum);
+        }
+    }
+
+    private static Object[] row(Object[] bucket, String kind, String name, long candidates, long passed) {
+        return new Object[]{bucket[0], bucket[1], bucket[2], bucket[3], kind, name, candidates, passed};
+    }
+
+    /**
+     * Stored rollups with {@code from <= bucket_start < to}.
+     *
+     * @param pipeline null for every pipeline
+     * @param stepName null for every step and whole executions, empty for whole executions only
+     */
+    Map<RollupKey, Rollup> read(Resolution resolution, LocalDateTime from, LocalDateTime to,
+                                String pipeline, String stepName) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT pipeline, step_name, bucket_start, histogram, failure_count, failure_reasons " +
+                "FROM xray_analytics_rollups WHERE resolution = ? AND bucket_start >= ? AND bucket_start < ?");
+        List<Object> params = new ArrayList<>(List.of(resolution.name(), Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        if (pipeline != null) {
+            sql.append(" AND pipeline = ?");
+            params.add(pipeline);
+        }
+        if (stepName != null) {
+            sql.append(" AND step_name = ?");
+            params.add(stepName);
+        }
+        Map<RollupKey, Rollup> rollups = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            RollupKey key = new RollupKey(rs.getString(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
+            rollups.put(key, toRollup(rs, 4));
+        }, params.toArray());
+        return rollups;
+    }
+
+    private Rollup toRollup(ResultSet rs) throws SQLException {
+        return toRollup(rs, 1);
+    }
+
+    private Rollup toRollup(ResultSet rs, int firstColumn) throws SQLException {
+        Rollup rollup = new Rollup(LatencyHistogram.fromBytes(rs.getBytes(firstColumn)));
+        rollup.failures = rs.getLong(firstColumn + 1);
+        String reasons = rs.getString(firstColumn + 2);
+        if (reasons != null) {
+            rollup.failureReasons.putAll(readReasons(reasons));
+        }
+        return rollup;
+    }
+
+    private String writeReasons(Map<String, Long> reasons) {
+        try {
+            return objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(reasons);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Long> readReasons(String json) {
+        try {
+            return objectMapper.readValue(json, REASONS);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.equalcollective.xray.analytics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Candidate totals of one evaluation step over one bucket, while they are collected
+ * or merged. Not thread-safe.
+ * <p>
+ * An evaluation step has {@code metadata.evaluations}: an array with one object per
+ * candidate, whose {@code filterResults} map each filter name to either a boolean or
+ * an object with a boolean {@code passed}. Two kinds of counters are kept: how many
+ * candidates each filter saw and passed, and how many candidates failed exactly each
+ * set of filters. The second kind is enough to replay the funnel in any filter order.
+ */
+class FilterCounts {
+
+    /**
+     * Failed sets beyond the per-bucket limit are counted under this key; their
+     * candidates did not qualify, but which filters they failed is not known.
+     */
+    static final String OTHER_SETS = "(other)";
+
+    /**
+     * Stored set keys are bounded by the column they are kept in.
+     */
+    static final int MAX_SET_KEY_LENGTH = 1024;
+
+    /** Filter name to {candidates evaluated, candidates passed}. */
+    final Map<String, long[]> filters = new HashMap<>();
+    /** Key of the set of failed filters, {@code ""} for none, to candidates. */
+    final Map<String, Long> failedSets = new HashMap<>();
+
+    /**
+     * Set once the counts have been taken for a flush; they must not be updated after that.
+     */
+    boolean closed;
+
+    /**
+     * Counts the candidates of a step, or returns null if its metadata does not have
+     * the evaluation schema.
+     */
+    static FilterCounts of(JsonNode metadata, int maxSets) {
+        JsonNode evaluations = metadata != null ? metadata.get("evaluations") : null;
+        if (evaluations == null || !evaluations.isArray()) {
+            return null;
+        }
+        FilterCounts counts = null;
+        List<String> failed = new ArrayList<>();
+        for (JsonNode evaluation : evaluations) {
+            JsonNode results = evaluation.get("filterResults");
+            if (results == null || !results.isObject()) {
+                continue;
+            }
+            if (counts == null) {
+                counts = new FilterCounts();
+            }
+            failed.clear();
+            Iterator<Map.Entry<String, JsonNode>> fields = results.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode result = field.getValue();
+                boolean passed = result.isObject() ? result.path("passed").asBoolean() : result.asBoolean();
+                long[] filter = counts.filters.computeIfAbsent(field.getKey(), name -> new long[2]);
+                filter[0]++;
+                if (passed) {
+                    filter[1]++;
+                } else {
+                    failed.add(field.getKey());
+                }
+            }
+            counts.addSet(setKey(failed), 1, maxSets);
+        }
+        return counts;
+    }
+
+    long getCandidates() {
+        long candidates = 0;
+        for (long count : failedSets.values()) {
+            candidates += count;
+        }
+        return candidates;
+    }
+
+    long getQualified() {
+        return failedSets.getOrDefault("", 0L);
+    }
+
+    void merge(FilterCounts other, int maxSets) {
+        other.filters.forEach((name, counts) -> {
+            long[] filter = filters.computeIfAbsent(name, n -> new long[2]);
+            filter[0] += counts[0];
+            filter[1] += counts[1];
+        });
+        other.failedSets.forEach((set, count) -> addSet(set, count, maxSets));
+    }
+
+    void addSet(String set, long count, int maxSets) {
+        String key = failedSets.containsKey(set) || failedSets.size() < maxSets ? set : OTHER_SETS;
+        failedSets.merge(key, count, Long::sum);
+    }
+
+    /**
+     * Key of a set of filter names: the names sorted and separated by newlines, which
+     * filter names do not contain in practice; {@link #OTHER_SETS} for names that do
+     * or sets too long to store.
+     */
+    static String setKey(List<String> failed) {
+        if (failed.isEmpty()) {
+            return "";
+        }
+        String key = String.join("\n", new TreeSet<>(failed));
+        return key.length() > MAX_SET_KEY_LENGTH || failed.stream().anyMatch(name -> name.contains("\n"))
+                ? OTHER_SETS : key;
+    }
+
+    /**
+     * The filter names in a set key; {@link #OTHER_SETS} has none.
+     */
+    static List<String> namesOf(String setKey) {
+        if (setKey.isEmpty() || setKey.equals(OTHER_SETS)) {
+            return Collections.emptyList();
+        }
+        return List.of(setKey.split("\n"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.equalcollective.xray.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative values, in the style of HdrHistogram. Values
+ * below 32 are counted exactly and larger ones in 32 buckets per power of two, so a
+ * percentile read back is within 1/32 (about 3%) of the recorded value, whatever the
+ * range. Histograms merge by adding counts, which is what lets hourly rollups be
+ * combined into any longer period without keeping the samples. Not thread-safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_INDEX = indexOf(Long.MAX_VALUE);
+
+    private long[] counts = new long[0];
+    private long totalCount;
+
+    public void record(long value) {
+        add(indexOf(Math.max(0, value)), 1);
+    }
+
+    public void merge(LatencyHistogram other) {
+        ensureCapacity(other.counts.length);
+        for (int index = 0; index < other.counts.length; index++) {
+            if (other.counts[index] > 0) {
+                add(index, other.counts[index]);
+            }
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * The smallest recorded value that at least {@code percentile}% of the values do
+     * not exceed, rounded up to the end of its bucket; null if nothing was recorded.
+     */
+    public Long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return null;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return highestValueAt(index);
+            }
+        }
+        return highestValueAt(counts.length - 1);
+    }
+
+    public Long getMax() {
+        return valueAtPercentile(100);
+    }
+
+    /**
+     * Non-empty buckets as varint pairs of (index delta, count).
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int previous = 0;
+        for (int index = 0; index < counts.length; index++) {
+            if (counts[index] > 0) {
+                writeVarint(out, index - previous);
+                writeVarint(out, counts[index]);
+                previous = index;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static LatencyHistogram fromBytes(byte[] bytes) {
+        // the first pass finds the highest index, so the counts are allocated once
+        int[] position = {0};
+        int index = 0;
+        while (position[0] < bytes.length) {
+            index += (int) readVarint(bytes, position);
+            readVarint(bytes, position);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.counts = new long[index + 1];
+        position[0] = 0;
+        index = 0;
+        while (position[0] < bytes.length) {
+            index += (int) readVarint(bytes, position);
+            long count = readVarint(bytes, position);
+            histogram.counts[index] = count;
+            histogram.totalCount += count;
+        }
+        return histogram;
+    }
+
+    private void add(int index, long count) {
+        ensureCapacity(index + 1);
+        counts[index] += count;
+        totalCount += count;
+    }
+
+    private void ensureCapacity(int length) {
+        if (length > counts.length) {
+            counts = Arrays.copyOf(counts, Math.min(MAX_INDEX + 1, Math.max(length, counts.length * 2)));
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
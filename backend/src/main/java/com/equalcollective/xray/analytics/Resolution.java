@@ -0,0 +1,30 @@
+package com.equalcollective.xray.analytics;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket sizes that rollups are kept at. Every sample is counted once per resolution.
+ */
+public enum Resolution {
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    Resolution(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public LocalDateTime bucketOf(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    /**
+     * The first bucket boundary at or after {@code time}.
+     */
+    public LocalDateTime ceiling(LocalDateTime time) {
+        LocalDateTime bucket = bucketOf(time);
+        return bucket.equals(time) ? bucket : bucket.plus(1, unit);
+    }
+}
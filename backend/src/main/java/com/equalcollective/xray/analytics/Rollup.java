@@ -0,0 +1,51 @@
+package com.equalcollective.xray.analytics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Latency and failure totals of one pipeline or step over one bucket, while they are
+ * collected or merged. Not thread-safe.
+ */
+class Rollup {
+
+    static final String OTHER_REASONS = "(other)";
+
+    final LatencyHistogram histogram;
+    long failures;
+    final Map<String, Long> failureReasons = new HashMap<>();
+
+    /**
+     * Set once the rollup has been taken for a flush; it must not be updated after that.
+     */
+    boolean closed;
+
+    Rollup() {
+        this(new LatencyHistogram());
+    }
+
+    Rollup(LatencyHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    void recordFailure(String reason, int maxReasons) {
+        failures++;
+        addReason(reason != null ? reason : "", 1, maxReasons);
+    }
+
+    void merge(Rollup other, int maxReasons) {
+        histogram.merge(other.histogram);
+        failures += other.failures;
+        other.failureReasons.forEach((reason, count) -> addReason(reason, count, maxReasons));
+    }
+
+    private void addReason(String reason, long count, int maxReasons) {
+        String key = failureReasons.containsKey(reason) || failureReasons.size() < maxReasons
+                ? reason : OTHER_REASONS;
+        failureReasons.merge(key, count, Long::sum);
+    }
+}
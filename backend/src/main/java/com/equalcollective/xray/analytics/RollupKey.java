@@ -0,0 +1,22 @@
+package com.equalcollective.xray.analytics;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Identifies a rollup within one resolution. Both strings are empty rather than
+ * null: {@code pipeline} for executions without one, {@code stepName} for the rollup
+ * of whole executions.
+ */
+@Value
+class RollupKey {
+    String pipeline;
+    String stepName;
+    LocalDateTime bucketStart;
+
+    RollupKey atResolution(Resolution resolution) {
+        LocalDateTime bucket = resolution.bucketOf(bucketStart);
+        return bucket.equals(bucketStart) ? this : new RollupKey(pipeline, stepName, bucket);
+    }
+}
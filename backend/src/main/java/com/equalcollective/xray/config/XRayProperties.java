@@ -0,0 +1,479 @@
+package com.equalcollective.xray.config;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tunables for the X-Ray tracer, bound from the {@code xray.*} namespace
+ * in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "xray")
+public class XRayProperties {
+
+    private Tracer tracer = new Tracer();
+
+    private Ingest ingest = new Ingest();
+
+    private Storage storage = new Storage();
+
+    private Live live = new Live();
+
+    private ResponseCache responseCache = new ResponseCache();
+
+    private Analytics analytics = new Analytics();
+
+    private Retention retention = new Retention();
+
+    @Data
+    public static class Tracer {
+
+        /**
+         * SYNC writes every call on the caller's thread; ASYNC hands it to the write-behind buffer.
+         */
+        private Mode mode = Mode.SYNC;
+
+        /**
+         * Node id (0-65535) embedded in generated ids; give each instance writing to the
+         * same store its own. Random when unset.
+         */
+        private Integer nodeId;
+
+        /**
+         * An execution with no tracer call for this long is abandoned: the tracer stops
+         * tracking it, and one that sampling kept in memory is written as a summary row.
+         * 0 never abandons executions.
+         */
+        private long abandonAfterMs = 60 * 60 * 1000;
+
+        private Async async = new Async();
+
+        private Budget budget = new Budget();
+
+        private Sampling sampling = new Sampling();
+    }
+
+    @Data
+    public static class Sampling {
+
+        /**
+         * Fraction of executions traced in full, decided when they start.
+         */
+        private double headRate = 1.0;
+
+        /**
+         * Context attribute that overrides the head decision: true traces the execution
+         * in full, false keeps only its summary.
+         */
+        private String attribute = "xraySample";
+
+        private Tail tail = new Tail();
+    }
+
+    @Data
+    public static class Tail {
+
+        /**
+         * Buffer executions not picked by head sampling and decide when they end.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Keep executions that ran at least this long.
+         */
+        private long latencyThresholdMs = 5000;
+
+        /**
+         * Keep executions that recorded a step with one of these names.
+         */
+        private List<String> keepStepNames = new ArrayList<>();
+
+        /**
+         * Executions buffered at once; further ones keep only their summary.
+         */
+        private int maxPendingExecutions = 10000;
+
+        /**
+         * Steps buffered per execution; an execution that records more keeps only its summary.
+         */
+        private int maxBufferedSteps = 1000;
+    }
+
+    @Data
+    public static class Async {
+
+        /**
+         * Maximum number of buffered trace events.
+         */
+        private int capacity = 65536;
+
+        /**
+         * Maximum number of events written per transaction.
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long the writer waits for the first event of a batch.
+         */
+        private long flushIntervalMs = 50;
+
+        /**
+         * What to do when the buffer is full.
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        /**
+         * Fraction of step events kept while the buffer is full (SAMPLE policy only).
+         */
+        private double sampleRate = 0.1;
+
+        /**
+         * How long shutdown waits for buffered events to be written.
+         */
+        private long shutdownTimeoutMs = 30000;
+    }
+
+    @Data
+    public static class Budget {
+
+        /**
+         * Enforce the limits below while serializing step payloads and execution context.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Approximate JSON bytes kept per payload (input, output, metadata or context).
+         */
+        private long maxFieldBytes = 256 * 1024;
+
+        /**
+         * Approximate JSON bytes kept across all payloads of one step.
+         */
+        private long maxStepBytes = 1024 * 1024;
+
+        /**
+         * Longer strings are cut to this many characters.
+         */
+        private int maxStringLength = 8192;
+
+        /**
+         * Trailing elements kept in the summary of an over-budget array.
+         */
+        private int sampleSize = 3;
+
+        /**
+         * Approximate JSON bytes kept per trailing sample.
+         */
+        private int sampleBytes = 2048;
+    }
+
+    @Data
+    public static class Live {
+
+        /**
+         * Events queued per watcher; a watcher that falls further behind loses events
+         * and is told to resync.
+         */
+        private int bufferSize = 256;
+
+        /**
+         * Further stream requests are refused with 503.
+         */
+        private int maxSubscribers = 10000;
+
+        /**
+         * Threads that write queued events to watchers.
+         */
+        private int dispatchThreads = 4;
+
+        private long heartbeatIntervalMs = 15000;
+
+        /**
+         * Streams are closed after this long; browsers reconnect on their own.
+         */
+        private long timeoutMs = 30 * 60 * 1000;
+    }
+
+    @Data
+    public static class ResponseCache {
+
+        private boolean enabled = true;
+
+        /**
+         * Total size of the cached JSON and gzip bytes; least recently used responses
+         * are dropped beyond it.
+         */
+        private long maxBytes = 64L * 1024 * 1024;
+
+        /**
+         * Also keep a gzipped copy for clients that accept it.
+         */
+        private boolean gzip = true;
+    }
+
+    @Data
+    public static class Analytics {
+
+        private boolean enabled = true;
+
+        /**
+         * How often rollups collected in memory are merged into the database.
+         */
+        private long flushIntervalMs = 10000;
+
+        /**
+         * Distinct failure reasons kept per pipeline and bucket; the rest are counted
+         * under "(other)".
+         */
+        private int maxFailureReasons = 50;
+
+        /**
+         * Distinct sets of failed filters kept per evaluation step and bucket; the
+         * rest are counted under "(other)".
+         */
+        private int maxFilterSets = 256;
+
+        /**
+         * Executions in progress whose pipeline and start time are kept in memory.
+         * Events of executions beyond that look them up in the database instead.
+         */
+        private int maxOpenExecutions = 100000;
+    }
+
+    @Data
+    public static class Retention {
+
+        /**
+         * Purge executions that fall outside the limits below in the background.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Finished executions that started longer ago than this are deleted. Null keeps
+         * them regardless of age.
+         */
+        private Duration maxAge;
+
+        /**
+         * Overrides {@link #maxAge} for executions with the given outcome, e.g. to keep
+         * failures longer. Executions still IN_PROGRESS are only deleted by age if an
+         * override is set for them.
+         */
+        private Map<ExecutionOutcome, Duration> maxAgeByOutcome = new EnumMap<>(ExecutionOutcome.class);
+
+        /**
+         * Finished executions beyond the newest this many are deleted, whatever their
+         * outcome. 0 for no limit.
+         */
+        private long maxExecutions = 0;
+
+        private long intervalMs = 10 * 60 * 1000;
+
+        /**
+         * Executions deleted per transaction.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Pause between two batches, so a long purge leaves the database to writers.
+         */
+        private long pauseMs = 100;
+    }
+
+    @Data
+    public static class Ingest {
+
+        /**
+         * Number of ingested events written per transaction.
+         */
+        private int batchSize = 1000;
+    }
+
+    @Data
+    public static class Storage {
+
+        /**
+         * Where traces are stored: JPA over the database, the embedded append-only LOG,
+         * or SHARDED across several databases.
+         */
+        private Backend backend = Backend.JPA;
+
+        private Log log = new Log();
+
+        private Shards shards = new Shards();
+
+        private Compression compression = new Compression();
+
+        private Dedup dedup = new Dedup();
+
+        private Archive archive = new Archive();
+    }
+
+    @Data
+    public static class Log {
+
+        /**
+         * Directory holding the log segments.
+         */
+        private String directory = "./data/trace-log";
+
+        /**
+         * Size each segment is mapped at; a new one is started when a batch does not fit.
+         * At most 1 GB.
+         */
+        private long segmentBytes = 64L * 1024 * 1024;
+
+        /**
+         * Force every batch to disk before returning. Without it, written batches survive
+         * a crash of the JVM but not of the machine.
+         */
+        private boolean fsync = false;
+    }
+
+    @Data
+    public static class Shards {
+
+        /**
+         * Number of shard databases. Executions are placed by a hash of their id, so this
+         * cannot change once traces have been written.
+         */
+        private int count = 4;
+
+        /**
+         * JDBC URL of each shard's database; {@code %d} is replaced by the shard's index.
+         */
+        private String url = "jdbc:h2:file:./data/shards/xraydb-%d;DB_CLOSE_ON_EXIT=FALSE";
+
+        private String username = "sa";
+
+        private String password = "";
+
+        /**
+         * Connections kept open to each shard.
+         */
+        private int poolSize = 4;
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * Compress JSON payloads on write. Reads always understand both formats.
+         */
+        private boolean enabled = false;
+
+        private CompressionAlgorithm algorithm = CompressionAlgorithm.DEFLATE;
+
+        /**
+         * Payloads smaller than this many bytes are stored uncompressed.
+         */
+        private int thresholdBytes = 1024;
+
+        /**
+         * Deflater level, 1 (fastest) to 9 (smallest).
+         */
+        private int level = 6;
+    }
+
+    @Data
+    public static class Dedup {
+
+        /**
+         * Store large JSON subtrees once in xray_payloads and reference them by hash.
+         * Reads always resolve references, whatever this is set to.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Objects and arrays whose canonical JSON is at least this many bytes are deduplicated.
+         */
+        private int minBytes = 512;
+
+        /**
+         * Number of decoded payloads kept in memory for reads.
+         */
+        private int cacheSize = 1024;
+    }
+
+    @Data
+    public static class Archive {
+
+        /**
+         * Move finished executions older than {@link #minAge} to the archive in the
+         * background. Archived executions stay readable whatever this is set to.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory holding the segment files.
+         */
+        private String directory = "./data/archive";
+
+        private Duration minAge = Duration.ofDays(7);
+
+        /**
+         * A segment is closed and a new one started once it reaches this size, at most 1 GB.
+         */
+        private long segmentBytes = 64L * 1024 * 1024;
+
+        /**
+         * Deflater level, 1 (fastest) to 9 (smallest).
+         */
+        private int level = 6;
+
+        private long intervalMs = 10 * 60 * 1000;
+
+        /**
+         * Executions moved per transaction.
+         */
+        private int batchSize = 100;
+
+        /**
+         * Pause between two batches, so a long backlog leaves the database to writers.
+         */
+        private long pauseMs = 100;
+
+        /**
+         * A closed segment whose live records take less than this share of it is
+         * compacted when space is reclaimed; one with none left is deleted outright.
+         */
+        private double compactBelow = 0.5;
+    }
+
+    public enum Backend {
+        JPA,
+        LOG,
+        SHARDED
+    }
+
+    public enum CompressionAlgorithm {
+        DEFLATE,
+        GZIP
+    }
+
+    public enum Mode {
+        SYNC,
+        ASYNC
+    }
+
+    public enum OverflowPolicy {
+        /** Caller waits for space. */
+        BLOCK,
+        /** The incoming event is discarded. */
+        DROP_NEWEST,
+        /**
+         * The oldest buffered step event is discarded to make room. Lifecycle events are
+         * never discarded: without its start, every step of an execution would be lost.
+         */
+        DROP_OLDEST,
+        /** Step events are kept at sample-rate and lifecycle events wait for space. */
+        SAMPLE
+    }
+}
@@ -0,0 +1,107 @@
+package com.equalcollective.xray.controller;
+
+import com.equalcollective.xray.analytics.AnalyticsService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Latency, failure and filter funnel analytics, answered from rollups rather than by
+ * scanning traces.
+ * Ranges default to the last 24 hours; durations are in nanoseconds.
+ */
+@RestController
+@RequestMapping("/api/analytics")
+@CrossOrigin(origins = "http://localhost:3000")
+public class AnalyticsController {
+
+    private static final int MAX_TOP_REASONS = 100;
+
+    private final AnalyticsService analyticsService;
+
+    public AnalyticsController(AnalyticsService analyticsService) {
+        this.analyticsService = analyticsService;
+    }
+
+    /**
+     * p50/p95/p99/max duration per pipeline and step, and of whole executions (stepName null)
+     * GET /api/analytics/latency?pipeline=...&step=...&from=...&to=...
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<AnalyticsService.LatencyReport> getLatency(
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.latency(pipeline, step, start, end));
+    }
+
+    /**
+     * Percentiles of one step, or of whole executions when step is omitted, per hour or day
+     * GET /api/analytics/latency/timeline?pipeline=...&step=...&from=...&to=...
+     */
+    @GetMapping("/latency/timeline")
+    public ResponseEntity<AnalyticsService.LatencyTimeline> getLatencyTimeline(
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.timeline(pipeline, step, start, end));
+    }
+
+    /**
+     * Failure rate and most common failure reasons per pipeline
+     * GET /api/analytics/failures?pipeline=...&from=...&to=...&top=10
+     */
+    @GetMapping("/failures")
+    public ResponseEntity<AnalyticsService.FailureReport> getFailures(
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "10") int top) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.failures(pipeline, start, end,
+                Math.max(0, Math.min(top, MAX_TOP_REASONS))));
+    }
+
+    /**
+     * Candidate funnel of an evaluation step's filters
+     * GET /api/analytics/funnel?pipeline=...&step=...&from=...&to=...&order=price_range,min_rating
+     */
+    @GetMapping("/funnel")
+    public ResponseEntity<AnalyticsService.FunnelReport> getFunnel(
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) List<String> order) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.funnel(pipeline, step, start, end,
+                order != null ? order : List.of()));
+    }
+}
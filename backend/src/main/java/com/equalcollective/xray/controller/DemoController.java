@@ -1,5 +1,7 @@
 package com.equalcollective.xray.controller;
 
+import com.equalcollective.xray.demo.CompetitorFilters;
+import com.equalcollective.xray.demo.CompetitorReplayService;
 import com.equalcollective.xray.demo.CompetitorSelectionService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -8,16 +10,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+
 @RestController
 @RequestMapping("/api/demo")
 @CrossOrigin(origins = "http://localhost:3000")
 @Slf4j
 public class DemoController {
 
+    private static final int MAX_REPLAY_RUNS = 1_000_000;
+    private static final int MAX_LISTED_FLIPS = 1000;
+
     private final CompetitorSelectionService competitorSelectionService;
+    private final CompetitorReplayService competitorReplayService;
 
-    public DemoController(CompetitorSelectionService competitorSelectionService) {
+    public DemoController(CompetitorSelectionService competitorSelectionService,
+                          CompetitorReplayService competitorReplayService) {
         this.competitorSelectionService = competitorSelectionService;
+        this.competitorReplayService = competitorReplayService;
     }
 
     /**
@@ -50,6 +60,58 @@ public class DemoController {
         }
     }
 
+    /**
+     * Replay stored competitor selection runs with other filter thresholds; omitted
+     * thresholds keep the pipeline's values. Runs of the last 30 days by default.
+     * POST /api/demo/replay-competitor-selection
+     */
+    @PostMapping("/replay-competitor-selection")
+    public ResponseEntity<CompetitorReplayService.ReplayReport> replayCompetitorSelection(
+            @RequestBody ReplayRequest request) {
+        CompetitorFilters.CompetitorFiltersBuilder filters = CompetitorFilters.DEFAULT.toBuilder();
+        if (request.getMinPriceRatio() != null) {
+            filters.minPriceRatio(request.getMinPriceRatio());
+        }
+        if (request.getMaxPriceRatio() != null) {
+            filters.maxPriceRatio(request.getMaxPriceRatio());
+        }
+        if (request.getMinRating() != null) {
+            filters.minRating(request.getMinRating());
+        }
+        if (request.getMinReviews() != null) {
+            filters.minReviews(request.getMinReviews());
+        }
+        LocalDateTime to = request.getTo() != null ? request.getTo() : LocalDateTime.now();
+        LocalDateTime from = request.getFrom() != null ? request.getFrom() : to.minusDays(30);
+        int limit = request.getLimit() != null ? request.getLimit() : 10000;
+        int maxFlips = request.getMaxFlips() != null ? request.getMaxFlips() : 100;
+        if (!from.isBefore(to) || limit <= 0 || maxFlips < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(competitorReplayService.replay(filters.build(), from, to,
+                    Math.min(limit, MAX_REPLAY_RUNS), Math.min(maxFlips, MAX_LISTED_FLIPS)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReplayRequest {
+        private Double minPriceRatio;
+        private Double maxPriceRatio;
+        private Double minRating;
+        private Integer minReviews;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        /** Most recent runs to replay, 10,000 by default. */
+        private Integer limit;
+        /** Changed selections to list, 100 by default. */
+        private Integer maxFlips;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
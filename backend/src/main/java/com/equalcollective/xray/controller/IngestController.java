@@ -0,0 +1,70 @@
+package com.equalcollective.xray.controller;
+
+import com.equalcollective.xray.service.PartialBatchException;
+import com.equalcollective.xray.service.TraceIngestService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/api/ingest")
+@CrossOrigin(origins = "http://localhost:3000")
+@Slf4j
+public class IngestController {
+
+    private final TraceIngestService ingestService;
+
+    public IngestController(TraceIngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    /**
+     * Bulk-ingest trace events from an NDJSON body
+     * POST /api/ingest (send Content-Encoding: gzip for a compressed body)
+     * <p>
+     * A rejected stream answers 400, or 409 if it conflicts with stored data, with what
+     * was committed before the rejection, so the client can resend from the line after
+     * {@code lastCommittedLine}.
+     */
+    @PostMapping
+    public ResponseEntity<?> ingest(
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream body) throws IOException {
+        InputStream in = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(body, 64 * 1024) : body;
+        TraceIngestService.IngestResult committed = new TraceIngestService.IngestResult();
+        try {
+            ingestService.ingest(in, committed);
+            return ResponseEntity.ok(committed);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            log.warn("Rejected ingest stream after line {}: {}", committed.getLastCommittedLine(), e.getMessage());
+            return ResponseEntity.badRequest().body(new IngestRejection(e.getMessage(), committed));
+        } catch (DataIntegrityViolationException | PartialBatchException e) {
+            String message = e instanceof DataIntegrityViolationException conflict
+                    ? conflict.getMostSpecificCause().getMessage() : e.getMessage();
+            log.warn("Ingest batch after line {} conflicts with stored data: {}",
+                    committed.getLastCommittedLine(), message);
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new IngestRejection("Batch rejected: " + message, committed));
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IngestRejection {
+        private String error;
+        /** Events committed before the rejection. */
+        private TraceIngestService.IngestResult committed;
+    }
+}
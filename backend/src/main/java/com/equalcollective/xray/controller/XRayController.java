@@ -1,12 +1,46 @@
 package com.equalcollective.xray.controller;
 
-import com.equalcollective.xray.model.XRayExecution;
-import com.equalcollective.xray.repository.XRayExecutionRepository;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.service.ExecutionArchiver;
+import com.equalcollective.xray.service.ExecutionDeletionService;
+import com.equalcollective.xray.service.ExecutionDiffService;
+import com.equalcollective.xray.service.ExecutionExportService;
+import com.equalcollective.xray.service.ExecutionResponseCache;
+import com.equalcollective.xray.service.LiveEvent;
+import com.equalcollective.xray.service.LiveEventBus;
+import com.equalcollective.xray.service.PayloadField;
+import com.equalcollective.xray.service.RetentionPurger;
+import com.equalcollective.xray.service.TraceStore;
+import com.equalcollective.xray.service.WaterfallService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/executions")
@@ -14,49 +48,429 @@ import java.util.List;
 @Slf4j
 public class XRayController {
 
-    private final XRayExecutionRepository executionRepository;
+    private static final int MAX_PAGE_SIZE = 500;
 
-    public XRayController(XRayExecutionRepository executionRepository) {
-        this.executionRepository = executionRepository;
+    private static final int MAX_SLICE_SIZE = 1000;
+
+    private static final int MAX_DIFF_OPS = 5000;
+
+    private final TraceStore traceStore;
+    private final WaterfallService waterfallService;
+    private final ExecutionExportService exportService;
+    private final ExecutionDiffService diffService;
+    private final RetentionPurger retentionPurger;
+    private final ExecutionArchiver archiver;
+    private final LiveEventBus liveEvents;
+    private final ExecutionResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final long streamTimeoutMs;
+
+    public XRayController(TraceStore traceStore,
+                          WaterfallService waterfallService,
+                          ExecutionExportService exportService,
+                          ExecutionDiffService diffService,
+                          RetentionPurger retentionPurger,
+                          ExecutionArchiver archiver,
+                          LiveEventBus liveEvents,
+                          ExecutionResponseCache responseCache,
+                          ObjectMapper objectMapper,
+                          XRayProperties properties) {
+        this.traceStore = traceStore;
+        this.waterfallService = waterfallService;
+        this.exportService = exportService;
+        this.diffService = diffService;
+        this.retentionPurger = retentionPurger;
+        this.archiver = archiver;
+        this.liveEvents = liveEvents;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.streamTimeoutMs = properties.getLive().getTimeoutMs();
     }
 
     /**
-     * Get all executions
-     * GET /api/executions
+     * List and search execution summaries, newest first
+     * GET /api/executions?status=FAILED&pipeline=...&from=...&to=...&step=...&minSteps=...&limit=50&cursor=...
+     *
+     * All filters are optional. Pass the returned nextCursor with the same filters to
+     * fetch the following page; it is null on the last page.
      */
     @GetMapping
-    public ResponseEntity<List<XRayExecution>> getAllExecutions() {
-        List<XRayExecution> executions = executionRepository.findAllByOrderByStartTimeDesc();
-        log.info("Retrieved {} executions", executions.size());
-        return ResponseEntity.ok(executions);
+    public ResponseEntity<ExecutionPage> getAllExecutions(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) Integer minSteps,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor) {
+        ExecutionFilter filter;
+        try {
+            filter = filter(status, pipeline, from, to, step, minSteps);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String[] position = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            position = decodeCursor(cursor);
+            if (position == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // one extra row tells us whether another page exists
+        List<ExecutionSummary> rows = traceStore.searchSummaries(filter,
+                position != null ? LocalDateTime.parse(position[0]) : null,
+                position != null ? position[1] : null,
+                size + 1);
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            nextCursor = encodeCursor(rows.get(size - 1));
+        }
+        log.info("Retrieved {} execution summaries", rows.size());
+        return ResponseEntity.ok(new ExecutionPage(rows, nextCursor));
     }
 
+    /**
+     * Every matching execution as one JSON array, with its steps and their payloads
+     * unless steps=false, streamed as it is read
+     * GET /api/executions/export?status=...&pipeline=...&from=...&to=...&step=...&minSteps=...&steps=true
+     *
+     * Takes the same filters as the list, without paging. Memory use does not depend on
+     * the number of executions, and output starts before the query finishes. An error
+     * part way through ends the response early, leaving the array unterminated.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportExecutions(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String pipeline,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) Integer minSteps,
+            @RequestParam(defaultValue = "true") boolean steps) {
+        ExecutionFilter filter;
+        try {
+            filter = filter(status, pipeline, from, to, step, minSteps);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            long count = exportService.export(filter, steps, out);
+            log.info("Exported {} executions", count);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code status} is not an outcome
+     */
+    private static ExecutionFilter filter(String status, String pipeline, LocalDateTime from,
+                                          LocalDateTime to, String step, Integer minSteps) {
+        ExecutionOutcome outcome = null;
+        if (status != null && !status.isEmpty()) {
+            outcome = ExecutionOutcome.valueOf(status.toUpperCase());
+        }
+        return ExecutionFilter.builder()
+                .outcome(outcome)
+                .pipeline(pipeline)
+                .from(from)
+                .to(to)
+                .stepName(step)
+                .minSteps(minSteps)
+                .build();
+    }
+
+    /**
+     * Server-sent events for every execution that starts or ends
+     * GET /api/executions/stream
+     *
+     * Event names: execution-started, execution-ended, resync (events were dropped,
+     * refetch the list).
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamExecutions() {
+        return stream(null);
+    }
+
+    /**
+     * Server-sent events for one execution, including every step as it is written
+     * GET /api/executions/{executionId}/stream
+     *
+     * Event names: step-appended, execution-ended, resync.
+     */
+    @GetMapping(path = "/{executionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamExecution(@PathVariable String executionId) {
+        if (!traceStore.exists(executionId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return stream(executionId);
+    }
+
+    private ResponseEntity<SseEmitter> stream(String executionId) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        LiveEventBus.Subscription subscription = liveEvents.subscribe(executionId, (type, json) -> {
+            if (LiveEvent.HEARTBEAT.equals(type)) {
+                emitter.send(SseEmitter.event().comment(LiveEvent.HEARTBEAT));
+            } else {
+                emitter.send(SseEmitter.event().name(type).data(json));
+            }
+        });
+        if (subscription == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * The full execution with every step. This and the other per-execution reads below
+     * carry an ETag and answer If-None-Match with 304; once the execution has finished
+     * the serialized response is cached, see {@link #cached}.
+     */
     @GetMapping("/{executionId}")
-    public ResponseEntity<XRayExecution> getExecution(@PathVariable String executionId) {
-        return executionRepository.findById(executionId)
+    public ResponseEntity<byte[]> getExecution(@PathVariable String executionId, HttpServletRequest request) {
+        return cached(executionId, request, () -> traceStore.findExecution(executionId)
                 .map(execution -> {
                     log.info("Retrieved execution: {} with {} steps",
                             executionId, execution.getSteps().size());
-                    return ResponseEntity.ok(execution);
-                })
+                    return execution;
+                }));
+    }
+
+    /**
+     * Execution header without context or steps
+     * GET /api/executions/{executionId}/summary
+     */
+    @GetMapping("/{executionId}/summary")
+    public ResponseEntity<byte[]> getExecutionSummary(@PathVariable String executionId, HttpServletRequest request) {
+        return cached(executionId, request, () -> traceStore.findSummary(executionId));
+    }
+
+    /**
+     * Step headers only (no input/output/metadata)
+     * GET /api/executions/{executionId}/steps
+     */
+    @GetMapping("/{executionId}/steps")
+    public ResponseEntity<byte[]> getSteps(@PathVariable String executionId, HttpServletRequest request) {
+        return cached(executionId, request, () -> traceStore.findStepSummaries(executionId));
+    }
+
+    /**
+     * Step timings nested by parent, with the critical path flagged
+     * GET /api/executions/{executionId}/waterfall
+     */
+    @GetMapping("/{executionId}/waterfall")
+    public ResponseEntity<byte[]> getWaterfall(@PathVariable String executionId, HttpServletRequest request) {
+        return cached(executionId, request, () -> waterfallService.waterfall(executionId));
+    }
+
+    /**
+     * One payload of one step, optionally narrowed by a JSON pointer; arrays are paged
+     * GET /api/executions/{executionId}/steps/{stepId}/{input|output|metadata}?pointer=/evaluations&offset=0&limit=100
+     */
+    @GetMapping("/{executionId}/steps/{stepId}/{field}")
+    public ResponseEntity<byte[]> getStepPayload(
+            @PathVariable String executionId,
+            @PathVariable String stepId,
+            @PathVariable String field,
+            @RequestParam(defaultValue = "") String pointer,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit,
+            HttpServletRequest request) {
+        PayloadField payloadField;
+        try {
+            payloadField = PayloadField.fromPath(field);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return sliceResponse(executionId, request, pointer, offset, limit, (p, o, l) ->
+                traceStore.sliceStepPayload(executionId, stepId, payloadField, p, o, l));
+    }
+
+    /**
+     * Execution context, with the same pointer/offset/limit slicing as step payloads
+     * GET /api/executions/{executionId}/context
+     */
+    @GetMapping("/{executionId}/context")
+    public ResponseEntity<byte[]> getExecutionContext(
+            @PathVariable String executionId,
+            @RequestParam(defaultValue = "") String pointer,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit,
+            HttpServletRequest request) {
+        return sliceResponse(executionId, request, pointer, offset, limit, (p, o, l) ->
+                traceStore.sliceExecutionContext(executionId, p, o, l));
+    }
+
+    /**
+     * Step-by-step structural diff of two executions' payloads, with at most maxOps
+     * operations per payload
+     * GET /api/executions/{a}/diff/{b}?maxOps=200
+     */
+    @GetMapping("/{executionIdA}/diff/{executionIdB}")
+    public ResponseEntity<ExecutionDiffService.ExecutionDiff> diffExecutions(
+            @PathVariable String executionIdA,
+            @PathVariable String executionIdB,
+            @RequestParam(defaultValue = "200") int maxOps) {
+        // not cached: the response cache is evicted per execution, and a diff depends on two
+        return diffService.diff(executionIdA, executionIdB, Math.max(1, Math.min(maxOps, MAX_DIFF_OPS)))
+                .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    private ResponseEntity<byte[]> sliceResponse(String executionId, HttpServletRequest request,
+                                                 String pointer, int offset, int limit, Slicer slicer) {
+        if (!pointer.isEmpty() && !pointer.startsWith("/")) {
+            return ResponseEntity.badRequest().build();
+        }
+        int from = Math.max(0, offset);
+        int size = Math.max(1, Math.min(limit, MAX_SLICE_SIZE));
+        try {
+            return cached(executionId, request, () -> slicer.slice(pointer, from, size));
+        } catch (IllegalArgumentException e) {
+            // malformed pointer
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Serves the JSON of {@code body} with a strong ETag, from the response cache when
+     * possible. Responses are cached per URL (query included) once the execution has
+     * finished, so a repeat view costs neither a query nor serialization; a matching
+     * If-None-Match is turned into 304 Not Modified by Spring. The finished check comes
+     * before the load, so a response that raced the execution's end is never cached.
+     */
+    private ResponseEntity<byte[]> cached(String executionId, HttpServletRequest request,
+                                          Supplier<? extends Optional<?>> body) {
+        String key = request.getQueryString() != null
+                ? request.getRequestURI() + "?" + request.getQueryString()
+                : request.getRequestURI();
+        ExecutionResponseCache.Entry entry = responseCache.get(key);
+        if (entry == null) {
+            long generation = responseCache.generation();
+            boolean finished = traceStore.isFinished(executionId);
+            Optional<?> loaded = body.get();
+            if (loaded.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            byte[] json = serialize(loaded.get());
+            entry = finished
+                    ? responseCache.put(executionId, key, json, generation)
+                    : ExecutionResponseCache.Entry.of(json, false);
+        }
+
+        boolean gzip = entry.getGzip() != null && acceptsGzip(request);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(gzip ? entry.getGzipEtag() : entry.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(gzip ? entry.getGzip() : entry.getJson());
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    @FunctionalInterface
+    private interface Slicer {
+        Optional<ObjectNode> slice(String pointer, int offset, int limit);
+    }
+
     @DeleteMapping("/{executionId}")
     public ResponseEntity<Void> deleteExecution(@PathVariable String executionId) {
-        if (executionRepository.existsById(executionId)) {
-            executionRepository.deleteById(executionId);
+        if (traceStore.delete(executionId)) {
             log.info("Deleted execution: {}", executionId);
             return ResponseEntity.ok().build();
         }
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Delete every execution, a batch at a time
+     * DELETE /api/executions
+     */
     @DeleteMapping
-    public ResponseEntity<Void> deleteAllExecutions() {
-        long count = executionRepository.count();
-        executionRepository.deleteAll();
-        log.info("Deleted all {} executions", count);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<ExecutionDeletionService.Deleted> deleteAllExecutions() {
+        ExecutionDeletionService.Deleted deleted = traceStore.deleteAll();
+        log.info("Deleted all {} executions ({} bytes)", deleted.getExecutions(), deleted.getBytes());
+        return ResponseEntity.ok(deleted);
+    }
+
+    /**
+     * Apply the retention limits now, and report what was deleted
+     * POST /api/executions/purge
+     */
+    @PostMapping("/purge")
+    public ResponseEntity<RetentionPurger.PurgeReport> purgeExecutions() {
+        return ResponseEntity.ok(retentionPurger.purge());
+    }
+
+    /**
+     * Move finished executions older than the archive's min-age to the archive now
+     * POST /api/executions/archive
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<ExecutionArchiver.ArchiveReport> archiveExecutions() {
+        return ResponseEntity.ok(archiver.archive());
+    }
+
+    /**
+     * Report of the most recent purge, scheduled or not
+     * GET /api/executions/purge
+     */
+    @GetMapping("/purge")
+    public ResponseEntity<RetentionPurger.PurgeReport> getLastPurge() {
+        RetentionPurger.PurgeReport report = retentionPurger.getLastReport();
+        return report != null ? ResponseEntity.ok(report) : ResponseEntity.noContent().build();
+    }
+
+    private static String encodeCursor(ExecutionSummary last) {
+        String position = last.getStartTime() + "|" + last.getExecutionId();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split("\\|", 2);
+            if (parts.length != 2) {
+                return null;
+            }
+            LocalDateTime.parse(parts[0]);
+            return parts;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ExecutionPage {
+        private List<ExecutionSummary> items;
+        private String nextCursor;
     }
 }
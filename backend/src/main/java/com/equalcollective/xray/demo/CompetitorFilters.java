@@ -0,0 +1,77 @@
+package com.equalcollective.xray.demo;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Thresholds a candidate must meet to be considered a competitor, and how the best
+ * match is picked among those that do. Shared by the pipeline and its replay, so a
+ * replay with {@link #DEFAULT} selects what the pipeline selected.
+ */
+@Value
+@Builder(toBuilder = true)
+public class CompetitorFilters {
+
+    public static final CompetitorFilters DEFAULT = CompetitorFilters.builder().build();
+
+    /** Lower bound of the price band, as a multiple of the reference price. */
+    @Builder.Default
+    double minPriceRatio = 0.5;
+
+    /** Upper bound of the price band, as a multiple of the reference price. */
+    @Builder.Default
+    double maxPriceRatio = 2.0;
+
+    @Builder.Default
+    double minRating = 3.8;
+
+    @Builder.Default
+    int minReviews = 100;
+
+    public double minPrice(double referencePrice) {
+        return referencePrice * minPriceRatio;
+    }
+
+    public double maxPrice(double referencePrice) {
+        return referencePrice * maxPriceRatio;
+    }
+
+    public boolean qualifies(MockData.Product candidate, double referencePrice) {
+        return candidate.getPrice() >= minPrice(referencePrice) && candidate.getPrice() <= maxPrice(referencePrice)
+                && candidate.getRating() >= minRating
+                && candidate.getReviews() >= minReviews;
+    }
+
+    /** The price band as shown in a trace, e.g. "0.5x - 2x of reference price". */
+    public String priceRule() {
+        return format(minPriceRatio) + "x - " + format(maxPriceRatio) + "x of reference price";
+    }
+
+    public String ratingRule() {
+        return "Must be at least " + format(minRating) + " stars";
+    }
+
+    public String reviewsRule() {
+        return "Must have at least " + minReviews + " reviews";
+    }
+
+    /**
+     * Ranking criteria: review count (primary), rating (secondary).
+     */
+    public static Optional<MockData.Product> selectBestMatch(List<MockData.Product> qualified) {
+        return qualified.stream()
+                .max(Comparator
+                        .comparingInt(MockData.Product::getReviews)
+                        .thenComparingDouble(MockData.Product::getRating));
+    }
+
+    /** Shortest plain form of a threshold: 2.0 as "2", 3.8 as "3.8". */
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,327 @@
+package com.equalcollective.xray.demo;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.service.UnsupportedBackendException;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.equalcollective.xray.storage.PayloadStore;
+import com.equalcollective.xray.storage.SegmentArchive;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replays the filter step of stored competitor selection runs with other thresholds,
+ * to see which selections would change without running the pipeline again.
+ * <p>
+ * Each run's reference product, its {@code candidate_search} output and the
+ * competitor it selected are read straight from the tables, newest first, a page at
+ * a time. A page is decoded and replayed in parallel on the fork/join common pool.
+ * Candidate lists are usually stored once and shared through the {@link PayloadStore}
+ * by runs that fetched the same candidates, so each distinct list is decoded only
+ * once per replay. Archived runs are read from their record in the
+ * {@link SegmentArchive} instead. Runs without a stored candidate list (kept only as a
+ * summary) are not replayed; truncated lists are skipped.
+ */
+@Service
+@Slf4j
+public class CompetitorReplayService {
+
+    static final String PIPELINE = "competitor_selection";
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String PAGE_QUERY =
+            "SELECT e.execution_id, e.start_time, e.context_data, c.output_data, c.truncated, f.output_data, " +
+            "e.archive_segment, e.archive_offset, e.archive_length " +
+            "FROM xray_executions e " +
+            "LEFT JOIN xray_steps c ON c.execution_id = e.execution_id AND c.step_name = 'candidate_search' " +
+            "LEFT JOIN xray_steps f ON f.execution_id = e.execution_id AND f.step_name = 'apply_filters' " +
+            "WHERE e.pipeline = ? AND e.start_time >= ? AND e.start_time < ? " +
+            "AND (c.step_id IS NOT NULL OR e.archive_segment IS NOT NULL) " +
+            "AND (e.start_time < ? OR (e.start_time = ? AND e.execution_id < ?)) " +
+            "ORDER BY e.start_time DESC, e.execution_id DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PayloadCodec codec;
+    private final PayloadStore payloadStore;
+    private final SegmentArchive archive;
+    private final XRayProperties.Backend backend;
+
+    public CompetitorReplayService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, PayloadCodec codec,
+                                   PayloadStore payloadStore, SegmentArchive archive, XRayProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.payloadStore = payloadStore;
+        this.archive = archive;
+        this.backend = properties.getStorage().getBackend();
+    }
+
+    /**
+     * Replays up to {@code limit} runs started in {@code [from, to)} with {@code filters}.
+     *
+     * @param maxFlips how many of the changed selections to list; all of them are counted
+     */
+    public ReplayReport replay(CompetitorFilters filters, LocalDateTime from, LocalDateTime to,
+                               int limit, int maxFlips) {
+        UnsupportedBackendException.requireJpa(backend, "Replay");
+        if (filters.getMinPriceRatio() > filters.getMaxPriceRatio()) {
+            throw new IllegalArgumentException("minPriceRatio must not exceed maxPriceRatio");
+        }
+        long started = System.nanoTime();
+        Map<String, List<MockData.Product>> candidateLists = new ConcurrentHashMap<>();
+        ReplayReport report = new ReplayReport();
+        report.setFilters(filters);
+        report.setFrom(from);
+        report.setTo(to);
+        report.setFlips(new ArrayList<>());
+
+        // the first page starts below "to", which the range excludes already
+        LocalDateTime afterTime = to;
+        String afterId = "";
+        while (report.getReplayed() + report.getSkipped() < limit) {
+            int pageSize = (int) Math.min(PAGE_SIZE, limit - report.getReplayed() - report.getSkipped());
+            List<StoredRun> page = jdbcTemplate.query(PAGE_QUERY, (rs, row) -> {
+                        Integer segment = rs.getObject(7, Integer.class);
+                        return new StoredRun(rs.getString(1), rs.getTimestamp(2).toLocalDateTime(), rs.getBytes(3),
+                                rs.getBytes(4), rs.getBoolean(5), rs.getBytes(6), segment != null
+                                        ? new SegmentArchive.Location(segment, rs.getLong(8), rs.getInt(9)) : null);
+                    },
+                    PIPELINE, Timestamp.valueOf(from), Timestamp.valueOf(to),
+                    Timestamp.valueOf(afterTime), Timestamp.valueOf(afterTime), afterId, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            List<Outcome> outcomes = page.parallelStream()
+                    .map(run -> replay(run, filters, candidateLists))
+                    .toList();
+            for (Outcome outcome : outcomes) {
+                report.add(outcome, maxFlips);
+            }
+            StoredRun last = page.get(page.size() - 1);
+            afterTime = last.startTime;
+            afterId = last.executionId;
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        report.setDistinctCandidateLists(candidateLists.size());
+        report.setDurationMs((System.nanoTime() - started) / 1_000_000);
+        log.info("Replayed {} {} runs in {} ms, {} selections changed",
+                report.getReplayed(), PIPELINE, report.getDurationMs(), report.getChanged());
+        return report;
+    }
+
+    private Outcome replay(StoredRun run, CompetitorFilters filters,
+                           Map<String, List<MockData.Product>> candidateLists) {
+        if (run.archived != null) {
+            return replayArchived(run, filters);
+        }
+        if (run.candidatesTruncated) {
+            return Outcome.skipped(run);
+        }
+        return replay(run, payloadStore.resolve(read(run.context)), read(run.searchOutput),
+                payloadStore.resolve(read(run.filterOutput)), filters, candidateLists);
+    }
+
+    /**
+     * Replays a run from its archived record, which holds its payloads resolved.
+     */
+    private Outcome replayArchived(StoredRun run, CompetitorFilters filters) {
+        JsonNode execution;
+        try {
+            execution = objectMapper.readTree(archive.read(run.archived));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JsonNode search = firstStep(execution, "candidate_search");
+        if (search == null || search.path("truncated").asBoolean()) {
+            return Outcome.skipped(run);
+        }
+        JsonNode filter = firstStep(execution, "apply_filters");
+        return replay(run, execution.get("context"), search.get("output"),
+                filter != null ? filter.get("output") : null, filters, new ConcurrentHashMap<>());
+    }
+
+    private static JsonNode firstStep(JsonNode execution, String stepName) {
+        for (JsonNode step : execution.path("steps")) {
+            if (stepName.equals(step.path("stepName").asText())) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param searchOutput may hold its candidate list as a reference to the {@link PayloadStore}
+     */
+    private Outcome replay(StoredRun run, JsonNode context, JsonNode searchOutput, JsonNode filterOutput,
+                           CompetitorFilters filters, Map<String, List<MockData.Product>> candidateLists) {
+        JsonNode reference = context != null ? context.get("referenceProduct") : null;
+        JsonNode candidatesNode = searchOutput != null ? searchOutput.get("candidates") : null;
+        if (reference == null || candidatesNode == null) {
+            return Outcome.skipped(run);
+        }
+        double referencePrice = reference.path("price").asDouble();
+
+        String hash = PayloadStore.refOf(candidatesNode);
+        List<MockData.Product> candidates = hash != null
+                ? candidateLists.computeIfAbsent(hash, h -> products(payloadStore.resolve(candidatesNode)))
+                : products(payloadStore.resolve(candidatesNode));
+
+        List<MockData.Product> qualified = new ArrayList<>();
+        for (MockData.Product candidate : candidates) {
+            if (filters.qualifies(candidate, referencePrice)) {
+                qualified.add(candidate);
+            }
+        }
+        MockData.Product replayed = CompetitorFilters.selectBestMatch(qualified).orElse(null);
+
+        JsonNode original = filterOutput != null ? filterOutput.get("selected_competitor") : null;
+        Integer originalQualified = filterOutput != null && filterOutput.has("passed")
+                ? filterOutput.get("passed").asInt() : null;
+        return new Outcome(run, false,
+                original != null ? original.path("asin").asText(null) : null,
+                original != null ? original.path("title").asText(null) : null,
+                originalQualified,
+                replayed != null ? replayed.getAsin() : null,
+                replayed != null ? replayed.getTitle() : null,
+                qualified.size());
+    }
+
+    private JsonNode read(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        try (InputStream json = codec.decode(stored)) {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<MockData.Product> products(JsonNode candidates) {
+        if (!candidates.isArray()) {
+            return Collections.emptyList();
+        }
+        List<MockData.Product> products = new ArrayList<>(candidates.size());
+        for (JsonNode candidate : candidates) {
+            products.add(MockData.Product.builder()
+                    .asin(candidate.path("asin").asText(null))
+                    .title(candidate.path("title").asText(null))
+                    .price(candidate.path("price").asDouble())
+                    .rating(candidate.path("rating").asDouble())
+                    .reviews(candidate.path("reviews").asInt())
+                    .build());
+        }
+        return products;
+    }
+
+    @AllArgsConstructor
+    private static class StoredRun {
+        final String executionId;
+        final LocalDateTime startTime;
+        final byte[] context;
+        final byte[] searchOutput;
+        final boolean candidatesTruncated;
+        /** Null if the run failed before its filter step was stored. */
+        final byte[] filterOutput;
+        /** Where the run is kept if it was archived, in which case the columns above are null. */
+        final SegmentArchive.Location archived;
+    }
+
+    @AllArgsConstructor
+    private static class Outcome {
+        final StoredRun run;
+        final boolean skipped;
+        final String originalAsin;
+        final String originalTitle;
+        final Integer originalQualified;
+        final String replayedAsin;
+        final String replayedTitle;
+        final int replayedQualified;
+
+        static Outcome skipped(StoredRun run) {
+            return new Outcome(run, true, null, null, null, null, null, 0);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SelectionChange {
+        private String executionId;
+        private LocalDateTime startTime;
+        /** Null if the run selected nothing. */
+        private String originalAsin;
+        private String originalTitle;
+        private Integer originalQualified;
+        /** Null if no candidate qualifies under the replayed filters. */
+        private String replayedAsin;
+        private String replayedTitle;
+        private int replayedQualified;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ReplayReport {
+        private CompetitorFilters filters;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private long replayed;
+        /** Runs whose candidate list or reference product was not stored in full. */
+        private long skipped;
+        private long unchanged;
+        /** Runs that would select a different competitor, or none, or one where they had none. */
+        private long changed;
+        /** Changed runs that would no longer find any qualified candidate. */
+        private long lostSelection;
+        /** Changed runs that selected nothing but would now find a competitor. */
+        private long gainedSelection;
+        private long distinctCandidateLists;
+        private long durationMs;
+        /** The first changed runs, newest first. */
+        private List<SelectionChange> flips;
+
+        void add(Outcome outcome, int maxFlips) {
+            if (outcome.skipped) {
+                skipped++;
+                return;
+            }
+            replayed++;
+            if (Objects.equals(outcome.originalAsin, outcome.replayedAsin)) {
+                unchanged++;
+                return;
+            }
+            changed++;
+            if (outcome.replayedAsin == null) {
+                lostSelection++;
+            } else if (outcome.originalAsin == null) {
+                gainedSelection++;
+            }
+            if (flips.size() < maxFlips) {
+                flips.add(new SelectionChange(outcome.run.executionId, outcome.run.startTime,
+                        outcome.originalAsin, outcome.originalTitle, outcome.originalQualified,
+                        outcome.replayedAsin, outcome.replayedTitle, outcome.replayedQualified));
+            }
+        }
+    }
+}
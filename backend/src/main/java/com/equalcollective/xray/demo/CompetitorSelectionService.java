@@ -1,5 +1,6 @@
 package com.equalcollective.xray.demo;
 
+import com.equalcollective.xray.service.Span;
 import com.equalcollective.xray.service.XRayTracer;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -52,48 +53,46 @@ public class CompetitorSelectionService {
     }
 
     private List<String> generateKeywords(String executionId, MockData.Product product) {
-        // Mock LLM keyword generation - in reality would call GPT-4/Claude
-        List<String> keywords = extractKeywords(product);
+        try (Span span = xrayTracer.step(executionId, "keyword_generation")) {
+            span.input(Map.of(
+                    "product_title", product.getTitle(),
+                    "category", product.getCategory()
+            ));
 
-        xrayTracer.recordStep(executionId, XRayTracer.StepRecord.builder()
-                .stepName("keyword_generation")
-                .input(Map.of(
-                        "product_title", product.getTitle(),
-                        "category", product.getCategory()
-                ))
-                .output(Map.of(
-                        "keywords", keywords,
-                        "model", "gpt-4-mock"
-                ))
-                .reasoning("Extracted key product attributes: material (stainless steel), " +
-                          "capacity (32oz), feature (insulated)")
-                .build());
-        
-        return keywords;
+            // Mock LLM keyword generation - in reality would call GPT-4/Claude
+            List<String> keywords = extractKeywords(product);
+
+            span.output(Map.of(
+                            "keywords", keywords,
+                            "model", "gpt-4-mock"
+                    ))
+                    .reasoning("Extracted key product attributes: material (stainless steel), " +
+                              "capacity (32oz), feature (insulated)");
+            return keywords;
+        }
     }
 
     /**
      * STEP 2: Search for Candidate Products (Mock API)
      */
     private List<MockData.Product> searchCandidates(String executionId, List<String> keywords) {
-        List<MockData.Product> allCandidates = MockData.getCandidateProducts();
-        
-        xrayTracer.recordStep(executionId, XRayTracer.StepRecord.builder()
-                .stepName("candidate_search")
-                .input(Map.of(
-                        "keyword", keywords.get(0),
-                        "limit", 50
-                ))
-                .output(Map.of(
-                        "total_results", 2847,
-                        "candidates_fetched", allCandidates.size(),
-                        "candidates", allCandidates
-                ))
-                .reasoning(String.format("Fetched top %d results by relevance; 2847 total matches found",
-                          allCandidates.size()))
-                .build());
-        
-        return allCandidates;
+        try (Span span = xrayTracer.step(executionId, "candidate_search")) {
+            span.input(Map.of(
+                    "keyword", keywords.get(0),
+                    "limit", 50
+            ));
+
+            List<MockData.Product> allCandidates = MockData.getCandidateProducts();
+
+            span.output(Map.of(
+                            "total_results", 2847,
+                            "candidates_fetched", allCandidates.size(),
+                            "candidates", allCandidates
+                    ))
+                    .reasoning(String.format("Fetched top %d results by relevance; 2847 total matches found",
+                              allCandidates.size()));
+            return allCandidates;
+        }
     }
 
     /**
@@ -104,66 +103,83 @@ public class CompetitorSelectionService {
             List<MockData.Product> candidates,
             MockData.Product referenceProduct) {
 
-        double minPrice = referenceProduct.getPrice() * 0.5;
-        double maxPrice = referenceProduct.getPrice() * 2.0;
-        double minRating = 3.8;
-        int minReviews = 100;
+        CompetitorFilters filters = CompetitorFilters.DEFAULT;
+        double minPrice = filters.minPrice(referenceProduct.getPrice());
+        double maxPrice = filters.maxPrice(referenceProduct.getPrice());
+        double minRating = filters.getMinRating();
+        int minReviews = filters.getMinReviews();
 
-        List<CandidateEvaluation> evaluations = new ArrayList<>();
-        List<MockData.Product> qualifiedProducts = new ArrayList<>();
-        
-        for (MockData.Product candidate : candidates) {
-            CandidateEvaluation eval = evaluateCandidate(
-                    candidate, minPrice, maxPrice, minRating, minReviews);
-            evaluations.add(eval);
-            
-            if (eval.isQualified()) {
-                qualifiedProducts.add(candidate);
+        try (Span span = xrayTracer.step(executionId, "apply_filters")) {
+            span.input(Map.of(
+                    "candidates_count", candidates.size(),
+                    "reference_product", referenceProduct
+            ));
+
+            List<MockData.Product> qualifiedProducts = new ArrayList<>();
+
+            for (MockData.Product candidate : candidates) {
+                if (filters.qualifies(candidate, referenceProduct.getPrice())) {
+                    qualifiedProducts.add(candidate);
+                }
+            }
+
+            MockData.Product selected;
+            try (Span ranking = span.child("select_best_match")) {
+                ranking.input(Map.of(
+                        "qualified_count", qualifiedProducts.size(),
+                        "ranking", "review count, then rating"
+                ));
+                try {
+                    selected = selectBestMatch(qualifiedProducts);
+                } catch (RuntimeException e) {
+                    // nothing qualified; both the ranking and the filtering step failed
+                    throw span.fail(ranking.fail(e));
+                }
+                ranking.output(selected)
+                        .reasoning(String.format("'%s' has the most reviews (%d) among %d qualified candidates",
+                                selected.getTitle(), selected.getReviews(), qualifiedProducts.size()));
             }
+
+            span.output(Map.of(
+                    "total_evaluated", candidates.size(),
+                    "passed", qualifiedProducts.size(),
+                    "failed", candidates.size() - qualifiedProducts.size(),
+                    "selected_competitor", selected
+            ));
+
+            // The per-candidate evaluations are only needed for the trace, so they are
+            // built when the span closes and skipped entirely when the step is not stored
+            span.describe(step -> step
+                    .reasoning(String.format(
+                            "Applied price ($%.2f-$%.2f), rating (%.1f+), and review count (%d+) filters. " +
+                            "Narrowed candidates from %d to %d. Selected '%s' (highest review count: %d, rating: %.1f★)",
+                            minPrice, maxPrice, minRating, minReviews,
+                            candidates.size(), qualifiedProducts.size(),
+                            selected.getTitle(), selected.getReviews(), selected.getRating()
+                    ))
+                    .metadata(Map.of(
+                            "filters_applied", Map.of(
+                                    "price_range", Map.of(
+                                            "min", minPrice,
+                                            "max", maxPrice,
+                                            "rule", filters.priceRule()
+                                    ),
+                                    "min_rating", Map.of(
+                                            "value", minRating,
+                                            "rule", filters.ratingRule()
+                                    ),
+                                    "min_reviews", Map.of(
+                                            "value", minReviews,
+                                            "rule", filters.reviewsRule()
+                                    )
+                            ),
+                            "evaluations", candidates.stream() // Full detail for every candidate
+                                    .map(candidate -> evaluateCandidate(
+                                            candidate, minPrice, maxPrice, minRating, minReviews))
+                                    .toList()
+                    )));
+            return selected;
         }
-        
-        MockData.Product selected = selectBestMatch(qualifiedProducts);
-        
-        xrayTracer.recordStep(executionId, XRayTracer.StepRecord.builder()
-                .stepName("apply_filters")
-                .input(Map.of(
-                        "candidates_count", candidates.size(),
-                        "reference_product", referenceProduct
-                ))
-                .output(Map.of(
-                        "total_evaluated", candidates.size(),
-                        "passed", qualifiedProducts.size(),
-                        "failed", candidates.size() - qualifiedProducts.size(),
-                        "selected_competitor", selected
-                ))
-                .reasoning(String.format(
-                        "Applied price ($%.2f-$%.2f), rating (%.1f+), and review count (%d+) filters. " +
-                        "Narrowed candidates from %d to %d. Selected '%s' (highest review count: %d, rating: %.1f★)",
-                        minPrice, maxPrice, minRating, minReviews,
-                        candidates.size(), qualifiedProducts.size(),
-                        selected.getTitle(), selected.getReviews(), selected.getRating()
-                ))
-                .metadata(Map.of(
-                        "filters_applied", Map.of(
-                                "price_range", Map.of(
-                                        "min", minPrice,
-                                        "max", maxPrice,
-                                        "rule", "0.5x - 2x of reference price"
-                                ),
-                                "min_rating", Map.of(
-                                        "value", minRating,
-                                        "rule", "Must be at least 3.8 stars"
-                                ),
-                                "min_reviews", Map.of(
-                                        "value", minReviews,
-                                        "rule", "Must have at least 100 reviews"
-                                )
-                        ),
-                        "evaluations", evaluations // Full detail for every candidate
-                ))
-                .build());
-        
-        return selected;
     }
 
     private CandidateEvaluation evaluateCandidate(
@@ -221,13 +237,9 @@ public class CompetitorSelectionService {
 
     /**
      * Select the best match from qualified products
-     * Ranking criteria: review count (primary), rating (secondary)
      */
     private MockData.Product selectBestMatch(List<MockData.Product> qualified) {
-        return qualified.stream()
-                .max(Comparator
-                        .comparingInt(MockData.Product::getReviews)
-                        .thenComparingDouble(MockData.Product::getRating))
+        return CompetitorFilters.selectBestMatch(qualified)
                 .orElseThrow(() -> new RuntimeException("No qualified products found"));
     }
 
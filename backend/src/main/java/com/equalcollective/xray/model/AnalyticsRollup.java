@@ -0,0 +1,89 @@
+package com.equalcollective.xray.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Latency and failure totals of one pipeline, or one step of it, over one hour or day.
+ * Mapped here so Hibernate manages the table; rows are read and written by
+ * {@link com.equalcollective.xray.analytics.AnalyticsStore} over plain JDBC.
+ */
+@Entity
+@Table(name = "xray_analytics_rollups", indexes = {
+    @Index(name = "idx_rollups_resolution_bucket", columnList = "resolution, bucket_start")
+})
+@IdClass(AnalyticsRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalyticsRollup {
+
+    /**
+     * {@code HOUR} or {@code DAY}.
+     */
+    @Id
+    @Column(name = "resolution", length = 8, nullable = false)
+    private String resolution;
+
+    /**
+     * Empty for executions without a pipeline.
+     */
+    @Id
+    @Column(name = "pipeline", nullable = false)
+    private String pipeline;
+
+    /**
+     * Empty for the rollup of whole executions.
+     */
+    @Id
+    @Column(name = "step_name", nullable = false)
+    private String stepName;
+
+    @Id
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    /**
+     * Finished executions, or timed steps.
+     */
+    @Column(name = "sample_count", nullable = false)
+    private long sampleCount;
+
+    /**
+     * Failed executions; always zero for steps.
+     */
+    @Column(name = "failure_count", nullable = false)
+    private long failureCount;
+
+    /**
+     * Durations in nanoseconds, in {@link com.equalcollective.xray.analytics.LatencyHistogram} format.
+     */
+    @Column(name = "histogram", columnDefinition = "varbinary", nullable = false)
+    private byte[] histogram;
+
+    /**
+     * JSON object of failure reason to count, for executions only.
+     */
+    @Column(name = "failure_reasons", columnDefinition = "TEXT")
+    private String failureReasons;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String resolution;
+        private String pipeline;
+        private String stepName;
+        private LocalDateTime bucketStart;
+    }
+}
@@ -0,0 +1,11 @@
+package com.equalcollective.xray.model;
+
+/**
+ * Final state of an execution, stored alongside the human-readable status string
+ * so executions can be filtered by outcome through an index.
+ */
+public enum ExecutionOutcome {
+    IN_PROGRESS,
+    COMPLETED,
+    FAILED
+}
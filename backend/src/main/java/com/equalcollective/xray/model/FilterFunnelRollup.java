@@ -0,0 +1,92 @@
+package com.equalcollective.xray.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * One candidate counter of an evaluation step over one hour or day: either the
+ * candidates a filter saw and passed, or the candidates that failed exactly one set
+ * of filters. Mapped here so Hibernate manages the table; rows are read and written
+ * by {@link com.equalcollective.xray.analytics.AnalyticsStore} over plain JDBC.
+ */
+@Entity
+@Table(name = "xray_filter_funnel_rollups", indexes = {
+    @Index(name = "idx_funnel_resolution_bucket", columnList = "resolution, bucket_start")
+})
+@IdClass(FilterFunnelRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilterFunnelRollup {
+
+    /**
+     * {@code HOUR} or {@code DAY}.
+     */
+    @Id
+    @Column(name = "resolution", length = 8, nullable = false)
+    private String resolution;
+
+    /**
+     * Empty for executions without a pipeline.
+     */
+    @Id
+    @Column(name = "pipeline", nullable = false)
+    private String pipeline;
+
+    @Id
+    @Column(name = "step_name", nullable = false)
+    private String stepName;
+
+    @Id
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    /**
+     * {@code FILTER} or {@code FAILED_SET}.
+     */
+    @Id
+    @Column(name = "kind", length = 16, nullable = false)
+    private String kind;
+
+    /**
+     * The filter name, or the failed filter names sorted and separated by newlines
+     * (empty for candidates that passed every filter).
+     */
+    @Id
+    @Column(name = "name", length = 1024, nullable = false)
+    private String name;
+
+    /**
+     * Candidates the filter evaluated, or candidates that failed the set.
+     */
+    @Column(name = "candidates", nullable = false)
+    private long candidates;
+
+    /**
+     * Candidates the filter passed; always zero for failed sets.
+     */
+    @Column(name = "passed", nullable = false)
+    private long passed;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String resolution;
+        private String pipeline;
+        private String stepName;
+        private LocalDateTime bucketStart;
+        private String kind;
+        private String name;
+    }
+}
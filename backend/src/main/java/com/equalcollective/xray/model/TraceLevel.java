@@ -0,0 +1,14 @@
+package com.equalcollective.xray.model;
+
+/**
+ * How much of an execution was stored, as decided by the tracer's sampling policy,
+ * and where it is kept.
+ */
+public enum TraceLevel {
+    /** Context, steps and payloads. */
+    FULL,
+    /** Only the execution row: outcome, timing, pipeline and step count. */
+    SUMMARY,
+    /** Stored in full, but moved to the cold archive; only the execution row is left in the database. */
+    ARCHIVED
+}
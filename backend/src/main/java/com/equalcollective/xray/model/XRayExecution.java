@@ -1,22 +1,30 @@
 package com.equalcollective.xray.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.equalcollective.xray.storage.JsonPayloadConverter;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "xray_executions")
+@Table(name = "xray_executions", indexes = {
+    @Index(name = "idx_executions_start_time", columnList = "start_time DESC, execution_id DESC"),
+    @Index(name = "idx_executions_outcome_start", columnList = "outcome, start_time DESC, execution_id DESC"),
+    @Index(name = "idx_executions_pipeline_start", columnList = "pipeline, start_time DESC, execution_id DESC"),
+    @Index(name = "idx_executions_pipeline_outcome_start",
+           columnList = "pipeline, outcome, start_time DESC, execution_id DESC"),
+    @Index(name = "idx_executions_trace_level_start", columnList = "trace_level, start_time DESC, execution_id DESC")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class XRayExecution {
+public class XRayExecution implements Persistable<String> {
 
     @Id
     @Column(name = "execution_id", nullable = false, unique = true)
@@ -32,44 +40,147 @@ public class XRayExecution {
     @Builder.Default
     private String status = "IN_PROGRESS";
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "context", columnDefinition = "json")
+    @Enumerated(EnumType.STRING)
+    @Column(name = "outcome", length = 20)
+    @Builder.Default
+    private ExecutionOutcome outcome = ExecutionOutcome.IN_PROGRESS;
+
+    @Column(name = "failure_reason", length = 500)
+    private String failureReason;
+
+    @Column(name = "pipeline")
+    private String pipeline;
+
+    /**
+     * Number of steps, filled in when the execution finishes. Null while in progress.
+     */
+    @Column(name = "step_count")
+    private Integer stepCount;
+
+    /**
+     * Null on rows written before sampling existed, which are all full traces.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "trace_level", length = 20)
+    @Builder.Default
+    private TraceLevel traceLevel = TraceLevel.FULL;
+
+    /**
+     * Why the sampling policy kept or summarized this execution, e.g. {@code failed}.
+     */
+    @Column(name = "sampling_reason", length = 100)
+    private String samplingReason;
+
+    @Convert(converter = JsonPayloadConverter.class)
+    @Column(name = "context_data", columnDefinition = "varbinary")
     private JsonNode context;
 
+    /**
+     * Deduplicated payloads referenced directly by {@link #context}, see
+     * {@link com.equalcollective.xray.storage.PayloadStore}.
+     */
+    @Column(name = "payload_refs", columnDefinition = "TEXT")
+    @JsonIgnore
+    @ToString.Exclude
+    private String payloadRefs;
+
+    /**
+     * Where an {@link TraceLevel#ARCHIVED} execution is kept, see
+     * {@link com.equalcollective.xray.storage.SegmentArchive}. Null otherwise.
+     */
+    @Column(name = "archive_segment")
+    @JsonIgnore
+    private Integer archiveSegment;
+
+    @Column(name = "archive_offset")
+    @JsonIgnore
+    private Long archiveOffset;
+
+    @Column(name = "archive_length")
+    @JsonIgnore
+    private Integer archiveLength;
+
     @OneToMany(
         mappedBy = "execution",
         cascade = CascadeType.ALL,
         orphanRemoval = true,
-        fetch = FetchType.EAGER
+        fetch = FetchType.LAZY
     )
-    @OrderBy("timestamp ASC")
+    @OrderBy("sequence ASC NULLS LAST, timestamp ASC")
     @Builder.Default
     private List<XRayStep> steps = new ArrayList<>();
 
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    /**
+     * Same reasoning as {@link XRayStep}: the id is assigned by the tracer, so
+     * newness is tracked explicitly to let save() persist without a SELECT.
+     */
+    @Transient
+    @JsonIgnore
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean newExecution = true;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         if (startTime == null) {
             startTime = LocalDateTime.now();
         }
+        promotePipeline();
     }
 
-    public void addStep(XRayStep step) {
-        steps.add(step);
-        step.setExecution(this);
+    /**
+     * Copies {@code context.pipeline} into its own column. Also called before the
+     * context is rewritten for storage, which may move the field out of reach.
+     */
+    public void promotePipeline() {
+        if (pipeline == null && context != null && context.hasNonNull("pipeline")) {
+            pipeline = context.get("pipeline").asText();
+        }
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        newExecution = false;
+    }
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return executionId;
     }
 
-    public void complete() {
-        this.endTime = LocalDateTime.now();
-        this.status = "COMPLETED";
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newExecution;
     }
 
-    public void fail(String reason) {
-        this.endTime = LocalDateTime.now();
-        this.status = "FAILED: " + reason;
+    /**
+     * Display form of an outcome, e.g. {@code COMPLETED} or {@code FAILED: No qualified products found}.
+     */
+    public static String describe(ExecutionOutcome outcome, String failureReason) {
+        return outcome == ExecutionOutcome.FAILED ? "FAILED: " + failureReason : outcome.name();
+    }
+
+    public void finish(LocalDateTime endTime, ExecutionOutcome outcome, String failureReason, int stepCount) {
+        this.endTime = endTime;
+        this.outcome = outcome;
+        this.failureReason = failureReason;
+        this.status = describe(outcome, failureReason);
+        this.stepCount = stepCount;
+    }
+
+    public void addStep(XRayStep step) {
+        steps.add(step);
+        step.setExecution(this);
     }
 
     public long getDurationMs() {
@@ -0,0 +1,44 @@
+package com.equalcollective.xray.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A deduplicated JSON subtree, keyed by the SHA-256 of its canonical form.
+ * Mapped here so Hibernate manages the table; rows are read and written by
+ * {@link com.equalcollective.xray.storage.PayloadStore} over plain JDBC.
+ */
+@Entity
+@Table(name = "xray_payloads")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class XRayPayload {
+
+    @Id
+    @Column(name = "hash", length = 64, nullable = false)
+    private String hash;
+
+    /**
+     * Canonical JSON in {@link com.equalcollective.xray.storage.PayloadCodec} format.
+     */
+    @Column(name = "data", columnDefinition = "varbinary", nullable = false)
+    private byte[] data;
+
+    /**
+     * Length of the canonical JSON before encoding.
+     */
+    @Column(name = "size_bytes", nullable = false)
+    private int sizeBytes;
+
+    /**
+     * Number of steps, executions and other payloads that reference this one.
+     */
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -1,21 +1,23 @@
 package com.equalcollective.xray.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.equalcollective.xray.storage.JsonPayloadConverter;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "xray_steps")
+@Table(name = "xray_steps", indexes = {
+    @Index(name = "idx_steps_execution_name", columnList = "execution_id, step_name")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class XRayStep {
+public class XRayStep implements Persistable<String> {
 
     @Id
     @Column(name = "step_id", nullable = false, unique = true)
@@ -24,24 +26,72 @@ public class XRayStep {
     @Column(name = "step_name", nullable = false)
     private String stepName;
 
+    /**
+     * Position of the step within its execution, assigned by the tracer when the step
+     * is recorded or its span opened. Steps are listed in this order rather than by
+     * timestamp, which can tie or go backwards when threads record concurrently. Null
+     * on rows written before it existed and on ingested steps that do not carry one.
+     */
+    @Column(name = "seq")
+    private Integer sequence;
+
+    /**
+     * Wall-clock start of the step. For steps recorded without a span this is the
+     * moment the step was recorded.
+     */
     @Column(name = "timestamp", nullable = false)
     private LocalDateTime timestamp;
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "input", columnDefinition = "json")
+    /**
+     * Measured with the monotonic clock between opening and closing a span; null for
+     * steps recorded without one.
+     */
+    @Column(name = "duration_nanos")
+    private Long durationNanos;
+
+    /**
+     * The enclosing step when spans are nested; null for top-level steps. Not a
+     * foreign key, because a child span closes and is written before its parent.
+     */
+    @Column(name = "parent_step_id")
+    private String parentStepId;
+
+    @Convert(converter = JsonPayloadConverter.class)
+    @Column(name = "input_data", columnDefinition = "varbinary")
     private JsonNode input;
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "output", columnDefinition = "json")
+    @Convert(converter = JsonPayloadConverter.class)
+    @Column(name = "output_data", columnDefinition = "varbinary")
     private JsonNode output;
 
     @Column(name = "reasoning", columnDefinition = "TEXT")
     private String reasoning;
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "metadata", columnDefinition = "json")
+    /**
+     * Set when a payload exceeded its size budget and was cut down; null means it was not.
+     */
+    @Column(name = "truncated")
+    private Boolean truncated;
+
+    /**
+     * Why the step failed, as the exception's type and message; null if it did not.
+     */
+    @Column(name = "error", length = 1000)
+    private String error;
+
+    @Convert(converter = JsonPayloadConverter.class)
+    @Column(name = "metadata_data", columnDefinition = "varbinary")
     private JsonNode metadata;
 
+    /**
+     * Deduplicated payloads referenced directly by input, output and metadata, see
+     * {@link com.equalcollective.xray.storage.PayloadStore}.
+     */
+    @Column(name = "payload_refs", columnDefinition = "TEXT")
+    @JsonIgnore
+    @ToString.Exclude
+    private String payloadRefs;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "execution_id", nullable = false)
     @JsonIgnore
@@ -51,6 +101,20 @@ public class XRayStep {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    /**
+     * Steps are append-only and carry an assigned id, so Spring Data cannot tell a new
+     * step from a detached one. Tracking it explicitly lets save() go straight to
+     * persist instead of merge, which would otherwise SELECT the row first.
+     */
+    @Transient
+    @JsonIgnore
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean newStep = true;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -58,4 +122,22 @@ public class XRayStep {
             timestamp = LocalDateTime.now();
         }
     }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        newStep = false;
+    }
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return stepId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newStep;
+    }
 }
@@ -0,0 +1,34 @@
+package com.equalcollective.xray.repository;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional criteria for execution searches. Null fields are not applied.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutionFilter {
+
+    private ExecutionOutcome outcome;
+    private String pipeline;
+
+    /** Inclusive lower bound on start time. */
+    private LocalDateTime from;
+
+    /** Exclusive upper bound on start time. */
+    private LocalDateTime to;
+
+    /** Only executions that recorded a step with this name. */
+    private String stepName;
+
+    /** Only finished executions with at least this many steps. */
+    private Integer minSteps;
+}
@@ -0,0 +1,29 @@
+package com.equalcollective.xray.repository;
+
+import com.equalcollective.xray.model.XRayExecution;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ExecutionSearchRepository {
+
+    /**
+     * Summaries matching the filter, newest first by (start_time, execution_id).
+     * When a cursor position is given, only rows strictly after it are returned.
+     */
+    List<ExecutionSummary> searchSummaries(ExecutionFilter filter,
+                                           LocalDateTime afterStartTime,
+                                           String afterExecutionId,
+                                           int limit);
+
+    Optional<ExecutionSummary> findSummary(String executionId);
+
+    /**
+     * Executions matching the filter, newest first, read from a cursor as the stream is
+     * consumed. The entities are read-only and their steps are not fetched. Must be
+     * consumed inside a transaction and closed.
+     */
+    Stream<XRayExecution> streamExecutions(ExecutionFilter filter);
+}
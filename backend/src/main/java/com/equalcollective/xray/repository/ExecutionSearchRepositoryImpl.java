@@ -0,0 +1,137 @@
+package com.equalcollective.xray.repository;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Builds the search JPQL from only the criteria that are present. Leaving absent
+ * filters out of the statement (rather than {@code :param IS NULL OR ...}) is what
+ * lets H2 pick the matching composite index and read it in order.
+ */
+class ExecutionSearchRepositoryImpl implements ExecutionSearchRepository {
+
+    private static final String SUMMARY_SELECT =
+            "SELECT e.executionId, e.status, e.outcome, e.failureReason, e.pipeline, " +
+            "e.startTime, e.endTime, e.stepCount, " +
+            "(SELECT COUNT(s) FROM XRayStep s WHERE s.execution = e AND e.stepCount IS NULL), " +
+            "e.traceLevel, e.samplingReason " +
+            "FROM XRayExecution e ";
+
+    /** Rows the JDBC driver fetches per round trip when streaming. */
+    private static final int STREAM_FETCH_SIZE = 100;
+
+    private final EntityManager entityManager;
+
+    ExecutionSearchRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<ExecutionSummary> searchSummaries(ExecutionFilter filter,
+                                                  LocalDateTime afterStartTime,
+                                                  String afterExecutionId,
+                                                  int limit) {
+        StringBuilder jpql = new StringBuilder(SUMMARY_SELECT + "WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+        appendCriteria(filter, jpql, params);
+        if (afterStartTime != null && afterExecutionId != null) {
+            // the redundant <= bound gives the index a range to seek on
+            jpql.append(" AND e.startTime <= :afterStartTime" +
+                        " AND (e.startTime < :afterStartTime OR e.executionId < :afterExecutionId)");
+            params.put("afterStartTime", afterStartTime);
+            params.put("afterExecutionId", afterExecutionId);
+        }
+        jpql.append(" ORDER BY e.startTime DESC, e.executionId DESC");
+
+        TypedQuery<Tuple> query = entityManager.createQuery(jpql.toString(), Tuple.class);
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+
+        List<ExecutionSummary> summaries = new ArrayList<>();
+        for (Tuple row : query.getResultList()) {
+            summaries.add(toSummary(row));
+        }
+        return summaries;
+    }
+
+    @Override
+    public Stream<XRayExecution> streamExecutions(ExecutionFilter filter) {
+        StringBuilder jpql = new StringBuilder("SELECT e FROM XRayExecution e WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+        appendCriteria(filter, jpql, params);
+        jpql.append(" ORDER BY e.startTime DESC, e.executionId DESC");
+
+        TypedQuery<XRayExecution> query = entityManager.createQuery(jpql.toString(), XRayExecution.class);
+        params.forEach(query::setParameter);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
+    }
+
+    private static void appendCriteria(ExecutionFilter filter, StringBuilder jpql, Map<String, Object> params) {
+        if (filter.getOutcome() != null) {
+            jpql.append(" AND e.outcome = :outcome");
+            params.put("outcome", filter.getOutcome());
+        }
+        if (filter.getPipeline() != null) {
+            jpql.append(" AND e.pipeline = :pipeline");
+            params.put("pipeline", filter.getPipeline());
+        }
+        if (filter.getFrom() != null) {
+            jpql.append(" AND e.startTime >= :from");
+            params.put("from", filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            jpql.append(" AND e.startTime < :to");
+            params.put("to", filter.getTo());
+        }
+        if (filter.getMinSteps() != null) {
+            jpql.append(" AND e.stepCount >= :minSteps");
+            params.put("minSteps", filter.getMinSteps());
+        }
+        if (filter.getStepName() != null) {
+            jpql.append(" AND EXISTS (SELECT 1 FROM XRayStep s WHERE s.execution = e AND s.stepName = :stepName)");
+            params.put("stepName", filter.getStepName());
+        }
+    }
+
+    @Override
+    public Optional<ExecutionSummary> findSummary(String executionId) {
+        return entityManager.createQuery(SUMMARY_SELECT + "WHERE e.executionId = :executionId", Tuple.class)
+                .setParameter("executionId", executionId)
+                .getResultList()
+                .stream()
+                .findFirst()
+                .map(ExecutionSearchRepositoryImpl::toSummary);
+    }
+
+    private static ExecutionSummary toSummary(Tuple row) {
+        Integer storedCount = row.get(7, Integer.class);
+        long stepCount = storedCount != null ? storedCount : ((Number) row.get(8)).longValue();
+        TraceLevel traceLevel = row.get(9, TraceLevel.class);
+        return new ExecutionSummary(
+                row.get(0, String.class),
+                row.get(1, String.class),
+                row.get(2, ExecutionOutcome.class),
+                row.get(3, String.class),
+                row.get(4, String.class),
+                row.get(5, LocalDateTime.class),
+                row.get(6, LocalDateTime.class),
+                stepCount,
+                traceLevel != null ? traceLevel : TraceLevel.FULL,
+                row.get(10, String.class));
+    }
+}
@@ -0,0 +1,55 @@
+package com.equalcollective.xray.repository;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Header-only view of an execution for list pages; no steps or JSON payloads.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutionSummary {
+
+    private String executionId;
+    private String status;
+    private ExecutionOutcome outcome;
+    private String failureReason;
+    private String pipeline;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private long stepCount;
+    private TraceLevel traceLevel;
+    private String samplingReason;
+
+    /**
+     * Summary of an execution that is already in memory, e.g. one just written.
+     */
+    public static ExecutionSummary of(XRayExecution execution) {
+        return new ExecutionSummary(
+                execution.getExecutionId(),
+                execution.getStatus(),
+                execution.getOutcome(),
+                execution.getFailureReason(),
+                execution.getPipeline(),
+                execution.getStartTime(),
+                execution.getEndTime(),
+                execution.getStepCount() != null ? execution.getStepCount() : 0,
+                execution.getTraceLevel() != null ? execution.getTraceLevel() : TraceLevel.FULL,
+                execution.getSamplingReason());
+    }
+
+    public long getDurationMs() {
+        if (endTime == null || startTime == null) {
+            return 0;
+        }
+        return Duration.between(startTime, endTime).toMillis();
+    }
+}
@@ -0,0 +1,34 @@
+package com.equalcollective.xray.repository;
+
+import com.equalcollective.xray.model.XRayStep;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Step header without its JSON payloads; payloads are fetched per field on demand.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StepSummary {
+
+    private String stepId;
+    private Integer sequence;
+    private String stepName;
+    private LocalDateTime timestamp;
+    private Long durationNanos;
+    private String parentStepId;
+    private String reasoning;
+    private boolean truncated;
+    /** Why the step failed; null if it did not. */
+    private String error;
+
+    public static StepSummary of(XRayStep step) {
+        return new StepSummary(step.getStepId(), step.getSequence(), step.getStepName(), step.getTimestamp(),
+                step.getDurationNanos(), step.getParentStepId(), step.getReasoning(),
+                Boolean.TRUE.equals(step.getTruncated()), step.getError());
+    }
+}
@@ -1,13 +1,45 @@
 package com.equalcollective.xray.repository;
 
+import com.equalcollective.xray.model.ExecutionOutcome;
 import com.equalcollective.xray.model.XRayExecution;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
+import java.time.LocalDateTime;
 
 @Repository
-public interface XRayExecutionRepository extends JpaRepository<XRayExecution, String> {
+public interface XRayExecutionRepository extends JpaRepository<XRayExecution, String>,
+        ExecutionSearchRepository {
 
-    List<XRayExecution> findAllByOrderByStartTimeDesc();
+    @Modifying
+    @Query("UPDATE XRayExecution e SET e.endTime = :endTime, e.outcome = :outcome, " +
+           "e.failureReason = :failureReason, e.status = :status, " +
+           "e.stepCount = CASE WHEN e.traceLevel = com.equalcollective.xray.model.TraceLevel.SUMMARY " +
+           "THEN e.stepCount ELSE (SELECT COUNT(s) FROM XRayStep s WHERE s.execution.executionId = :executionId) END " +
+           "WHERE e.executionId = :executionId")
+    int updateOutcome(@Param("executionId") String executionId,
+                      @Param("endTime") LocalDateTime endTime,
+                      @Param("outcome") ExecutionOutcome outcome,
+                      @Param("failureReason") String failureReason,
+                      @Param("status") String status);
+
+    @Query("SELECT COUNT(e) > 0 FROM XRayExecution e WHERE e.executionId = :executionId AND e.endTime IS NOT NULL")
+    boolean isFinished(@Param("executionId") String executionId);
+
+    /**
+     * Fills in the promoted outcome columns for rows written before they existed.
+     */
+    @Modifying
+    @Query("UPDATE XRayExecution e SET " +
+           "e.outcome = CASE WHEN e.status = 'COMPLETED' THEN com.equalcollective.xray.model.ExecutionOutcome.COMPLETED " +
+           "WHEN e.status LIKE 'FAILED%' THEN com.equalcollective.xray.model.ExecutionOutcome.FAILED " +
+           "ELSE com.equalcollective.xray.model.ExecutionOutcome.IN_PROGRESS END, " +
+           "e.failureReason = CASE WHEN e.status LIKE 'FAILED: %' THEN SUBSTRING(e.status, 9) ELSE NULL END, " +
+           "e.stepCount = CASE WHEN e.endTime IS NULL THEN NULL " +
+           "ELSE (SELECT COUNT(s) FROM XRayStep s WHERE s.execution = e) END " +
+           "WHERE e.outcome IS NULL")
+    int backfillOutcomes();
 }
@@ -1,9 +1,40 @@
 package com.equalcollective.xray.repository;
 
 import com.equalcollective.xray.model.XRayStep;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface XRayStepRepository extends JpaRepository<XRayStep, String> {
+
+    @Query("SELECT new com.equalcollective.xray.repository.StepSummary(" +
+           "s.stepId, s.sequence, s.stepName, s.timestamp, s.durationNanos, s.parentStepId, s.reasoning, " +
+           "COALESCE(s.truncated, false), s.error) " +
+           "FROM XRayStep s WHERE s.execution.executionId = :executionId " +
+           "ORDER BY s.sequence ASC NULLS LAST, s.timestamp ASC")
+    List<StepSummary> findSummariesByExecutionId(@Param("executionId") String executionId);
+
+    /**
+     * Full steps in display order, read from a cursor as the stream is consumed. Must be
+     * consumed inside a transaction and closed.
+     */
+    @Query("SELECT s FROM XRayStep s WHERE s.execution.executionId = :executionId " +
+           "ORDER BY s.sequence ASC NULLS LAST, s.timestamp ASC")
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<XRayStep> streamByExecutionId(@Param("executionId") String executionId);
+
+    @Query("SELECT s.payloadRefs FROM XRayStep s " +
+           "WHERE s.execution.executionId = :executionId AND s.payloadRefs IS NOT NULL")
+    List<String> findPayloadRefsByExecutionId(@Param("executionId") String executionId);
 }
@@ -0,0 +1,198 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for the tracer. Callers only enqueue; a single background
+ * thread drains the buffer and hands whole batches to the {@link TraceStore}.
+ * <p>
+ * Enabled with {@code xray.tracer.mode=async}. Buffered events are flushed on shutdown,
+ * bounded by {@code xray.tracer.async.shutdown-timeout-ms}.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(prefix = "xray.tracer", name = "mode", havingValue = "async")
+@Slf4j
+public class AsyncTraceWriter implements TraceWriter {
+
+    private static final long DROP_LOG_INTERVAL = 10_000;
+
+    private final TraceStore delegate;
+    private final XRayProperties.Async settings;
+    private final TraceEventBuffer buffer;
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean droppedAfterShutdown = new AtomicBoolean();
+
+    private volatile boolean running = true;
+
+    public AsyncTraceWriter(TraceStore delegate, XRayProperties properties) {
+        this.delegate = delegate;
+        this.settings = properties.getTracer().getAsync();
+        this.buffer = new TraceEventBuffer(settings.getCapacity());
+        this.writerThread = new Thread(this::drainLoop, "xray-trace-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        log.info("Async trace writer started (capacity: {}, batch size: {}, overflow: {})",
+                settings.getCapacity(), settings.getBatchSize(), settings.getOverflowPolicy());
+    }
+
+    /**
+     * Never throws: an event written after shutdown is counted as dropped, since the
+     * tracer must not fail the pipeline it traces.
+     */
+    @Override
+    public void write(TraceEvent event) {
+        if (!running) {
+            dropped.incrementAndGet();
+            if (droppedAfterShutdown.compareAndSet(false, true)) {
+                log.warn("Trace writer is shut down, dropping {} for execution {} and any later events",
+                        event.getType(), event.getExecutionId());
+            }
+            return;
+        }
+        try {
+            if (!enqueue(event)) {
+                recordDrop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recordDrop();
+        }
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private boolean enqueue(TraceEvent event) throws InterruptedException {
+        switch (settings.getOverflowPolicy()) {
+            case BLOCK -> {
+                buffer.put(event);
+                return true;
+            }
+            case DROP_NEWEST -> {
+                return buffer.offer(event);
+            }
+            case DROP_OLDEST -> {
+                while (!buffer.offer(event)) {
+                    if (!dropOldestStep()) {
+                        // nothing but lifecycle events buffered: never lose one of those
+                        if (event.isLifecycle()) {
+                            buffer.put(event);
+                            return true;
+                        }
+                        return false;
+                    }
+                }
+                return true;
+            }
+            case SAMPLE -> {
+                if (buffer.offer(event)) {
+                    return true;
+                }
+                if (event.isLifecycle()
+                        || ThreadLocalRandom.current().nextDouble() < settings.getSampleRate()) {
+                    buffer.put(event);
+                    return true;
+                }
+                return false;
+            }
+            default -> throw new IllegalStateException("Unknown overflow policy: " + settings.getOverflowPolicy());
+        }
+    }
+
+    /**
+     * Discards the oldest buffered step event. Dropping a start instead would make every
+     * later step of its execution fail to write.
+     *
+     * @return false if only lifecycle events are buffered
+     */
+    private boolean dropOldestStep() {
+        if (!buffer.removeOldestStep()) {
+            return false;
+        }
+        recordDrop();
+        return true;
+    }
+
+    private void recordDrop() {
+        long total = dropped.incrementAndGet();
+        if (total == 1 || total % DROP_LOG_INTERVAL == 0) {
+            log.warn("Trace buffer full, {} events dropped so far (policy: {})",
+                    total, settings.getOverflowPolicy());
+        }
+    }
+
+    private void drainLoop() {
+        List<TraceEvent> batch = new ArrayList<>(settings.getBatchSize());
+        while (running || !buffer.isEmpty()) {
+            try {
+                TraceEvent first = buffer.poll(settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, settings.getBatchSize() - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<TraceEvent> batch) {
+        try {
+            delegate.writeBatch(batch);
+        } catch (RuntimeException e) {
+            // Only what a partly written batch left out is retried, or its committed part would be written twice
+            List<TraceEvent> retried = e instanceof PartialBatchException partial ? partial.getUnwritten() : batch;
+            log.warn("Batch of {} trace events failed, retrying {} individually: {}",
+                    batch.size(), retried.size(), e.getMessage());
+            for (TraceEvent event : retried) {
+                try {
+                    delegate.writeBatch(List.of(event));
+                } catch (RuntimeException single) {
+                    log.error("Dropping trace event {} for execution {}: {}",
+                            event.getType(), event.getExecutionId(), single.getMessage());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // No interrupt here: the writer may be inside a JDBC call, and the poll timeout
+        // already lets it notice the flag once the buffer is drained.
+        running = false;
+        try {
+            writerThread.join(settings.getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive() || !buffer.isEmpty()) {
+            log.warn("Trace writer stopped with {} events still buffered", buffer.size());
+        } else {
+            log.info("Trace writer flushed and stopped ({} events dropped in total)", dropped.get());
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * A {@link com.fasterxml.jackson.core.JsonGenerator} that builds a {@link JsonNode}
+ * tree while the value is being serialized, keeping it within a byte budget.
+ * <p>
+ * Sizes are estimated as compact JSON. Content is kept in document order until the
+ * budget runs out; after that:
+ * <ul>
+ *   <li>objects drop their remaining fields and gain a {@code "$xray:truncated"} note</li>
+ *   <li>arrays keep the elements that fit as {@code head} and turn into a summary with the
+ *       element {@code count}, the last few elements as {@code tail} (each built under its
+ *       own small budget) and a type {@code schema} of the sampled elements</li>
+ *   <li>strings longer than {@code max-string-length} are cut and end with
+ *       {@code "…[truncated N chars]"}</li>
+ * </ul>
+ * Dropped content is never materialized, so memory stays bounded by the budget no
+ * matter how large the serialized object is.
+ */
+class BoundedTreeGenerator extends GeneratorBase {
+
+    static final String TRUNCATED_FIELD = "$xray:truncated";
+
+    private static final int MAX_SCHEMA_FIELDS = 50;
+
+    private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+    private final int maxStringLength;
+    private final int sampleSize;
+    private final int sampleBytes;
+    private final Scope rootScope;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+
+    /**
+     * Depth of the container being discarded, 0 when not discarding.
+     */
+    private int skipDepth;
+    private JsonNode root;
+    private boolean truncated;
+
+    BoundedTreeGenerator(ObjectCodec codec, XRayProperties.Budget settings, long budgetBytes) {
+        super(0, codec);
+        this.maxStringLength = settings.getMaxStringLength();
+        this.sampleSize = settings.getSampleSize();
+        this.sampleBytes = settings.getSampleBytes();
+        this.rootScope = new Scope(budgetBytes, true);
+        scopes.push(rootScope);
+    }
+
+    JsonNode getRoot() {
+        return root;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    long getUsedBytes() {
+        return rootScope.budget - Math.max(rootScope.remaining, 0);
+    }
+
+    // ---- structure ----
+
+    @Override
+    public void writeStartArray() throws IOException {
+        _verifyValueWrite("start an array");
+        _writeContext = _writeContext.createChildArrayContext();
+        startContainer(true);
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        _writeContext = _writeContext.clearAndGetParent();
+        endContainer();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        _verifyValueWrite("start an object");
+        _writeContext = _writeContext.createChildObjectContext();
+        startContainer(false);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        _writeContext = _writeContext.clearAndGetParent();
+        endContainer();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (_writeContext.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+            _reportError("Can not write a field name, expecting a value");
+        }
+        if (skipDepth == 0) {
+            ((ObjectFrame) frames.peek()).field = name;
+        }
+    }
+
+    // ---- scalars ----
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (text == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a string");
+        int limit = maxStringLength;
+        if (frames.isEmpty()) {
+            limit = (int) Math.max(Math.min(limit, scopes.peek().remaining - 2), 0);
+        } else if (!scopes.peek().samples) {
+            limit = Math.min(limit, sampleBytes);
+        }
+        if (text.length() > limit) {
+            truncated = true;
+            if (limit > 0 && Character.isHighSurrogate(text.charAt(limit - 1))) {
+                limit--;
+            }
+            text = text.substring(0, limit) + "…[truncated " + (text.length() - limit) + " chars]";
+        }
+        addValue(nodes.textNode(text), text.length() + 2);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException {
+        writeString(new String(text, offset, len));
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeBinary(Base64Variant variant, byte[] data, int offset, int len) throws IOException {
+        byte[] copy = new byte[len];
+        System.arraycopy(data, offset, copy, 0, len);
+        writeString(variant.encode(copy));
+    }
+
+    @Override
+    public void writeNumber(int v) throws IOException {
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), String.valueOf(v).length());
+    }
+
+    @Override
+    public void writeNumber(long v) throws IOException {
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), String.valueOf(v).length());
+    }
+
+    @Override
+    public void writeNumber(BigInteger v) throws IOException {
+        if (v == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), v.toString().length());
+    }
+
+    @Override
+    public void writeNumber(double v) throws IOException {
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), String.valueOf(v).length());
+    }
+
+    @Override
+    public void writeNumber(float v) throws IOException {
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), String.valueOf(v).length());
+    }
+
+    @Override
+    public void writeNumber(BigDecimal v) throws IOException {
+        if (v == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a number");
+        addValue(nodes.numberNode(v), v.toString().length());
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException {
+        if (encodedValue == null) {
+            writeNull();
+            return;
+        }
+        _verifyValueWrite("write a number");
+        JsonNode value;
+        try {
+            value = nodes.numberNode(new BigDecimal(encodedValue));
+        } catch (NumberFormatException e) {
+            value = nodes.textNode(encodedValue);
+        }
+        addValue(value, encodedValue.length());
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        _verifyValueWrite("write a boolean");
+        addValue(nodes.booleanNode(state), state ? 4 : 5);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        _verifyValueWrite("write a null");
+        addValue(nodes.nullNode(), 4);
+    }
+
+    /**
+     * Raw JSON values (for example {@code @JsonRawValue}) are parsed and written as a tree.
+     */
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        try (JsonParser parser = getCodec().getFactory().createParser(text)) {
+            writeTree(getCodec().readTree(parser));
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int len) throws IOException {
+        writeRawValue(text.substring(offset, offset + len));
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int len) throws IOException {
+        writeRawValue(new String(text, offset, len));
+    }
+
+    @Override
+    public void writeRaw(String text) {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(String text, int offset, int len) {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char[] text, int offset, int len) {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char c) {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    protected void _releaseBuffers() {
+    }
+
+    @Override
+    protected void _verifyValueWrite(String typeMsg) throws IOException {
+        if (_writeContext.writeValue() == JsonWriteContext.STATUS_EXPECT_NAME) {
+            _reportError("Can not " + typeMsg + ", expecting a field name");
+        }
+    }
+
+    // ---- budget ----
+
+    private void startContainer(boolean array) {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return;
+        }
+        Consumer<JsonNode> attach = place(2);
+        if (attach == null) {
+            skipDepth = 1;
+            return;
+        }
+        Frame frame = array ? new ArrayFrame(scopes.peek().samples) : new ObjectFrame();
+        frame.attach = attach;
+        frames.push(frame);
+    }
+
+    private void endContainer() {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        Frame frame = frames.pop();
+        frame.attach.accept(frame.finish());
+    }
+
+    private void addValue(JsonNode value, long cost) {
+        if (skipDepth > 0) {
+            return;
+        }
+        Consumer<JsonNode> attach = place(cost);
+        if (attach != null) {
+            attach.accept(value);
+        }
+    }
+
+    /**
+     * Decides where a value that is about to be written goes.
+     *
+     * @return what to do with the finished value, or null to discard it
+     */
+    private Consumer<JsonNode> place(long cost) {
+        Frame parent = frames.peek();
+        if (parent == null) {
+            admit(cost);
+            return value -> root = value;
+        }
+        return parent.place(cost);
+    }
+
+    private boolean admit(long cost) {
+        Scope scope = scopes.peek();
+        if (!scope.exhausted && scope.remaining >= cost) {
+            scope.remaining -= cost;
+            return true;
+        }
+        scope.exhausted = true;
+        truncated = true;
+        return false;
+    }
+
+    private static class Scope {
+        final long budget;
+        /**
+         * Whether arrays summarized in this scope keep trailing samples.
+         * Samples themselves do not, which bounds the nesting.
+         */
+        final boolean samples;
+        long remaining;
+        boolean exhausted;
+
+        Scope(long budget, boolean samples) {
+            this.budget = budget;
+            this.samples = samples;
+            this.remaining = budget;
+        }
+    }
+
+    private abstract static class Frame {
+        Consumer<JsonNode> attach;
+
+        abstract Consumer<JsonNode> place(long cost);
+
+        abstract JsonNode finish();
+    }
+
+    private class ObjectFrame extends Frame {
+        final ObjectNode node = nodes.objectNode();
+        String field;
+        int omitted;
+
+        @Override
+        Consumer<JsonNode> place(long cost) {
+            String name = field;
+            if (!admit(name.length() + 4 + cost)) {
+                omitted++;
+                return null;
+            }
+            return value -> node.set(name, value);
+        }
+
+        @Override
+        JsonNode finish() {
+            if (omitted > 0) {
+                node.put(TRUNCATED_FIELD, omitted + " more fields omitted");
+            }
+            return node;
+        }
+    }
+
+    private class ArrayFrame extends Frame {
+        final ArrayNode head = nodes.arrayNode();
+        final Deque<JsonNode> tail = new ArrayDeque<>();
+        final boolean samples;
+        boolean summarizing;
+        int count;
+        JsonNode schema;
+
+        ArrayFrame(boolean samples) {
+            this.samples = samples && sampleSize > 0;
+        }
+
+        @Override
+        Consumer<JsonNode> place(long cost) {
+            count++;
+            if (!summarizing) {
+                if (admit(cost + 1)) {
+                    return head::add;
+                }
+                summarizing = true;
+            }
+            if (!samples) {
+                return null;
+            }
+
+            Scope sample = new Scope(sampleBytes, false);
+            sample.remaining -= cost;
+            sample.exhausted = sample.remaining < 0;
+            scopes.push(sample);
+            return value -> {
+                scopes.pop();
+                schema = mergeSchema(schema, schemaOf(value));
+                tail.addLast(value);
+                if (tail.size() > sampleSize) {
+                    tail.removeFirst();
+                }
+            };
+        }
+
+        @Override
+        JsonNode finish() {
+            if (!summarizing) {
+                return head;
+            }
+            for (JsonNode element : head) {
+                schema = mergeSchema(schema, schemaOf(element));
+            }
+            ObjectNode summary = nodes.objectNode();
+            summary.put(TRUNCATED_FIELD, "array of " + count + ", showing first " + head.size()
+                    + " and last " + tail.size());
+            summary.put("count", count);
+            summary.set("head", head);
+            summary.set("tail", nodes.arrayNode().addAll(tail));
+            summary.set("schema", schema != null ? schema : nodes.textNode("unknown"));
+            return summary;
+        }
+    }
+
+    /**
+     * Type schema of a value: a type name for scalars, {@code [element]} for arrays and
+     * {@code {field: schema}} for objects. Summaries contribute the schema they carry.
+     */
+    private JsonNode schemaOf(JsonNode value) {
+        if (value.isObject()) {
+            if (value.has(TRUNCATED_FIELD) && value.has("schema")) {
+                return nodes.arrayNode().add(value.get("schema"));
+            }
+            ObjectNode schema = nodes.objectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+            while (fields.hasNext() && schema.size() < MAX_SCHEMA_FIELDS) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!TRUNCATED_FIELD.equals(field.getKey())) {
+                    schema.set(field.getKey(), schemaOf(field.getValue()));
+                }
+            }
+            return schema;
+        }
+        if (value.isArray()) {
+            JsonNode element = null;
+            for (JsonNode item : value) {
+                element = mergeSchema(element, schemaOf(item));
+            }
+            return element == null ? nodes.arrayNode() : nodes.arrayNode().add(element);
+        }
+        return nodes.textNode(value.getNodeType().name().toLowerCase());
+    }
+
+    private JsonNode mergeSchema(JsonNode a, JsonNode b) {
+        if (a == null || a.equals(b)) {
+            return b;
+        }
+        if (a.isObject() && b.isObject()) {
+            ObjectNode merged = a.deepCopy();
+            Iterator<Map.Entry<String, JsonNode>> fields = b.fields();
+            while (fields.hasNext() && merged.size() < MAX_SCHEMA_FIELDS) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                merged.set(field.getKey(), mergeSchema(merged.get(field.getKey()), field.getValue()));
+            }
+            return merged;
+        }
+        if (a.isArray() && b.isArray()) {
+            if (a.isEmpty() || b.isEmpty()) {
+                return a.isEmpty() ? b : a;
+            }
+            return nodes.arrayNode().add(mergeSchema(a.get(0), b.get(0)));
+        }
+        TreeSet<String> types = new TreeSet<>();
+        types.addAll(Arrays.asList(typeName(a).split("\\|")));
+        types.addAll(Arrays.asList(typeName(b).split("\\|")));
+        return nodes.textNode(String.join("|", types));
+    }
+
+    private static String typeName(JsonNode schema) {
+        return schema.isObject() ? "object" : schema.isArray() ? "array" : schema.asText();
+    }
+}
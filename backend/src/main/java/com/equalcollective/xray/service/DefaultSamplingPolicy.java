@@ -0,0 +1,63 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampling driven by {@code xray.tracer.sampling.*}: the context attribute wins,
+ * then the head rate; executions left over are deferred to tail sampling when it
+ * is enabled and summarized otherwise. Tail sampling keeps failed executions,
+ * slow ones and those that recorded one of the configured step names.
+ */
+@Component
+public class DefaultSamplingPolicy implements SamplingPolicy {
+
+    private final XRayProperties.Sampling settings;
+
+    public DefaultSamplingPolicy(XRayProperties properties) {
+        this.settings = properties.getTracer().getSampling();
+    }
+
+    @Override
+    public SamplingDecision atStart(String executionId, JsonNode context) {
+        String attribute = settings.getAttribute();
+        if (attribute != null && context != null && context.path(attribute).isBoolean()) {
+            return context.get(attribute).asBoolean()
+                    ? SamplingDecision.full("attribute")
+                    : SamplingDecision.summary("attribute");
+        }
+        if (settings.getHeadRate() >= 1.0) {
+            return SamplingDecision.full(null);
+        }
+        if (ThreadLocalRandom.current().nextDouble() < settings.getHeadRate()) {
+            return SamplingDecision.full("head");
+        }
+        return settings.getTail().isEnabled()
+                ? SamplingDecision.deferred("tail")
+                : SamplingDecision.summary("head");
+    }
+
+    @Override
+    public String keepReason(XRayExecution execution, List<XRayStep> steps) {
+        XRayProperties.Tail tail = settings.getTail();
+        if (execution.getOutcome() == ExecutionOutcome.FAILED) {
+            return "failed";
+        }
+        if (execution.getDurationMs() >= tail.getLatencyThresholdMs()) {
+            return "latency";
+        }
+        for (XRayStep step : steps) {
+            if (tail.getKeepStepNames().contains(step.getStepName())) {
+                return "step:" + step.getStepName();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,283 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.repository.XRayExecutionRepository;
+import com.equalcollective.xray.storage.SegmentArchive;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves finished executions older than {@code min-age} from the database to the
+ * {@link SegmentArchive}, every {@code interval-ms} while enabled, or on demand.
+ * <p>
+ * An execution is archived as the JSON {@code GET /api/executions/{id}} returns, so
+ * it can be served as it is. A batch is appended and synced first; then, in one
+ * transaction, its steps and context are deleted and the execution rows are marked
+ * {@link TraceLevel#ARCHIVED} with their location. The rows stay, so archived
+ * executions are still listed, searched and counted. A crash in between leaves
+ * unreferenced records in the archive and the executions in the database.
+ * <p>
+ * Deleting an archived execution only drops its row. {@link #reclaim} frees the space
+ * its record took, a closed segment at a time.
+ * <p>
+ * Only the jpa backend's executions are archived; enabling archiving with another
+ * backend fails on startup.
+ */
+@Component
+@Slf4j
+public class ExecutionArchiver {
+
+    private final XRayProperties.Archive settings;
+    private final XRayProperties.Backend backend;
+    private final XRayExecutionRepository executionRepository;
+    private final ExecutionDeletionService deletionService;
+    private final SegmentArchive archive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final ScheduledExecutorService scheduler;
+
+    public ExecutionArchiver(XRayProperties properties,
+                             XRayExecutionRepository executionRepository,
+                             ExecutionDeletionService deletionService,
+                             SegmentArchive archive,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             EntityManager entityManager) {
+        this.settings = properties.getStorage().getArchive();
+        this.backend = properties.getStorage().getBackend();
+        if (settings.isEnabled()) {
+            UnsupportedBackendException.requireJpa(backend, "Archiving");
+        }
+        this.executionRepository = executionRepository;
+        this.deletionService = deletionService;
+        this.archive = archive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "xray-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::archiveQuietly, settings.getIntervalMs(),
+                    settings.getIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Archives every finished execution older than {@code min-age} now, whether or not
+     * background archiving is enabled.
+     */
+    public synchronized ArchiveReport archive() {
+        UnsupportedBackendException.requireJpa(backend, "Archiving");
+        long started = System.nanoTime();
+        ArchiveReport report = new ArchiveReport();
+        report.setStartedAt(LocalDateTime.now());
+        Timestamp cutoff = Timestamp.valueOf(report.getStartedAt().minus(settings.getMinAge()));
+        try {
+            while (true) {
+                List<String> batch = jdbcTemplate.queryForList(
+                        "SELECT execution_id FROM xray_executions WHERE trace_level = 'FULL' AND start_time < ? " +
+                        "AND outcome <> 'IN_PROGRESS' ORDER BY trace_level, start_time DESC, execution_id DESC LIMIT ?",
+                        String.class, cutoff, settings.getBatchSize());
+                if (batch.isEmpty()) {
+                    break;
+                }
+                archiveBatch(batch, report);
+                if (batch.size() < settings.getBatchSize()) {
+                    break;
+                }
+                Thread.sleep(settings.getPauseMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.setDurationMs((System.nanoTime() - started) / 1_000_000);
+        report.setArchiveBytes(archive.sizeBytes());
+        if (report.getExecutions() > 0) {
+            log.info("Archived {} executions in {} ms: {} bytes of JSON compressed to {}, {} stored bytes freed",
+                    report.getExecutions(), report.getDurationMs(), report.getJsonBytes(),
+                    report.getCompressedBytes(), report.getDeleted().getBytes());
+        }
+        return report;
+    }
+
+    /**
+     * Frees the archive space of deleted executions. Closed segments that no execution
+     * points into are deleted. Those whose remaining records take less than
+     * {@code compact-below} of them have these records copied to the current segment
+     * and the rows pointed at the copies; the old segment is left for the next run to
+     * delete, so a read that looked up the old location just before still finds it.
+     */
+    public synchronized Reclaimed reclaim() {
+        Reclaimed reclaimed = new Reclaimed();
+        Map<Integer, Long> closed = archive.closedSegments();
+        if (closed.isEmpty()) {
+            return reclaimed;
+        }
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        jdbcTemplate.query("SELECT archive_segment, SUM(archive_length) FROM xray_executions " +
+                "WHERE archive_segment IS NOT NULL GROUP BY archive_segment",
+                rs -> { liveBytes.put(rs.getInt(1), rs.getLong(2)); });
+
+        closed.forEach((segment, size) -> {
+            long live = liveBytes.getOrDefault(segment, 0L);
+            if (live == 0) {
+                reclaimed.segments++;
+                reclaimed.bytes += archive.deleteSegment(segment);
+            } else if (live < size * settings.getCompactBelow()) {
+                reclaimed.moved += compact(segment);
+            }
+        });
+        if (reclaimed.segments > 0 || reclaimed.moved > 0) {
+            log.info("Reclaimed {} archive segments ({} bytes), moved {} records out of sparse ones",
+                    reclaimed.segments, reclaimed.bytes, reclaimed.moved);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Copies the records still referenced in {@code segment} to the current one.
+     *
+     * @return the records copied
+     */
+    private int compact(int segment) {
+        List<Object[]> locations = new ArrayList<>();
+        jdbcTemplate.query("SELECT execution_id, start_time, archive_offset, archive_length FROM xray_executions " +
+                "WHERE archive_segment = ?", rs -> {
+            SegmentArchive.Location copy = archive.copy(
+                    new SegmentArchive.Location(segment, rs.getLong(3), rs.getInt(4)),
+                    rs.getString(1), rs.getTimestamp(2).toLocalDateTime());
+            locations.add(new Object[]{copy.getSegment(), copy.getOffset(), copy.getLength(),
+                    rs.getString(1), segment});
+        }, segment);
+        archive.sync();
+        // rows deleted meanwhile match nothing; their copies are reclaimed with the segment they went to
+        jdbcTemplate.batchUpdate("UPDATE xray_executions SET archive_segment = ?, archive_offset = ?, " +
+                "archive_length = ? WHERE execution_id = ? AND archive_segment = ?", locations);
+        return locations.size();
+    }
+
+    private void archiveBatch(List<String> executionIds, ArchiveReport report) {
+        List<Object[]> locations = new ArrayList<>(executionIds.size());
+        for (String executionId : executionIds) {
+            Optional<Archived> archived = readOnly.execute(status -> {
+                Optional<Archived> loaded = executionRepository.findById(executionId)
+                        .map(execution -> new Archived(execution, serialize(execution)));
+                // a request's session outlives this transaction; don't let it collect every execution read
+                entityManager.clear();
+                return loaded;
+            });
+            if (archived.isEmpty()) {
+                continue;
+            }
+            XRayExecution execution = archived.get().execution;
+            SegmentArchive.Location location = archive.append(executionId, execution.getStartTime(), archived.get().json);
+            locations.add(new Object[]{location.getSegment(), location.getOffset(), location.getLength(), executionId});
+            report.executions++;
+            report.jsonBytes += archived.get().json.length;
+            report.compressedBytes += location.getLength();
+        }
+        archive.sync();
+
+        List<String> ids = locations.stream().map(location -> (String) location[3]).toList();
+        report.getDeleted().add(deletionService.deleteContents(ids, () -> jdbcTemplate.batchUpdate(
+                "UPDATE xray_executions SET trace_level = 'ARCHIVED', archive_segment = ?, archive_offset = ?, " +
+                "archive_length = ? WHERE execution_id = ?", locations)));
+        report.batches++;
+    }
+
+    /**
+     * The execution as {@code GET /api/executions/{id}} returns it, marked archived.
+     */
+    private byte[] serialize(XRayExecution execution) {
+        ObjectNode json = objectMapper.valueToTree(execution);
+        json.put("traceLevel", TraceLevel.ARCHIVED.name());
+        try {
+            return objectMapper.writeValueAsBytes(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void archiveQuietly() {
+        try {
+            archive();
+        } catch (RuntimeException e) {
+            log.warn("Archiving failed", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @AllArgsConstructor
+    private static class Archived {
+        final XRayExecution execution;
+        final byte[] json;
+    }
+
+    /**
+     * What {@link #reclaim} freed.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Reclaimed {
+        /** Segments deleted, with their indexes. */
+        private int segments;
+        /** Size of the deleted files. */
+        private long bytes;
+        /** Records copied out of sparse segments, which the next run deletes. */
+        private long moved;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ArchiveReport {
+        private LocalDateTime startedAt;
+        private long executions;
+        /** Size of the archived executions' JSON. */
+        private long jsonBytes;
+        /** What they take in the archive. */
+        private long compressedBytes;
+        /** Steps, payloads and stored bytes removed from the database. */
+        private ExecutionDeletionService.Deleted deleted = new ExecutionDeletionService.Deleted();
+        /** Size of all the segment files after this run. */
+        private long archiveBytes;
+        private int batches;
+        private long durationMs;
+    }
+}
@@ -0,0 +1,118 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.repository.XRayExecutionRepository;
+import com.equalcollective.xray.storage.PayloadCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings rows written by older versions up to the current schema on startup.
+ * Every statement only touches rows that still need it, so reruns are no-ops.
+ * Only the jpa backend reads these tables, so nothing is done with another one; the
+ * rows are brought up to date when it is switched back to.
+ */
+@Component
+@Slf4j
+public class ExecutionBackfill implements ApplicationRunner {
+
+    private static final int PAYLOAD_BATCH_SIZE = 500;
+
+    private final XRayExecutionRepository executionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PayloadCodec codec;
+    private final XRayProperties.Backend backend;
+
+    public ExecutionBackfill(XRayExecutionRepository executionRepository,
+                             JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             PayloadCodec codec,
+                             XRayProperties properties) {
+        this.executionRepository = executionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.codec = codec;
+        this.backend = properties.getStorage().getBackend();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backend != XRayProperties.Backend.JPA) {
+            return;
+        }
+        Integer outcomes = transactionTemplate.execute(status -> executionRepository.backfillOutcomes());
+        if (outcomes != null && outcomes > 0) {
+            log.info("Backfilled outcome columns for {} executions", outcomes);
+        }
+        // rows from before sampling were all full traces; the archiver finds them by trace level
+        int traceLevels = jdbcTemplate.update("UPDATE xray_executions SET trace_level = 'FULL' WHERE trace_level IS NULL");
+        if (traceLevels > 0) {
+            log.info("Backfilled trace levels for {} executions", traceLevels);
+        }
+
+        migrateJsonColumns("xray_steps", "step_id", "input", "output", "metadata");
+        migrateJsonColumns("xray_executions", "execution_id", "context");
+    }
+
+    /**
+     * Moves payloads from the original {@code json} columns into the binary
+     * {@code <name>_data} columns in {@link PayloadCodec} format (compressed if
+     * enabled), one committed batch at a time, then drops the old columns.
+     */
+    private void migrateJsonColumns(String table, String idColumn, String... columns) {
+        if (!columnExists(table, columns[0])) {
+            return;
+        }
+
+        String anyPresent = String.join(" IS NOT NULL OR ", columns) + " IS NOT NULL";
+        String select = "SELECT " + idColumn + ", " + String.join(", ", columns) +
+                " FROM " + table + " WHERE " + anyPresent + " LIMIT " + PAYLOAD_BATCH_SIZE;
+        String update = "UPDATE " + table + " SET " +
+                String.join(", ", Arrays.stream(columns).map(c -> c + "_data = ?, " + c + " = NULL").toList()) +
+                " WHERE " + idColumn + " = ?";
+
+        long migrated = 0;
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> {
+                List<Object[]> rows = jdbcTemplate.query(select, (rs, rowNum) -> {
+                    Object[] args = new Object[columns.length + 1];
+                    for (int i = 0; i < columns.length; i++) {
+                        byte[] json = rs.getBytes(i + 2);
+                        args[i] = json != null ? codec.encode(json) : null;
+                    }
+                    args[columns.length] = rs.getString(1);
+                    return args;
+                });
+                if (!rows.isEmpty()) {
+                    jdbcTemplate.batchUpdate(update, new ArrayList<>(rows));
+                }
+                return rows.size();
+            });
+            if (batch == null || batch == 0) {
+                break;
+            }
+            migrated += batch;
+        }
+
+        for (String column : columns) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP COLUMN " + column);
+        }
+        log.info("Migrated {} rows of {} to binary payload columns", migrated, table);
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?",
+                Integer.class, table.toUpperCase(), column.toUpperCase());
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.storage.PayloadStore;
+import com.equalcollective.xray.storage.SegmentArchive;
+import lombok.Data;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes executions together with their steps and releases the deduplicated
+ * payloads they referenced. Their cached responses are evicted once the deletion commits.
+ * Archived records are not touched, except by {@link #deleteAll}: segments are
+ * append-only, and a record is unreachable once its execution row is gone. Their
+ * space is freed by {@link ExecutionArchiver#reclaim}, after each retention purge.
+ * <p>
+ * Every deletion, a single one included, runs as set-based statements in one short
+ * transaction per batch, and releases payloads afterwards, so writers are never
+ * blocked for longer than one batch.
+ */
+@Service
+public class ExecutionDeletionService {
+
+    private static final int DELETE_ALL_BATCH_SIZE = 1000;
+
+    private final PayloadStore payloadStore;
+    private final ExecutionResponseCache responseCache;
+    private final SegmentArchive archive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ExecutionDeletionService(PayloadStore payloadStore,
+                                    ExecutionResponseCache responseCache,
+                                    SegmentArchive archive,
+                                    JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate) {
+        this.payloadStore = payloadStore;
+        this.responseCache = responseCache;
+        this.archive = archive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Deletes one execution the way {@link #deleteBatch} does.
+     *
+     * @return false if there is no such execution
+     */
+    public boolean delete(String executionId) {
+        return deleteBatch(List.of(executionId)).getExecutions() > 0;
+    }
+
+    /**
+     * Deletes the given executions in one transaction, without loading them as entities.
+     * Ids that no longer exist are ignored.
+     * <p>
+     * The payloads they referenced are released afterwards, each in a transaction of
+     * its own. Writers take locks on many shared payloads per transaction, in no
+     * particular order, so a batch holding them all would deadlock with them. A crash
+     * between the two leaves payloads that nothing references in storage, nothing worse.
+     */
+    public Deleted deleteBatch(List<String> executionIds) {
+        return remove(executionIds, false, () -> { });
+    }
+
+    /**
+     * Like {@link #deleteBatch}, but keeps the execution rows without their context, for
+     * executions that are kept elsewhere. {@code inTransaction} runs in the transaction
+     * that removes the rest, e.g. to record where the executions went.
+     */
+    public Deleted deleteContents(List<String> executionIds, Runnable inTransaction) {
+        return remove(executionIds, true, inTransaction);
+    }
+
+    private Deleted remove(List<String> executionIds, boolean keepExecutions, Runnable inTransaction) {
+        if (executionIds.isEmpty()) {
+            return new Deleted();
+        }
+        String in = " WHERE execution_id IN (" + String.join(", ", Collections.nCopies(executionIds.size(), "?")) + ")";
+        Object[] ids = executionIds.toArray();
+        Deleted deleted = new Deleted();
+        Map<String, Integer> refs = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT payload_refs, OCTET_LENGTH(input_data), OCTET_LENGTH(output_data), " +
+                    "OCTET_LENGTH(metadata_data) FROM xray_steps" + in, rs -> {
+                PayloadStore.parseRefs(rs.getString(1)).forEach(hash -> refs.merge(hash, 1, Integer::sum));
+                deleted.bytes += rs.getLong(2) + rs.getLong(3) + rs.getLong(4);
+            }, ids);
+            jdbcTemplate.query("SELECT payload_refs, OCTET_LENGTH(context_data) FROM xray_executions" + in, rs -> {
+                PayloadStore.parseRefs(rs.getString(1)).forEach(hash -> refs.merge(hash, 1, Integer::sum));
+                deleted.bytes += rs.getLong(2);
+            }, ids);
+            deleted.steps = jdbcTemplate.update("DELETE FROM xray_steps" + in, ids);
+            if (keepExecutions) {
+                jdbcTemplate.update("UPDATE xray_executions SET context_data = NULL, payload_refs = NULL" + in, ids);
+            } else {
+                deleted.executions = jdbcTemplate.update("DELETE FROM xray_executions" + in, ids);
+            }
+            inTransaction.run();
+            responseCache.evictAfterCommit(executionIds);
+        });
+
+        refs.forEach((hash, count) -> {
+            PayloadStore.Released released = transactionTemplate.execute(status ->
+                    payloadStore.release(Collections.nCopies(count, hash)));
+            deleted.payloads += released.getPayloads();
+            deleted.bytes += released.getBytes();
+        });
+        return deleted;
+    }
+
+    /**
+     * Deletes every execution, a batch at a time, then the archive.
+     */
+    public Deleted deleteAll() {
+        Deleted total = new Deleted();
+        while (true) {
+            List<String> batch = jdbcTemplate.queryForList(
+                    "SELECT execution_id FROM xray_executions LIMIT ?",
+                    String.class, DELETE_ALL_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                archive.deleteAll();
+                responseCache.clear();
+                return total;
+            }
+            total.add(deleteBatch(batch));
+        }
+    }
+
+    /**
+     * Rows and stored bytes removed by a bulk deletion.
+     */
+    @Data
+    public static class Deleted {
+        /** Execution rows deleted; 0 when only their contents were. */
+        private long executions;
+        private long steps;
+        /** Deduplicated payloads no longer referenced by anything. */
+        private long payloads;
+        /** Stored payload bytes of the deleted rows, as written (compressed if they were). */
+        private long bytes;
+
+        public void add(Deleted other) {
+            executions += other.executions;
+            steps += other.steps;
+            payloads += other.payloads;
+            bytes += other.bytes;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compares two executions step by step, typically a good and a bad run of one pipeline.
+ * <p>
+ * Steps are aligned by name and, among steps of the same name, by the order they were
+ * recorded in; the nth {@code fetch} of one execution is compared with the nth
+ * {@code fetch} of the other. Payloads are read as stored, through
+ * {@link TraceStore#findStoredPayloads}, without resolving their deduplicated
+ * subtrees: identical payloads are skipped without being parsed, and {@link JsonDiff}
+ * only opens the references on paths where the two sides differ.
+ */
+@Service
+public class ExecutionDiffService {
+
+    private final TraceStore traceStore;
+    private final ObjectMapper objectMapper;
+    private final PayloadCodec codec;
+    private final JsonDiff jsonDiff;
+
+    public ExecutionDiffService(TraceStore traceStore, ObjectMapper objectMapper, PayloadCodec codec,
+                                JsonDiff jsonDiff) {
+        this.traceStore = traceStore;
+        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.jsonDiff = jsonDiff;
+    }
+
+    /**
+     * @param maxOps operations listed per payload; further differences only set {@code truncated}
+     * @return empty if either execution does not exist
+     */
+    public Optional<ExecutionDiff> diff(String executionIdA, String executionIdB, int maxOps) {
+        Optional<ExecutionSummary> a = traceStore.findSummary(executionIdA);
+        Optional<ExecutionSummary> b = traceStore.findSummary(executionIdB);
+        if (a.isEmpty() || b.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<StoredPayloads> storedA = traceStore.findStoredPayloads(executionIdA);
+        Optional<StoredPayloads> storedB = traceStore.findStoredPayloads(executionIdB);
+        if (storedA.isEmpty() || storedB.isEmpty()) {
+            // deleted meanwhile
+            return Optional.empty();
+        }
+        JsonDiff.Session session = jsonDiff.session();
+        ExecutionDiff diff = new ExecutionDiff();
+        diff.setA(a.get());
+        diff.setB(b.get());
+        diff.setContext(diff(session, storedA.get().getContext(), storedB.get().getContext(), maxOps));
+        diff.setSteps(new ArrayList<>());
+
+        List<StoredStep> stepsA = steps(storedA.get());
+        List<StoredStep> stepsB = steps(storedB.get());
+        Map<String, StoredStep> byOccurrence = new HashMap<>();
+        for (StoredStep step : stepsA) {
+            byOccurrence.put(step.occurrenceKey(), step);
+        }
+        // removed steps are listed before the first step of B that follows them in A
+        int nextA = 0;
+        for (StoredStep stepB : stepsB) {
+            StoredStep stepA = byOccurrence.remove(stepB.occurrenceKey());
+            if (stepA != null) {
+                for (; nextA < stepA.index; nextA++) {
+                    StoredStep removed = stepsA.get(nextA);
+                    if (byOccurrence.remove(removed.occurrenceKey()) != null) {
+                        diff.addStep(removed, null, null);
+                    }
+                }
+                nextA = Math.max(nextA, stepA.index + 1);
+                diff.addStep(stepA, stepB, payloadDiffs(session, stepA, stepB, maxOps));
+            } else {
+                diff.addStep(null, stepB, null);
+            }
+        }
+        for (StoredStep stepA : stepsA) {
+            if (byOccurrence.remove(stepA.occurrenceKey()) != null) {
+                diff.addStep(stepA, null, null);
+            }
+        }
+        return Optional.of(diff);
+    }
+
+    private Map<String, JsonDiff.Patch> payloadDiffs(JsonDiff.Session session, StoredStep a, StoredStep b,
+                                                     int maxOps) {
+        Map<String, JsonDiff.Patch> patches = new HashMap<>();
+        for (PayloadField field : PayloadField.values()) {
+            JsonDiff.Patch patch = diff(session, a.payloads[field.ordinal()], b.payloads[field.ordinal()], maxOps);
+            if (patch != null) {
+                patches.put(field.getPath(), patch);
+            }
+        }
+        return patches;
+    }
+
+    /**
+     * @return null if the payloads are the same
+     */
+    private JsonDiff.Patch diff(JsonDiff.Session session, byte[] a, byte[] b, int maxOps) {
+        if (Arrays.equals(a, b)) {
+            return null;
+        }
+        JsonDiff.Patch patch = session.diff(read(a), read(b), maxOps);
+        return patch.getOps().isEmpty() ? null : patch;
+    }
+
+    private static List<StoredStep> steps(StoredPayloads stored) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<StoredStep> steps = new ArrayList<>(stored.getSteps().size());
+        for (StoredPayloads.Step step : stored.getSteps()) {
+            steps.add(new StoredStep(steps.size(), step.getStepId(), step.getStepName(),
+                    occurrences.merge(step.getStepName(), 1, Integer::sum) - 1,
+                    step.getDurationNanos(), step.getPayloads()));
+        }
+        return steps;
+    }
+
+    private JsonNode read(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        try (InputStream json = codec.decode(stored)) {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class StoredStep {
+        final int index;
+        final String stepId;
+        final String stepName;
+        final int occurrence;
+        final Long durationNanos;
+        /** Stored columns, indexed by {@link PayloadField#ordinal()}. */
+        final byte[][] payloads;
+
+        String occurrenceKey() {
+            return stepName + "#" + occurrence;
+        }
+    }
+
+    public enum StepChange {
+        ADDED, REMOVED, CHANGED, UNCHANGED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StepDiff {
+        private String stepName;
+        /** 0 for the first step of this name in each execution, 1 for the second, ... */
+        private int occurrence;
+        private StepChange change;
+        private String stepIdA;
+        private String stepIdB;
+        private Long durationNanosA;
+        private Long durationNanosB;
+        /** Patches of the payloads that differ, by field name. */
+        private Map<String, JsonDiff.Patch> payloads;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ExecutionDiff {
+        private ExecutionSummary a;
+        private ExecutionSummary b;
+        /** Null if the contexts are the same. */
+        private JsonDiff.Patch context;
+        private int changedSteps;
+        private int addedSteps;
+        private int removedSteps;
+        private int unchangedSteps;
+        /** Aligned steps in the order of B, with steps only in A at their place in A. */
+        private List<StepDiff> steps;
+
+        void addStep(StoredStep a, StoredStep b, Map<String, JsonDiff.Patch> payloads) {
+            StoredStep step = a != null ? a : b;
+            StepChange change;
+            if (a == null) {
+                change = StepChange.ADDED;
+                addedSteps++;
+            } else if (b == null) {
+                change = StepChange.REMOVED;
+                removedSteps++;
+            } else if (!payloads.isEmpty()) {
+                change = StepChange.CHANGED;
+                changedSteps++;
+            } else {
+                change = StepChange.UNCHANGED;
+                unchangedSteps++;
+            }
+            steps.add(new StepDiff(step.stepName, step.occurrence, change,
+                    a != null ? a.stepId : null, b != null ? b.stepId : null,
+                    a != null ? a.durationNanos : null, b != null ? b.durationNanos : null,
+                    payloads != null && !payloads.isEmpty() ? payloads : null));
+        }
+    }
+}
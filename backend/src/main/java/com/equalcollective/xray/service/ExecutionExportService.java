@@ -0,0 +1,82 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes every execution matching a filter as one JSON array, in the shape of
+ * {@code GET /api/executions/{id}}, without holding the result in memory.
+ * <p>
+ * Executions and then each one's steps are taken from
+ * {@link TraceStore#forEachExecution} and written with a Jackson generator as they
+ * arrive; the store reads them as they are visited, so the heap used does not grow
+ * with the number of rows. Output is flushed after each execution, so the first bytes
+ * go out before the query has finished.
+ */
+@Service
+public class ExecutionExportService {
+
+    private final TraceStore traceStore;
+    private final ObjectMapper mapper;
+
+    public ExecutionExportService(TraceStore traceStore, ObjectMapper objectMapper) {
+        this.traceStore = traceStore;
+        // steps are streamed separately; exports are for machines, so no indentation
+        this.mapper = objectMapper.copy()
+                .addMixIn(XRayExecution.class, WithoutSteps.class)
+                .disable(SerializationFeature.INDENT_OUTPUT)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * @param includeSteps also write each execution's steps, with their payloads
+     * @return the number of executions written
+     */
+    public long export(ExecutionFilter filter, boolean includeSteps, OutputStream out) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            generator.flush();
+            long count = traceStore.forEachExecution(filter, includeSteps, (execution, steps) -> {
+                writeExecution(generator, execution, includeSteps, steps);
+                generator.flush();
+            });
+            generator.writeEndArray();
+            return count;
+        }
+    }
+
+    private void writeExecution(JsonGenerator generator, XRayExecution execution, boolean includeSteps,
+                                Iterator<XRayStep> steps) throws IOException {
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = mapper.valueToTree(execution).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+        if (includeSteps) {
+            generator.writeArrayFieldStart("steps");
+            while (steps.hasNext()) {
+                generator.writeObject(steps.next());
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    @JsonIgnoreProperties("steps")
+    private interface WithoutSteps {
+    }
+}
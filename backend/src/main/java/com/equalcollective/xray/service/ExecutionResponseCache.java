@@ -0,0 +1,209 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized API responses of finished executions, which do not change once they end.
+ * <p>
+ * Entries hold the response bytes, optionally gzipped as well, with a strong ETag
+ * derived from their content. The cache is an LRU bounded by the total size of the
+ * bytes it holds. Writers that touch an execution, and deletions, evict its entries
+ * after their transaction commits. A response loaded while such a change was in
+ * flight is served but not cached: {@link #put} only accepts it if the execution was
+ * not evicted since the caller took {@link #generation()}.
+ */
+@Component
+public class ExecutionResponseCache {
+
+    private static final int MAX_TRACKED_EVICTIONS = 4096;
+
+    private final XRayProperties.ResponseCache settings;
+    private final LinkedHashMap<String, Slot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByExecution = new HashMap<>();
+    /** Generation of each execution's latest eviction, for the most recently evicted ones. */
+    private final LinkedHashMap<String, Long> evictedAt = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() <= MAX_TRACKED_EVICTIONS) {
+                return false;
+            }
+            // loads that began before this eviction can no longer be told apart
+            evictionFloor = Math.max(evictionFloor, eldest.getValue());
+            return true;
+        }
+    };
+    private long totalBytes;
+    private long generation;
+    private long evictionFloor;
+
+    public ExecutionResponseCache(XRayProperties properties) {
+        this.settings = properties.getResponseCache();
+    }
+
+    public synchronized Entry get(String key) {
+        Slot slot = entries.get(key);
+        return slot != null ? slot.getEntry() : null;
+    }
+
+    /**
+     * Marks the start of a load whose result may be cached.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Builds the entry for a finished execution's response and caches it, unless the
+     * cache is disabled, the entry is too large, or the execution was evicted since
+     * {@code generation} was taken.
+     */
+    public Entry put(String executionId, String key, byte[] json, long generation) {
+        if (!settings.isEnabled()) {
+            return Entry.of(json, false);
+        }
+        Entry entry = Entry.of(json, settings.isGzip());
+        synchronized (this) {
+            if (evictedSince(executionId, generation) || entry.size() > settings.getMaxBytes()) {
+                return entry;
+            }
+            Slot previous = entries.put(key, new Slot(executionId, entry));
+            if (previous != null) {
+                totalBytes -= previous.getEntry().size();
+            }
+            totalBytes += entry.size();
+            keysByExecution.computeIfAbsent(executionId, id -> new HashSet<>()).add(key);
+            trim();
+        }
+        return entry;
+    }
+
+    /**
+     * Evicts the entries of {@code executionIds} once the current transaction commits,
+     * or right away outside of one.
+     */
+    public void evictAfterCommit(Collection<String> executionIds) {
+        afterCommit(() -> evict(executionIds));
+    }
+
+    public synchronized void evict(Collection<String> executionIds) {
+        generation++;
+        for (String executionId : executionIds) {
+            evictedAt.remove(executionId);
+            evictedAt.put(executionId, generation);
+            Set<String> keys = keysByExecution.remove(executionId);
+            if (keys != null) {
+                for (String key : keys) {
+                    Slot slot = entries.remove(key);
+                    if (slot != null) {
+                        totalBytes -= slot.getEntry().size();
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        evictionFloor = generation;
+        evictedAt.clear();
+        entries.clear();
+        keysByExecution.clear();
+        totalBytes = 0;
+    }
+
+    private boolean evictedSince(String executionId, long generation) {
+        return evictionFloor > generation || evictedAt.getOrDefault(executionId, 0L) > generation;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Slot>> eldest = entries.entrySet().iterator();
+        while (totalBytes > settings.getMaxBytes() && eldest.hasNext()) {
+            Map.Entry<String, Slot> evicted = eldest.next();
+            eldest.remove();
+            totalBytes -= evicted.getValue().getEntry().size();
+            Set<String> keys = keysByExecution.get(evicted.getValue().getExecutionId());
+            if (keys != null && keys.remove(evicted.getKey()) && keys.isEmpty()) {
+                keysByExecution.remove(evicted.getValue().getExecutionId());
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Value
+    private static class Slot {
+        String executionId;
+        Entry entry;
+    }
+
+    @Value
+    public static class Entry {
+        byte[] json;
+        /** Null unless gzip is enabled. */
+        byte[] gzip;
+        /** Strong ETag of the JSON bytes; the gzip variant has its own. */
+        String etag;
+        String gzipEtag;
+
+        /**
+         * An entry for a response, without caching it.
+         */
+        public static Entry of(byte[] json, boolean gzip) {
+            String hash = hash(json);
+            return new Entry(json, gzip ? gzip(json) : null, "\"" + hash + "\"", "\"" + hash + "-gzip\"");
+        }
+
+        long size() {
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+
+        private static String hash(byte[] json) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static byte[] gzip(byte[] json) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.equalcollective.xray.service;
+
+/**
+ * Generates the ids of executions and steps recorded by {@link XRayTracer} and of
+ * ingested steps that come without one. Declare a {@code @Primary} bean to replace
+ * {@link TimeOrderedIdGenerator}.
+ */
+public interface IdGenerator {
+
+    /**
+     * A new id starting with {@code prefix}, such as {@code "exec_"}. Must be unique
+     * across every instance writing to the same store.
+     */
+    String next(String prefix);
+}
@@ -0,0 +1,384 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.analytics.AnalyticsRecorder;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.equalcollective.xray.repository.XRayExecutionRepository;
+import com.equalcollective.xray.repository.XRayStepRepository;
+import com.equalcollective.xray.storage.JsonPayloadConverter;
+import com.equalcollective.xray.storage.PayloadStore;
+import com.equalcollective.xray.storage.SegmentArchive;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.persistence.EntityManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The default {@link TraceStore}: executions and steps are JPA entities in the
+ * database. Trace events are written straight to the JPA repositories, and payloads
+ * are interned in the {@link PayloadStore} within the same transaction. Once it commits, what was
+ * written is passed on to the {@link LiveEventBus} and the executions it touched
+ * are evicted from the {@link ExecutionResponseCache}. Candidate counts of evaluation
+ * steps are handed to the {@link AnalyticsRecorder} before their payloads are interned.
+ * <p>
+ * Executions moved to the {@link SegmentArchive} keep only their row; whole-execution
+ * reads, exports and stored payloads of them come from their archived record.
+ */
+@Component
+@ConditionalOnProperty(prefix = "xray.storage", name = "backend", havingValue = "jpa", matchIfMissing = true)
+public class JpaTraceStore implements TraceStore {
+
+    private static final String STORED_STEPS_QUERY =
+            "SELECT step_id, step_name, duration_nanos, input_data, output_data, metadata_data " +
+            "FROM xray_steps WHERE execution_id = ? ORDER BY seq ASC NULLS LAST, timestamp ASC";
+
+    private final XRayExecutionRepository executionRepository;
+    private final XRayStepRepository stepRepository;
+    private final EntityManager entityManager;
+    private final PayloadStore payloadStore;
+    private final LiveEventBus liveEvents;
+    private final ExecutionResponseCache responseCache;
+    private final AnalyticsRecorder analytics;
+    private final PayloadService payloadService;
+    private final ExecutionDeletionService deletionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final SegmentArchive archive;
+    private final JsonPayloadConverter payloadConverter;
+    private final ObjectMapper objectMapper;
+
+    public JpaTraceStore(XRayExecutionRepository executionRepository,
+                         XRayStepRepository stepRepository,
+                         EntityManager entityManager,
+                         PayloadStore payloadStore,
+                         LiveEventBus liveEvents,
+                         ExecutionResponseCache responseCache,
+                         AnalyticsRecorder analytics,
+                         PayloadService payloadService,
+                         ExecutionDeletionService deletionService,
+                         JdbcTemplate jdbcTemplate,
+                         SegmentArchive archive,
+                         JsonPayloadConverter payloadConverter,
+                         ObjectMapper objectMapper) {
+        this.executionRepository = executionRepository;
+        this.stepRepository = stepRepository;
+        this.entityManager = entityManager;
+        this.payloadStore = payloadStore;
+        this.liveEvents = liveEvents;
+        this.responseCache = responseCache;
+        this.analytics = analytics;
+        this.payloadService = payloadService;
+        this.deletionService = deletionService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.payloadConverter = payloadConverter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    @Transactional
+    public void write(TraceEvent event) {
+        switch (event.getType()) {
+            case EXECUTION_STARTED -> {
+                XRayExecution execution = event.getExecution();
+                internPayloads(execution);
+                executionRepository.save(execution);
+            }
+            case STEP_RECORDED -> {
+                if (!executionRepository.existsById(event.getExecutionId())) {
+                    throw new IllegalArgumentException("Execution not found: " + event.getExecutionId());
+                }
+                XRayStep step = event.getStep();
+                analytics.stepWritten(event.getExecutionId(), step);
+                internPayloads(step);
+                step.setExecution(executionRepository.getReferenceById(event.getExecutionId()));
+                stepRepository.save(step);
+            }
+            case EXECUTION_FINISHED -> {
+                int updated = finish(event);
+                if (updated == 0) {
+                    throw new IllegalArgumentException("Execution not found: " + event.getExecutionId());
+                }
+            }
+        }
+        liveEvents.publishAfterCommit(List.of(event));
+        responseCache.evictAfterCommit(List.of(event.getExecutionId()));
+    }
+
+    /**
+     * Writes a batch of events in one transaction. Inserts go out as JDBC batches;
+     * executions that start and finish within the same batch are inserted with their
+     * final status, so only executions started in an earlier batch need an UPDATE.
+     * The persistence context is cleared afterwards so long-running callers (bulk
+     * ingestion inside one request) do not accumulate managed entities.
+     * <p>
+     * Interning replaces payloads on the event's entities. If the batch fails they are
+     * put back, so a retry interns the original payloads again rather than references
+     * whose counts were rolled back.
+     */
+    @Override
+    @Transactional
+    public void writeBatch(List<TraceEvent> events) {
+        List<Runnable> restore = new ArrayList<>();
+        try {
+            writeBatch(events, restore);
+        } catch (RuntimeException e) {
+            restore.forEach(Runnable::run);
+            throw e;
+        }
+    }
+
+    private void writeBatch(List<TraceEvent> events, List<Runnable> restore) {
+        Map<String, XRayExecution> started = new LinkedHashMap<>();
+        Map<String, Integer> stepCounts = new HashMap<>();
+        List<XRayStep> steps = new ArrayList<>();
+        List<TraceEvent> finished = new ArrayList<>();
+
+        for (TraceEvent event : events) {
+            switch (event.getType()) {
+                case EXECUTION_STARTED -> {
+                    XRayExecution execution = event.getExecution();
+                    JsonNode context = execution.getContext();
+                    restore.add(() -> {
+                        execution.setContext(context);
+                        execution.setPayloadRefs(null);
+                    });
+                    internPayloads(execution);
+                    started.put(event.getExecutionId(), execution);
+                }
+                case STEP_RECORDED -> {
+                    XRayExecution parent = started.get(event.getExecutionId());
+                    XRayStep step = event.getStep();
+                    JsonNode input = step.getInput();
+                    JsonNode output = step.getOutput();
+                    JsonNode metadata = step.getMetadata();
+                    restore.add(() -> {
+                        step.setInput(input);
+                        step.setOutput(output);
+                        step.setMetadata(metadata);
+                        step.setPayloadRefs(null);
+                    });
+                    analytics.stepWritten(event.getExecutionId(), step);
+                    internPayloads(step);
+                    step.setExecution(parent != null ? parent
+                            : executionRepository.getReferenceById(event.getExecutionId()));
+                    steps.add(step);
+                    stepCounts.merge(event.getExecutionId(), 1, Integer::sum);
+                }
+                case EXECUTION_FINISHED -> {
+                    XRayExecution execution = started.get(event.getExecutionId());
+                    if (execution != null) {
+                        execution.finish(event.getEndTime(), event.getOutcome(), event.getFailureReason(),
+                                stepCounts.getOrDefault(event.getExecutionId(), 0));
+                    } else {
+                        finished.add(event);
+                    }
+                }
+            }
+        }
+
+        executionRepository.saveAll(started.values());
+        stepRepository.saveAll(steps);
+        executionRepository.flush();
+
+        for (TraceEvent event : finished) {
+            finish(event);
+        }
+        entityManager.clear();
+        liveEvents.publishAfterCommit(events);
+        responseCache.evictAfterCommit(events.stream().map(TraceEvent::getExecutionId).distinct().toList());
+    }
+
+    private void internPayloads(XRayExecution execution) {
+        execution.promotePipeline();
+        List<String> refs = new ArrayList<>();
+        execution.setContext(payloadStore.intern(execution.getContext(), refs));
+        execution.setPayloadRefs(PayloadStore.formatRefs(refs));
+    }
+
+    private void internPayloads(XRayStep step) {
+        List<String> refs = new ArrayList<>();
+        step.setInput(payloadStore.intern(step.getInput(), refs));
+        step.setOutput(payloadStore.intern(step.getOutput(), refs));
+        step.setMetadata(payloadStore.intern(step.getMetadata(), refs));
+        step.setPayloadRefs(PayloadStore.formatRefs(refs));
+    }
+
+    private int finish(TraceEvent event) {
+        return executionRepository.updateOutcome(event.getExecutionId(), event.getEndTime(),
+                event.getOutcome(), event.getFailureReason(), event.getStatus());
+    }
+
+    @Override
+    public boolean exists(String executionId) {
+        return executionRepository.existsById(executionId);
+    }
+
+    @Override
+    public boolean isFinished(String executionId) {
+        return executionRepository.isFinished(executionId);
+    }
+
+    /**
+     * Steps are loaded lazily, so they must be read while the session is still open.
+     * An archived execution is read back from the {@link SegmentArchive}, detached.
+     */
+    @Override
+    public Optional<XRayExecution> findExecution(String executionId) {
+        return executionRepository.findById(executionId)
+                .map(execution -> execution.getTraceLevel() == TraceLevel.ARCHIVED ? unarchive(execution) : execution);
+    }
+
+    @Override
+    public Optional<ExecutionSummary> findSummary(String executionId) {
+        return executionRepository.findSummary(executionId);
+    }
+
+    @Override
+    public List<ExecutionSummary> searchSummaries(ExecutionFilter filter, LocalDateTime afterStartTime,
+                                                  String afterExecutionId, int limit) {
+        return executionRepository.searchSummaries(filter, afterStartTime, afterExecutionId, limit);
+    }
+
+    @Override
+    public Optional<List<StepSummary>> findStepSummaries(String executionId) {
+        return executionRepository.existsById(executionId)
+                ? Optional.of(stepRepository.findSummariesByExecutionId(executionId))
+                : Optional.empty();
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceStepPayload(String executionId, String stepId, PayloadField field,
+                                                 String pointer, int offset, int limit) {
+        return payloadService.sliceStepPayload(executionId, stepId, field, pointer, offset, limit);
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceExecutionContext(String executionId, String pointer, int offset, int limit) {
+        return payloadService.sliceExecutionContext(executionId, pointer, offset, limit);
+    }
+
+    @Override
+    public Optional<StoredPayloads> findStoredPayloads(String executionId) {
+        List<Object[]> rows = jdbcTemplate.query("SELECT context_data, archive_segment, archive_offset, " +
+                "archive_length FROM xray_executions WHERE execution_id = ?", (rs, row) -> new Object[]{
+                rs.getBytes(1), rs.getObject(2, Integer.class), rs.getLong(3), rs.getInt(4)}, executionId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Object[] execution = rows.get(0);
+        if (execution[1] != null) {
+            return Optional.of(storedPayloads(unarchive(new SegmentArchive.Location(
+                    (Integer) execution[1], (Long) execution[2], (Integer) execution[3]))));
+        }
+        List<StoredPayloads.Step> steps = jdbcTemplate.query(STORED_STEPS_QUERY, (rs, row) -> {
+            long duration = rs.getLong(3);
+            return new StoredPayloads.Step(rs.getString(1), rs.getString(2), rs.wasNull() ? null : duration,
+                    new byte[][]{rs.getBytes(4), rs.getBytes(5), rs.getBytes(6)});
+        }, executionId);
+        return Optional.of(new StoredPayloads((byte[]) execution[0], steps));
+    }
+
+    /**
+     * The payloads of an archived execution, encoded as they would be stored.
+     */
+    private StoredPayloads storedPayloads(XRayExecution archived) {
+        List<StoredPayloads.Step> steps = new ArrayList<>(archived.getSteps().size());
+        for (XRayStep step : archived.getSteps()) {
+            steps.add(new StoredPayloads.Step(step.getStepId(), step.getStepName(), step.getDurationNanos(),
+                    new byte[][]{payloadConverter.convertToDatabaseColumn(step.getInput()),
+                            payloadConverter.convertToDatabaseColumn(step.getOutput()),
+                            payloadConverter.convertToDatabaseColumn(step.getMetadata())}));
+        }
+        return new StoredPayloads(payloadConverter.convertToDatabaseColumn(archived.getContext()), steps);
+    }
+
+    private XRayExecution unarchive(XRayExecution execution) {
+        return unarchive(new SegmentArchive.Location(execution.getArchiveSegment(), execution.getArchiveOffset(),
+                execution.getArchiveLength()));
+    }
+
+    /**
+     * The execution as it was archived, with its context and steps in display order.
+     */
+    private XRayExecution unarchive(SegmentArchive.Location location) {
+        try {
+            XRayExecution archived = objectMapper.readValue(archive.read(location), XRayExecution.class);
+            archived.getSteps().forEach(step -> step.setExecution(archived));
+            return archived;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Executions and then each one's steps are read from database cursors as they are
+     * visited, and every entity is detached once read, so the heap used does not grow
+     * with the number of rows. H2 normally buffers a whole result before returning its
+     * first row; lazy query execution is switched on for the connection meanwhile so
+     * rows are produced as they are read.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long forEachExecution(ExecutionFilter filter, boolean includeSteps, ExecutionVisitor visitor)
+            throws IOException {
+        setLazyQueryExecution(true);
+        try (Stream<XRayExecution> executions = executionRepository.streamExecutions(filter)) {
+            long count = 0;
+            Iterator<XRayExecution> rows = executions.iterator();
+            while (rows.hasNext()) {
+                XRayExecution execution = rows.next();
+                if (execution.getTraceLevel() == TraceLevel.ARCHIVED) {
+                    XRayExecution archived = unarchive(execution);
+                    visitor.visit(archived, includeSteps
+                            ? archived.getSteps().iterator() : Collections.emptyIterator());
+                } else if (includeSteps) {
+                    try (Stream<XRayStep> steps = stepRepository.streamByExecutionId(execution.getExecutionId())) {
+                        visitor.visit(execution, steps.peek(entityManager::detach).iterator());
+                    }
+                } else {
+                    visitor.visit(execution, Collections.emptyIterator());
+                }
+                entityManager.detach(execution);
+                count++;
+            }
+            return count;
+        } finally {
+            setLazyQueryExecution(false);
+        }
+    }
+
+    private void setLazyQueryExecution(boolean lazy) {
+        entityManager.createNativeQuery("SET LAZY_QUERY_EXECUTION " + lazy).executeUpdate();
+    }
+
+    @Override
+    public boolean delete(String executionId) {
+        return deletionService.delete(executionId);
+    }
+
+    @Override
+    public ExecutionDeletionService.Deleted deleteAll() {
+        return deletionService.deleteAll();
+    }
+}
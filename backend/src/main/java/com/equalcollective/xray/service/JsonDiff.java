@@ -0,0 +1,395 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.storage.PayloadStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural diff of two JSON documents as a list of add/remove/replace operations.
+ * <p>
+ * Subtrees are compared by hash before they are walked: references to deduplicated
+ * payloads compare by their content hash without being opened, and other containers
+ * by a 64-bit structural hash computed once per node, so only the paths that differ
+ * are descended. A reference is opened, one level at a time, only when the other side
+ * differs from it. Array elements are paired by content first; the rest are paired by
+ * an id-like field ({@code asin}, {@code id}, ...) when every remaining element has a
+ * distinct one, and by position otherwise. Reordering alone is not reported.
+ * <p>
+ * Paths are JSON pointers, except that array elements paired by id are addressed as
+ * {@code field=value} rather than by index. Values larger than about 1 KB are replaced
+ * by {@code {"$xray:omitted": {"type": ..., "size": ...}}}.
+ */
+@Component
+public class JsonDiff {
+
+    public static final String OMITTED_FIELD = "$xray:omitted";
+
+    private static final int MAX_VALUE_CHARS = 1024;
+
+    private static final List<String> ID_FIELDS = List.of("asin", "id", "uuid", "key", "sku", "name");
+
+    private final ObjectMapper objectMapper;
+    private final PayloadStore payloadStore;
+
+    public JsonDiff(ObjectMapper objectMapper, PayloadStore payloadStore) {
+        this.objectMapper = objectMapper;
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * A session caches hashes and opened payloads across several diffs, e.g. all the
+     * payloads of two executions. Not thread-safe.
+     */
+    public Session session() {
+        return new Session();
+    }
+
+    public class Session {
+
+        private final Map<JsonNode, Long> hashes = new IdentityHashMap<>();
+        private final Map<String, JsonNode> opened = new HashMap<>();
+
+        private List<Op> ops;
+        private int maxOps;
+        private boolean truncated;
+
+        private Session() {
+        }
+
+        /**
+         * @param before null if absent
+         * @param after  null if absent
+         * @return the operations turning {@code before} into {@code after}, at most {@code maxOps}
+         */
+        public Patch diff(JsonNode before, JsonNode after, int maxOps) {
+            this.ops = new ArrayList<>();
+            this.maxOps = maxOps;
+            this.truncated = false;
+            diff(before != null ? before : MissingNode.getInstance(),
+                    after != null ? after : MissingNode.getInstance(), "");
+            return new Patch(ops, truncated);
+        }
+
+        private void diff(JsonNode a, JsonNode b, String path) {
+            if (truncated) {
+                return;
+            }
+            if (a.isMissingNode() || b.isMissingNode()) {
+                if (!a.isMissingNode()) {
+                    add("remove", path, a, null);
+                } else if (!b.isMissingNode()) {
+                    add("add", path, null, b);
+                }
+                return;
+            }
+            if (hash(a) == hash(b)) {
+                return;
+            }
+            JsonNode left = open(a);
+            JsonNode right = open(b);
+            if ((left != a || right != b) && hash(left) == hash(right)) {
+                // same content, stored as a reference on one side only
+                return;
+            }
+            if (left.isObject() && right.isObject()) {
+                diffObjects(left, right, path);
+            } else if (left.isArray() && right.isArray()) {
+                diffArrays(left, right, path);
+            } else {
+                add("replace", path, left, right);
+            }
+        }
+
+        private void diffObjects(JsonNode a, JsonNode b, String path) {
+            Iterator<Map.Entry<String, JsonNode>> fields = a.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode other = b.get(field.getKey());
+                diff(field.getValue(), other != null ? other : MissingNode.getInstance(),
+                        path + "/" + escape(field.getKey()));
+            }
+            fields = b.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!a.has(field.getKey())) {
+                    diff(MissingNode.getInstance(), field.getValue(), path + "/" + escape(field.getKey()));
+                }
+            }
+        }
+
+        private void diffArrays(JsonNode a, JsonNode b, String path) {
+            // elements with identical content pair up without being looked at
+            Map<Long, Deque<Integer>> unmatched = new HashMap<>();
+            for (int i = 0; i < a.size(); i++) {
+                unmatched.computeIfAbsent(hash(a.get(i)), h -> new ArrayDeque<>()).add(i);
+            }
+            boolean[] matchedA = new boolean[a.size()];
+            List<Integer> restB = new ArrayList<>();
+            for (int j = 0; j < b.size(); j++) {
+                Deque<Integer> same = unmatched.get(hash(b.get(j)));
+                if (same != null && !same.isEmpty()) {
+                    matchedA[same.poll()] = true;
+                } else {
+                    restB.add(j);
+                }
+            }
+            List<Integer> restA = new ArrayList<>();
+            for (int i = 0; i < a.size(); i++) {
+                if (!matchedA[i]) {
+                    restA.add(i);
+                }
+            }
+            if (restA.isEmpty() && restB.isEmpty()) {
+                return;
+            }
+
+            List<JsonNode> elementsA = new ArrayList<>(restA.size());
+            restA.forEach(i -> elementsA.add(open(a.get(i))));
+            List<JsonNode> elementsB = new ArrayList<>(restB.size());
+            restB.forEach(j -> elementsB.add(open(b.get(j))));
+
+            String idField = idField(elementsA, elementsB);
+            if (idField != null) {
+                Map<String, JsonNode> byId = new HashMap<>();
+                elementsA.forEach(element -> byId.put(element.get(idField).asText(), element));
+                for (JsonNode element : elementsB) {
+                    String id = element.get(idField).asText();
+                    JsonNode before = byId.remove(id);
+                    diff(before != null ? before : MissingNode.getInstance(), element,
+                            path + "/" + escape(idField + "=" + id));
+                }
+                for (JsonNode element : elementsA) {
+                    String id = element.get(idField).asText();
+                    if (byId.containsKey(id)) {
+                        diff(element, MissingNode.getInstance(), path + "/" + escape(idField + "=" + id));
+                    }
+                }
+                return;
+            }
+
+            int paired = Math.min(restA.size(), restB.size());
+            for (int k = 0; k < paired; k++) {
+                diff(elementsA.get(k), elementsB.get(k), path + "/" + restB.get(k));
+            }
+            for (int k = paired; k < restB.size(); k++) {
+                diff(MissingNode.getInstance(), elementsB.get(k), path + "/" + restB.get(k));
+            }
+            for (int k = paired; k < restA.size(); k++) {
+                diff(elementsA.get(k), MissingNode.getInstance(), path + "/" + restA.get(k));
+            }
+        }
+
+        /**
+         * A field that every element on both sides has, as a scalar that is distinct
+         * within each side; null if there is none.
+         */
+        private String idField(List<JsonNode> a, List<JsonNode> b) {
+            JsonNode first = !a.isEmpty() ? a.get(0) : b.get(0);
+            if (!first.isObject()) {
+                return null;
+            }
+            Set<String> candidates = new LinkedHashSet<>();
+            for (String name : ID_FIELDS) {
+                if (first.has(name)) {
+                    candidates.add(name);
+                }
+            }
+            first.fieldNames().forEachRemaining(name -> {
+                if (name.endsWith("Id") || name.endsWith("_id")) {
+                    candidates.add(name);
+                }
+            });
+            for (String candidate : candidates) {
+                if (distinct(a, candidate) && distinct(b, candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private boolean distinct(List<JsonNode> elements, String field) {
+            Set<String> seen = new HashSet<>();
+            for (JsonNode element : elements) {
+                JsonNode id = element.isObject() ? element.get(field) : null;
+                if (id == null || !id.isValueNode() || id.isNull() || !seen.add(id.asText())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(String op, String path, JsonNode before, JsonNode after) {
+            if (ops.size() >= maxOps) {
+                truncated = true;
+                return;
+            }
+            ops.add(new Op(op, path, before != null ? render(before) : null, after != null ? render(after) : null));
+        }
+
+        private JsonNode render(JsonNode node) {
+            if (PayloadStore.refOf(node) == null && size(node, MAX_VALUE_CHARS) <= MAX_VALUE_CHARS) {
+                return node;
+            }
+            JsonNode content = open(node);
+            ObjectNode omitted = objectMapper.createObjectNode();
+            omitted.putObject(OMITTED_FIELD)
+                    .put("type", content.isArray() ? "array" : content.isObject() ? "object" : "value")
+                    .put("size", content.size());
+            return omitted;
+        }
+
+        /**
+         * Approximate serialized size of {@code node}, counted only up to just over
+         * {@code limit}; references count as over the limit.
+         */
+        private int size(JsonNode node, int limit) {
+            if (PayloadStore.refOf(node) != null) {
+                return limit + 1;
+            }
+            if (node.isValueNode()) {
+                return node.asText().length() + 2;
+            }
+            int size = 2;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            if (node.isObject()) {
+                while (fields.hasNext() && size <= limit) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    size += field.getKey().length() + 4 + size(field.getValue(), limit - size);
+                }
+            } else {
+                for (JsonNode element : node) {
+                    if (size > limit) {
+                        break;
+                    }
+                    size += 1 + size(element, limit - size);
+                }
+            }
+            return size;
+        }
+
+        /**
+         * The payload a reference points to, whose own large subtrees are still
+         * references; any other node as it is.
+         */
+        private JsonNode open(JsonNode node) {
+            String hash = PayloadStore.refOf(node);
+            if (hash == null) {
+                return node;
+            }
+            return opened.computeIfAbsent(hash, h -> {
+                try (InputStream json = payloadStore.open(h)) {
+                    return objectMapper.readTree(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        /**
+         * Hash of the content of {@code node}, independent of object field order.
+         * References hash by the hash they carry, so a subtree and a reference to the
+         * same content hash differently; {@link #diff} opens the reference then.
+         */
+        private long hash(JsonNode node) {
+            if (node.isValueNode() || node.isMissingNode()) {
+                return mix(node.getNodeType().ordinal() * 0x9E3779B97F4A7C15L ^ fnv1a(node.asText()));
+            }
+            Long cached = hashes.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            long hash;
+            String ref = PayloadStore.refOf(node);
+            if (ref != null) {
+                hash = mix(0x52454600L ^ fnv1a(ref));
+            } else if (node.isObject()) {
+                hash = 0x4F424A00L;
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    hash += mix(fnv1a(field.getKey()) * 31 + hash(field.getValue()));
+                }
+                hash = mix(hash);
+            } else {
+                hash = 0x41525200L;
+                for (JsonNode element : node) {
+                    hash = hash * 1_000_003 + hash(element);
+                }
+                hash = mix(hash);
+            }
+            hashes.put(node, hash);
+            return hash;
+        }
+    }
+
+    /**
+     * JSON pointer escaping of one path segment.
+     */
+    private static String escape(String segment) {
+        return segment.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * FNV-1a over the characters of {@code text}.
+     */
+    private static long fnv1a(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Op {
+        /** {@code add}, {@code remove} or {@code replace}. */
+        private String op;
+        private String path;
+        /** Null for {@code add}. */
+        private JsonNode oldValue;
+        /** Null for {@code remove}. */
+        private JsonNode newValue;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Patch {
+        private List<Op> ops;
+        /** Set if there were more differences than the operations listed. */
+        private boolean truncated;
+    }
+}
@@ -0,0 +1,183 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.storage.PayloadStore;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Extracts one part of a JSON document without building a tree for the rest of it.
+ * <p>
+ * The parser walks to the target of a JSON pointer, skipping every sibling subtree
+ * on the way. If the target is an array, only the requested {@code offset/limit}
+ * window is materialized and the remaining elements are skipped just to count them.
+ * References to deduplicated payloads are followed by switching to a parser over the
+ * referenced payload, so only the payloads on the pointer's path are opened.
+ */
+@Component
+public class JsonSlicer {
+
+    private final ObjectMapper objectMapper;
+    private final PayloadStore payloadStore;
+
+    public JsonSlicer(ObjectMapper objectMapper, PayloadStore payloadStore) {
+        this.objectMapper = objectMapper;
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * @return a description of the slice, or empty if the pointer does not resolve
+     */
+    public Optional<ObjectNode> slice(InputStream json, String pointer, int offset, int limit) throws IOException {
+        JsonPointer path = JsonPointer.compile(pointer == null ? "" : pointer);
+
+        List<JsonParser> parsers = new ArrayList<>();
+        try {
+            JsonParser parser = open(json, parsers);
+            if (parser.nextToken() == null) {
+                return Optional.empty();
+            }
+            parser = seek(parser, path, parsers);
+            if (parser == null) {
+                return Optional.empty();
+            }
+
+            ObjectNode result = objectMapper.createObjectNode();
+            result.put("pointer", path.toString());
+
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT) {
+                ObjectNode value = objectMapper.createObjectNode();
+                for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    value.set(name, readValue(parser));
+                }
+                result.put("type", "object");
+                result.set("value", value);
+                return Optional.of(result);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                JsonNode value = readValue(parser);
+                result.put("type", value.getNodeType().name().toLowerCase());
+                result.set("value", value);
+                return Optional.of(result);
+            }
+
+            ArrayNode items = objectMapper.createArrayNode();
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (index >= offset && index < offset + limit) {
+                    items.add(readValue(parser));
+                } else {
+                    parser.skipChildren();
+                }
+                index++;
+            }
+            result.put("type", "array");
+            result.put("total", index);
+            result.put("offset", offset);
+            result.put("limit", limit);
+            result.set("items", items);
+            return Optional.of(result);
+        } finally {
+            for (JsonParser parser : parsers) {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * Walks to the target of the pointer, following references on the way.
+     *
+     * @return the parser positioned on the target, or null if the pointer does not resolve
+     * @see #follow
+     */
+    private JsonParser seek(JsonParser parser, JsonPointer path, List<JsonParser> parsers) throws IOException {
+        while (true) {
+            parser = follow(parser, parsers);
+            if (path.matches()) {
+                return parser;
+            }
+            JsonToken token = parser.currentToken();
+            boolean inObject = token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT;
+            if (inObject && path.mayMatchProperty()) {
+                if (!seekProperty(parser, path.getMatchingProperty())) {
+                    return null;
+                }
+            } else if (token == JsonToken.START_ARRAY && path.mayMatchElement()) {
+                if (!seekElement(parser, path.getMatchingIndex())) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            path = path.tail();
+        }
+    }
+
+    /**
+     * Resolves the value at the parser's position. Objects have to be entered to tell
+     * a reference from an ordinary object, so an object comes back positioned on its
+     * first field name (or its end if empty); any other value is left on its first token.
+     */
+    private JsonParser follow(JsonParser parser, List<JsonParser> parsers) throws IOException {
+        while (parser.currentToken() == JsonToken.START_OBJECT) {
+            if (parser.nextToken() != JsonToken.FIELD_NAME || !PayloadStore.REF_FIELD.equals(parser.currentName())
+                    || parser.nextToken() != JsonToken.VALUE_STRING) {
+                return parser;
+            }
+            parser = open(payloadStore.open(parser.getText()), parsers);
+            parser.nextToken();
+        }
+        return parser;
+    }
+
+    private JsonNode readValue(JsonParser parser) throws IOException {
+        return payloadStore.resolve(objectMapper.readTree(parser));
+    }
+
+    private JsonParser open(InputStream json, List<JsonParser> parsers) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(json);
+        parsers.add(parser);
+        return parser;
+    }
+
+    /**
+     * Expects the parser on the object's first field name or its end.
+     */
+    private boolean seekProperty(JsonParser parser, String name) throws IOException {
+        for (JsonToken token = parser.currentToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            boolean match = name.equals(parser.currentName());
+            parser.nextToken();
+            if (match) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private boolean seekElement(JsonParser parser, int index) throws IOException {
+        for (int i = 0; ; i++) {
+            if (parser.nextToken() == JsonToken.END_ARRAY) {
+                return false;
+            }
+            if (i == index) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * What watchers of the live stream receive; the SSE event name is {@link #getType()}.
+ * Carries headers only, never payloads.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LiveEvent {
+
+    public static final String EXECUTION_STARTED = "execution-started";
+    public static final String STEP_APPENDED = "step-appended";
+    public static final String EXECUTION_ENDED = "execution-ended";
+
+    /**
+     * Events were dropped because the watcher fell behind; refetch to catch up.
+     */
+    public static final String RESYNC = "resync";
+
+    /**
+     * Keeps idle connections open and detects watchers that went away. Sent as an SSE comment.
+     */
+    public static final String HEARTBEAT = "heartbeat";
+
+    private String type;
+    private String executionId;
+
+    /** Set for execution-started. */
+    private ExecutionSummary execution;
+
+    /** Set for step-appended. */
+    private StepSummary step;
+
+    /** Set for execution-ended. */
+    private String status;
+    private ExecutionOutcome outcome;
+    private String failureReason;
+    private LocalDateTime endTime;
+
+    /**
+     * Execution-level events go to every watcher; step events only to watchers of that execution.
+     */
+    boolean isLifecycle() {
+        return EXECUTION_STARTED.equals(type) || EXECUTION_ENDED.equals(type);
+    }
+
+    /**
+     * Adds the live events for one written trace event. Executions that are written
+     * already finished (sampled summaries, ingested batches) also produce an ended event.
+     */
+    static void addTo(List<LiveEvent> events, TraceEvent event) {
+        switch (event.getType()) {
+            case EXECUTION_STARTED -> {
+                XRayExecution execution = event.getExecution();
+                events.add(LiveEvent.builder()
+                        .type(EXECUTION_STARTED)
+                        .executionId(event.getExecutionId())
+                        .execution(ExecutionSummary.of(execution))
+                        .build());
+                if (execution.getEndTime() != null) {
+                    events.add(ended(event.getExecutionId(), execution.getStatus(), execution.getOutcome(),
+                            execution.getFailureReason(), execution.getEndTime()));
+                }
+            }
+            case STEP_RECORDED -> events.add(LiveEvent.builder()
+                    .type(STEP_APPENDED)
+                    .executionId(event.getExecutionId())
+                    .step(StepSummary.of(event.getStep()))
+                    .build());
+            case EXECUTION_FINISHED -> events.add(ended(event.getExecutionId(), event.getStatus(),
+                    event.getOutcome(), event.getFailureReason(), event.getEndTime()));
+        }
+    }
+
+    private static LiveEvent ended(String executionId, String status, ExecutionOutcome outcome,
+                                   String failureReason, LocalDateTime endTime) {
+        return LiveEvent.builder()
+                .type(EXECUTION_ENDED)
+                .executionId(executionId)
+                .status(status)
+                .outcome(outcome)
+                .failureReason(failureReason)
+                .endTime(endTime)
+                .build();
+    }
+}
@@ -0,0 +1,256 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory fan-out of written trace events to live watchers.
+ * <p>
+ * The trace writer hands over what it wrote once the transaction commits, so a watcher
+ * never hears of a step it cannot fetch yet. Publishing only offers events to each
+ * watcher's bounded queue and never waits: a small shared pool drains the queues into
+ * the watchers' connections, one drain per watcher at a time so events stay in order.
+ * A watcher whose queue is full loses the events that do not fit and is sent a
+ * {@link LiveEvent#RESYNC} once it catches up. Each event is serialized once, however
+ * many watchers get it. Nothing here touches the database, and with no watchers
+ * publishing returns straight away.
+ */
+@Component
+@Slf4j
+public class LiveEventBus {
+
+    private static final Message HEARTBEAT = new Message(LiveEvent.HEARTBEAT, null, null, false);
+
+    private final XRayProperties.Live settings;
+    private final ObjectWriter writer;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    /** Slots taken out of {@code max-subscribers}, reserved before a subscriber is added. */
+    private final AtomicInteger subscriberSlots = new AtomicInteger();
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService heartbeat;
+
+    public LiveEventBus(XRayProperties properties, ObjectMapper objectMapper) {
+        this.settings = properties.getLive();
+        // one event per SSE message, so no need for the API's indented output
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(settings.getDispatchThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "xray-live-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "xray-live-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, settings.getHeartbeatIntervalMs(),
+                settings.getHeartbeatIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Receives the events a watcher subscribed to, on a dispatcher thread.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @param type a {@link LiveEvent} type
+         * @param json the serialized {@link LiveEvent}; null for heartbeats
+         */
+        void accept(String type, String json) throws Exception;
+    }
+
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * @param executionId only this execution's events, including its steps; null for the
+     *                    start and end of every execution
+     * @return null if the subscriber limit is reached
+     */
+    public Subscription subscribe(String executionId, Sink sink) {
+        int max = settings.getMaxSubscribers();
+        int taken;
+        do {
+            taken = subscriberSlots.get();
+            if (taken >= max) {
+                return null;
+            }
+        } while (!subscriberSlots.compareAndSet(taken, taken + 1));
+        Subscriber subscriber = new Subscriber(executionId, sink, settings.getBufferSize());
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Publishes {@code events} once the current transaction commits, or right away
+     * outside of one. Nothing is published if it rolls back.
+     */
+    public void publishAfterCommit(List<TraceEvent> events) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(events);
+                }
+            });
+        } else {
+            publish(events);
+        }
+    }
+
+    void publish(List<TraceEvent> events) {
+        if (!hasSubscribers()) {
+            return;
+        }
+        List<LiveEvent> live = new ArrayList<>(events.size());
+        for (TraceEvent event : events) {
+            LiveEvent.addTo(live, event);
+        }
+        List<Message> messages = live.stream()
+                .map(event -> new Message(event.getType(), serialize(event), event.getExecutionId(), event.isLifecycle()))
+                .toList();
+        for (Subscriber subscriber : subscribers) {
+            for (Message message : messages) {
+                if (subscriber.wants(message)) {
+                    subscriber.offer(message);
+                }
+            }
+        }
+    }
+
+    private String serialize(LiveEvent event) {
+        try {
+            return writer.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(HEARTBEAT);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.clear();
+        subscriberSlots.set(0);
+    }
+
+    private class Subscriber implements Subscription {
+
+        private final String executionId;
+        private final Sink sink;
+        private final BlockingQueue<Message> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+
+        Subscriber(String executionId, Sink sink, int bufferSize) {
+            this.executionId = executionId;
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        boolean wants(Message message) {
+            return executionId == null ? message.isLifecycle() : executionId.equals(message.getExecutionId());
+        }
+
+        void offer(Message message) {
+            if (!queue.offer(message) && message != HEARTBEAT) {
+                overflowed = true;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (closed || !draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                dispatcher.execute(this::drain);
+            } catch (RuntimeException e) {
+                // dispatcher shut down
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                Message message;
+                while (!closed && (message = queue.poll()) != null) {
+                    sink.accept(message.getType(), message.getJson());
+                }
+                if (!closed && overflowed) {
+                    overflowed = false;
+                    LiveEvent resync = LiveEvent.builder().type(LiveEvent.RESYNC).executionId(executionId).build();
+                    sink.accept(LiveEvent.RESYNC, serialize(resync));
+                }
+            } catch (Exception e) {
+                log.debug("Dropping live watcher: {}", e.toString());
+                close();
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty() || overflowed) {
+                scheduleDrain();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (subscribers.remove(this)) {
+                subscriberSlots.decrementAndGet();
+            }
+            queue.clear();
+        }
+    }
+
+    /**
+     * A serialized event as queued for watchers.
+     */
+    @Value
+    private static class Message {
+        String type;
+        String json;
+        String executionId;
+        boolean lifecycle;
+    }
+}
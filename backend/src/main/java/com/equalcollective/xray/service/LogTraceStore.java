@@ -0,0 +1,708 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.analytics.AnalyticsRecorder;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.equalcollective.xray.storage.TraceLog;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link TraceStore} on the embedded {@link TraceLog}, selected with
+ * {@code xray.storage.backend=log}. Every event is one record, so writing a batch is
+ * a single append with no reads, locks on shared rows or index maintenance on disk.
+ * <p>
+ * Executions are indexed in memory by id and by (start time, id), newest first; the
+ * index holds each execution's summary and the positions of its records, and is
+ * rebuilt by replaying the log on startup. Lists and searches are answered from the
+ * index alone. Steps and payloads are read from the mapped segments when asked for,
+ * and payloads are sliced straight from there without building their tree.
+ * <p>
+ * Payloads are stored in {@link PayloadCodec} format, so compression settings apply,
+ * but they are not deduplicated. A deleted execution is dropped from the index and
+ * recorded in the log; the space it took is only reclaimed by {@link #deleteAll}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "xray.storage", name = "backend", havingValue = "log")
+@Slf4j
+public class LogTraceStore implements TraceStore {
+
+    private static final byte STARTED = 1;
+    private static final byte STEP = 2;
+    private static final byte FINISHED = 3;
+    private static final byte DELETED = 4;
+
+    /** Step flags. Older records only ever set {@link #TRUNCATED}, and have no error. */
+    private static final int TRUNCATED = 1;
+    private static final int FAILED = 2;
+
+    /** Display order of steps, as in the JPA store: by sequence, unnumbered last, then by time. */
+    private static final Comparator<StepSummary> STEP_ORDER = Comparator
+            .comparing(StepSummary::getSequence, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(StepSummary::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final TraceLog traceLog;
+    private final PayloadCodec codec;
+    private final JsonSlicer jsonSlicer;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter payloadWriter;
+    private final LiveEventBus liveEvents;
+    private final ExecutionResponseCache responseCache;
+    private final AnalyticsRecorder analytics;
+
+    private final Map<String, Entry> executions = new ConcurrentHashMap<>();
+    private final NavigableMap<Key, Entry> byStartTime = new ConcurrentSkipListMap<>();
+
+    public LogTraceStore(TraceLog traceLog,
+                         PayloadCodec codec,
+                         JsonSlicer jsonSlicer,
+                         ObjectMapper objectMapper,
+                         LiveEventBus liveEvents,
+                         ExecutionResponseCache responseCache,
+                         AnalyticsRecorder analytics) {
+        this.traceLog = traceLog;
+        this.codec = codec;
+        this.jsonSlicer = jsonSlicer;
+        this.objectMapper = objectMapper;
+        this.payloadWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.liveEvents = liveEvents;
+        this.responseCache = responseCache;
+        this.analytics = analytics;
+
+        long started = System.nanoTime();
+        traceLog.replay(this::apply);
+        log.info("Trace log replayed: {} executions, {} bytes, {} ms", executions.size(),
+                traceLog.sizeBytes(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Checks the whole batch against the index before anything is appended, so a bad
+     * event leaves the log as it was.
+     */
+    @Override
+    public synchronized void writeBatch(List<TraceEvent> events) {
+        Set<String> startedHere = new HashSet<>();
+        List<byte[]> records = new ArrayList<>(events.size());
+        for (TraceEvent event : events) {
+            String executionId = event.getExecutionId();
+            boolean known = executions.containsKey(executionId) || startedHere.contains(executionId);
+            switch (event.getType()) {
+                case EXECUTION_STARTED -> {
+                    if (known) {
+                        throw new IllegalArgumentException("Execution already exists: " + executionId);
+                    }
+                    startedHere.add(executionId);
+                    records.add(started(event.getExecution()));
+                }
+                case STEP_RECORDED -> {
+                    if (!known) {
+                        throw new IllegalArgumentException("Execution not found: " + executionId);
+                    }
+                    records.add(step(executionId, event.getStep()));
+                }
+                case EXECUTION_FINISHED -> {
+                    if (!known) {
+                        throw new IllegalArgumentException("Execution not found: " + executionId);
+                    }
+                    records.add(finished(event));
+                }
+            }
+        }
+
+        long[] positions = traceLog.append(records);
+        for (long position : positions) {
+            apply(position, traceLog.read(position));
+        }
+        for (TraceEvent event : events) {
+            if (event.getType() == TraceEvent.Type.STEP_RECORDED) {
+                analytics.stepWritten(event.getExecutionId(), event.getStep());
+            }
+        }
+        liveEvents.publishAfterCommit(events);
+        responseCache.evictAfterCommit(events.stream().map(TraceEvent::getExecutionId).distinct().toList());
+    }
+
+    @Override
+    public boolean exists(String executionId) {
+        return executions.containsKey(executionId);
+    }
+
+    @Override
+    public boolean isFinished(String executionId) {
+        Entry entry = executions.get(executionId);
+        return entry != null && entry.summary.getEndTime() != null;
+    }
+
+    @Override
+    public Optional<XRayExecution> findExecution(String executionId) {
+        Entry entry = executions.get(executionId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        ExecutionSummary summary = entry.summary;
+        ByteBuffer record = traceLog.read(entry.position);
+        skipStartedHeader(record);
+        XRayExecution execution = XRayExecution.builder()
+                .executionId(summary.getExecutionId())
+                .startTime(summary.getStartTime())
+                .endTime(summary.getEndTime())
+                .status(summary.getStatus())
+                .outcome(summary.getOutcome())
+                .failureReason(summary.getFailureReason())
+                .pipeline(summary.getPipeline())
+                .stepCount(summary.getEndTime() != null ? (int) summary.getStepCount() : null)
+                .traceLevel(summary.getTraceLevel())
+                .samplingReason(summary.getSamplingReason())
+                .context(readPayload(record))
+                .build();
+
+        List<XRayStep> steps = new ArrayList<>();
+        for (long position : entry.stepPositions()) {
+            steps.add(readStep(traceLog.read(position)));
+        }
+        steps.sort(Comparator.comparing((XRayStep step) -> StepSummary.of(step), STEP_ORDER));
+        steps.forEach(execution::addStep);
+        return Optional.of(execution);
+    }
+
+    @Override
+    public Optional<ExecutionSummary> findSummary(String executionId) {
+        Entry entry = executions.get(executionId);
+        return entry != null ? Optional.of(entry.view()) : Optional.empty();
+    }
+
+    @Override
+    public List<ExecutionSummary> searchSummaries(ExecutionFilter filter, LocalDateTime afterStartTime,
+                                                  String afterExecutionId, int limit) {
+        // newest first, so the cursor and the exclusive upper bound both say where to begin
+        Key begin = afterStartTime != null ? new Key(afterStartTime, afterExecutionId) : null;
+        if (filter.getTo() != null) {
+            Key beforeTo = new Key(filter.getTo(), "");
+            if (begin == null || beforeTo.compareTo(begin) > 0) {
+                begin = beforeTo;
+            }
+        }
+        NavigableMap<Key, Entry> candidates = begin != null ? byStartTime.tailMap(begin, false) : byStartTime;
+
+        List<ExecutionSummary> page = new ArrayList<>(limit);
+        for (Entry entry : candidates.values()) {
+            ExecutionSummary summary = entry.view();
+            if (filter.getFrom() != null && summary.getStartTime().isBefore(filter.getFrom())) {
+                break;
+            }
+            if (matches(filter, entry, summary)) {
+                page.add(summary);
+                if (page.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+
+    private static boolean matches(ExecutionFilter filter, Entry entry, ExecutionSummary summary) {
+        return (filter.getOutcome() == null || filter.getOutcome() == summary.getOutcome())
+                && (filter.getPipeline() == null || filter.getPipeline().equals(summary.getPipeline()))
+                && (filter.getMinSteps() == null
+                    || summary.getEndTime() != null && summary.getStepCount() >= filter.getMinSteps())
+                && (filter.getStepName() == null || entry.hasStep(filter.getStepName()));
+    }
+
+    @Override
+    public Optional<List<StepSummary>> findStepSummaries(String executionId) {
+        Entry entry = executions.get(executionId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        List<StepSummary> steps = new ArrayList<>();
+        for (long position : entry.stepPositions()) {
+            ByteBuffer record = traceLog.read(position);
+            record.get();
+            readString(record);
+            steps.add(readStepHeader(record));
+        }
+        steps.sort(STEP_ORDER);
+        return Optional.of(steps);
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceStepPayload(String executionId, String stepId, PayloadField field,
+                                                 String pointer, int offset, int limit) {
+        Entry entry = executions.get(executionId);
+        Long position = entry != null ? entry.stepPosition(stepId) : null;
+        if (position == null) {
+            return Optional.empty();
+        }
+        ByteBuffer record = traceLog.read(position);
+        record.get();
+        readString(record);
+        readStepHeader(record);
+        for (int i = 0; i < field.ordinal(); i++) {
+            skipPayload(record);
+        }
+        return slice(record, pointer, offset, limit);
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceExecutionContext(String executionId, String pointer, int offset, int limit) {
+        Entry entry = executions.get(executionId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        ByteBuffer record = traceLog.read(entry.position);
+        skipStartedHeader(record);
+        return slice(record, pointer, offset, limit);
+    }
+
+    private Optional<ObjectNode> slice(ByteBuffer record, String pointer, int offset, int limit) {
+        ByteBuffer payload = payload(record);
+        if (payload == null) {
+            return Optional.empty();
+        }
+        try (InputStream stored = new ByteBufferBackedInputStream(payload)) {
+            return jsonSlicer.slice(codec.decode(stored), pointer, offset, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<StoredPayloads> findStoredPayloads(String executionId) {
+        Entry entry = executions.get(executionId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        ByteBuffer started = traceLog.read(entry.position);
+        skipStartedHeader(started);
+        byte[] context = storedPayload(started);
+
+        List<Map.Entry<StepSummary, byte[][]>> stored = new ArrayList<>();
+        for (long position : entry.stepPositions()) {
+            ByteBuffer record = traceLog.read(position);
+            record.get();
+            readString(record);
+            StepSummary header = readStepHeader(record);
+            // in PayloadField order
+            stored.add(Map.entry(header, new byte[][]{storedPayload(record), storedPayload(record),
+                    storedPayload(record)}));
+        }
+        stored.sort(Map.Entry.comparingByKey(STEP_ORDER));
+        List<StoredPayloads.Step> steps = new ArrayList<>(stored.size());
+        for (Map.Entry<StepSummary, byte[][]> step : stored) {
+            StepSummary header = step.getKey();
+            steps.add(new StoredPayloads.Step(header.getStepId(), header.getStepName(), header.getDurationNanos(),
+                    step.getValue()));
+        }
+        return Optional.of(new StoredPayloads(context, steps));
+    }
+
+    @Override
+    public synchronized boolean delete(String executionId) {
+        if (!executions.containsKey(executionId)) {
+            return false;
+        }
+        long position = traceLog.append(List.of(encode(out -> {
+            out.writeByte(DELETED);
+            writeString(out, executionId);
+        })))[0];
+        apply(position, traceLog.read(position));
+        responseCache.evictAfterCommit(List.of(executionId));
+        return true;
+    }
+
+    @Override
+    public synchronized ExecutionDeletionService.Deleted deleteAll() {
+        ExecutionDeletionService.Deleted deleted = new ExecutionDeletionService.Deleted();
+        deleted.setExecutions(executions.size());
+        deleted.setSteps(executions.values().stream().mapToLong(entry -> entry.stepPositions().size()).sum());
+        deleted.setBytes(traceLog.sizeBytes());
+        traceLog.deleteAll();
+        executions.clear();
+        byStartTime.clear();
+        responseCache.clear();
+        return deleted;
+    }
+
+    /**
+     * Brings the index up to date with one record, on replay and after each append.
+     */
+    private void apply(long position, ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case STARTED -> {
+                ExecutionSummary summary = readStartedHeader(record);
+                Entry entry = new Entry(position, summary);
+                executions.put(summary.getExecutionId(), entry);
+                byStartTime.put(new Key(summary.getStartTime(), summary.getExecutionId()), entry);
+            }
+            case STEP -> {
+                Entry entry = executions.get(readString(record));
+                if (entry != null) {
+                    String stepId = readString(record);
+                    readOptionalInt(record);
+                    entry.addStep(stepId, readString(record), position);
+                }
+            }
+            case FINISHED -> {
+                Entry entry = executions.get(readString(record));
+                if (entry != null) {
+                    LocalDateTime endTime = readTime(record);
+                    ExecutionOutcome outcome = ExecutionOutcome.valueOf(readString(record));
+                    String reason = readString(record);
+                    entry.finish(endTime, outcome, reason);
+                }
+            }
+            case DELETED -> {
+                Entry entry = executions.remove(readString(record));
+                if (entry != null) {
+                    byStartTime.remove(new Key(entry.summary.getStartTime(), entry.summary.getExecutionId()));
+                }
+            }
+            default -> throw new IllegalStateException("Unknown trace log record type " + type);
+        }
+    }
+
+    // Records: a type byte, then fields in a fixed order. Strings, times and payloads
+    // are length- or flag-prefixed so that null round-trips; payloads come last.
+
+    private byte[] started(XRayExecution execution) {
+        execution.promotePipeline();
+        return encode(out -> {
+            out.writeByte(STARTED);
+            writeString(out, execution.getExecutionId());
+            writeTime(out, execution.getStartTime() != null ? execution.getStartTime() : LocalDateTime.now());
+            writeTime(out, execution.getEndTime());
+            writeString(out, execution.getStatus());
+            writeString(out, execution.getOutcome().name());
+            writeString(out, execution.getFailureReason());
+            writeString(out, execution.getPipeline());
+            writeOptionalInt(out, execution.getStepCount());
+            writeString(out, (execution.getTraceLevel() != null ? execution.getTraceLevel() : TraceLevel.FULL).name());
+            writeString(out, execution.getSamplingReason());
+            writePayload(out, execution.getContext());
+        });
+    }
+
+    private byte[] step(String executionId, XRayStep step) {
+        return encode(out -> {
+            out.writeByte(STEP);
+            writeString(out, executionId);
+            writeString(out, step.getStepId());
+            writeOptionalInt(out, step.getSequence());
+            writeString(out, step.getStepName());
+            writeTime(out, step.getTimestamp() != null ? step.getTimestamp() : LocalDateTime.now());
+            out.writeBoolean(step.getDurationNanos() != null);
+            if (step.getDurationNanos() != null) {
+                out.writeLong(step.getDurationNanos());
+            }
+            writeString(out, step.getParentStepId());
+            writeString(out, step.getReasoning());
+            out.writeByte((Boolean.TRUE.equals(step.getTruncated()) ? TRUNCATED : 0)
+                    | (step.getError() != null ? FAILED : 0));
+            if (step.getError() != null) {
+                writeString(out, step.getError());
+            }
+            // in PayloadField order
+            writePayload(out, step.getInput());
+            writePayload(out, step.getOutput());
+            writePayload(out, step.getMetadata());
+        });
+    }
+
+    private static byte[] finished(TraceEvent event) {
+        return encode(out -> {
+            out.writeByte(FINISHED);
+            writeString(out, event.getExecutionId());
+            writeTime(out, event.getEndTime());
+            writeString(out, event.getOutcome().name());
+            writeString(out, event.getFailureReason());
+        });
+    }
+
+    private static ExecutionSummary readStartedHeader(ByteBuffer record) {
+        String executionId = readString(record);
+        LocalDateTime startTime = readTime(record);
+        LocalDateTime endTime = readTime(record);
+        String status = readString(record);
+        ExecutionOutcome outcome = ExecutionOutcome.valueOf(readString(record));
+        String failureReason = readString(record);
+        String pipeline = readString(record);
+        Integer stepCount = readOptionalInt(record);
+        TraceLevel traceLevel = TraceLevel.valueOf(readString(record));
+        String samplingReason = readString(record);
+        return new ExecutionSummary(executionId, status, outcome, failureReason, pipeline, startTime, endTime,
+                stepCount != null ? stepCount : 0, traceLevel, samplingReason);
+    }
+
+    /**
+     * Positions a record of an execution start at its context.
+     */
+    private static void skipStartedHeader(ByteBuffer record) {
+        record.get();
+        readStartedHeader(record);
+    }
+
+    /**
+     * Reads the step fields that follow the execution id, up to its payloads.
+     */
+    private static StepSummary readStepHeader(ByteBuffer record) {
+        String stepId = readString(record);
+        Integer sequence = readOptionalInt(record);
+        String stepName = readString(record);
+        LocalDateTime timestamp = readTime(record);
+        Long durationNanos = record.get() != 0 ? record.getLong() : null;
+        String parentStepId = readString(record);
+        String reasoning = readString(record);
+        byte flags = record.get();
+        String error = (flags & FAILED) != 0 ? readString(record) : null;
+        return new StepSummary(stepId, sequence, stepName, timestamp, durationNanos, parentStepId,
+                reasoning, (flags & TRUNCATED) != 0, error);
+    }
+
+    private XRayStep readStep(ByteBuffer record) {
+        record.get();
+        readString(record);
+        StepSummary header = readStepHeader(record);
+        return XRayStep.builder()
+                .stepId(header.getStepId())
+                .sequence(header.getSequence())
+                .stepName(header.getStepName())
+                .timestamp(header.getTimestamp())
+                .durationNanos(header.getDurationNanos())
+                .parentStepId(header.getParentStepId())
+                .reasoning(header.getReasoning())
+                .truncated(header.isTruncated() ? true : null)
+                .error(header.getError())
+                .input(readPayload(record))
+                .output(readPayload(record))
+                .metadata(readPayload(record))
+                .build();
+    }
+
+    private void writePayload(DataOutputStream out, JsonNode payload) throws IOException {
+        if (payload == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] stored = codec.encode(payloadWriter.writeValueAsBytes(payload));
+        out.writeInt(stored.length);
+        out.write(stored);
+    }
+
+    private JsonNode readPayload(ByteBuffer record) {
+        ByteBuffer payload = payload(record);
+        if (payload == null) {
+            return null;
+        }
+        try (InputStream stored = codec.decode(new ByteBufferBackedInputStream(payload))) {
+            return objectMapper.readTree(stored);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The stored bytes of the payload at the record's position, which moves past it.
+     */
+    private static ByteBuffer payload(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer payload = record.slice(record.position(), length);
+        record.position(record.position() + length);
+        return payload;
+    }
+
+    private static byte[] storedPayload(ByteBuffer record) {
+        ByteBuffer payload = payload(record);
+        if (payload == null) {
+            return null;
+        }
+        byte[] stored = new byte[payload.remaining()];
+        payload.get(stored);
+        return stored;
+    }
+
+    private static void skipPayload(ByteBuffer record) {
+        payload(record);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(ByteBuffer record) {
+        if (record.get() == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(record.getLong(), record.getInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeOptionalInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readOptionalInt(ByteBuffer record) {
+        return record.get() != 0 ? record.getInt() : null;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Sort key of the start time index: newest first, ties broken by id, also descending.
+     */
+    private static final class Key implements Comparable<Key> {
+
+        private final LocalDateTime startTime;
+        private final String executionId;
+
+        Key(LocalDateTime startTime, String executionId) {
+            this.startTime = startTime;
+            this.executionId = executionId;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byTime = other.startTime.compareTo(startTime);
+            return byTime != 0 ? byTime : other.executionId.compareTo(executionId);
+        }
+    }
+
+    /**
+     * What the index knows about one execution. The summary is replaced, never
+     * modified, so readers can use it as it is once the execution has ended.
+     */
+    private static final class Entry {
+
+        /** Where the record of its start is. */
+        final long position;
+        volatile ExecutionSummary summary;
+        private final Map<String, Long> steps = new LinkedHashMap<>();
+        private final Set<String> stepNames = new HashSet<>();
+
+        Entry(long position, ExecutionSummary summary) {
+            this.position = position;
+            this.summary = summary;
+        }
+
+        synchronized void addStep(String stepId, String stepName, long position) {
+            steps.put(stepId, position);
+            stepNames.add(stepName);
+        }
+
+        synchronized List<Long> stepPositions() {
+            return new ArrayList<>(steps.values());
+        }
+
+        synchronized Long stepPosition(String stepId) {
+            return steps.get(stepId);
+        }
+
+        synchronized boolean hasStep(String stepName) {
+            return stepNames.contains(stepName);
+        }
+
+        /**
+         * The summary, with the steps written so far while the execution is in progress.
+         */
+        synchronized ExecutionSummary view() {
+            ExecutionSummary current = summary;
+            if (current.getEndTime() != null) {
+                return current;
+            }
+            return new ExecutionSummary(current.getExecutionId(), current.getStatus(), current.getOutcome(),
+                    current.getFailureReason(), current.getPipeline(), current.getStartTime(), null, stepCount(),
+                    current.getTraceLevel(), current.getSamplingReason());
+        }
+
+        synchronized void finish(LocalDateTime endTime, ExecutionOutcome outcome, String reason) {
+            ExecutionSummary current = summary;
+            summary = new ExecutionSummary(current.getExecutionId(), XRayExecution.describe(outcome, reason),
+                    outcome, reason, current.getPipeline(), current.getStartTime(), endTime, stepCount(),
+                    current.getTraceLevel(), current.getSamplingReason());
+        }
+
+        /**
+         * A summary row carries the count of steps that were never written; an execution
+         * abandoned by the tracer can still be finished later.
+         */
+        private long stepCount() {
+            return summary.getTraceLevel() == TraceLevel.SUMMARY ? summary.getStepCount() : steps.size();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.equalcollective.xray.service;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A batch was only partly written: its events for some shards of the
+ * {@link ShardedTraceStore} committed, and the rest were rolled back. Retrying the
+ * whole batch would write the committed part twice, so only {@link #getUnwritten()}
+ * should be retried.
+ */
+@Getter
+public class PartialBatchException extends RuntimeException {
+
+    /** The batch's events that were not written, in batch order. */
+    private final List<TraceEvent> unwritten;
+
+    public PartialBatchException(RuntimeException cause, List<TraceEvent> unwritten) {
+        super(cause.getMessage(), cause);
+        this.unwritten = unwritten;
+    }
+}
@@ -0,0 +1,35 @@
+package com.equalcollective.xray.service;
+
+/**
+ * JSON payload columns of a step that can be fetched on their own.
+ */
+public enum PayloadField {
+    INPUT("input", "input_data"),
+    OUTPUT("output", "output_data"),
+    METADATA("metadata", "metadata_data");
+
+    private final String path;
+    private final String column;
+
+    PayloadField(String path, String column) {
+        this.path = path;
+        this.column = column;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public static PayloadField fromPath(String value) {
+        for (PayloadField field : values()) {
+            if (field.path.equals(value)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown payload field: " + value);
+    }
+}
@@ -0,0 +1,72 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Converts traced objects to JSON within the configured size budgets. Serialization
+ * streams into a {@link BoundedTreeGenerator}, so an oversized payload is summarized
+ * as it is written rather than built in full and cut down afterwards.
+ */
+@Component
+public class PayloadSerializer {
+
+    private final ObjectMapper objectMapper;
+    private final XRayProperties.Budget settings;
+
+    public PayloadSerializer(ObjectMapper objectMapper, XRayProperties properties) {
+        this.objectMapper = objectMapper;
+        this.settings = properties.getTracer().getBudget();
+    }
+
+    /**
+     * Starts a budget for the payloads of one step or execution.
+     */
+    public Budget newBudget() {
+        return new Budget(settings.getMaxStepBytes());
+    }
+
+    /**
+     * Serializes one payload, limited to the per-field budget and whatever is left of
+     * {@code budget}.
+     */
+    public JsonNode toTree(Object value, Budget budget) {
+        if (value == null) {
+            return null;
+        }
+        if (!settings.isEnabled()) {
+            return objectMapper.valueToTree(value);
+        }
+
+        BoundedTreeGenerator generator = new BoundedTreeGenerator(objectMapper, settings,
+                Math.min(settings.getMaxFieldBytes(), budget.remaining));
+        try {
+            objectMapper.writeValue(generator, value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot serialize " + value.getClass().getName(), e);
+        }
+        budget.remaining -= generator.getUsedBytes();
+        budget.truncated |= generator.isTruncated();
+        return generator.getRoot();
+    }
+
+    public static class Budget {
+
+        private long remaining;
+
+        /**
+         * Whether any payload serialized against this budget was cut down.
+         */
+        @Getter
+        private boolean truncated;
+
+        private Budget(long remaining) {
+            this.remaining = remaining;
+        }
+    }
+}
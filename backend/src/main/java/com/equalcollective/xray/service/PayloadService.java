@@ -0,0 +1,58 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Serves slices of stored JSON payloads. The column is read as a byte stream over
+ * plain JDBC, decompressed on the fly if needed, and fed to {@link JsonSlicer}, so
+ * neither Hibernate nor Jackson ever builds the full payload tree.
+ */
+@Service
+public class PayloadService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonSlicer jsonSlicer;
+    private final PayloadCodec codec;
+
+    public PayloadService(JdbcTemplate jdbcTemplate, JsonSlicer jsonSlicer, PayloadCodec codec) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonSlicer = jsonSlicer;
+        this.codec = codec;
+    }
+
+    public Optional<ObjectNode> sliceStepPayload(String executionId, String stepId, PayloadField field,
+                                                 String pointer, int offset, int limit) {
+        // the column name comes from the enum, never from the request
+        String sql = "SELECT " + field.getColumn() + " FROM xray_steps WHERE step_id = ? AND execution_id = ?";
+        return slice(sql, pointer, offset, limit, stepId, executionId);
+    }
+
+    public Optional<ObjectNode> sliceExecutionContext(String executionId, String pointer, int offset, int limit) {
+        String sql = "SELECT context_data FROM xray_executions WHERE execution_id = ?";
+        return slice(sql, pointer, offset, limit, executionId);
+    }
+
+    private Optional<ObjectNode> slice(String sql, String pointer, int offset, int limit, Object... args) {
+        return jdbcTemplate.query(sql, rs -> {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            try (InputStream stored = rs.getBinaryStream(1)) {
+                if (stored == null) {
+                    return Optional.empty();
+                }
+                return jsonSlicer.slice(codec.decode(stored), pointer, offset, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, args);
+    }
+}
@@ -0,0 +1,179 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes executions that fall outside the configured retention, every
+ * {@code interval-ms} while enabled, or on demand.
+ * <p>
+ * Each outcome is expired by its own maximum age, so failures can be kept longer than
+ * successful runs; the newest {@code max-executions} are then kept whatever their
+ * outcome. Each batch is the newest candidates left, read in index order from the
+ * start time indexes, so finding it costs the same however large the backlog is.
+ * Batches go to {@link ExecutionDeletionService#deleteBatch} one at a time, with a
+ * pause between them so a large backlog is worked off without holding up writers.
+ * Each purge ends by {@link ExecutionArchiver#reclaim reclaiming} the archive space of
+ * the archived executions deleted so far.
+ * <p>
+ * Only the jpa backend's tables are purged; enabling retention with another backend
+ * fails on startup.
+ */
+@Component
+@Slf4j
+public class RetentionPurger {
+
+    private final XRayProperties.Retention settings;
+    private final XRayProperties.Backend backend;
+    private final ExecutionDeletionService deletionService;
+    private final ExecutionArchiver archiver;
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile PurgeReport lastReport;
+
+    public RetentionPurger(XRayProperties properties, ExecutionDeletionService deletionService,
+                           ExecutionArchiver archiver, JdbcTemplate jdbcTemplate) {
+        this.settings = properties.getRetention();
+        this.backend = properties.getStorage().getBackend();
+        if (settings.isEnabled()) {
+            UnsupportedBackendException.requireJpa(backend, "Retention");
+        }
+        this.deletionService = deletionService;
+        this.archiver = archiver;
+        this.jdbcTemplate = jdbcTemplate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "xray-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::purgeQuietly, settings.getIntervalMs(),
+                    settings.getIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs one purge now, whether or not background purging is enabled.
+     */
+    public synchronized PurgeReport purge() {
+        UnsupportedBackendException.requireJpa(backend, "Retention");
+        long started = System.nanoTime();
+        PurgeReport report = new PurgeReport();
+        report.setStartedAt(LocalDateTime.now());
+        try {
+            for (ExecutionOutcome outcome : ExecutionOutcome.values()) {
+                Duration maxAge = settings.getMaxAgeByOutcome().getOrDefault(outcome,
+                        outcome != ExecutionOutcome.IN_PROGRESS ? settings.getMaxAge() : null);
+                if (maxAge != null) {
+                    Timestamp cutoff = Timestamp.valueOf(report.getStartedAt().minus(maxAge));
+                    report.expired += deleteAll(report,
+                            "SELECT execution_id FROM xray_executions WHERE outcome = ? AND start_time < ? " +
+                            "ORDER BY outcome, start_time DESC, execution_id DESC LIMIT ?", outcome.name(), cutoff);
+                }
+            }
+            if (settings.getMaxExecutions() > 0) {
+                List<Object[]> newestDropped = jdbcTemplate.query(
+                        "SELECT start_time, execution_id FROM xray_executions " +
+                        "ORDER BY start_time DESC, execution_id DESC LIMIT 1 OFFSET ?",
+                        (rs, row) -> new Object[]{rs.getTimestamp(1), rs.getString(2)},
+                        settings.getMaxExecutions());
+                if (!newestDropped.isEmpty()) {
+                    Object[] bound = newestDropped.get(0);
+                    report.overLimit += deleteAll(report,
+                            "SELECT execution_id FROM xray_executions WHERE start_time <= ? " +
+                            "AND (start_time < ? OR execution_id <= ?) AND outcome <> 'IN_PROGRESS' " +
+                            "ORDER BY start_time DESC, execution_id DESC LIMIT ?", bound[0], bound[0], bound[1]);
+                }
+            }
+            report.setArchive(archiver.reclaim());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.setDurationMs((System.nanoTime() - started) / 1_000_000);
+        lastReport = report;
+        if (report.getDeleted().getExecutions() > 0) {
+            log.info("Retention purge deleted {} executions, {} steps and {} payloads ({} bytes, {} archive bytes) in {} ms",
+                    report.getDeleted().getExecutions(), report.getDeleted().getSteps(),
+                    report.getDeleted().getPayloads(), report.getDeleted().getBytes(),
+                    report.getArchive().getBytes(), report.getDurationMs());
+        }
+        return report;
+    }
+
+    /**
+     * The report of the most recent purge, null if none ran yet.
+     */
+    public PurgeReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Deletes the executions {@code select} returns, batch after batch, until it returns
+     * none. The query takes {@code args} followed by the batch size.
+     *
+     * @return the executions deleted
+     */
+    private long deleteAll(PurgeReport report, String select, Object... args) throws InterruptedException {
+        Object[] queryArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, queryArgs, 0, args.length);
+        queryArgs[args.length] = settings.getBatchSize();
+        long executions = 0;
+        while (true) {
+            List<String> batch = jdbcTemplate.queryForList(select, String.class, queryArgs);
+            if (batch.isEmpty()) {
+                return executions;
+            }
+            ExecutionDeletionService.Deleted deleted = deletionService.deleteBatch(batch);
+            report.getDeleted().add(deleted);
+            report.batches++;
+            executions += deleted.getExecutions();
+            if (batch.size() < settings.getBatchSize()) {
+                return executions;
+            }
+            Thread.sleep(settings.getPauseMs());
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            log.warn("Retention purge failed", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class PurgeReport {
+        private LocalDateTime startedAt;
+        /** Executions deleted for exceeding the maximum age of their outcome. */
+        private long expired;
+        /** Executions deleted beyond the newest {@code max-executions}. */
+        private long overLimit;
+        private ExecutionDeletionService.Deleted deleted = new ExecutionDeletionService.Deleted();
+        /** Archive segments of deleted archived executions, freed at the end of the purge. */
+        private ExecutionArchiver.Reclaimed archive = new ExecutionArchiver.Reclaimed();
+        private int batches;
+        private long durationMs;
+    }
+}
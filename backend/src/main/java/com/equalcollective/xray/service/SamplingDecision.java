@@ -0,0 +1,38 @@
+package com.equalcollective.xray.service;
+
+import lombok.Value;
+
+/**
+ * What {@link SamplingPolicy#atStart} decided for a new execution.
+ */
+@Value
+public class SamplingDecision {
+
+    public enum Mode {
+        /** Write everything as it is recorded. */
+        FULL,
+        /** Keep only the summary row. */
+        SUMMARY,
+        /** Buffer everything and let {@link SamplingPolicy#keepReason} decide at the end. */
+        DEFERRED
+    }
+
+    Mode mode;
+
+    /**
+     * Stored as the execution's sampling reason; may be null.
+     */
+    String reason;
+
+    public static SamplingDecision full(String reason) {
+        return new SamplingDecision(Mode.FULL, reason);
+    }
+
+    public static SamplingDecision summary(String reason) {
+        return new SamplingDecision(Mode.SUMMARY, reason);
+    }
+
+    public static SamplingDecision deferred(String reason) {
+        return new SamplingDecision(Mode.DEFERRED, reason);
+    }
+}
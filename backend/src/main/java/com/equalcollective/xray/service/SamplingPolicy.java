@@ -0,0 +1,27 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * Decides which executions {@link XRayTracer} stores in full. Declare a
+ * {@code @Primary} bean to replace {@link DefaultSamplingPolicy}.
+ */
+public interface SamplingPolicy {
+
+    /**
+     * Head decision, made in {@code startExecution}.
+     */
+    SamplingDecision atStart(String executionId, JsonNode context);
+
+    /**
+     * Tail decision for a {@link SamplingDecision.Mode#DEFERRED DEFERRED} execution
+     * once it has ended. The execution already carries its outcome and end time.
+     *
+     * @return why the execution is kept in full, or null to keep only its summary
+     */
+    String keepReason(XRayExecution execution, List<XRayStep> steps);
+}
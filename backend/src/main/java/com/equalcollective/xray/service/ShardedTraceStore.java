@@ -0,0 +1,684 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.analytics.AnalyticsRecorder;
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.TraceLevel;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link TraceStore} that spreads executions over several independent databases,
+ * selected with {@code xray.storage.backend=sharded}. An execution and all its steps
+ * live on the shard its id hashes to, so reading or deleting one execution touches
+ * exactly one shard.
+ * <p>
+ * A batch is split by shard and each part is written in a transaction of its own, all
+ * in parallel. The whole batch is checked first, so an unknown execution rejects it
+ * before anything is written, but a batch is only atomic per shard: if one shard fails,
+ * the others may have committed their part. Every part is waited for; the parts that
+ * committed are published and counted by analytics, and a {@link PartialBatchException}
+ * names the events that were not written.
+ * <p>
+ * Lists and searches are scattered to every shard with the same criteria, cursor and
+ * limit, and the pages that come back, each newest first, are merged by
+ * (start time, execution id) until the limit is reached.
+ * <p>
+ * Payloads are stored in {@link PayloadCodec} format, so compression settings apply,
+ * but they are not deduplicated.
+ */
+@Component
+@ConditionalOnProperty(prefix = "xray.storage", name = "backend", havingValue = "sharded")
+@Slf4j
+public class ShardedTraceStore implements TraceStore {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS xray_shard (shard_index INT NOT NULL, shard_count INT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS xray_executions (" +
+            "execution_id VARCHAR(255) PRIMARY KEY, start_time TIMESTAMP(9) NOT NULL, end_time TIMESTAMP(9), " +
+            "status VARCHAR(500), outcome VARCHAR(20) NOT NULL, failure_reason VARCHAR(500), " +
+            "pipeline VARCHAR(255), step_count INT, trace_level VARCHAR(20) NOT NULL, " +
+            "sampling_reason VARCHAR(100), context_data VARBINARY)",
+        "CREATE INDEX IF NOT EXISTS idx_executions_start_time ON xray_executions " +
+            "(start_time DESC, execution_id DESC)",
+        "CREATE INDEX IF NOT EXISTS idx_executions_outcome_start ON xray_executions " +
+            "(outcome, start_time DESC, execution_id DESC)",
+        "CREATE INDEX IF NOT EXISTS idx_executions_pipeline_start ON xray_executions " +
+            "(pipeline, start_time DESC, execution_id DESC)",
+        "CREATE TABLE IF NOT EXISTS xray_steps (" +
+            "step_id VARCHAR(255) PRIMARY KEY, execution_id VARCHAR(255) NOT NULL, " +
+            "step_name VARCHAR(255) NOT NULL, seq INT, step_time TIMESTAMP(9) NOT NULL, duration_nanos BIGINT, " +
+            "parent_step_id VARCHAR(255), reasoning VARCHAR, truncated BOOLEAN, error VARCHAR(1000), " +
+            "input_data VARBINARY, output_data VARBINARY, metadata_data VARBINARY)",
+        // shards created before steps recorded errors
+        "ALTER TABLE xray_steps ADD COLUMN IF NOT EXISTS error VARCHAR(1000)",
+        "CREATE INDEX IF NOT EXISTS idx_steps_execution_name ON xray_steps (execution_id, step_name)"
+    };
+
+    private static final String SUMMARY_COLUMNS =
+            "e.execution_id, e.status, e.outcome, e.failure_reason, e.pipeline, e.start_time, e.end_time, " +
+            "COALESCE(e.step_count, (SELECT COUNT(*) FROM xray_steps s WHERE s.execution_id = e.execution_id)), " +
+            "e.trace_level, e.sampling_reason";
+
+    private static final String SUMMARY_SELECT = "SELECT " + SUMMARY_COLUMNS + " FROM xray_executions e ";
+
+    private static final String STEP_COLUMNS =
+            "step_id, seq, step_name, step_time, duration_nanos, parent_step_id, reasoning, truncated, error";
+
+    private static final String STEP_ORDER = " ORDER BY seq ASC NULLS LAST, step_time ASC";
+
+    /** The order of search results: newest first, ties broken by id, also descending. */
+    private static final Comparator<ExecutionSummary> NEWEST_FIRST = Comparator
+            .comparing(ExecutionSummary::getStartTime)
+            .thenComparing(ExecutionSummary::getExecutionId)
+            .reversed();
+
+    private final List<Shard> shards;
+    private final ExecutorService executor;
+    private final PayloadCodec codec;
+    private final JsonSlicer jsonSlicer;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter payloadWriter;
+    private final LiveEventBus liveEvents;
+    private final ExecutionResponseCache responseCache;
+    private final AnalyticsRecorder analytics;
+
+    public ShardedTraceStore(XRayProperties properties,
+                             PayloadCodec codec,
+                             JsonSlicer jsonSlicer,
+                             ObjectMapper objectMapper,
+                             LiveEventBus liveEvents,
+                             ExecutionResponseCache responseCache,
+                             AnalyticsRecorder analytics) {
+        XRayProperties.Shards settings = properties.getStorage().getShards();
+        if (settings.getCount() < 1) {
+            throw new IllegalArgumentException("xray.storage.shards.count must be at least 1");
+        }
+        this.codec = codec;
+        this.jsonSlicer = jsonSlicer;
+        this.objectMapper = objectMapper;
+        this.payloadWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.liveEvents = liveEvents;
+        this.responseCache = responseCache;
+        this.analytics = analytics;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(settings.getCount(), runnable -> {
+            Thread thread = new Thread(runnable, "xray-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Shard> opened = new ArrayList<>(settings.getCount());
+        for (int index = 0; index < settings.getCount(); index++) {
+            opened.add(new Shard(index, settings));
+        }
+        this.shards = List.copyOf(opened);
+        scatter(shard -> {
+            shard.createSchema(shards.size());
+            return null;
+        });
+        log.info("Trace shards opened: {} at {}", shards.size(), settings.getUrl());
+    }
+
+    /**
+     * The shard an execution lives on. {@link String#hashCode} is fixed by the language,
+     * so executions stay where they were written across restarts.
+     */
+    private Shard shardOf(String executionId) {
+        return shards.get(Math.floorMod(executionId.hashCode(), shards.size()));
+    }
+
+    /**
+     * Runs the call on every shard at once and waits for all of them, even once one has
+     * failed, so nothing is still running when a failure is thrown. The first failure
+     * is thrown with the others suppressed.
+     *
+     * @return each shard's result, in shard order
+     */
+    private <T> List<T> scatter(Function<Shard, T> call) {
+        return scatter(shards, call);
+    }
+
+    private <T> List<T> scatter(List<Shard> targets, Function<Shard, T> call) {
+        if (targets.size() == 1) {
+            return Collections.singletonList(call.apply(targets.get(0)));
+        }
+        List<CompletableFuture<T>> futures = targets.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> call.apply(shard), executor))
+                .toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime ? runtime : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Checks the whole batch against every shard it touches before anything is written.
+     * The events of shards that committed are published and evicted even if another
+     * shard failed.
+     *
+     * @throws PartialBatchException if some shards committed and others failed
+     */
+    @Override
+    public void writeBatch(List<TraceEvent> events) {
+        Map<Shard, List<TraceEvent>> byShard = new LinkedHashMap<>();
+        Map<Shard, Set<String>> started = new HashMap<>();
+        Map<Shard, Set<String>> referenced = new HashMap<>();
+        for (TraceEvent event : events) {
+            Shard shard = shardOf(event.getExecutionId());
+            byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(event);
+            Set<String> startedHere = started.computeIfAbsent(shard, key -> new HashSet<>());
+            if (event.getType() == TraceEvent.Type.EXECUTION_STARTED) {
+                if (!startedHere.add(event.getExecutionId())) {
+                    throw new IllegalArgumentException("Execution already exists: " + event.getExecutionId());
+                }
+            } else if (!startedHere.contains(event.getExecutionId())) {
+                referenced.computeIfAbsent(shard, key -> new HashSet<>()).add(event.getExecutionId());
+            }
+        }
+
+        List<Shard> targets = List.copyOf(byShard.keySet());
+        scatter(targets, shard -> {
+            Set<String> existing = shard.existing(started.get(shard));
+            if (!existing.isEmpty()) {
+                throw new IllegalArgumentException("Execution already exists: " + existing.iterator().next());
+            }
+            Set<String> missing = new HashSet<>(referenced.getOrDefault(shard, Set.of()));
+            missing.removeAll(shard.existing(missing));
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Execution not found: " + missing.iterator().next());
+            }
+            return null;
+        });
+
+        Set<Shard> committed = ConcurrentHashMap.newKeySet();
+        try {
+            scatter(targets, shard -> {
+                write(shard, byShard.get(shard));
+                committed.add(shard);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (committed.isEmpty()) {
+                throw e;
+            }
+            Map<Boolean, List<TraceEvent>> written = events.stream()
+                    .collect(Collectors.partitioningBy(event -> committed.contains(shardOf(event.getExecutionId()))));
+            publishAndEvict(written.get(true));
+            throw new PartialBatchException(e, written.get(false));
+        }
+        publishAndEvict(events);
+    }
+
+    private void publishAndEvict(List<TraceEvent> events) {
+        liveEvents.publishAfterCommit(events);
+        responseCache.evictAfterCommit(events.stream().map(TraceEvent::getExecutionId).distinct().toList());
+    }
+
+    /**
+     * Writes one shard's part of a batch, as {@link JpaTraceStore} does: executions that
+     * start and finish within it are inserted with their final status, so only the others
+     * need an UPDATE. Its evaluation steps are counted by the {@link AnalyticsRecorder}
+     * once the shard has committed them.
+     */
+    private void write(Shard shard, List<TraceEvent> events) {
+        Map<String, XRayExecution> started = new LinkedHashMap<>();
+        Map<String, Integer> stepCounts = new HashMap<>();
+        List<Object[]> steps = new ArrayList<>();
+        List<Object[]> finished = new ArrayList<>();
+
+        for (TraceEvent event : events) {
+            switch (event.getType()) {
+                case EXECUTION_STARTED -> {
+                    event.getExecution().promotePipeline();
+                    started.put(event.getExecutionId(), event.getExecution());
+                }
+                case STEP_RECORDED -> {
+                    XRayStep step = event.getStep();
+                    steps.add(new Object[]{step.getStepId(), event.getExecutionId(), step.getStepName(),
+                            step.getSequence(), step.getTimestamp() != null ? step.getTimestamp() : LocalDateTime.now(),
+                            step.getDurationNanos(), step.getParentStepId(), step.getReasoning(),
+                            Boolean.TRUE.equals(step.getTruncated()), step.getError(), encode(step.getInput()),
+                            encode(step.getOutput()), encode(step.getMetadata())});
+                    stepCounts.merge(event.getExecutionId(), 1, Integer::sum);
+                }
+                case EXECUTION_FINISHED -> {
+                    XRayExecution execution = started.get(event.getExecutionId());
+                    if (execution != null) {
+                        execution.finish(event.getEndTime(), event.getOutcome(), event.getFailureReason(),
+                                stepCounts.getOrDefault(event.getExecutionId(), 0));
+                    } else {
+                        finished.add(new Object[]{event.getEndTime(), event.getOutcome().name(),
+                                event.getFailureReason(), event.getStatus(), event.getExecutionId(),
+                                event.getExecutionId()});
+                    }
+                }
+            }
+        }
+
+        List<Object[]> executions = new ArrayList<>(started.size());
+        for (XRayExecution execution : started.values()) {
+            executions.add(new Object[]{execution.getExecutionId(),
+                    execution.getStartTime() != null ? execution.getStartTime() : LocalDateTime.now(),
+                    execution.getEndTime(), execution.getStatus(), execution.getOutcome().name(),
+                    execution.getFailureReason(), execution.getPipeline(), execution.getStepCount(),
+                    (execution.getTraceLevel() != null ? execution.getTraceLevel() : TraceLevel.FULL).name(),
+                    execution.getSamplingReason(), encode(execution.getContext())});
+        }
+        shard.transactions.executeWithoutResult(status -> {
+            shard.jdbc.batchUpdate("INSERT INTO xray_executions (execution_id, start_time, end_time, status, " +
+                    "outcome, failure_reason, pipeline, step_count, trace_level, sampling_reason, context_data) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", executions);
+            shard.jdbc.batchUpdate("INSERT INTO xray_steps (step_id, execution_id, step_name, seq, step_time, " +
+                    "duration_nanos, parent_step_id, reasoning, truncated, error, input_data, output_data, metadata_data) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", steps);
+            shard.jdbc.batchUpdate("UPDATE xray_executions SET end_time = ?, outcome = ?, failure_reason = ?, " +
+                    "status = ?, step_count = CASE WHEN trace_level = 'SUMMARY' THEN step_count " +
+                    "ELSE (SELECT COUNT(*) FROM xray_steps WHERE execution_id = ?) END " +
+                    "WHERE execution_id = ?", finished);
+        });
+        for (TraceEvent event : events) {
+            if (event.getType() == TraceEvent.Type.STEP_RECORDED) {
+                analytics.stepWritten(event.getExecutionId(), event.getStep());
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String executionId) {
+        return !shardOf(executionId).existing(Set.of(executionId)).isEmpty();
+    }
+
+    @Override
+    public boolean isFinished(String executionId) {
+        return Boolean.TRUE.equals(shardOf(executionId).jdbc.query(
+                "SELECT end_time IS NOT NULL FROM xray_executions WHERE execution_id = ?",
+                rs -> rs.next() && rs.getBoolean(1), executionId));
+    }
+
+    @Override
+    public Optional<XRayExecution> findExecution(String executionId) {
+        Shard shard = shardOf(executionId);
+        Optional<XRayExecution> found = shard.jdbc.query("SELECT " + SUMMARY_COLUMNS +
+                ", e.context_data FROM xray_executions e WHERE e.execution_id = ?", (rs, row) -> {
+            ExecutionSummary summary = toSummary(rs);
+            return XRayExecution.builder()
+                    .executionId(summary.getExecutionId())
+                    .startTime(summary.getStartTime())
+                    .endTime(summary.getEndTime())
+                    .status(summary.getStatus())
+                    .outcome(summary.getOutcome())
+                    .failureReason(summary.getFailureReason())
+                    .pipeline(summary.getPipeline())
+                    .stepCount(summary.getEndTime() != null ? (int) summary.getStepCount() : null)
+                    .traceLevel(summary.getTraceLevel())
+                    .samplingReason(summary.getSamplingReason())
+                    .context(readPayload(rs, 11))
+                    .build();
+        }, executionId).stream().findFirst();
+        found.ifPresent(execution -> shard.jdbc.query("SELECT " + STEP_COLUMNS + ", input_data, output_data, " +
+                "metadata_data FROM xray_steps WHERE execution_id = ?" + STEP_ORDER, (rs, row) -> {
+            StepSummary header = toStepSummary(rs);
+            return XRayStep.builder()
+                    .stepId(header.getStepId())
+                    .sequence(header.getSequence())
+                    .stepName(header.getStepName())
+                    .timestamp(header.getTimestamp())
+                    .durationNanos(header.getDurationNanos())
+                    .parentStepId(header.getParentStepId())
+                    .reasoning(header.getReasoning())
+                    .truncated(header.isTruncated() ? true : null)
+                    .error(header.getError())
+                    .input(readPayload(rs, 10))
+                    .output(readPayload(rs, 11))
+                    .metadata(readPayload(rs, 12))
+                    .build();
+        }, executionId).forEach(execution::addStep));
+        return found;
+    }
+
+    @Override
+    public Optional<ExecutionSummary> findSummary(String executionId) {
+        return shardOf(executionId).jdbc.query(SUMMARY_SELECT + "WHERE e.execution_id = ?",
+                (rs, row) -> toSummary(rs), executionId).stream().findFirst();
+    }
+
+    @Override
+    public List<ExecutionSummary> searchSummaries(ExecutionFilter filter, LocalDateTime afterStartTime,
+                                                  String afterExecutionId, int limit) {
+        StringBuilder sql = new StringBuilder(SUMMARY_SELECT + "WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        appendCriteria(filter, sql, params);
+        if (afterStartTime != null && afterExecutionId != null) {
+            // the redundant <= bound gives the index a range to seek on
+            sql.append(" AND e.start_time <= ? AND (e.start_time < ? OR e.execution_id < ?)");
+            Collections.addAll(params, afterStartTime, afterStartTime, afterExecutionId);
+        }
+        sql.append(" ORDER BY e.start_time DESC, e.execution_id DESC LIMIT ?");
+        params.add(limit);
+        Object[] args = params.toArray();
+        RowMapper<ExecutionSummary> mapper = (rs, row) -> toSummary(rs);
+        return merge(scatter(shard -> shard.jdbc.query(sql.toString(), mapper, args)), limit);
+    }
+
+    /**
+     * K-way merge of pages that are each newest first.
+     */
+    private static List<ExecutionSummary> merge(List<List<ExecutionSummary>> pages, int limit) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(head -> head.summary, NEWEST_FIRST));
+        for (List<ExecutionSummary> page : pages) {
+            Iterator<ExecutionSummary> rest = page.iterator();
+            if (rest.hasNext()) {
+                heads.add(new Head(rest.next(), rest));
+            }
+        }
+        List<ExecutionSummary> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            merged.add(head.summary);
+            if (head.rest.hasNext()) {
+                heads.add(new Head(head.rest.next(), head.rest));
+            }
+        }
+        return merged;
+    }
+
+    private static void appendCriteria(ExecutionFilter filter, StringBuilder sql, List<Object> params) {
+        if (filter.getOutcome() != null) {
+            sql.append(" AND e.outcome = ?");
+            params.add(filter.getOutcome().name());
+        }
+        if (filter.getPipeline() != null) {
+            sql.append(" AND e.pipeline = ?");
+            params.add(filter.getPipeline());
+        }
+        if (filter.getFrom() != null) {
+            sql.append(" AND e.start_time >= ?");
+            params.add(filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND e.start_time < ?");
+            params.add(filter.getTo());
+        }
+        if (filter.getMinSteps() != null) {
+            sql.append(" AND e.step_count >= ?");
+            params.add(filter.getMinSteps());
+        }
+        if (filter.getStepName() != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM xray_steps s WHERE s.execution_id = e.execution_id " +
+                       "AND s.step_name = ?)");
+            params.add(filter.getStepName());
+        }
+    }
+
+    @Override
+    public Optional<List<StepSummary>> findStepSummaries(String executionId) {
+        Shard shard = shardOf(executionId);
+        if (shard.existing(Set.of(executionId)).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(shard.jdbc.query("SELECT " + STEP_COLUMNS + " FROM xray_steps WHERE execution_id = ?" +
+                STEP_ORDER, (rs, row) -> toStepSummary(rs), executionId));
+    }
+
+    @Override
+    public Optional<StoredPayloads> findStoredPayloads(String executionId) {
+        Shard shard = shardOf(executionId);
+        List<byte[]> context = shard.jdbc.query("SELECT context_data FROM xray_executions WHERE execution_id = ?",
+                (rs, row) -> rs.getBytes(1), executionId);
+        if (context.isEmpty()) {
+            return Optional.empty();
+        }
+        List<StoredPayloads.Step> steps = shard.jdbc.query("SELECT step_id, step_name, duration_nanos, " +
+                "input_data, output_data, metadata_data FROM xray_steps WHERE execution_id = ?" + STEP_ORDER,
+                (rs, row) -> {
+                    long duration = rs.getLong(3);
+                    return new StoredPayloads.Step(rs.getString(1), rs.getString(2), rs.wasNull() ? null : duration,
+                            new byte[][]{rs.getBytes(4), rs.getBytes(5), rs.getBytes(6)});
+                }, executionId);
+        return Optional.of(new StoredPayloads(context.get(0), steps));
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceStepPayload(String executionId, String stepId, PayloadField field,
+                                                 String pointer, int offset, int limit) {
+        // the column name comes from the enum, never from the request
+        return slice(shardOf(executionId), "SELECT " + field.getColumn() +
+                " FROM xray_steps WHERE step_id = ? AND execution_id = ?", pointer, offset, limit, stepId, executionId);
+    }
+
+    @Override
+    public Optional<ObjectNode> sliceExecutionContext(String executionId, String pointer, int offset, int limit) {
+        return slice(shardOf(executionId), "SELECT context_data FROM xray_executions WHERE execution_id = ?",
+                pointer, offset, limit, executionId);
+    }
+
+    private Optional<ObjectNode> slice(Shard shard, String sql, String pointer, int offset, int limit,
+                                       Object... args) {
+        return shard.jdbc.query(sql, rs -> {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            try (InputStream stored = rs.getBinaryStream(1)) {
+                if (stored == null) {
+                    return Optional.empty();
+                }
+                return jsonSlicer.slice(codec.decode(stored), pointer, offset, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, args);
+    }
+
+    @Override
+    public boolean delete(String executionId) {
+        Shard shard = shardOf(executionId);
+        Boolean deleted = shard.transactions.execute(status -> {
+            shard.jdbc.update("DELETE FROM xray_steps WHERE execution_id = ?", executionId);
+            return shard.jdbc.update("DELETE FROM xray_executions WHERE execution_id = ?", executionId) > 0;
+        });
+        responseCache.evictAfterCommit(List.of(executionId));
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    @Override
+    public ExecutionDeletionService.Deleted deleteAll() {
+        ExecutionDeletionService.Deleted total = new ExecutionDeletionService.Deleted();
+        scatter(shard -> shard.transactions.execute(status -> {
+            ExecutionDeletionService.Deleted deleted = new ExecutionDeletionService.Deleted();
+            deleted.setBytes(shard.jdbc.queryForObject("SELECT COALESCE(SUM(OCTET_LENGTH(input_data)), 0) + " +
+                    "COALESCE(SUM(OCTET_LENGTH(output_data)), 0) + COALESCE(SUM(OCTET_LENGTH(metadata_data)), 0) " +
+                    "FROM xray_steps", Long.class) + shard.jdbc.queryForObject(
+                    "SELECT COALESCE(SUM(OCTET_LENGTH(context_data)), 0) FROM xray_executions", Long.class));
+            deleted.setSteps(shard.jdbc.update("DELETE FROM xray_steps"));
+            deleted.setExecutions(shard.jdbc.update("DELETE FROM xray_executions"));
+            return deleted;
+        })).forEach(total::add);
+        responseCache.clear();
+        return total;
+    }
+
+    private byte[] encode(JsonNode payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return codec.encode(payloadWriter.writeValueAsBytes(payload));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode readPayload(ResultSet rs, int column) throws SQLException {
+        try (InputStream stored = rs.getBinaryStream(column)) {
+            if (stored == null) {
+                return null;
+            }
+            try (InputStream json = codec.decode(stored)) {
+                return objectMapper.readTree(json);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ExecutionSummary toSummary(ResultSet rs) throws SQLException {
+        return new ExecutionSummary(
+                rs.getString(1),
+                rs.getString(2),
+                ExecutionOutcome.valueOf(rs.getString(3)),
+                rs.getString(4),
+                rs.getString(5),
+                rs.getObject(6, LocalDateTime.class),
+                rs.getObject(7, LocalDateTime.class),
+                rs.getLong(8),
+                TraceLevel.valueOf(rs.getString(9)),
+                rs.getString(10));
+    }
+
+    private static StepSummary toStepSummary(ResultSet rs) throws SQLException {
+        return new StepSummary(
+                rs.getString(1),
+                rs.getObject(2, Integer.class),
+                rs.getString(3),
+                rs.getObject(4, LocalDateTime.class),
+                rs.getObject(5, Long.class),
+                rs.getString(6),
+                rs.getString(7),
+                rs.getBoolean(8),
+                rs.getString(9));
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+        shards.forEach(shard -> shard.dataSource.close());
+    }
+
+    /**
+     * The next summary of one shard's page, and the rest of the page.
+     */
+    private static final class Head {
+
+        final ExecutionSummary summary;
+        final Iterator<ExecutionSummary> rest;
+
+        Head(ExecutionSummary summary, Iterator<ExecutionSummary> rest) {
+            this.summary = summary;
+            this.rest = rest;
+        }
+    }
+
+    /**
+     * One shard's database, with a pool and transactions of its own.
+     */
+    private static final class Shard {
+
+        final int index;
+        final HikariDataSource dataSource;
+        final JdbcTemplate jdbc;
+        final TransactionTemplate transactions;
+
+        Shard(int index, XRayProperties.Shards settings) {
+            this.index = index;
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(String.format(settings.getUrl(), index));
+            config.setUsername(settings.getUsername());
+            config.setPassword(settings.getPassword());
+            config.setMaximumPoolSize(settings.getPoolSize());
+            config.setPoolName("xray-shard-" + index);
+            this.dataSource = new HikariDataSource(config);
+            this.jdbc = new JdbcTemplate(dataSource);
+            this.transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        }
+
+        /**
+         * Creates the tables if needed, and refuses a shard written with another shard
+         * count or at another index, whose executions would no longer be found.
+         */
+        void createSchema(int count) {
+            for (String statement : SCHEMA) {
+                jdbc.execute(statement);
+            }
+            List<int[]> recorded = jdbc.query("SELECT shard_index, shard_count FROM xray_shard",
+                    (rs, row) -> new int[]{rs.getInt(1), rs.getInt(2)});
+            if (recorded.isEmpty()) {
+                jdbc.update("INSERT INTO xray_shard (shard_index, shard_count) VALUES (?, ?)", index, count);
+            } else if (recorded.get(0)[0] != index || recorded.get(0)[1] != count) {
+                throw new IllegalStateException("Shard database " + index + " was written as shard " +
+                        recorded.get(0)[0] + " of " + recorded.get(0)[1] + "; xray.storage.shards.count is " + count);
+            }
+        }
+
+        Set<String> existing(Set<String> executionIds) {
+            if (executionIds == null || executionIds.isEmpty()) {
+                return Set.of();
+            }
+            String in = String.join(", ", Collections.nCopies(executionIds.size(), "?"));
+            return new HashSet<>(jdbc.queryForList("SELECT execution_id FROM xray_executions WHERE execution_id IN (" +
+                    in + ")", String.class, executionIds.toArray()));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.equalcollective.xray.service;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * A step that is timed from {@link XRayTracer#step} until {@link #close()}, meant for
+ * try-with-resources:
+ * <pre>
+ * try (Span span = tracer.step(executionId, "apply_filters")) {
+ *     span.input(candidates);
+ *     try (Span child = span.child("rank")) {
+ *         ...
+ *     }
+ *     span.output(selected);
+ * }
+ * </pre>
+ * try-with-resources closes the span before any catch clause runs, so a span cannot
+ * tell on its own that it is closing because of an exception. Catch it inside the span
+ * and pass it to {@link #fail}, and the step is stored as failed:
+ * <pre>
+ * try (Span span = tracer.step(executionId, "select")) {
+ *     try {
+ *         span.output(select(candidates));
+ *     } catch (RuntimeException e) {
+ *         throw span.fail(e);
+ *     }
+ * }
+ * </pre>
+ * The duration comes from the monotonic clock; the step's timestamp is the wall-clock
+ * time it was opened. Payloads set on the span are serialized when it closes, and not
+ * at all if the execution is summarized. A span belongs to the thread that opened it,
+ * but children may be opened and closed on other threads.
+ */
+public class Span implements AutoCloseable {
+
+    /** Longest error description stored, in characters. */
+    static final int MAX_ERROR_LENGTH = 1000;
+
+    private final XRayTracer tracer;
+    private final String executionId;
+    private final String stepId;
+    private final Integer sequence;
+    private final String parentStepId;
+    private final String stepName;
+    private final LocalDateTime timestamp = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final XRayTracer.StepRecord.StepRecordBuilder record;
+    private Consumer<XRayTracer.StepRecord.StepRecordBuilder> deferred;
+    private boolean closed;
+
+    Span(XRayTracer tracer, String executionId, String stepId, Integer sequence,
+         String parentStepId, String stepName) {
+        this.tracer = tracer;
+        this.executionId = executionId;
+        this.stepId = stepId;
+        this.sequence = sequence;
+        this.parentStepId = parentStepId;
+        this.stepName = stepName;
+        this.record = XRayTracer.StepRecord.builder().stepName(stepName);
+    }
+
+    /**
+     * Opens a span nested in this one. It should be closed before this one is.
+     */
+    public Span child(String stepName) {
+        return tracer.step(executionId, stepName, stepId);
+    }
+
+    public Span input(Object input) {
+        record.input(input);
+        return this;
+    }
+
+    public Span output(Object output) {
+        record.output(output);
+        return this;
+    }
+
+    public Span reasoning(String reasoning) {
+        record.reasoning(reasoning);
+        return this;
+    }
+
+    public Span metadata(Object metadata) {
+        record.metadata(metadata);
+        return this;
+    }
+
+    /**
+     * Marks the step as failed with the exception's type and message.
+     *
+     * @return {@code error}, to be rethrown
+     */
+    public <E extends Throwable> E fail(E error) {
+        String description = error.toString();
+        record.error(description.length() > MAX_ERROR_LENGTH
+                ? description.substring(0, MAX_ERROR_LENGTH) : description);
+        return error;
+    }
+
+    /**
+     * Fills in the record when the span closes, and only if the step is going to be
+     * stored; see {@link XRayTracer#recordStep(String, String, Consumer)}.
+     */
+    public Span describe(Consumer<XRayTracer.StepRecord.StepRecordBuilder> step) {
+        this.deferred = step;
+        return this;
+    }
+
+    public String getStepId() {
+        return stepId;
+    }
+
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    /**
+     * Records the step. Closing a span a second time does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long durationNanos = System.nanoTime() - startNanos;
+        tracer.recordSpan(this, durationNanos);
+    }
+
+    Integer getSequence() {
+        return sequence;
+    }
+
+    String getParentStepId() {
+        return parentStepId;
+    }
+
+    /**
+     * The name the span was opened with.
+     */
+    String getStepName() {
+        return stepName;
+    }
+
+    LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Builds the record, running the {@link #describe} callback if there is one.
+     */
+    XRayTracer.StepRecord buildRecord() {
+        if (deferred != null) {
+            deferred.accept(record);
+        }
+        return record.build();
+    }
+}
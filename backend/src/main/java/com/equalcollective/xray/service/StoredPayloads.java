@@ -0,0 +1,33 @@
+package com.equalcollective.xray.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * An execution's context and step payloads as its {@link TraceStore} keeps them, in
+ * {@link com.equalcollective.xray.storage.PayloadCodec} format, so they can be compared
+ * without decoding: equal bytes are equal payloads. Subtrees deduplicated by the
+ * {@link com.equalcollective.xray.storage.PayloadStore} stay references.
+ */
+@Data
+@AllArgsConstructor
+public class StoredPayloads {
+
+    /** Null if the execution has no context. */
+    private byte[] context;
+
+    /** In display order. */
+    private List<Step> steps;
+
+    @Data
+    @AllArgsConstructor
+    public static class Step {
+        private String stepId;
+        private String stepName;
+        private Long durationNanos;
+        /** Stored payloads, indexed by {@link PayloadField#ordinal()}; null where there is none. */
+        private byte[][] payloads;
+    }
+}
@@ -0,0 +1,130 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.ref.Cleaner;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ULID-style ids that sort by the time they were generated: 128 bits written as 26
+ * Crockford base-32 characters after the prefix, so that string order is numeric order.
+ * <pre>
+ *   48 bits  milliseconds since the epoch
+ *   16 bits  node id, {@code xray.tracer.node-id}, or random if unset
+ *   24 bits  slot of the generating thread
+ *   40 bits  sequence within the thread, restarted every millisecond
+ * </pre>
+ * Each thread keeps its own slot and sequence, so generating takes no lock or CAS.
+ * When a thread has ended and been collected, its slot and sequence go to the next new
+ * thread, which carries on from the last id of that slot, so threads cannot produce
+ * the same id even when millions of short-lived ones come and go. Only while more than
+ * 16 million threads hold slots at once does a new thread share a random one; it then
+ * starts each millisecond's sequence at a random offset, which makes a repeat
+ * improbable rather than impossible. Within a thread ids strictly increase, even if the
+ * clock steps back. Inserted as primary keys they land at the right edge of the index
+ * instead of on random pages.
+ */
+@Component
+@Slf4j
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 26;
+    private static final int THREAD_BITS = 24;
+    private static final int SEQUENCE_BITS = 40;
+    private static final int SLOTS = 1 << THREAD_BITS;
+
+    /** Hands the slot of a collected thread back. Its thread is a daemon. */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final long node;
+    /** Slots handed out for the first time so far, at most {@link #SLOTS}. */
+    private final AtomicInteger assigned = new AtomicInteger();
+    /** Slots of threads that have ended and been collected, with their last id. */
+    private final Queue<State> released = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean exhaustedLogged = new AtomicBoolean();
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(this::acquire);
+
+    public TimeOrderedIdGenerator(XRayProperties properties) {
+        Integer configured = properties.getTracer().getNodeId();
+        if (configured != null && (configured < 0 || configured > 0xFFFF)) {
+            throw new IllegalArgumentException("xray.tracer.node-id must be between 0 and 65535");
+        }
+        this.node = configured != null ? configured : ThreadLocalRandom.current().nextInt(1 << 16);
+        log.info("Generating time-ordered ids as node {}", node);
+    }
+
+    @Override
+    public String next(String prefix) {
+        State current = state.get();
+        long millis = System.currentTimeMillis();
+        if (millis > current.millis) {
+            current.millis = millis;
+            current.sequence = current.shared ? ThreadLocalRandom.current().nextLong(1L << (SEQUENCE_BITS - 1)) : 0;
+        } else if (++current.sequence >>> SEQUENCE_BITS != 0) {
+            // a trillion ids in one millisecond: borrow the next one
+            current.millis++;
+            current.sequence = 0;
+        }
+        long high = current.millis << 16 | node;
+        long low = (long) current.slot << SEQUENCE_BITS | current.sequence;
+        return prefix + encode(high, low);
+    }
+
+    /**
+     * A slot for the calling thread, released when the thread is collected. The state
+     * must not refer to the thread, or it would never be.
+     */
+    private State acquire() {
+        State acquired = released.poll();
+        if (acquired == null) {
+            int slot = assigned.getAndUpdate(count -> Math.min(count + 1, SLOTS));
+            if (slot < SLOTS) {
+                acquired = new State(slot, false);
+            } else {
+                if (exhaustedLogged.compareAndSet(false, true)) {
+                    log.warn("All {} id slots are held by live threads, new threads share random slots", SLOTS);
+                }
+                acquired = new State(ThreadLocalRandom.current().nextInt(SLOTS), true);
+            }
+        }
+        State owned = acquired;
+        if (!owned.shared) {
+            CLEANER.register(Thread.currentThread(), () -> released.add(owned));
+        }
+        return owned;
+    }
+
+    /**
+     * Base 32, most significant first; the 2 bits above the 128 are always zero.
+     */
+    private static String encode(long high, long low) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = low >>> 5 | high << 59;
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static final class State {
+
+        final int slot;
+        /** Whether other threads may hold the same slot. */
+        final boolean shared;
+        long millis;
+        long sequence;
+
+        State(int slot, boolean shared) {
+            this.slot = slot;
+            this.shared = shared;
+        }
+    }
+}
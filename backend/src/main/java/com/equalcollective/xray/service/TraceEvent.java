@@ -0,0 +1,85 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A single unit of tracer output: an execution starting, a step being recorded,
+ * or an execution reaching its final status.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TraceEvent {
+
+    private Type type;
+    private String executionId;
+
+    /** Set for EXECUTION_STARTED. */
+    private XRayExecution execution;
+
+    /** Set for STEP_RECORDED. */
+    private XRayStep step;
+
+    /** Set for EXECUTION_FINISHED. */
+    private LocalDateTime endTime;
+    private ExecutionOutcome outcome;
+    private String failureReason;
+
+    public static TraceEvent started(XRayExecution execution) {
+        return TraceEvent.builder()
+                .type(Type.EXECUTION_STARTED)
+                .executionId(execution.getExecutionId())
+                .execution(execution)
+                .build();
+    }
+
+    public static TraceEvent stepRecorded(String executionId, XRayStep step) {
+        return TraceEvent.builder()
+                .type(Type.STEP_RECORDED)
+                .executionId(executionId)
+                .step(step)
+                .build();
+    }
+
+    public static TraceEvent completed(String executionId, LocalDateTime endTime) {
+        return finished(executionId, endTime, ExecutionOutcome.COMPLETED, null);
+    }
+
+    public static TraceEvent failed(String executionId, LocalDateTime endTime, String reason) {
+        return finished(executionId, endTime, ExecutionOutcome.FAILED, reason);
+    }
+
+    private static TraceEvent finished(String executionId, LocalDateTime endTime,
+                                       ExecutionOutcome outcome, String failureReason) {
+        return TraceEvent.builder()
+                .type(Type.EXECUTION_FINISHED)
+                .executionId(executionId)
+                .endTime(endTime)
+                .outcome(outcome)
+                .failureReason(failureReason)
+                .build();
+    }
+
+    public String getStatus() {
+        return XRayExecution.describe(outcome, failureReason);
+    }
+
+    public boolean isLifecycle() {
+        return type != Type.STEP_RECORDED;
+    }
+
+    public enum Type {
+        EXECUTION_STARTED,
+        STEP_RECORDED,
+        EXECUTION_FINISHED
+    }
+}
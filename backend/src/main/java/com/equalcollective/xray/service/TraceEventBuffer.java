@@ -0,0 +1,194 @@
+package com.equalcollective.xray.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded FIFO of trace events behind the {@link AsyncTraceWriter}. Besides the usual
+ * queue operations it can discard its oldest step event in constant time: step entries
+ * are also linked to each other, so the oldest one is found without scanning past the
+ * lifecycle events in front of it, and unlinked without shifting the rest.
+ */
+class TraceEventBuffer {
+
+    private static final class Node {
+        final TraceEvent event;
+        Node prev;
+        Node next;
+        /** Neighbours among the step entries only; unused for lifecycle events. */
+        Node prevStep;
+        Node nextStep;
+
+        Node(TraceEvent event) {
+            this.event = event;
+        }
+    }
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private Node head;
+    private Node tail;
+    private Node oldestStep;
+    private Node newestStep;
+    private int size;
+
+    TraceEventBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(TraceEvent event) {
+        lock.lock();
+        try {
+            if (size == capacity) {
+                return false;
+            }
+            link(event);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the event, waiting for room if the buffer is full.
+     */
+    void put(TraceEvent event) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == capacity) {
+                notFull.await();
+            }
+            link(event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards the oldest buffered step event.
+     *
+     * @return false if only lifecycle events are buffered
+     */
+    boolean removeOldestStep() {
+        lock.lock();
+        try {
+            if (oldestStep == null) {
+                return false;
+            }
+            unlink(oldestStep);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest event, or null if none arrived within the timeout
+     */
+    TraceEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            Node first = head;
+            unlink(first);
+            return first.event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code max} of the oldest events to {@code into}, without waiting.
+     */
+    void drainTo(List<TraceEvent> into, int max) {
+        lock.lock();
+        try {
+            for (int i = 0; i < max && head != null; i++) {
+                Node first = head;
+                unlink(first);
+                into.add(first.event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private void link(TraceEvent event) {
+        Node node = new Node(event);
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+            node.prev = tail;
+        }
+        tail = node;
+        if (!event.isLifecycle()) {
+            if (newestStep == null) {
+                oldestStep = node;
+            } else {
+                newestStep.nextStep = node;
+                node.prevStep = newestStep;
+            }
+            newestStep = node;
+        }
+        size++;
+        notEmpty.signal();
+    }
+
+    private void unlink(Node node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        if (!node.event.isLifecycle()) {
+            if (node.prevStep == null) {
+                oldestStep = node.nextStep;
+            } else {
+                node.prevStep.nextStep = node.nextStep;
+            }
+            if (node.nextStep == null) {
+                newestStep = node.prevStep;
+            } else {
+                node.nextStep.prevStep = node.prevStep;
+            }
+        }
+        size--;
+        notFull.signal();
+    }
+}
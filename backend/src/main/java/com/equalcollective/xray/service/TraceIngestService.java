@@ -0,0 +1,205 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.analytics.AnalyticsRecorder;
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk ingestion of trace events produced outside this JVM.
+ * <p>
+ * The body is a stream of JSON objects (NDJSON), one event each:
+ * <pre>
+ * {"type":"start","executionId":"exec_1","context":{...}}
+ * {"type":"step","executionId":"exec_1","stepName":"...","input":{...},"output":{...},"reasoning":"..."}
+ * {"type":"step","executionId":"exec_1","stepId":"s2","sequence":1,"parentStepId":"s1","durationNanos":1500000,...}
+ * {"type":"step","executionId":"exec_1","stepName":"...","error":"TimeoutException: catalog did not answer",...}
+ * {"type":"end","executionId":"exec_1"}
+ * {"type":"fail","executionId":"exec_2","reason":"..."}
+ * </pre>
+ * Events are parsed one at a time with a streaming parser and written in batches of
+ * {@code xray.ingest.batch-size}, so only the current batch is ever held in memory.
+ * Batches are committed as they fill; a malformed event stops the stream and
+ * everything before its batch stays committed. The result counts only committed
+ * events and gives the line of the last one, so a client whose stream was rejected
+ * can resend from the line after it. Steps without an id get one from the
+ * {@link IdGenerator}.
+ * Each committed batch is passed to the {@link AnalyticsRecorder}.
+ */
+@Service
+@Slf4j
+public class TraceIngestService {
+
+    private final TraceStore traceStore;
+    private final ObjectMapper objectMapper;
+    private final AnalyticsRecorder analytics;
+    private final IdGenerator idGenerator;
+    private final int batchSize;
+
+    public TraceIngestService(TraceStore traceStore,
+                              ObjectMapper objectMapper,
+                              AnalyticsRecorder analytics,
+                              IdGenerator idGenerator,
+                              XRayProperties properties) {
+        this.traceStore = traceStore;
+        this.objectMapper = objectMapper;
+        this.analytics = analytics;
+        this.idGenerator = idGenerator;
+        this.batchSize = properties.getIngest().getBatchSize();
+    }
+
+    public IngestResult ingest(InputStream body) throws IOException {
+        IngestResult result = new IngestResult();
+        ingest(body, result);
+        return result;
+    }
+
+    /**
+     * Ingests into {@code result}, which holds what was committed even if the stream
+     * is rejected part way.
+     */
+    public void ingest(InputStream body, IngestResult result) throws IOException {
+        long started = System.nanoTime();
+        List<TraceEvent> batch = new ArrayList<>(batchSize);
+        long batchEndLine = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected a JSON object at line "
+                            + parser.currentLocation().getLineNr());
+                }
+                long line = parser.currentLocation().getLineNr();
+                JsonNode node = objectMapper.readTree(parser);
+                TraceEvent event = toEvent(node, line);
+                batch.add(event);
+                batchEndLine = parser.currentLocation().getLineNr();
+
+                if (batch.size() >= batchSize) {
+                    flush(batch, batchEndLine, result);
+                }
+            }
+            flush(batch, batchEndLine, result);
+        } finally {
+            result.setDurationMs((System.nanoTime() - started) / 1_000_000);
+        }
+
+        log.info("Ingested {} events ({} steps) in {} batches, {}ms",
+                result.getEvents(), result.getSteps(), result.getBatches(), result.getDurationMs());
+    }
+
+    private void flush(List<TraceEvent> batch, long endLine, IngestResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            traceStore.writeBatch(batch);
+        } catch (PartialBatchException e) {
+            // some shards committed their part: count it, but the batch's lines must be resent
+            Set<TraceEvent> unwritten = Collections.newSetFromMap(new IdentityHashMap<>());
+            unwritten.addAll(e.getUnwritten());
+            batch.stream().filter(event -> !unwritten.contains(event)).forEach(result::count);
+            throw e;
+        }
+        analytics.recordAll(batch);
+        batch.forEach(result::count);
+        result.setBatches(result.getBatches() + 1);
+        result.setLastCommittedLine(endLine);
+        batch.clear();
+    }
+
+    private TraceEvent toEvent(JsonNode node, long line) {
+        String type = node.path("type").asText();
+        String executionId = node.path("executionId").asText(null);
+        if (executionId == null || executionId.isEmpty()) {
+            throw new IllegalArgumentException("Missing executionId at line " + line);
+        }
+        LocalDateTime timestamp = parseTimestamp(node, line);
+
+        return switch (type) {
+            case "start" -> TraceEvent.started(XRayExecution.builder()
+                    .executionId(executionId)
+                    .startTime(timestamp)
+                    .status("IN_PROGRESS")
+                    .context(node.get("context"))
+                    .build());
+            case "step" -> {
+                if (!node.hasNonNull("stepName")) {
+                    throw new IllegalArgumentException("Missing stepName at line " + line);
+                }
+                yield TraceEvent.stepRecorded(executionId, XRayStep.builder()
+                        .stepId(node.hasNonNull("stepId") ? node.get("stepId").asText()
+                                : idGenerator.next("step_"))
+                        .stepName(node.get("stepName").asText())
+                        .sequence(node.hasNonNull("sequence") ? node.get("sequence").asInt() : null)
+                        .timestamp(timestamp)
+                        .durationNanos(node.hasNonNull("durationNanos") ? node.get("durationNanos").asLong() : null)
+                        .parentStepId(node.path("parentStepId").asText(null))
+                        .input(node.get("input"))
+                        .output(node.get("output"))
+                        .reasoning(node.path("reasoning").asText(null))
+                        .metadata(node.get("metadata"))
+                        .error(node.path("error").asText(null))
+                        .build());
+            }
+            case "end" -> TraceEvent.completed(executionId, timestamp);
+            case "fail" -> TraceEvent.failed(executionId, timestamp, node.path("reason").asText(""));
+            default -> throw new IllegalArgumentException(
+                    "Unknown event type '" + type + "' at line " + line);
+        };
+    }
+
+    private LocalDateTime parseTimestamp(JsonNode node, long line) {
+        if (!node.hasNonNull("timestamp")) {
+            return LocalDateTime.now();
+        }
+        try {
+            return LocalDateTime.parse(node.get("timestamp").asText());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid timestamp at line " + line);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IngestResult {
+        private long events;
+        private long executions;
+        private long steps;
+        private long finished;
+        private long batches;
+        private long durationMs;
+        /** Line of the last event committed with its whole batch, 0 if none. */
+        private long lastCommittedLine;
+
+        void count(TraceEvent event) {
+            events++;
+            switch (event.getType()) {
+                case EXECUTION_STARTED -> executions++;
+                case STEP_RECORDED -> steps++;
+                case EXECUTION_FINISHED -> finished++;
+            }
+        }
+    }
+}
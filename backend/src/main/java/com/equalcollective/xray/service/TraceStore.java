@@ -0,0 +1,140 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import com.equalcollective.xray.repository.ExecutionFilter;
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where traces are kept: writes from the tracer and bulk ingestion, and the reads
+ * behind the execution API. One implementation is active, chosen by
+ * {@code xray.storage.backend}: {@link JpaTraceStore} (default), {@link LogTraceStore} or
+ * {@link ShardedTraceStore}.
+ * <p>
+ * Implementations publish what they write to the {@link LiveEventBus} and evict the
+ * executions it touched from the {@link ExecutionResponseCache}.
+ */
+public interface TraceStore extends TraceWriter {
+
+    /** Summaries read at a time by {@link #forEachExecution}. */
+    int PAGE_SIZE = 500;
+
+    /**
+     * Writes events in order, all or none.
+     *
+     * @throws IllegalArgumentException if a step or end refers to an execution that was
+     * never started
+     */
+    void writeBatch(List<TraceEvent> events);
+
+    @Override
+    default void write(TraceEvent event) {
+        writeBatch(List.of(event));
+    }
+
+    @Override
+    default void writeAll(List<TraceEvent> events) {
+        writeBatch(events);
+    }
+
+    boolean exists(String executionId);
+
+    /**
+     * Whether the execution has ended, so responses about it no longer change.
+     */
+    boolean isFinished(String executionId);
+
+    /**
+     * The execution with its context and every step, payloads included.
+     */
+    Optional<XRayExecution> findExecution(String executionId);
+
+    Optional<ExecutionSummary> findSummary(String executionId);
+
+    /**
+     * Summaries matching the filter, newest first by (start time, execution id).
+     * When a cursor position is given, only executions strictly after it are returned.
+     */
+    List<ExecutionSummary> searchSummaries(ExecutionFilter filter,
+                                           LocalDateTime afterStartTime,
+                                           String afterExecutionId,
+                                           int limit);
+
+    /**
+     * Step headers in display order, or empty if there is no such execution.
+     */
+    Optional<List<StepSummary>> findStepSummaries(String executionId);
+
+    /**
+     * One payload of one step, narrowed and paged by {@link JsonSlicer}.
+     */
+    Optional<ObjectNode> sliceStepPayload(String executionId, String stepId, PayloadField field,
+                                          String pointer, int offset, int limit);
+
+    Optional<ObjectNode> sliceExecutionContext(String executionId, String pointer, int offset, int limit);
+
+    /**
+     * The execution's context and step payloads as stored, for comparing them without
+     * decoding, or empty if there is no such execution.
+     */
+    Optional<StoredPayloads> findStoredPayloads(String executionId);
+
+    /**
+     * Passes every execution matching the filter to the visitor, newest first by
+     * (start time, execution id), without holding them all in memory. This default
+     * reads them a page of summaries at a time and each through {@link #findExecution}.
+     *
+     * @param includeSteps whether the visitor is given the execution's steps
+     * @return the number of executions visited
+     */
+    default long forEachExecution(ExecutionFilter filter, boolean includeSteps, ExecutionVisitor visitor)
+            throws IOException {
+        long count = 0;
+        LocalDateTime afterStartTime = null;
+        String afterExecutionId = null;
+        while (true) {
+            List<ExecutionSummary> page = searchSummaries(filter, afterStartTime, afterExecutionId, PAGE_SIZE);
+            for (ExecutionSummary summary : page) {
+                // deleted since the page was read
+                Optional<XRayExecution> execution = findExecution(summary.getExecutionId());
+                if (execution.isPresent()) {
+                    visitor.visit(execution.get(), includeSteps
+                            ? execution.get().getSteps().iterator() : Collections.emptyIterator());
+                    count++;
+                }
+            }
+            if (page.size() < PAGE_SIZE) {
+                return count;
+            }
+            ExecutionSummary last = page.get(page.size() - 1);
+            afterStartTime = last.getStartTime();
+            afterExecutionId = last.getExecutionId();
+        }
+    }
+
+    /**
+     * @return false if there is no such execution
+     */
+    boolean delete(String executionId);
+
+    ExecutionDeletionService.Deleted deleteAll();
+
+    @FunctionalInterface
+    interface ExecutionVisitor {
+        /**
+         * @param execution the execution with its context; its step list is not used
+         * @param steps its steps in display order, read as they are iterated; empty
+         * unless they were asked for
+         */
+        void visit(XRayExecution execution, Iterator<XRayStep> steps) throws IOException;
+    }
+}
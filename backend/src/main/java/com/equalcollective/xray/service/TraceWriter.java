@@ -0,0 +1,19 @@
+package com.equalcollective.xray.service;
+
+import java.util.List;
+
+/**
+ * Destination for the events produced by {@link XRayTracer}.
+ */
+public interface TraceWriter {
+
+    void write(TraceEvent event);
+
+    /**
+     * Writes events that are already complete, such as a buffered execution that
+     * sampling decided to keep. Implementations may write them as one batch.
+     */
+    default void writeAll(List<TraceEvent> events) {
+        events.forEach(this::write);
+    }
+}
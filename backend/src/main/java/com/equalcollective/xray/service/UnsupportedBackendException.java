@@ -0,0 +1,28 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.config.XRayProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A feature that reads the main database's execution and step tables directly was
+ * used while {@code xray.storage.backend} keeps traces elsewhere, where it would
+ * silently see no executions. Answered with 501 Not Implemented.
+ */
+@ResponseStatus(HttpStatus.NOT_IMPLEMENTED)
+public class UnsupportedBackendException extends UnsupportedOperationException {
+
+    public UnsupportedBackendException(String feature, XRayProperties.Backend backend) {
+        super(feature + " reads the main database and is not available with xray.storage.backend="
+                + backend.name().toLowerCase());
+    }
+
+    /**
+     * @throws UnsupportedBackendException unless traces are kept by the jpa backend
+     */
+    public static void requireJpa(XRayProperties.Backend backend, String feature) {
+        if (backend != XRayProperties.Backend.JPA) {
+            throw new UnsupportedBackendException(feature, backend);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.repository.ExecutionSummary;
+import com.equalcollective.xray.repository.StepSummary;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Lays the steps of an execution out on a timeline and marks its critical path.
+ * <p>
+ * Each step starts at its timestamp and lasts its measured duration; steps recorded
+ * without a span have no duration and show up as points. The critical path is found
+ * the usual way for span trees: among siblings, take the one that ends last, then the
+ * one that ends last before that one starts, and so on, descending into the children
+ * of every step taken. Top-level steps are the children of the execution itself.
+ */
+@Service
+public class WaterfallService {
+
+    private final TraceStore traceStore;
+
+    public WaterfallService(TraceStore traceStore) {
+        this.traceStore = traceStore;
+    }
+
+    public Optional<Waterfall> waterfall(String executionId) {
+        Optional<ExecutionSummary> execution = traceStore.findSummary(executionId);
+        if (execution.isEmpty()) {
+            return Optional.empty();
+        }
+        LocalDateTime startTime = execution.get().getStartTime();
+        List<StepSummary> steps = traceStore.findStepSummaries(executionId).orElse(List.of());
+
+        Map<String, Bar> bars = new HashMap<>();
+        for (StepSummary step : steps) {
+            long offset = Duration.between(startTime, step.getTimestamp()).toNanos();
+            bars.put(step.getStepId(), new Bar(step.getStepId(), step.getStepName(),
+                    step.getParentStepId(), 0, offset, step.getDurationNanos(), false));
+        }
+
+        // steps whose parent is missing (e.g. recorded elsewhere) are treated as top-level
+        Map<String, List<Bar>> children = new HashMap<>();
+        List<Bar> roots = new ArrayList<>();
+        for (StepSummary step : steps) {
+            Bar bar = bars.get(step.getStepId());
+            if (bar.getParentStepId() != null && bars.containsKey(bar.getParentStepId())) {
+                children.computeIfAbsent(bar.getParentStepId(), id -> new ArrayList<>()).add(bar);
+            } else {
+                roots.add(bar);
+            }
+        }
+
+        markCriticalPath(roots, Long.MAX_VALUE, children);
+
+        List<Bar> ordered = new ArrayList<>(bars.size());
+        appendInStartOrder(roots, 0, children, ordered);
+        if (ordered.size() < bars.size()) {
+            // only possible when ingested parent ids form a cycle; list those steps flat
+            Set<String> placed = new HashSet<>();
+            ordered.forEach(bar -> placed.add(bar.getStepId()));
+            steps.stream().filter(step -> !placed.contains(step.getStepId()))
+                    .forEach(step -> ordered.add(bars.get(step.getStepId())));
+        }
+
+        Long totalNanos = execution.get().getEndTime() != null
+                ? Duration.between(startTime, execution.get().getEndTime()).toNanos()
+                : null;
+        return Optional.of(new Waterfall(executionId, startTime, totalNanos, ordered));
+    }
+
+    private void markCriticalPath(List<Bar> siblings, long limit, Map<String, List<Bar>> children) {
+        List<Bar> byEnd = new ArrayList<>(siblings);
+        byEnd.sort(Comparator.comparingLong(Bar::endNanos).reversed());
+        long cursor = limit;
+        for (Bar bar : byEnd) {
+            if (bar.endNanos() > cursor) {
+                continue;
+            }
+            bar.setCriticalPath(true);
+            markCriticalPath(children.getOrDefault(bar.getStepId(), List.of()), bar.endNanos(), children);
+            cursor = bar.getOffsetNanos();
+        }
+    }
+
+    private void appendInStartOrder(List<Bar> siblings, int depth, Map<String, List<Bar>> children, List<Bar> out) {
+        List<Bar> byStart = new ArrayList<>(siblings);
+        byStart.sort(Comparator.comparingLong(Bar::getOffsetNanos));
+        for (Bar bar : byStart) {
+            bar.setDepth(depth);
+            out.add(bar);
+            appendInStartOrder(children.getOrDefault(bar.getStepId(), List.of()), depth + 1, children, out);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Waterfall {
+        private String executionId;
+        private LocalDateTime startTime;
+        /** Null while the execution is in progress. */
+        private Long totalNanos;
+        /** Depth-first, children after their parent, siblings by start. */
+        private List<Bar> steps;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bar {
+        private String stepId;
+        private String stepName;
+        private String parentStepId;
+        private int depth;
+        /** Start relative to the execution start. */
+        private long offsetNanos;
+        /** Null for steps recorded without a span. */
+        private Long durationNanos;
+        private boolean criticalPath;
+
+        long endNanos() {
+            return offsetNanos + (durationNanos != null ? durationNanos : 0);
+        }
+    }
+}
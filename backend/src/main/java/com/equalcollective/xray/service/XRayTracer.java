@@ -1,35 +1,103 @@
 package com.equalcollective.xray.service;
 
+import com.equalcollective.xray.analytics.AnalyticsRecorder;
+import com.equalcollective.xray.config.XRayProperties;
+import com.equalcollective.xray.model.ExecutionOutcome;
+import com.equalcollective.xray.model.TraceLevel;
 import com.equalcollective.xray.model.XRayExecution;
 import com.equalcollective.xray.model.XRayStep;
-import com.equalcollective.xray.repository.XRayExecutionRepository;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Entry point for instrumented pipelines. Payloads are converted to JSON on the
+ * caller's thread so later mutation of the caller's objects cannot leak into the
+ * trace, within the size budgets enforced by {@link PayloadSerializer}; persistence
+ * is delegated to the configured {@link TraceWriter}, which is either synchronous
+ * (default) or the async write-behind buffer. Execution and step ids come from the
+ * {@link IdGenerator}.
+ * <p>
+ * The {@link SamplingPolicy} decides per execution whether it is written in full.
+ * Executions that are not stay in memory until they end: summarized ones only count
+ * their steps, deferred ones buffer them until the tail decision. Either way,
+ * executions that are not kept are stored as a single summary row.
+ * <p>
+ * Execution outcomes and span durations also go to the {@link AnalyticsRecorder},
+ * whatever sampling decides, so latency and failure analytics cover every execution.
+ * <p>
+ * Executions that are never ended would otherwise be tracked forever. Those with no
+ * tracer call for {@code abandon-after-ms} are dropped by a background sweep; ones held
+ * in memory for sampling are written as a summary row, still in progress, and their
+ * later steps are dropped. An abandoned execution that is ended later is finished in
+ * storage like any other.
+ */
 @Service
 @Slf4j
 public class XRayTracer {
 
-    private final XRayExecutionRepository executionRepository;
-    private final ObjectMapper objectMapper;
+    private final TraceWriter traceWriter;
+    private final PayloadSerializer payloadSerializer;
+    private final SamplingPolicy samplingPolicy;
+    private final XRayProperties.Tail tailSettings;
+    private final AnalyticsRecorder analytics;
+    private final IdGenerator idGenerator;
 
-    public XRayTracer(XRayExecutionRepository executionRepository,
-                      ObjectMapper objectMapper) {
-        this.executionRepository = executionRepository;
-        this.objectMapper = objectMapper;
+    /**
+     * Executions that are summarized or deferred, by id. Fully traced ones are not tracked.
+     */
+    private final Map<String, SampledExecution> sampled = new ConcurrentHashMap<>();
+
+    /**
+     * Every execution in progress, by id, with its next step sequence number. Any number
+     * of threads may record into one execution; each step gets its own number.
+     */
+    private final Map<String, OpenExecution> open = new ConcurrentHashMap<>();
+
+    private final long abandonAfterNanos;
+    private final ScheduledExecutorService sweeper;
+
+    public XRayTracer(TraceWriter traceWriter,
+                      PayloadSerializer payloadSerializer,
+                      SamplingPolicy samplingPolicy,
+                      AnalyticsRecorder analytics,
+                      IdGenerator idGenerator,
+                      XRayProperties properties) {
+        this.traceWriter = traceWriter;
+        this.payloadSerializer = payloadSerializer;
+        this.samplingPolicy = samplingPolicy;
+        this.tailSettings = properties.getTracer().getSampling().getTail();
+        this.analytics = analytics;
+        this.idGenerator = idGenerator;
+        long abandonAfterMs = properties.getTracer().getAbandonAfterMs();
+        this.abandonAfterNanos = TimeUnit.MILLISECONDS.toNanos(abandonAfterMs);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "xray-tracer-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (abandonAfterMs > 0) {
+            long interval = Math.min(Math.max(abandonAfterMs / 4, 1000), 60_000);
+            sweeper.scheduleWithFixedDelay(this::abandonQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
-    @Transactional
     public String startExecution(Object context) {
-        String executionId = "exec_" + UUID.randomUUID().toString().substring(0, 8);
+        String executionId = idGenerator.next("exec_");
 
-        JsonNode contextJson = objectMapper.valueToTree(context);
+        JsonNode contextJson = payloadSerializer.toTree(context, payloadSerializer.newBudget());
 
         XRayExecution execution = XRayExecution.builder()
                 .executionId(executionId)
@@ -37,61 +105,276 @@ public class XRayTracer {
                 .status("IN_PROGRESS")
                 .context(contextJson)
                 .build();
+        execution.promotePipeline();
+        analytics.executionStarted(executionId, execution.getPipeline(), execution.getStartTime());
+
+        SamplingDecision decision = samplingPolicy.atStart(executionId, contextJson);
+        if (decision.getMode() == SamplingDecision.Mode.DEFERRED
+                && sampled.size() >= tailSettings.getMaxPendingExecutions()) {
+            log.warn("{} executions already buffered for tail sampling, summarizing {}",
+                    sampled.size(), executionId);
+            decision = SamplingDecision.summary("tail-capacity");
+        }
 
-        executionRepository.save(execution);
-        log.info("Started execution: {}", executionId);
+        execution.setSamplingReason(decision.getReason());
+        open.put(executionId, new OpenExecution());
+        if (decision.getMode() == SamplingDecision.Mode.FULL) {
+            traceWriter.write(TraceEvent.started(execution));
+        } else {
+            boolean deferred = decision.getMode() == SamplingDecision.Mode.DEFERRED;
+            if (!deferred) {
+                // a summary row never stores the context, so do not hold on to it
+                execution.setContext(null);
+            }
+            sampled.put(executionId, new SampledExecution(execution, deferred));
+        }
+        log.info("Started execution: {} ({})", executionId, decision.getMode());
 
         return executionId;
     }
 
-    @Transactional
+    /**
+     * Records a step whose record is only built if it is going to be stored. The
+     * consumer gets a builder with the step name already set; for executions that
+     * sampling keeps only as a summary it is never called, so formatting reasoning
+     * strings and assembling payloads costs nothing there.
+     * <pre>
+     * tracer.recordStep(executionId, "apply_filters", step -&gt; step
+     *         .input(...)
+     *         .reasoning(String.format(...)));
+     * </pre>
+     */
+    public void recordStep(String executionId, String stepName, Consumer<StepRecord.StepRecordBuilder> step) {
+        if (countIfSummarized(executionId)) {
+            return;
+        }
+        StepRecord.StepRecordBuilder builder = StepRecord.builder().stepName(stepName);
+        step.accept(builder);
+        recordStep(executionId, builder.build());
+    }
+
+    /**
+     * Whether steps recorded for this execution are stored. False once sampling has
+     * decided to keep only its summary; callers can use it to skip trace-only work.
+     */
+    public boolean isRecording(String executionId) {
+        SampledExecution pending = sampled.get(executionId);
+        return pending == null || pending.isBuffering();
+    }
+
+    /**
+     * Records one step against the execution id. Only the new step is written, so the
+     * cost of a step does not grow with the number of steps already recorded.
+     * Steps of summarized executions are only counted, without serializing them.
+     */
     public void recordStep(String executionId, StepRecord stepRecord) {
-        XRayExecution execution = executionRepository.findById(executionId)
-                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + executionId));
+        if (countIfSummarized(executionId)) {
+            return;
+        }
+        record(executionId, newStepId(), nextSequence(executionId), null, LocalDateTime.now(), null, stepRecord);
+    }
+
+    /**
+     * Opens a timed step that is recorded when the returned span is closed.
+     */
+    public Span step(String executionId, String stepName) {
+        return step(executionId, stepName, null);
+    }
 
-        String stepId = "step_" + UUID.randomUUID().toString().substring(0, 8);
+    Span step(String executionId, String stepName, String parentStepId) {
+        return new Span(this, executionId, newStepId(), nextSequence(executionId), parentStepId, stepName);
+    }
+
+    void recordSpan(Span span, long durationNanos) {
+        analytics.stepTimed(span.getExecutionId(), span.getStepName(), span.getTimestamp(), durationNanos);
+        if (countIfSummarized(span.getExecutionId())) {
+            return;
+        }
+        record(span.getExecutionId(), span.getStepId(), span.getSequence(), span.getParentStepId(),
+                span.getTimestamp(), durationNanos, span.buildRecord());
+    }
+
+    private void record(String executionId, String stepId, Integer sequence, String parentStepId,
+                        LocalDateTime timestamp, Long durationNanos, StepRecord stepRecord) {
+        PayloadSerializer.Budget budget = payloadSerializer.newBudget();
 
         XRayStep step = XRayStep.builder()
                 .stepId(stepId)
                 .stepName(stepRecord.getStepName())
-                .timestamp(LocalDateTime.now())
-                .input(objectMapper.valueToTree(stepRecord.getInput()))
-                .output(objectMapper.valueToTree(stepRecord.getOutput()))
+                .sequence(sequence)
+                .timestamp(timestamp)
+                .durationNanos(durationNanos)
+                .parentStepId(parentStepId)
+                .input(payloadSerializer.toTree(stepRecord.getInput(), budget))
+                .output(payloadSerializer.toTree(stepRecord.getOutput(), budget))
                 .reasoning(stepRecord.getReasoning())
-                .metadata(stepRecord.getMetadata() != null ?
-                         objectMapper.valueToTree(stepRecord.getMetadata()) : null)
-                .execution(execution)
+                .metadata(payloadSerializer.toTree(stepRecord.getMetadata(), budget))
+                .error(stepRecord.getError())
                 .build();
+        if (budget.isTruncated()) {
+            step.setTruncated(true);
+            log.warn("Step '{}' of execution {} exceeded its payload budget and was truncated",
+                    stepRecord.getStepName(), executionId);
+        }
 
-        execution.addStep(step);
-        executionRepository.save(execution);
+        SampledExecution pending = sampled.get(executionId);
+        if (pending != null) {
+            switch (pending.buffer(step, tailSettings.getMaxBufferedSteps())) {
+                case OVERFLOWED -> log.warn("Execution {} buffered more than {} steps, keeping only its summary",
+                        executionId, tailSettings.getMaxBufferedSteps());
+                case WRITE -> traceWriter.write(TraceEvent.stepRecorded(executionId, step));
+                default -> {
+                }
+            }
+            return;
+        }
+        traceWriter.write(TraceEvent.stepRecorded(executionId, step));
 
         log.debug("Recorded step '{}' for execution {}", stepRecord.getStepName(), executionId);
     }
 
-    @Transactional
-    public void endExecution(String executionId) {
-        XRayExecution execution = executionRepository.findById(executionId)
-                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + executionId));
+    /**
+     * Marks the execution active, and counts the step if sampling keeps only its summary.
+     *
+     * @return true if the step was counted and must not be serialized
+     */
+    private boolean countIfSummarized(String executionId) {
+        OpenExecution execution = open.get(executionId);
+        if (execution != null) {
+            execution.touch();
+        }
+        SampledExecution pending = sampled.get(executionId);
+        if (pending != null && !pending.isBuffering()) {
+            pending.countStep();
+            return true;
+        }
+        return false;
+    }
 
-        execution.complete();
-        executionRepository.save(execution);
+    /**
+     * @return null for an execution this tracer did not start, or that has already ended
+     * or been abandoned. Such steps are listed after the numbered ones, by timestamp,
+     * since they were recorded after the execution stopped being tracked.
+     */
+    private Integer nextSequence(String executionId) {
+        OpenExecution execution = open.get(executionId);
+        return execution != null ? execution.nextSequence() : null;
+    }
 
-        log.info("Completed execution: {} (duration: {}ms)",
-                 executionId, execution.getDurationMs());
+    private String newStepId() {
+        return idGenerator.next("step_");
     }
 
-    @Transactional
-    public void failExecution(String executionId, String reason) {
-        XRayExecution execution = executionRepository.findById(executionId)
-                .orElseThrow(() -> new IllegalArgumentException("Execution not found: " + executionId));
+    public void endExecution(String executionId) {
+        finish(executionId, ExecutionOutcome.COMPLETED, null);
 
-        execution.fail(reason);
-        executionRepository.save(execution);
+        log.info("Completed execution: {}", executionId);
+    }
+
+    public void failExecution(String executionId, String reason) {
+        finish(executionId, ExecutionOutcome.FAILED, reason);
 
         log.error("Failed execution: {} - Reason: {}", executionId, reason);
     }
 
+    private void finish(String executionId, ExecutionOutcome outcome, String reason) {
+        LocalDateTime endTime = LocalDateTime.now();
+        open.remove(executionId);
+        analytics.executionFinished(executionId, endTime, outcome, reason);
+        SampledExecution pending = sampled.remove(executionId);
+        XRayExecution execution = pending != null ? pending.getExecution() : null;
+        List<TraceEvent> events = null;
+        if (pending != null) {
+            // decided under the execution's lock: a step recorded meanwhile is either in the
+            // drained steps and count, or sees the buffer closed and follows the decision
+            synchronized (pending) {
+                SampledExecution.Drained drained = pending.drain();
+                if (drained == null) {
+                    // abandoned, and already written as a summary
+                    execution = null;
+                } else {
+                    execution.finish(endTime, outcome, reason, drained.getStepCount());
+                    String keepReason = drained.isBuffering()
+                            ? samplingPolicy.keepReason(execution, drained.getSteps()) : null;
+                    if (keepReason != null) {
+                        execution.setSamplingReason(keepReason);
+                        events = new ArrayList<>(drained.getSteps().size() + 1);
+                        events.add(TraceEvent.started(execution));
+                        for (XRayStep step : drained.getSteps()) {
+                            events.add(TraceEvent.stepRecorded(executionId, step));
+                        }
+                        pending.writeLaterSteps();
+                    }
+                }
+            }
+        }
+
+        if (execution == null) {
+            traceWriter.write(outcome == ExecutionOutcome.FAILED
+                    ? TraceEvent.failed(executionId, endTime, reason)
+                    : TraceEvent.completed(executionId, endTime));
+        } else if (events != null) {
+            traceWriter.writeAll(events);
+        } else {
+            writeSummary(execution);
+        }
+    }
+
+    /**
+     * Stops tracking executions with no tracer call for {@code abandon-after-ms}. One held
+     * in memory is written as a summary and stays closed in {@link #sampled}, so steps
+     * that still arrive are dropped rather than written against its summary row, until it
+     * is ended or has been quiet for {@code abandon-after-ms} again.
+     *
+     * @return the number of executions abandoned
+     */
+    int abandonStale() {
+        long now = System.nanoTime();
+        int abandoned = 0;
+        for (Map.Entry<String, OpenExecution> entry : open.entrySet()) {
+            if (now - entry.getValue().getLastActive() < abandonAfterNanos
+                    || !open.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            abandoned++;
+            SampledExecution pending = sampled.get(entry.getKey());
+            SampledExecution.Drained drained = pending != null ? pending.drain() : null;
+            if (drained != null) {
+                XRayExecution execution = pending.getExecution();
+                execution.setStepCount(drained.getStepCount());
+                execution.setSamplingReason("abandoned");
+                writeSummary(execution);
+            }
+        }
+        sampled.entrySet().removeIf(entry -> entry.getValue().isClosed()
+                && now - entry.getValue().getLastActive() >= abandonAfterNanos);
+        return abandoned;
+    }
+
+    private void abandonQuietly() {
+        try {
+            int abandoned = abandonStale();
+            if (abandoned > 0) {
+                log.warn("Abandoned {} executions with no tracer call for {} ms", abandoned,
+                        TimeUnit.NANOSECONDS.toMillis(abandonAfterNanos));
+            }
+        } catch (RuntimeException e) {
+            log.error("Abandoning stale executions failed", e);
+        }
+    }
+
+    private void writeSummary(XRayExecution execution) {
+        execution.promotePipeline();
+        execution.setContext(null);
+        execution.setTraceLevel(TraceLevel.SUMMARY);
+        traceWriter.write(TraceEvent.started(execution));
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
     @lombok.Data
     @lombok.Builder
     @lombok.NoArgsConstructor
@@ -102,5 +385,139 @@ public class XRayTracer {
         private Object output;
         private String reasoning;
         private Object metadata;
+        /** Set for a step that failed; see {@link Span#fail}. */
+        private String error;
+    }
+
+    /**
+     * Tracking state of an execution in progress.
+     */
+    private static class OpenExecution {
+
+        private final AtomicInteger sequence = new AtomicInteger();
+        private volatile long lastActive = System.nanoTime();
+
+        int nextSequence() {
+            lastActive = System.nanoTime();
+            return sequence.getAndIncrement();
+        }
+
+        void touch() {
+            lastActive = System.nanoTime();
+        }
+
+        long getLastActive() {
+            return lastActive;
+        }
+    }
+
+    /**
+     * In-memory state of an execution that is not written as it goes.
+     */
+    private static class SampledExecution {
+
+        /** What became of a step handed to {@link #buffer}. */
+        enum Buffered {
+            HELD,
+            /** Counted for the summary, not held. */
+            COUNTED,
+            /** Held steps overflowed; the execution is summarized from now on. */
+            OVERFLOWED,
+            /** Arrived after the execution was written in full; write it directly. */
+            WRITE,
+            /** Arrived after the execution was written as a summary. */
+            DROPPED
+        }
+
+        private final XRayExecution execution;
+        private final List<XRayStep> steps = new ArrayList<>();
+        private boolean buffering;
+        private int stepCount;
+        /** Set once the execution has been written; it holds and counts no more steps. */
+        private boolean closed;
+        private boolean writeLaterSteps;
+        private volatile long lastActive = System.nanoTime();
+
+        SampledExecution(XRayExecution execution, boolean buffering) {
+            this.execution = execution;
+            this.buffering = buffering;
+        }
+
+        XRayExecution getExecution() {
+            return execution;
+        }
+
+        /**
+         * Whether steps recorded now are stored, held or written.
+         */
+        synchronized boolean isBuffering() {
+            return closed ? writeLaterSteps : buffering;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        long getLastActive() {
+            return lastActive;
+        }
+
+        synchronized void countStep() {
+            lastActive = System.nanoTime();
+            if (!closed) {
+                stepCount++;
+            }
+        }
+
+        synchronized Buffered buffer(XRayStep step, int maxSteps) {
+            lastActive = System.nanoTime();
+            if (closed) {
+                return writeLaterSteps ? Buffered.WRITE : Buffered.DROPPED;
+            }
+            stepCount++;
+            if (!buffering) {
+                return Buffered.COUNTED;
+            }
+            if (steps.size() >= maxSteps) {
+                buffering = false;
+                steps.clear();
+                execution.setSamplingReason("tail-overflow");
+                return Buffered.OVERFLOWED;
+            }
+            steps.add(step);
+            return Buffered.HELD;
+        }
+
+        /**
+         * Closes the execution and hands over its held steps and count together, so no
+         * step is counted without being held or held after the steps were taken. Steps
+         * that arrive later are dropped unless {@link #writeLaterSteps} is called.
+         *
+         * @return null if it was already closed
+         */
+        synchronized Drained drain() {
+            if (closed) {
+                return null;
+            }
+            closed = true;
+            Drained drained = new Drained(new ArrayList<>(steps), stepCount, buffering);
+            steps.clear();
+            return drained;
+        }
+
+        /**
+         * Steps that arrive after the execution was written in full are written directly.
+         */
+        synchronized void writeLaterSteps() {
+            writeLaterSteps = true;
+        }
+
+        @lombok.Value
+        static class Drained {
+            List<XRayStep> steps;
+            int stepCount;
+            /** False if held steps overflowed, or the execution was only ever summarized. */
+            boolean buffering;
+        }
     }
 }
@@ -0,0 +1,17 @@
+package com.equalcollective.xray.storage;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A {@link TraceLog} position was read after {@link TraceLog#deleteAll} removed its
+ * record, as when an execution is read while every execution is being deleted.
+ * Answered with 404 Not Found, like any execution that no longer exists.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class DeletedRecordException extends IllegalStateException {
+
+    public DeletedRecordException(long position) {
+        super("No log segment for position " + position + ", the log was deleted");
+    }
+}
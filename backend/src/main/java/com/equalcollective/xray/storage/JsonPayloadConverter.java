@@ -0,0 +1,60 @@
+package com.equalcollective.xray.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Maps JSON payload attributes onto binary columns in {@link PayloadCodec} format.
+ * References to deduplicated subtrees are resolved on read through {@link PayloadStore}.
+ * Payloads are written as compact JSON, whatever the indentation of the shared mapper.
+ * Hibernate obtains this converter from the Spring context.
+ */
+@Component
+@Converter
+public class JsonPayloadConverter implements AttributeConverter<JsonNode, byte[]> {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final PayloadCodec codec;
+    private final PayloadStore payloadStore;
+
+    public JsonPayloadConverter(ObjectMapper objectMapper, PayloadCodec codec, PayloadStore payloadStore) {
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.codec = codec;
+        this.payloadStore = payloadStore;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        try {
+            return codec.encode(writer.writeValueAsBytes(node));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public JsonNode convertToEntityAttribute(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        try (InputStream json = codec.decode(stored)) {
+            return payloadStore.resolve(objectMapper.readTree(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
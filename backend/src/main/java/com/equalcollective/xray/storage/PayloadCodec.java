@@ -0,0 +1,111 @@
+package com.equalcollective.xray.storage;
+
+import com.equalcollective.xray.config.XRayProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Storage format for JSON payload columns: one format byte followed by the body.
+ * <ul>
+ *   <li>{@code 0} - UTF-8 JSON as is</li>
+ *   <li>{@code 1} - zlib/deflate compressed JSON</li>
+ *   <li>{@code 2} - gzip compressed JSON</li>
+ * </ul>
+ * Compression is applied on write only when enabled, when the payload reaches the
+ * size threshold, and when it actually makes the payload smaller. Decoding is
+ * stream-based so callers can parse straight out of the compressed bytes.
+ */
+@Component
+public class PayloadCodec {
+
+    static final byte RAW = 0;
+    static final byte DEFLATE = 1;
+    static final byte GZIP = 2;
+
+    private final XRayProperties.Compression settings;
+
+    public PayloadCodec(XRayProperties properties) {
+        this.settings = properties.getStorage().getCompression();
+    }
+
+    public byte[] encode(byte[] json) {
+        if (settings.isEnabled() && json.length >= settings.getThresholdBytes()) {
+            byte[] compressed = compress(json);
+            if (compressed.length < json.length) {
+                return compressed;
+            }
+        }
+        return withHeader(RAW, json);
+    }
+
+    public InputStream decode(InputStream stored) throws IOException {
+        int format = stored.read();
+        return switch (format) {
+            case RAW -> stored;
+            case DEFLATE -> new InflaterInputStream(stored);
+            case GZIP -> new GZIPInputStream(stored);
+            default -> throw new IOException("Unknown payload format: " + format);
+        };
+    }
+
+    public InputStream decode(byte[] stored) throws IOException {
+        return decode(new ByteArrayInputStream(stored));
+    }
+
+    private byte[] compress(byte[] json) {
+        boolean gzip = settings.getAlgorithm() == XRayProperties.CompressionAlgorithm.GZIP;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 16);
+        out.write(gzip ? GZIP : DEFLATE);
+        try (DeflaterOutputStream compressor = gzip
+                ? new LeveledGzipOutputStream(out, settings.getLevel())
+                : new LeveledDeflaterOutputStream(out, settings.getLevel())) {
+            compressor.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] withHeader(byte format, byte[] body) {
+        byte[] stored = new byte[body.length + 1];
+        stored[0] = format;
+        System.arraycopy(body, 0, stored, 1, body.length);
+        return stored;
+    }
+
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * DeflaterOutputStream only releases deflaters it created itself; this one owns its deflater.
+     */
+    private static class LeveledDeflaterOutputStream extends DeflaterOutputStream {
+        LeveledDeflaterOutputStream(OutputStream out, int level) {
+            super(out, new Deflater(level));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.equalcollective.xray.storage;
+
+import com.equalcollective.xray.config.XRayProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed store for large JSON subtrees.
+ * <p>
+ * {@link #intern} rewrites a payload bottom-up into canonical form (compact JSON, object keys
+ * sorted) and replaces every object or array of at least {@code min-bytes} with a
+ * reference node {@code {"$xray:ref": "<sha-256>"}}; that field name is reserved.
+ * Each referenced subtree is stored once in {@code xray_payloads} with a reference
+ * count: an already known subtree only costs a counter update, and a new one stores
+ * its own children the same way, so a list that is shared by many steps and a product
+ * that appears inside several different payloads are each written once.
+ * <p>
+ * Owners record the hashes they reference directly; {@link #release} decrements them
+ * when the owner is deleted and removes payloads that are no longer referenced,
+ * following their own references in turn. Stored payloads never change, so decoded
+ * ones are cached for reads.
+ */
+@Component
+public class PayloadStore {
+
+    public static final String REF_FIELD = "$xray:ref";
+
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REF_PREFIX = ("{\"" + REF_FIELD + "\":").getBytes(StandardCharsets.US_ASCII);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final PayloadCodec codec;
+    private final XRayProperties.Dedup settings;
+    private final Map<String, byte[]> cache;
+
+    public PayloadStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                        PayloadCodec codec, XRayProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.codec = codec;
+        this.settings = properties.getStorage().getDedup();
+        int cacheSize = settings.getCacheSize();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Stores the large subtrees of {@code node} and returns the node to persist in their
+     * place. Hashes referenced directly by the returned node are added to {@code refs}.
+     * Must run in the transaction that persists the owner, so the reference counts roll
+     * back with it.
+     */
+    public JsonNode intern(JsonNode node, Collection<String> refs) {
+        if (node == null || !settings.isEnabled()) {
+            return node;
+        }
+        Reduction reduced = reduce(node, new JsonBuffer());
+        for (Blob blob : reduced.getRefs()) {
+            persist(blob);
+            refs.add(blob.getHash());
+        }
+        return reduced.getNode();
+    }
+
+    /**
+     * Replaces every reference in {@code node} with the payload it points to.
+     */
+    public JsonNode resolve(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        String hash = refOf(node);
+        if (hash != null) {
+            return resolve(read(hash));
+        }
+        if (node instanceof ObjectNode object) {
+            List<String> names = new ArrayList<>(object.size());
+            object.fieldNames().forEachRemaining(names::add);
+            for (String name : names) {
+                JsonNode child = object.get(name);
+                JsonNode resolved = resolve(child);
+                if (resolved != child) {
+                    object.set(name, resolved);
+                }
+            }
+        } else if (node instanceof ArrayNode array) {
+            for (int i = 0; i < array.size(); i++) {
+                JsonNode child = array.get(i);
+                JsonNode resolved = resolve(child);
+                if (resolved != child) {
+                    array.set(i, resolved);
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Opens the canonical JSON of a stored payload. It may itself contain references.
+     */
+    public InputStream open(String hash) {
+        return new ByteArrayInputStream(canonicalJson(hash));
+    }
+
+    /**
+     * Drops one reference per occurrence in {@code hashes} and deletes payloads left
+     * unreferenced. A hash listed several times costs one update.
+     *
+     * @return the payloads deleted and their stored bytes
+     */
+    public Released release(Collection<String> hashes) {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        hashes.forEach(hash -> pending.merge(hash, 1, Integer::sum));
+        int payloads = 0;
+        long bytes = 0;
+        while (!pending.isEmpty()) {
+            Map.Entry<String, Integer> next = pending.entrySet().iterator().next();
+            String hash = next.getKey();
+            pending.remove(hash);
+            addReferences(hash, -next.getValue());
+            List<byte[]> orphan = jdbcTemplate.query(
+                    "SELECT data FROM xray_payloads WHERE hash = ? AND ref_count <= 0",
+                    (rs, rowNum) -> rs.getBytes(1), hash);
+            if (orphan.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.update("DELETE FROM xray_payloads WHERE hash = ?", hash);
+            cache.remove(hash);
+            payloads++;
+            bytes += orphan.get(0).length;
+            List<String> children = new ArrayList<>();
+            collectRefs(parse(decode(orphan.get(0))), children);
+            children.forEach(child -> pending.merge(child, 1, Integer::sum));
+        }
+        return new Released(payloads, bytes);
+    }
+
+    /**
+     * @return the hash a reference node points to, or null for any other node
+     */
+    public static String refOf(JsonNode node) {
+        if (node != null && node.isObject() && node.size() == 1) {
+            JsonNode hash = node.get(REF_FIELD);
+            if (hash != null && hash.isTextual()) {
+                return hash.asText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the hashes an owner references for its {@code payload_refs} column.
+     */
+    public static String formatRefs(Collection<String> hashes) {
+        return hashes.isEmpty() ? null : String.join(" ", hashes);
+    }
+
+    public static List<String> parseRefs(String refs) {
+        return refs == null || refs.isBlank() ? List.of() : Arrays.asList(refs.trim().split(" "));
+    }
+
+    /**
+     * Canonicalizes {@code node} bottom-up and appends its compact JSON to {@code json}.
+     * Nothing is serialized twice: a container's JSON is what its children appended, and
+     * a container that becomes a reference is cut back out and replaced by the reference.
+     * The bytes are exactly what the writer would produce for the returned node.
+     */
+    private Reduction reduce(JsonNode node, JsonBuffer json) {
+        if (!node.isContainerNode()) {
+            writeScalar(node, json);
+            return new Reduction(node, List.of());
+        }
+
+        int start = json.size();
+        List<Blob> refs = new ArrayList<>();
+        JsonNode canonical;
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>(node.size());
+            node.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            ObjectNode object = objectMapper.createObjectNode();
+            json.write('{');
+            for (String name : names) {
+                if (object.size() > 0) {
+                    json.write(',');
+                }
+                json.writeString(name);
+                json.write(':');
+                Reduction child = reduce(node.get(name), json);
+                object.set(name, child.getNode());
+                refs.addAll(child.getRefs());
+            }
+            json.write('}');
+            canonical = object;
+        } else {
+            ArrayNode array = objectMapper.createArrayNode();
+            json.write('[');
+            for (JsonNode element : node) {
+                if (array.size() > 0) {
+                    json.write(',');
+                }
+                Reduction child = reduce(element, json);
+                array.add(child.getNode());
+                refs.addAll(child.getRefs());
+            }
+            json.write(']');
+            canonical = array;
+        }
+
+        if (json.size() - start < settings.getMinBytes()) {
+            return new Reduction(canonical, refs);
+        }
+        byte[] bytes = json.cut(start);
+        Blob blob = new Blob(sha256(bytes), bytes, refs);
+        json.write(REF_PREFIX);
+        json.writeString(blob.getHash());
+        json.write('}');
+        ObjectNode reference = objectMapper.createObjectNode().put(REF_FIELD, blob.getHash());
+        return new Reduction(reference, List.of(blob));
+    }
+
+    /**
+     * Appends what the writer would produce for a scalar, without going through it for
+     * the common kinds.
+     */
+    private void writeScalar(JsonNode node, JsonBuffer json) {
+        switch (node.getNodeType()) {
+            case STRING -> json.writeString(node.textValue());
+            case BOOLEAN -> json.write(node.booleanValue() ? TRUE : FALSE);
+            case NULL -> json.write(NULL);
+            default -> json.write(node.isIntegralNumber() && node.canConvertToLong()
+                    ? Long.toString(node.longValue()).getBytes(StandardCharsets.US_ASCII)
+                    : serialize(node));
+        }
+    }
+
+    /**
+     * Adds a reference to an existing payload, or inserts it together with its children.
+     */
+    private void persist(Blob blob) {
+        if (addReferences(blob.getHash(), 1) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(
+                    "INSERT INTO xray_payloads (hash, data, size_bytes, ref_count, created_at) VALUES (?, ?, ?, 1, ?)",
+                    blob.getHash(), codec.encode(blob.getJson()), blob.getJson().length, LocalDateTime.now());
+        } catch (DuplicateKeyException e) {
+            // inserted by a concurrent writer since the update above
+            addReferences(blob.getHash(), 1);
+            return;
+        }
+        cache.put(blob.getHash(), blob.getJson());
+        for (Blob child : blob.getRefs()) {
+            persist(child);
+        }
+    }
+
+    private int addReferences(String hash, int delta) {
+        return jdbcTemplate.update("UPDATE xray_payloads SET ref_count = ref_count + ? WHERE hash = ?", delta, hash);
+    }
+
+    private JsonNode read(String hash) {
+        return parse(canonicalJson(hash));
+    }
+
+    private byte[] canonicalJson(String hash) {
+        byte[] json = cache.get(hash);
+        if (json != null) {
+            return json;
+        }
+        List<byte[]> stored = jdbcTemplate.query("SELECT data FROM xray_payloads WHERE hash = ?",
+                (rs, rowNum) -> rs.getBytes(1), hash);
+        if (stored.isEmpty()) {
+            throw new IllegalStateException("Missing payload " + hash);
+        }
+        json = decode(stored.get(0));
+        cache.put(hash, json);
+        return json;
+    }
+
+    private void collectRefs(JsonNode node, Collection<String> refs) {
+        String hash = refOf(node);
+        if (hash != null) {
+            refs.add(hash);
+            return;
+        }
+        for (JsonNode child : node) {
+            collectRefs(child, refs);
+        }
+    }
+
+    private byte[] decode(byte[] stored) {
+        try (InputStream json = codec.decode(stored)) {
+            return json.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode parse(byte[] json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] serialize(JsonNode node) {
+        try {
+            return writer.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String sha256(byte[] json) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Value
+    public static class Released {
+        int payloads;
+        /** Stored size of the deleted payloads, compressed if they were. */
+        long bytes;
+    }
+
+    /**
+     * A node rewritten for storage and the payloads it references directly.
+     */
+    @Value
+    private static class Reduction {
+        JsonNode node;
+        List<Blob> refs;
+    }
+
+    /**
+     * Growable byte buffer for {@link #reduce}, which needs to cut a subtree back out.
+     */
+    private static final class JsonBuffer {
+
+        private byte[] bytes = new byte[8192];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        void writeString(String text) {
+            write('"');
+            write(JsonStringEncoder.getInstance().quoteAsUTF8(text));
+            write('"');
+        }
+
+        /** Removes and returns everything from {@code start} on. */
+        byte[] cut(int start) {
+            byte[] tail = Arrays.copyOfRange(bytes, start, size);
+            size = start;
+            return tail;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * A subtree to store under its hash, with the payloads its canonical JSON references.
+     */
+    @Value
+    private static class Blob {
+        String hash;
+        byte[] json;
+        List<Blob> refs;
+    }
+}
@@ -0,0 +1,335 @@
+package com.equalcollective.xray.storage;
+
+import com.equalcollective.xray.config.XRayProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only, compressed segment files for executions moved out of the database.
+ * <p>
+ * Each record is one execution's JSON, deflated, appended to the current segment
+ * ({@code segment-000001.seg}, ...) until it reaches {@code segment-bytes}; segments
+ * are never rewritten. Space is reclaimed a whole closed segment at a time: its
+ * remaining records are {@link #copy copied} to the current segment, and it is
+ * {@link #deleteSegment deleted} once nothing points into it. Next to each segment, {@code segment-000001.idx} lists its
+ * records as {@code (execution id, start time, offset, length)}, which is enough to
+ * rebuild the locations without reading the segment. The database row of an
+ * archived execution carries its location, so reads go straight to it.
+ * <p>
+ * Reads map each segment into memory once and inflate only the record's region;
+ * the mapping of the segment being appended to is widened as it grows.
+ */
+@Component
+public class SegmentArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final XRayProperties.Archive settings;
+    private final Path directory;
+    private final Map<Integer, MappedByteBuffer> mappings = new HashMap<>();
+
+    private int segment;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+
+    public SegmentArchive(XRayProperties properties) {
+        this.settings = properties.getStorage().getArchive();
+        this.directory = Paths.get(settings.getDirectory());
+        if (settings.getSegmentBytes() > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("xray.storage.archive.segment-bytes must be below 1 GB");
+        }
+    }
+
+    /**
+     * Appends a record to the current segment. It is only durable once {@link #sync}
+     * returns, so callers must not point to it before then.
+     */
+    public Location append(String executionId, LocalDateTime startTime, byte[] json) {
+        return appendRecord(executionId, startTime, deflate(json));
+    }
+
+    /**
+     * Appends the record at {@code location} to the current segment as it is, without
+     * inflating it. Like {@link #append}, it is only durable once {@link #sync} returns.
+     */
+    public Location copy(Location location, String executionId, LocalDateTime startTime) {
+        ByteBuffer region = mapping(location).duplicate();
+        region.position((int) location.getOffset());
+        byte[] record = new byte[location.getLength()];
+        region.get(record);
+        return appendRecord(executionId, startTime, record);
+    }
+
+    private synchronized Location appendRecord(String executionId, LocalDateTime startTime, byte[] record) {
+        try {
+            openForAppend();
+            if (segmentChannel.size() >= settings.getSegmentBytes()) {
+                closeForAppend();
+                segment++;
+                openForAppend();
+            }
+            long offset = segmentChannel.size();
+            segmentChannel.write(ByteBuffer.wrap(record), offset);
+
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(64);
+            try (DataOutputStream out = new DataOutputStream(entry)) {
+                out.writeUTF(executionId);
+                out.writeLong(startTime.toInstant(ZoneOffset.UTC).toEpochMilli());
+                out.writeLong(offset);
+                out.writeInt(record.length);
+            }
+            indexChannel.write(ByteBuffer.wrap(entry.toByteArray()), indexChannel.size());
+            return new Location(segment, offset, record.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces appended records and their index entries to disk.
+     */
+    public synchronized void sync() {
+        try {
+            if (segmentChannel != null) {
+                segmentChannel.force(false);
+                indexChannel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the JSON of the record at {@code location}
+     */
+    public byte[] read(Location location) {
+        ByteBuffer region = mapping(location).duplicate();
+        region.limit((int) (location.getOffset() + location.getLength()));
+        region.position((int) location.getOffset());
+        return inflate(region);
+    }
+
+    /**
+     * Total size of the segment files.
+     */
+    public synchronized long sizeBytes() {
+        try (Stream<Path> files = list()) {
+            return files.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX))
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        }
+    }
+
+    /**
+     * Sizes of the segments that are no longer appended to, by number.
+     */
+    public synchronized Map<Integer, Long> closedSegments() {
+        Map<Integer, Long> sizes = new HashMap<>();
+        try (Stream<Path> files = list()) {
+            files.forEach(path -> {
+                int number = segmentNumber(path.getFileName().toString());
+                if (number > 0) {
+                    sizes.put(number, path.toFile().length());
+                }
+            });
+        }
+        // new records go to the highest numbered segment
+        sizes.keySet().stream().max(Integer::compare).ifPresent(sizes::remove);
+        return sizes;
+    }
+
+    /**
+     * Deletes a closed segment and its index. Records in it can no longer be read.
+     *
+     * @return the bytes freed
+     */
+    public synchronized long deleteSegment(int number) {
+        if (segmentChannel != null && number == segment) {
+            throw new IllegalArgumentException("Segment " + number + " is still appended to");
+        }
+        try {
+            mappings.remove(number);
+            long freed = 0;
+            for (Path file : List.of(segmentPath(number), indexPath(number))) {
+                if (Files.exists(file)) {
+                    freed += Files.size(file);
+                    Files.delete(file);
+                }
+            }
+            return freed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes every segment.
+     */
+    public synchronized void deleteAll() {
+        try {
+            closeForAppend();
+            mappings.clear();
+            List<Path> files;
+            try (Stream<Path> listed = list()) {
+                files = listed.toList();
+            }
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            segment = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized MappedByteBuffer mapping(Location location) {
+        MappedByteBuffer mapping = mappings.get(location.getSegment());
+        long end = location.getOffset() + location.getLength();
+        if (mapping == null || mapping.capacity() < end) {
+            try (FileChannel channel = FileChannel.open(segmentPath(location.getSegment()), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < end) {
+                    throw new IllegalStateException("Archive segment " + location.getSegment() + " is truncated");
+                }
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mappings.put(location.getSegment(), mapping);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return mapping;
+    }
+
+    private void openForAppend() throws IOException {
+        if (segmentChannel != null) {
+            return;
+        }
+        if (segment == 0) {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = list()) {
+                segment = files.mapToInt(path -> segmentNumber(path.getFileName().toString()))
+                        .max().orElse(0);
+            }
+            segment = Math.max(segment, 1);
+        }
+        segmentChannel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        indexChannel = FileChannel.open(indexPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    private void closeForAppend() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.force(false);
+            indexChannel.force(false);
+            segmentChannel.close();
+            indexChannel.close();
+            segmentChannel = null;
+            indexChannel = null;
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("segment-%06d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(int number) {
+        return directory.resolve(String.format("segment-%06d%s", number, INDEX_SUFFIX));
+    }
+
+    /**
+     * @return 0 if {@code name} is not a segment file
+     */
+    private static int segmentNumber(String name) {
+        if (!name.startsWith("segment-") || !name.endsWith(SEGMENT_SUFFIX)) {
+            return 0;
+        }
+        return Integer.parseInt(name.substring(8, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Stream<Path> list() {
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        try {
+            return Files.list(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] deflate(byte[] json) {
+        Deflater deflater = new Deflater(settings.getLevel());
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer record) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(record);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(record.remaining() * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Archive record is truncated");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Archive record is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        closeForAppend();
+    }
+
+    /**
+     * Where a record is: its segment number, and its byte range within the segment.
+     */
+    @Value
+    public static class Location {
+        int segment;
+        long offset;
+        int length;
+    }
+}
@@ -0,0 +1,284 @@
+package com.equalcollective.xray.storage;
+
+import com.equalcollective.xray.config.XRayProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of length-prefixed records in memory-mapped segment files
+ * ({@code log-000001.seg}, ...), the storage under
+ * {@link com.equalcollective.xray.service.LogTraceStore}.
+ * <p>
+ * Each segment is created at {@code segment-bytes} and mapped whole, so appending
+ * is a copy into memory; the OS writes the pages back. A record is its body's length,
+ * the CRC-32 of the body, and the body. A segment that was rolled over is sealed by a
+ * length of -1 after its last record, unless it is too full to hold one. On startup a
+ * torn or corrupt record, or the zero-filled space after the last record of a segment
+ * that was never sealed, ends the log: later segments are deleted, and the record and
+ * anything after it are overwritten by the next append. A record is addressed by its
+ * position, the segment number in the high 32 bits and the offset in the low 32.
+ * <p>
+ * One thread appends at a time. Reads need no lock: a position is only handed out
+ * once its record has been written, and the mapping it points to stays valid.
+ * {@link #deleteAll} swaps in a new set of mappings numbered after the old ones, so a
+ * read that already holds the old set still succeeds, and one that does not fails with
+ * {@link DeletedRecordException} instead of reading a newer record.
+ */
+@Component
+@ConditionalOnProperty(prefix = "xray.storage", name = "backend", havingValue = "log")
+@Slf4j
+public class TraceLog {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_BYTES = 8;
+    /** Length that seals a segment after its last record. */
+    private static final int SEALED = -1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private volatile Map<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    /** Segment appended to, and the offset of its first free byte. */
+    private int segment;
+    private int end;
+    /** Bytes of all records in the log. */
+    private long usedBytes;
+
+    public TraceLog(XRayProperties properties) {
+        XRayProperties.Log settings = properties.getStorage().getLog();
+        this.directory = Paths.get(settings.getDirectory());
+        this.segmentBytes = settings.getSegmentBytes();
+        this.fsync = settings.isFsync();
+        if (segmentBytes > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("xray.storage.log.segment-bytes must be below 1 GB");
+        }
+    }
+
+    /**
+     * Receives the records of the log in the order they were appended.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void record(long position, ByteBuffer body);
+    }
+
+    /**
+     * Maps every segment and reads all records, oldest first, then positions the log
+     * for appending after the last intact one. Called once, before the first append.
+     */
+    public synchronized void replay(Visitor visitor) {
+        try {
+            Files.createDirectories(directory);
+            List<Integer> numbers;
+            try (Stream<Path> files = Files.list(directory)) {
+                numbers = files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.startsWith("log-") && name.endsWith(SEGMENT_SUFFIX))
+                        .map(name -> Integer.parseInt(name.substring(4, name.length() - SEGMENT_SUFFIX.length())))
+                        .sorted()
+                        .toList();
+            }
+            for (int index = 0; index < numbers.size(); index++) {
+                int number = numbers.get(index);
+                MappedByteBuffer mapping = map(segments, number, 0);
+                segment = number;
+                end = 0;
+                while (true) {
+                    ByteBuffer body = body(mapping, end);
+                    if (body == null) {
+                        break;
+                    }
+                    int length = body.remaining();
+                    visitor.record(position(number, end), body);
+                    end += RECORD_HEADER_BYTES + length;
+                }
+                usedBytes += end;
+                List<Integer> later = numbers.subList(index + 1, numbers.size());
+                if (!later.isEmpty() && !sealed(mapping, end)) {
+                    log.warn("Trace log ends at a torn or corrupt record in segment {} at offset {}, "
+                            + "deleting the {} segments after it", number, end, later.size());
+                    for (int dropped : later) {
+                        Files.deleteIfExists(path(dropped));
+                    }
+                    break;
+                }
+            }
+            if (segment == 0) {
+                segment = 1;
+                map(segments, segment, segmentBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the records together, in one segment, and forces them to disk if
+     * {@code fsync} is set.
+     *
+     * @return the position of each record
+     */
+    public synchronized long[] append(List<byte[]> bodies) {
+        long total = 0;
+        for (byte[] body : bodies) {
+            total += RECORD_HEADER_BYTES + body.length;
+        }
+        MappedByteBuffer mapping = segments.get(segment);
+        if (end + total > mapping.capacity()) {
+            if (total > Integer.MAX_VALUE / 2) {
+                throw new IllegalArgumentException("Batch of " + total + " bytes does not fit in a log segment");
+            }
+            if (end + 4 <= mapping.capacity()) {
+                mapping.putInt(end, SEALED);
+            }
+            if (fsync) {
+                mapping.force();
+            }
+            // a batch larger than a segment gets a segment of its own size
+            mapping = map(segments, segment + 1, Math.max(segmentBytes, total));
+            segment++;
+            end = 0;
+        }
+
+        long[] positions = new long[bodies.size()];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < bodies.size(); i++) {
+            byte[] body = bodies.get(i);
+            crc.reset();
+            crc.update(body);
+            // the length goes in last, so a record is never seen before it is complete
+            mapping.putInt(end + 4, (int) crc.getValue());
+            mapping.put(end + RECORD_HEADER_BYTES, body);
+            mapping.putInt(end, body.length);
+            positions[i] = position(segment, end);
+            end += RECORD_HEADER_BYTES + body.length;
+        }
+        if (end + 4 <= mapping.capacity()) {
+            // ends the log here, in case a record left from before a crash follows
+            mapping.putInt(end, 0);
+        }
+        usedBytes += total;
+        if (fsync) {
+            mapping.force();
+        }
+        return positions;
+    }
+
+    /**
+     * The body of the record at {@code position}, as a read-only view of the mapping.
+     *
+     * @throws DeletedRecordException if the log was deleted since the position was handed out
+     */
+    public ByteBuffer read(long position) {
+        MappedByteBuffer mapping = segments.get((int) (position >>> 32));
+        if (mapping == null) {
+            throw new DeletedRecordException(position);
+        }
+        int offset = (int) position;
+        int length = mapping.getInt(offset);
+        return mapping.slice(offset + RECORD_HEADER_BYTES, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Bytes taken by the records in the log, not counting unused segment space.
+     */
+    public synchronized long sizeBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Deletes every segment and starts over with an empty one, numbered after them. The
+     * deleted files stay readable through the old mappings until those are collected.
+     */
+    public synchronized void deleteAll() {
+        try {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Map<Integer, MappedByteBuffer> fresh = new ConcurrentHashMap<>();
+            segment++;
+            end = 0;
+            usedBytes = 0;
+            map(fresh, segment, segmentBytes);
+            segments = fresh;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return null past the last intact record
+     */
+    private static ByteBuffer body(MappedByteBuffer mapping, int offset) {
+        if (offset + RECORD_HEADER_BYTES > mapping.capacity()) {
+            return null;
+        }
+        int length = mapping.getInt(offset);
+        if (length <= 0 || offset + RECORD_HEADER_BYTES + (long) length > mapping.capacity()) {
+            return null;
+        }
+        ByteBuffer body = mapping.slice(offset + RECORD_HEADER_BYTES, length);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        return (int) crc.getValue() == mapping.getInt(offset + 4) ? body.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Whether nothing can follow the last record of a segment: it was sealed, or it has
+     * no room for another record.
+     */
+    private static boolean sealed(MappedByteBuffer mapping, int end) {
+        return end + 4 > mapping.capacity() || mapping.getInt(end) == SEALED;
+    }
+
+    /**
+     * Maps a segment into {@code into}, creating it or growing it to at least
+     * {@code size} bytes.
+     */
+    private MappedByteBuffer map(Map<Integer, MappedByteBuffer> into, int number, long size) {
+        try (FileChannel channel = FileChannel.open(path(number),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            into.put(number, mapping);
+            return mapping;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path path(int number) {
+        return directory.resolve(String.format("log-%06d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private static long position(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        MappedByteBuffer mapping = segments.get(segment);
+        if (mapping != null) {
+            mapping.force();
+        }
+        log.info("Trace log closed at {} bytes", usedBytes);
+    }
+}
@@ -0,0 +1,217 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.XRayDebuggerApplication;
+import com.equalcollective.xray.storage.PayloadCodec;
+import com.equalcollective.xray.storage.PayloadStore;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Hundreds of threads recording into one execution at once, through each way the tracer
+ * can write: directly, through the async buffer, and buffered by tail sampling until the
+ * execution ends. Every step must be stored once with its own sequence number, and every
+ * shared payload must be counted once per reference to it.
+ */
+class ConcurrentRecordingStressTest {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final int VIRTUAL_THREADS = 1000;
+    private static final int CALLS_PER_THREAD = 6;
+
+    private static final Pattern REFERENCE =
+            Pattern.compile(Pattern.quote("\"" + PayloadStore.REF_FIELD + "\":\"") + "([0-9a-f]+)\"");
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @TempDir
+    Path directory;
+
+    static Stream<Arguments> writers() {
+        List<Arguments> writers = new ArrayList<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            writers.add(Arguments.of("sync", virtual, List.of("xray.tracer.mode=sync")));
+            writers.add(Arguments.of("async", virtual, List.of("xray.tracer.mode=async")));
+            writers.add(Arguments.of("tail-buffered", virtual, List.of(
+                    "xray.tracer.mode=sync",
+                    "xray.tracer.sampling.head-rate=0.0",
+                    "xray.tracer.sampling.tail.enabled=true",
+                    "xray.tracer.sampling.tail.keep-step-names=fetch",
+                    "xray.tracer.sampling.tail.max-buffered-steps=100000")));
+        }
+        return writers.stream();
+    }
+
+    @ParameterizedTest(name = "{0}, virtual threads: {1}")
+    @MethodSource("writers")
+    void storesEveryStepOnceUnderContention(String writer, boolean virtual, List<String> settings)
+            throws Exception {
+        ExecutorService pool = virtual ? newVirtualThreadPool() : Executors.newFixedThreadPool(PLATFORM_THREADS);
+        assumeTrue(pool != null, "virtual threads need Java 21");
+        int threads = virtual ? VIRTUAL_THREADS : PLATFORM_THREADS;
+
+        try (ConfigurableApplicationContext context = start(settings)) {
+            XRayTracer tracer = context.getBean(XRayTracer.class);
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+            List<Map<String, Object>> shared = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                shared.add(Map.of("asin", "B0SHARED" + i, "title", "Shared product " + i, "price", i * 1.5));
+            }
+            String executionId = tracer.startExecution(Map.of("pipeline", "stress"));
+
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(pool.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        if (i % 2 == 0) {
+                            tracer.recordStep(executionId, XRayTracer.StepRecord.builder()
+                                    .stepName("fetch")
+                                    .input(Map.of("thread", thread, "call", i))
+                                    .output(Map.of("candidates", shared))
+                                    .build());
+                        } else {
+                            try (Span span = tracer.step(executionId, "fetch_span")) {
+                                span.input(Map.of("thread", thread, "call", i))
+                                        .output(Map.of("candidates", shared, "thread", thread, "call", i));
+                                try (Span child = span.child("parse")) {
+                                    child.output(Map.of("unique", "x".repeat(600) + thread + "-" + i));
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+            tracer.endExecution(executionId);
+            awaitFinished(jdbc, executionId);
+
+            // recordStep calls store one step, spans two
+            int expected = threads * (CALLS_PER_THREAD / 2) * 3;
+            assertThat(count(jdbc, "SELECT COUNT(*) FROM xray_steps WHERE execution_id = ?", executionId))
+                    .isEqualTo(expected);
+            assertThat(count(jdbc, "SELECT COUNT(DISTINCT seq) FROM xray_steps WHERE execution_id = ?", executionId))
+                    .isEqualTo(expected);
+            assertThat(count(jdbc, "SELECT MAX(seq) FROM xray_steps WHERE execution_id = ?", executionId))
+                    .isEqualTo(expected - 1);
+            assertThat(count(jdbc, "SELECT step_count FROM xray_executions WHERE execution_id = ?", executionId))
+                    .isEqualTo(expected);
+
+            Map<String, Integer> stored = new HashMap<>();
+            jdbc.query("SELECT hash, ref_count FROM xray_payloads",
+                    row -> { stored.put(row.getString(1), row.getInt(2)); });
+            assertThat(stored).isEqualTo(references(jdbc, context.getBean(PayloadCodec.class)));
+            // the shared list is stored once however many steps reference it
+            assertThat(stored).isNotEmpty().hasSizeLessThan(expected);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private ConfigurableApplicationContext start(List<String> settings) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:stress-" + DATABASES.incrementAndGet(),
+                "spring.h2.console.enabled=false",
+                "logging.level.root=WARN",
+                "logging.level.com.equalcollective=WARN",
+                "xray.storage.log.directory=" + directory.resolve("trace-log"),
+                "xray.storage.archive.directory=" + directory.resolve("archive")));
+        arguments.addAll(settings);
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // passed as command line arguments, since application.properties overrides default properties
+        return new SpringApplicationBuilder(XRayDebuggerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments.stream().map(setting -> "--" + setting).toArray(String[]::new));
+    }
+
+    /**
+     * Waits for the end of the execution to be written; the async writer applies events
+     * in order, so its steps are written by then too.
+     */
+    private static void awaitFinished(JdbcTemplate jdbc, String executionId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (count(jdbc, "SELECT COUNT(*) FROM xray_executions WHERE execution_id = ? AND end_time IS NOT NULL",
+                executionId) == 0) {
+            assertThat(System.nanoTime()).as("execution %s finished in time", executionId).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * How often each payload is referenced: by the executions and steps that hold it
+     * directly, and by the stored payloads it is nested in.
+     */
+    private static Map<String, Integer> references(JdbcTemplate jdbc, PayloadCodec codec) {
+        Map<String, Integer> references = new HashMap<>();
+        for (String refs : jdbc.queryForList("SELECT payload_refs FROM xray_steps WHERE payload_refs IS NOT NULL " +
+                "UNION ALL SELECT payload_refs FROM xray_executions WHERE payload_refs IS NOT NULL", String.class)) {
+            for (String hash : PayloadStore.parseRefs(refs)) {
+                references.merge(hash, 1, Integer::sum);
+            }
+        }
+        for (byte[] data : jdbc.queryForList("SELECT data FROM xray_payloads", byte[].class)) {
+            Matcher nested = REFERENCE.matcher(decode(codec, data));
+            while (nested.find()) {
+                references.merge(nested.group(1), 1, Integer::sum);
+            }
+        }
+        return references;
+    }
+
+    private static String decode(PayloadCodec codec, byte[] data) {
+        try (InputStream json = codec.decode(data)) {
+            return new String(json.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int count(JdbcTemplate jdbc, String sql, String executionId) {
+        Integer count = jdbc.queryForObject(sql, Integer.class, executionId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return null before Java 21
+     */
+    private static ExecutorService newVirtualThreadPool() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
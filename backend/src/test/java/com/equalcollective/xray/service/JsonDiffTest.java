@@ -0,0 +1,90 @@
+package com.equalcollective.xray.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Diffs of plain JSON documents, without payload references, so no
+ * {@link com.equalcollective.xray.storage.PayloadStore} is needed.
+ */
+class JsonDiffTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonDiff jsonDiff = new JsonDiff(objectMapper, null);
+
+    @Test
+    void pairsReorderedElementsById() throws JsonProcessingException {
+        JsonDiff.Patch patch = diff(
+                "{\"candidates\":[{\"asin\":\"A\",\"price\":1},{\"asin\":\"B\",\"price\":2},{\"asin\":\"C\",\"price\":3}]}",
+                "{\"candidates\":[{\"asin\":\"C\",\"price\":3},{\"asin\":\"A\",\"price\":1},{\"asin\":\"B\",\"price\":5}]}",
+                100);
+
+        assertThat(patch.isTruncated()).isFalse();
+        assertThat(patch.getOps()).extracting(JsonDiff.Op::getOp, JsonDiff.Op::getPath,
+                        op -> op.getOldValue().asInt(), op -> op.getNewValue().asInt())
+                .containsExactly(tuple("replace", "/candidates/asin=B/price", 2, 5));
+    }
+
+    @Test
+    void ignoresReorderingAlone() throws JsonProcessingException {
+        assertThat(diff("{\"ids\":[3,1,2],\"tags\":[{\"x\":1},{\"y\":2}]}",
+                "{\"tags\":[{\"y\":2},{\"x\":1}],\"ids\":[1,2,3]}", 100).getOps()).isEmpty();
+    }
+
+    @Test
+    void pairsElementsWithoutIdByPosition() throws JsonProcessingException {
+        JsonDiff.Patch patch = diff("[1,2,3]", "[1,4]", 100);
+
+        assertThat(patch.getOps()).extracting(JsonDiff.Op::getOp, JsonDiff.Op::getPath)
+                .containsExactly(tuple("replace", "/1"), tuple("remove", "/2"));
+    }
+
+    @Test
+    void addsAndRemovesFieldsUpToMaxOps() throws JsonProcessingException {
+        String before = "{\"a\":1,\"b\":2,\"c\":3}";
+        String after = "{\"a\":1,\"d\":4,\"e\":5,\"f\":6}";
+
+        JsonDiff.Patch all = diff(before, after, 100);
+        assertThat(all.isTruncated()).isFalse();
+        assertThat(all.getOps()).extracting(JsonDiff.Op::getOp, JsonDiff.Op::getPath).containsExactly(
+                tuple("remove", "/b"), tuple("remove", "/c"),
+                tuple("add", "/d"), tuple("add", "/e"), tuple("add", "/f"));
+        assertThat(all.getOps().get(0).getNewValue()).isNull();
+        assertThat(all.getOps().get(2).getOldValue()).isNull();
+
+        JsonDiff.Patch truncated = diff(before, after, 3);
+        assertThat(truncated.isTruncated()).isTrue();
+        assertThat(truncated.getOps()).extracting(JsonDiff.Op::getPath).containsExactly("/b", "/c", "/d");
+    }
+
+    @Test
+    void treatsAbsentDocumentsAsAddedOrRemoved() throws JsonProcessingException {
+        JsonNode context = objectMapper.readTree("{\"run\":1}");
+
+        assertThat(jsonDiff.session().diff(null, context, 100).getOps())
+                .extracting(JsonDiff.Op::getOp, JsonDiff.Op::getPath).containsExactly(tuple("add", ""));
+        assertThat(jsonDiff.session().diff(context, null, 100).getOps())
+                .extracting(JsonDiff.Op::getOp, JsonDiff.Op::getPath).containsExactly(tuple("remove", ""));
+        assertThat(jsonDiff.session().diff(null, null, 100).getOps()).isEmpty();
+    }
+
+    @Test
+    void omitsLargeValues() throws JsonProcessingException {
+        String large = "[" + "\"0123456789\",".repeat(200) + "\"end\"]";
+
+        JsonDiff.Patch patch = diff("{}", "{\"list\":" + large + "}", 100);
+
+        JsonNode omitted = patch.getOps().get(0).getNewValue().get(JsonDiff.OMITTED_FIELD);
+        assertThat(omitted.get("type").asText()).isEqualTo("array");
+        assertThat(omitted.get("size").asInt()).isEqualTo(201);
+    }
+
+    private JsonDiff.Patch diff(String before, String after, int maxOps) throws JsonProcessingException {
+        return jsonDiff.session().diff(objectMapper.readTree(before), objectMapper.readTree(after), maxOps);
+    }
+}
@@ -0,0 +1,67 @@
+package com.equalcollective.xray.service;
+
+import com.equalcollective.xray.model.XRayExecution;
+import com.equalcollective.xray.model.XRayStep;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The {@link AsyncTraceWriter}'s buffer discarding its oldest step events while
+ * lifecycle events and the remaining steps keep their order.
+ */
+class TraceEventBufferTest {
+
+    @Test
+    void removesOldestStepsAndKeepsTheRestInOrder() throws InterruptedException {
+        TraceEventBuffer buffer = new TraceEventBuffer(5);
+        assertThat(buffer.offer(started("a"))).isTrue();
+        assertThat(buffer.offer(step("a", "s1"))).isTrue();
+        assertThat(buffer.offer(started("b"))).isTrue();
+        assertThat(buffer.offer(step("b", "s2"))).isTrue();
+        assertThat(buffer.offer(step("a", "s3"))).isTrue();
+        assertThat(buffer.offer(step("a", "s4"))).as("full").isFalse();
+
+        assertThat(buffer.removeOldestStep()).isTrue();
+        assertThat(buffer.offer(step("a", "s4"))).isTrue();
+        assertThat(buffer.removeOldestStep()).isTrue();
+
+        assertThat(buffer.poll(0, TimeUnit.MILLISECONDS).getExecutionId()).isEqualTo("a");
+        List<TraceEvent> rest = new ArrayList<>();
+        buffer.drainTo(rest, 10);
+        assertThat(rest).extracting(TraceEventBufferTest::name).containsExactly("start b", "s3", "s4");
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.poll(0, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void keepsLifecycleEvents() {
+        TraceEventBuffer buffer = new TraceEventBuffer(2);
+        buffer.offer(started("a"));
+        buffer.offer(TraceEvent.completed("a", LocalDateTime.now()));
+
+        assertThat(buffer.removeOldestStep()).isFalse();
+        assertThat(buffer.size()).isEqualTo(2);
+    }
+
+    private static TraceEvent started(String executionId) {
+        XRayExecution execution = new XRayExecution();
+        execution.setExecutionId(executionId);
+        return TraceEvent.started(execution);
+    }
+
+    private static TraceEvent step(String executionId, String stepId) {
+        XRayStep step = new XRayStep();
+        step.setStepId(stepId);
+        return TraceEvent.stepRecorded(executionId, step);
+    }
+
+    private static String name(TraceEvent event) {
+        return event.getStep() != null ? event.getStep().getStepId() : "start " + event.getExecutionId();
+    }
+}
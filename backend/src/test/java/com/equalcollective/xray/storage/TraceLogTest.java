@@ -0,0 +1,121 @@
+package com.equalcollective.xray.storage;
+
+import com.equalcollective.xray.config.XRayProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replaying a {@link TraceLog} from its segment files, as on startup, after they were
+ * damaged the way a crash or a bad disk leaves them.
+ */
+class TraceLogTest {
+
+    /** Two 20-byte records fit in a segment, a third rolls over to the next one. */
+    private static final long SEGMENT_BYTES = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornRecordEndsTheLogAndDropsLaterSegments() throws IOException {
+        TraceLog written = open();
+        written.replay((position, body) -> { });
+        written.append(List.of(record("a")));
+        long torn = written.append(List.of(record("b")))[0];
+        written.append(List.of(record("c")));
+        written.close();
+        assertThat(segmentFiles()).containsExactly("log-000001.seg", "log-000002.seg");
+
+        // the record's length reached the disk but the end of its body did not
+        overwrite("log-000001.seg", (int) torn + 8 + 10, new byte[10]);
+
+        TraceLog replayed = open();
+        assertThat(replay(replayed)).containsExactly("a");
+        assertThat(segmentFiles()).containsExactly("log-000001.seg");
+        assertThat(replayed.append(List.of(record("d"))))
+                .as("the next append overwrites the torn record")
+                .containsExactly(torn);
+        assertThat(replay(open())).containsExactly("a", "d");
+    }
+
+    @Test
+    void crcMismatchEndsTheLog() throws IOException {
+        TraceLog written = open();
+        written.replay((position, body) -> { });
+        written.append(List.of(record("a")));
+        long corrupt = written.append(List.of(record("b")))[0];
+        written.close();
+
+        // a bit flipped in the body after it was written
+        overwrite("log-000001.seg", (int) corrupt + 8, "x".getBytes(StandardCharsets.US_ASCII));
+
+        TraceLog replayed = open();
+        assertThat(replay(replayed)).containsExactly("a");
+        assertThat(replayed.sizeBytes()).isEqualTo(8 + record("a").length);
+        assertThat(replayed.append(List.of(record("c")))).containsExactly(corrupt);
+        assertThat(replay(open())).containsExactly("a", "c");
+    }
+
+    @Test
+    void sealedSegmentsReplayInOrder() throws IOException {
+        TraceLog written = open();
+        written.replay((position, body) -> { });
+        for (String name : List.of("a", "b", "c", "d", "e")) {
+            written.append(List.of(record(name)));
+        }
+        written.close();
+
+        assertThat(segmentFiles()).containsExactly("log-000001.seg", "log-000002.seg", "log-000003.seg");
+        assertThat(replay(open())).containsExactly("a", "b", "c", "d", "e");
+    }
+
+    private TraceLog open() {
+        XRayProperties properties = new XRayProperties();
+        properties.getStorage().getLog().setDirectory(directory.toString());
+        properties.getStorage().getLog().setSegmentBytes(SEGMENT_BYTES);
+        return new TraceLog(properties);
+    }
+
+    /**
+     * The name each replayed record starts with.
+     */
+    private static List<String> replay(TraceLog traceLog) {
+        List<String> names = new ArrayList<>();
+        traceLog.replay((position, body) -> names.add(String.valueOf((char) body.get(0))));
+        return names;
+    }
+
+    /**
+     * A 20-byte body starting with {@code name}.
+     */
+    private static byte[] record(String name) {
+        byte[] body = new byte[20];
+        byte[] text = (name + "-record-body-padding").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(text, 0, body, 0, body.length);
+        return body;
+    }
+
+    private void overwrite(String segment, int offset, byte[] bytes) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(segment).toFile(), "rw")) {
+            file.seek(offset);
+            file.write(bytes);
+        }
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
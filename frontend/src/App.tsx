@@ -2,6 +2,7 @@ import React from 'react';
 import { BrowserRouter as Router, Routes, Route } from 'react-router-dom';
 import ExecutionList from './components/ExecutionList';
 import ExecutionDetail from './components/ExecutionDetail';
+import AnalyticsView from './components/AnalyticsView';
 
 /**
  * Main App component with routing
@@ -13,6 +14,7 @@ function App() {
         <Routes>
           <Route path="/" element={<ExecutionList />} />
           <Route path="/execution/:executionId" element={<ExecutionDetail />} />
+          <Route path="/analytics" element={<AnalyticsView />} />
         </Routes>
       </div>
     </Router>
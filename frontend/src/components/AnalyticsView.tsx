@@ -0,0 +1,199 @@
+import React, { useEffect, useState } from 'react';
+import { useNavigate } from 'react-router-dom';
+import { FailureReport, FunnelReport, LatencyReport } from '../types';
+import { api } from '../services/api';
+import { formatNanos } from './WaterfallChart';
+
+const RANGES: { label: string; days: number }[] = [
+  { label: 'Last 24 hours', days: 1 },
+  { label: 'Last 7 days', days: 7 },
+  { label: 'Last 30 days', days: 30 },
+  { label: 'Last 90 days', days: 90 },
+];
+
+// The API takes local date-times without a zone
+const localIso = (date: Date): string =>
+  new Date(date.getTime() - date.getTimezoneOffset() * 60_000).toISOString().slice(0, 19);
+
+const nanos = (value?: number | null): string => (value != null ? formatNanos(value) : '—');
+
+const percent = (value: number): string => `${(value * 100).toFixed(1)}%`;
+
+const FUNNEL_STEP = 'apply_filters';
+
+/**
+ * AnalyticsView component - duration percentiles per pipeline and step, failure
+ * rates with their most common reasons, and the candidate funnel of the demo's filters
+ */
+const AnalyticsView: React.FC = () => {
+  const navigate = useNavigate();
+  const [days, setDays] = useState(1);
+  const [latency, setLatency] = useState<LatencyReport | null>(null);
+  const [failures, setFailures] = useState<FailureReport | null>(null);
+  const [funnel, setFunnel] = useState<FunnelReport | null>(null);
+  const [error, setError] = useState<string | null>(null);
+
+  useEffect(() => {
+    const from = localIso(new Date(Date.now() - days * 24 * 3600 * 1000));
+    setError(null);
+    Promise.all([api.getLatency(from), api.getFailures(from), api.getFunnel(FUNNEL_STEP, from)])
+      .then(([latencyReport, failureReport, funnelReport]) => {
+        setLatency(latencyReport);
+        setFailures(failureReport);
+        setFunnel(funnelReport);
+      })
+      .catch((err) => setError(err instanceof Error ? err.message : 'Failed to load analytics'));
+  }, [days]);
+
+  return (
+    <div className="container mx-auto px-4 py-8 max-w-7xl">
+      <div className="mb-6">
+        <button
+          onClick={() => navigate('/')}
+          className="text-blue-600 hover:text-blue-700 mb-4 inline-flex items-center gap-2"
+        >
+          ← Back to Executions
+        </button>
+        <div className="flex items-center justify-between">
+          <h1 className="text-3xl font-bold text-gray-900">Analytics</h1>
+          <select
+            value={days}
+            onChange={(e) => setDays(Number(e.target.value))}
+            className="p-2 border border-gray-300 rounded-lg text-sm"
+          >
+            {RANGES.map((range) => (
+              <option key={range.days} value={range.days}>
+                {range.label}
+              </option>
+            ))}
+          </select>
+        </div>
+      </div>
+
+      {error && (
+        <div className="mb-6 p-4 bg-red-50 border border-red-200 rounded-lg">
+          <p className="text-red-800">{error}</p>
+        </div>
+      )}
+
+      <div className="mb-6 card">
+        <h2 className="text-xl font-semibold mb-4">Failures by Pipeline</h2>
+        {failures && failures.pipelines.length === 0 && (
+          <p className="text-sm text-gray-500">No executions finished in this period.</p>
+        )}
+        {failures && failures.pipelines.length > 0 && (
+          <table className="w-full text-sm">
+            <thead>
+              <tr className="text-left text-gray-600 border-b">
+                <th className="py-2">Pipeline</th>
+                <th className="py-2 text-right">Executions</th>
+                <th className="py-2 text-right">Failed</th>
+                <th className="py-2 text-right">Failure rate</th>
+                <th className="py-2 pl-6">Top reasons</th>
+              </tr>
+            </thead>
+            <tbody>
+              {failures.pipelines.map((pipeline) => (
+                <tr key={pipeline.pipeline ?? ''} className="border-b last:border-0 align-top">
+                  <td className="py-2 font-medium">{pipeline.pipeline ?? '(none)'}</td>
+                  <td className="py-2 text-right">{pipeline.executions}</td>
+                  <td className="py-2 text-right">{pipeline.failed}</td>
+                  <td className="py-2 text-right">{(pipeline.failureRate * 100).toFixed(1)}%</td>
+                  <td className="py-2 pl-6 text-gray-700">
+                    {pipeline.topReasons.map((reason) => (
+                      <div key={reason.reason}>
+                        {reason.reason || '(no reason)'} <span className="text-gray-500">× {reason.count}</span>
+                      </div>
+                    ))}
+                  </td>
+                </tr>
+              ))}
+            </tbody>
+          </table>
+        )}
+      </div>
+
+      <div className="mb-6 card">
+        <h2 className="text-xl font-semibold mb-4">Filter Funnel ({FUNNEL_STEP.replace(/_/g, ' ')})</h2>
+        {funnel && funnel.candidates === 0 && (
+          <p className="text-sm text-gray-500">No candidates were evaluated in this period.</p>
+        )}
+        {funnel && funnel.candidates > 0 && (
+          <>
+            <p className="text-sm text-gray-600 mb-3">
+              {funnel.qualified} of {funnel.candidates} candidates passed every filter (
+              {percent(funnel.qualified / funnel.candidates)}).
+            </p>
+            <table className="w-full text-sm">
+              <thead>
+                <tr className="text-left text-gray-600 border-b">
+                  <th className="py-2">Filter</th>
+                  <th className="py-2 text-right">Pass rate</th>
+                  <th className="py-2 text-right">Failed</th>
+                  <th className="py-2 text-right">Failed only this</th>
+                  <th className="py-2 text-right">Eliminated in funnel</th>
+                  <th className="py-2 text-right">Remaining</th>
+                </tr>
+              </thead>
+              <tbody>
+                {funnel.stages.map((stage) => {
+                  const filter = funnel.filters.find((f) => f.name === stage.filter);
+                  return (
+                    <tr key={stage.filter} className="border-b last:border-0">
+                      <td className="py-2 font-medium">{stage.filter}</td>
+                      <td className="py-2 text-right">{filter ? percent(filter.passRate) : '—'}</td>
+                      <td className="py-2 text-right">{filter?.failed ?? '—'}</td>
+                      <td className="py-2 text-right">{filter?.soleEliminations ?? '—'}</td>
+                      <td className="py-2 text-right">{stage.eliminated}</td>
+                      <td className="py-2 text-right">{stage.remainingAfter}</td>
+                    </tr>
+                  );
+                })}
+              </tbody>
+            </table>
+          </>
+        )}
+      </div>
+
+      <div className="card">
+        <h2 className="text-xl font-semibold mb-4">Latency</h2>
+        {latency && latency.series.length === 0 && (
+          <p className="text-sm text-gray-500">No timed steps in this period.</p>
+        )}
+        {latency && latency.series.length > 0 && (
+          <table className="w-full text-sm">
+            <thead>
+              <tr className="text-left text-gray-600 border-b">
+                <th className="py-2">Pipeline</th>
+                <th className="py-2">Step</th>
+                <th className="py-2 text-right">Count</th>
+                <th className="py-2 text-right">p50</th>
+                <th className="py-2 text-right">p95</th>
+                <th className="py-2 text-right">p99</th>
+                <th className="py-2 text-right">Max</th>
+              </tr>
+            </thead>
+            <tbody>
+              {latency.series.map((series) => (
+                <tr
+                  key={`${series.pipeline ?? ''}/${series.stepName ?? ''}`}
+                  className={`border-b last:border-0 ${series.stepName == null ? 'font-medium' : ''}`}
+                >
+                  <td className="py-2">{series.pipeline ?? '(none)'}</td>
+                  <td className="py-2">{series.stepName?.replace(/_/g, ' ') ?? 'whole execution'}</td>
+                  <td className="py-2 text-right">{series.latency.count}</td>
+                  <td className="py-2 text-right">{nanos(series.latency.p50Nanos)}</td>
+                  <td className="py-2 text-right">{nanos(series.latency.p95Nanos)}</td>
+                  <td className="py-2 text-right">{nanos(series.latency.p99Nanos)}</td>
+                  <td className="py-2 text-right">{nanos(series.latency.maxNanos)}</td>
+                </tr>
+              ))}
+            </tbody>
+          </table>
+        )}
+      </div>
+    </div>
+  );
+};
+
+export default AnalyticsView;
@@ -1,15 +1,19 @@
 import React, { useEffect, useState } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
-import { XRayExecution } from '../types';
+import { ExecutionSummary, StepSummary, Waterfall } from '../types';
 import { api } from '../services/api';
 import StepCard from './StepCard';
+import WaterfallChart from './WaterfallChart';
 
 /**
  * ExecutionDetail component - shows detailed step-by-step execution trail
  */
 const ExecutionDetail: React.FC = () => {
   const { executionId } = useParams<{ executionId: string }>();
-  const [execution, setExecution] = useState<XRayExecution | null>(null);
+  const [execution, setExecution] = useState<ExecutionSummary | null>(null);
+  const [steps, setSteps] = useState<StepSummary[]>([]);
+  const [waterfall, setWaterfall] = useState<Waterfall | null>(null);
+  const [context, setContext] = useState<any>(undefined);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState<string | null>(null);
   const navigate = useNavigate();
@@ -24,8 +28,15 @@ const ExecutionDetail: React.FC = () => {
     try {
       setLoading(true);
       setError(null);
-      const data = await api.getExecution(executionId);
-      setExecution(data);
+      const [summary, stepHeaders, timings] = await Promise.all([
+        api.getExecutionSummary(executionId),
+        api.getSteps(executionId),
+        api.getWaterfall(executionId),
+      ]);
+      setExecution(summary);
+      setSteps(stepHeaders);
+      setWaterfall(timings);
+      setContext(undefined);
     } catch (err) {
       setError('Failed to load execution details');
       console.error(err);
@@ -34,12 +45,57 @@ const ExecutionDetail: React.FC = () => {
     }
   };
 
+  const inProgress = execution !== null && !execution.endTime;
+
+  // While the execution runs, steps are appended as they are written
+  useEffect(() => {
+    if (!executionId || !inProgress) return;
+
+    return api.watchExecution(executionId, (event) => {
+      if (event.type === 'step-appended' && event.step) {
+        const step = event.step;
+        setSteps((current) =>
+          current.some((s) => s.stepId === step.stepId) ? current : [...current, step]
+        );
+      } else if (event.type === 'execution-ended' || event.type === 'resync') {
+        void refresh();
+      }
+    });
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [executionId, inProgress]);
+
+  const refresh = async () => {
+    if (!executionId) return;
+
+    try {
+      const [summary, stepHeaders, timings] = await Promise.all([
+        api.getExecutionSummary(executionId),
+        api.getSteps(executionId),
+        api.getWaterfall(executionId),
+      ]);
+      setExecution(summary);
+      setSteps(stepHeaders);
+      setWaterfall(timings);
+    } catch (err) {
+      console.error(err);
+    }
+  };
+
+  const loadContext = async () => {
+    if (!executionId || context !== undefined) return;
+
+    try {
+      const slice = await api.getExecutionContext(executionId);
+      setContext(slice ? slice.value ?? slice.items : null);
+    } catch (err) {
+      console.error(err);
+    }
+  };
+
   const formatDuration = (): string => {
     if (!execution || !execution.endTime) return 'In progress';
     
-    const start = new Date(execution.startTime).getTime();
-    const end = new Date(execution.endTime).getTime();
-    const durationMs = end - start;
+    const durationMs = execution.durationMs;
     
     if (durationMs < 1000) return `${durationMs}ms`;
     return `${(durationMs / 1000).toFixed(2)}s`;
@@ -109,43 +165,50 @@ const ExecutionDetail: React.FC = () => {
             
             <div>
               <span className="text-gray-600 font-medium">Steps:</span>
-              <p className="text-gray-900">{execution.steps.length}</p>
+              <p className="text-gray-900">{execution.stepCount}</p>
             </div>
           </div>
 
-          {execution.context && (
-            <details className="mt-4">
-              <summary className="cursor-pointer text-sm font-medium text-gray-700 hover:text-gray-900">
-                View Execution Context
-              </summary>
-              <pre className="json-container mt-2 text-xs">
-                {JSON.stringify(execution.context, null, 2)}
-              </pre>
-            </details>
+          {execution.traceLevel === 'SUMMARY' && (
+            <p className="mt-4 text-sm text-yellow-800 bg-yellow-50 p-3 rounded-lg">
+              This execution was sampled out ({execution.samplingReason ?? 'sampling'}). Only its summary
+              was stored; context, steps and payloads were not kept.
+            </p>
+          )}
+
+          {execution.traceLevel === 'ARCHIVED' && (
+            <p className="mt-4 text-sm text-yellow-800 bg-yellow-50 p-3 rounded-lg">
+              This execution was moved to the cold archive. Its steps and payloads are no longer
+              browsable here, but the{' '}
+              <a href={api.executionUrl(execution.executionId)} target="_blank" rel="noreferrer" className="underline">
+                full execution
+              </a>{' '}
+              can still be downloaded as JSON.
+            </p>
           )}
+
+          <details
+            className="mt-4"
+            onToggle={(e) => {
+              if ((e.target as HTMLDetailsElement).open) {
+                void loadContext();
+              }
+            }}
+          >
+            <summary className="cursor-pointer text-sm font-medium text-gray-700 hover:text-gray-900">
+              View Execution Context
+            </summary>
+            <pre className="json-container mt-2 text-xs">
+              {context === undefined ? 'Loading...' : JSON.stringify(context, null, 2)}
+            </pre>
+          </details>
         </div>
       </div>
 
-      {/* Timeline - Visual representation */}
+      {/* Timeline - step durations and critical path */}
       <div className="mb-6 card">
         <h2 className="text-xl font-semibold mb-4">Pipeline Timeline</h2>
-        <div className="flex items-center gap-2">
-          {execution.steps.map((step, index) => (
-            <React.Fragment key={step.stepId}>
-              <div className="flex flex-col items-center flex-1">
-                <div className="w-10 h-10 rounded-full bg-blue-600 text-white flex items-center justify-center font-semibold">
-                  {index + 1}
-                </div>
-                <p className="text-xs text-gray-600 mt-1 text-center">
-                  {step.stepName.replace(/_/g, ' ')}
-                </p>
-              </div>
-              {index < execution.steps.length - 1 && (
-                <div className="flex-1 h-1 bg-blue-200" />
-              )}
-            </React.Fragment>
-          ))}
-        </div>
+        {waterfall && <WaterfallChart waterfall={waterfall} />}
       </div>
 
       {/* Steps detail */}
@@ -154,9 +217,10 @@ const ExecutionDetail: React.FC = () => {
           Step-by-Step Execution Trail
         </h2>
         
-        {execution.steps.map((step, index) => (
+        {steps.map((step, index) => (
           <StepCard 
             key={step.stepId} 
+            executionId={execution.executionId}
             step={step} 
             stepNumber={index + 1}
           />
@@ -1,14 +1,17 @@
 import React, { useEffect, useState } from 'react';
 import { useNavigate } from 'react-router-dom';
-import { XRayExecution } from '../types';
+import { ExecutionFilters, ExecutionSummary } from '../types';
 import { api } from '../services/api';
 
 /**
  * ExecutionList component - displays all pipeline executions
  */
 const ExecutionList: React.FC = () => {
-  const [executions, setExecutions] = useState<XRayExecution[]>([]);
+  const [executions, setExecutions] = useState<ExecutionSummary[]>([]);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
   const [loading, setLoading] = useState(true);
+  const [loadingMore, setLoadingMore] = useState(false);
+  const [filters, setFilters] = useState<ExecutionFilters>({});
   const [runningDemo, setRunningDemo] = useState(false);
   const [error, setError] = useState<string | null>(null);
   const navigate = useNavigate();
@@ -17,12 +20,37 @@ const ExecutionList: React.FC = () => {
     void loadExecutions();
   }, []);
 
+  // Live updates: new executions appear at the top, running ones update when they end
+  useEffect(() => {
+    return api.watchExecutions((event) => {
+      if (event.type === 'resync') {
+        void loadExecutions();
+      } else if (event.type === 'execution-started' && event.execution) {
+        const started = event.execution;
+        const filtered = Object.values(filters).some((value) => value);
+        if (filtered) return;
+        setExecutions((current) =>
+          current.some((e) => e.executionId === started.executionId) ? current : [started, ...current]
+        );
+      } else if (event.type === 'execution-ended' && event.executionId) {
+        // the end event has no step count; the summary is one cheap query
+        api.getExecutionSummary(event.executionId)
+          .then((summary) => setExecutions((current) =>
+            current.map((e) => (e.executionId === summary.executionId ? summary : e))
+          ))
+          .catch((err) => console.error(err));
+      }
+    });
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [filters]);
+
   const loadExecutions = async () => {
     try {
       setLoading(true);
       setError(null);
-      const data = await api.getExecutions();
-      setExecutions(data);
+      const page = await api.getExecutions(filters);
+      setExecutions(page.items);
+      setNextCursor(page.nextCursor ?? null);
     } catch (err) {
       setError('Failed to load executions. Make sure the backend is running.');
       console.error(err);
@@ -31,6 +59,22 @@ const ExecutionList: React.FC = () => {
     }
   };
 
+  const loadMore = async () => {
+    if (!nextCursor) return;
+
+    try {
+      setLoadingMore(true);
+      const page = await api.getExecutions(filters, nextCursor);
+      setExecutions((current) => [...current, ...page.items]);
+      setNextCursor(page.nextCursor ?? null);
+    } catch (err) {
+      setError('Failed to load more executions');
+      console.error(err);
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const runDemo = async () => {
     try {
       setRunningDemo(true);
@@ -67,12 +111,10 @@ const ExecutionList: React.FC = () => {
     }
   };
 
-  const formatDuration = (execution: XRayExecution): string => {
+  const formatDuration = (execution: ExecutionSummary): string => {
     if (!execution.endTime) return 'In progress';
     
-    const start = new Date(execution.startTime).getTime();
-    const end = new Date(execution.endTime).getTime();
-    const durationMs = end - start;
+    const durationMs = execution.durationMs;
     
     if (durationMs < 1000) return `${durationMs}ms`;
     return `${(durationMs / 1000).toFixed(2)}s`;
@@ -122,6 +164,13 @@ const ExecutionList: React.FC = () => {
           🔄 Refresh
         </button>
 
+        <button
+          onClick={() => navigate('/analytics')}
+          className="btn-secondary"
+        >
+          📊 Analytics
+        </button>
+
         {executions.length > 0 && (
           <button
             onClick={deleteAll}
@@ -132,6 +181,44 @@ const ExecutionList: React.FC = () => {
         )}
       </div>
 
+      {/* Filters */}
+      <form
+        onSubmit={(e) => {
+          e.preventDefault();
+          void loadExecutions();
+        }}
+        className="mb-6 flex flex-wrap gap-3 items-center"
+      >
+        <select
+          value={filters.status ?? ''}
+          onChange={(e) => setFilters({ ...filters, status: e.target.value })}
+          className="p-2 border border-gray-300 rounded-lg text-sm"
+        >
+          <option value="">Any status</option>
+          <option value="COMPLETED">Completed</option>
+          <option value="FAILED">Failed</option>
+          <option value="IN_PROGRESS">In progress</option>
+        </select>
+        <input
+          value={filters.pipeline ?? ''}
+          onChange={(e) => setFilters({ ...filters, pipeline: e.target.value })}
+          placeholder="Pipeline"
+          className="p-2 border border-gray-300 rounded-lg text-sm"
+        />
+        <input
+          value={filters.step ?? ''}
+          onChange={(e) => setFilters({ ...filters, step: e.target.value })}
+          placeholder="Contains step"
+          className="p-2 border border-gray-300 rounded-lg text-sm"
+        />
+        <button type="submit" className="btn-secondary">
+          🔍 Search
+        </button>
+        <a href={api.exportUrl(filters)} download="executions.json" className="btn-secondary">
+          ⬇ Export
+        </a>
+      </form>
+
       {/* Execution list */}
       {executions.length === 0 ? (
         <div className="card text-center py-12">
@@ -160,6 +247,16 @@ const ExecutionList: React.FC = () => {
                     }>
                       {execution.status}
                     </span>
+                    {execution.traceLevel === 'SUMMARY' && (
+                      <span className="badge-warning" title="Sampled out: only the summary was stored">
+                        summary only
+                      </span>
+                    )}
+                    {execution.traceLevel === 'ARCHIVED' && (
+                      <span className="badge-warning" title="Moved to the cold archive">
+                        archived
+                      </span>
+                    )}
                   </div>
                   
                   <div className="flex items-center gap-6 text-sm text-gray-600">
@@ -170,8 +267,13 @@ const ExecutionList: React.FC = () => {
                       ⏱ {formatDuration(execution)}
                     </span>
                     <span>
-                      📋 {execution.steps.length} steps
+                      📋 {execution.stepCount} steps
                     </span>
+                    {execution.pipeline && (
+                      <span>
+                        🔧 {execution.pipeline}
+                      </span>
+                    )}
                   </div>
                 </div>
                 
@@ -181,6 +283,18 @@ const ExecutionList: React.FC = () => {
               </div>
             </div>
           ))}
+
+          {nextCursor && (
+            <div className="text-center">
+              <button
+                onClick={loadMore}
+                disabled={loadingMore}
+                className="btn-secondary disabled:opacity-50 disabled:cursor-not-allowed"
+              >
+                {loadingMore ? 'Loading...' : 'Load more'}
+              </button>
+            </div>
+          )}
         </div>
       )}
     </div>
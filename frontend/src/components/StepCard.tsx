@@ -1,20 +1,81 @@
-import React, { useState } from 'react';
-import { XRayStep, CandidateEvaluation } from '../types';
+import React, { useEffect, useState } from 'react';
+import { StepSummary, CandidateEvaluation, PayloadField, PayloadSlice } from '../types';
+import { api } from '../services/api';
+import { formatNanos } from './WaterfallChart';
 
 interface StepCardProps {
-  step: XRayStep;
+  executionId: string;
+  step: StepSummary;
   stepNumber: number;
 }
 
-const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
+const EVALUATION_PAGE_SIZE = 50;
+
+const TRUNCATED_MARKER = '$xray:truncated';
+
+const sliceValue = (slice: PayloadSlice | null): any =>
+  slice === null ? null : slice.type === 'array' ? slice.items : slice.value;
+
+const StepCard: React.FC<StepCardProps> = ({ executionId, step, stepNumber }) => {
   const [showInput, setShowInput] = useState(false);
   const [showOutput, setShowOutput] = useState(false);
   const [showMetadata, setShowMetadata] = useState(step.stepName === 'apply_filters');
 
+  // Payloads are fetched on first use; undefined means "not loaded yet"
+  const [payloads, setPayloads] = useState<Partial<Record<PayloadField, any>>>({});
+  const [filtersApplied, setFiltersApplied] = useState<Record<string, any> | null>(null);
+  const [evaluations, setEvaluations] = useState<CandidateEvaluation[] | null>(null);
+  const [evaluationTotal, setEvaluationTotal] = useState(0);
+  const [loadingEvaluations, setLoadingEvaluations] = useState(false);
+
   const isFilterStep = step.stepName === 'apply_filters';
-  const evaluations = isFilterStep && step.metadata?.evaluations 
-    ? (step.metadata.evaluations as CandidateEvaluation[])
-    : null;
+
+  const loadPayload = async (field: PayloadField) => {
+    if (payloads[field] !== undefined) return;
+
+    try {
+      const slice = await api.getStepPayload(executionId, step.stepId, field);
+      setPayloads((current) => ({ ...current, [field]: sliceValue(slice) }));
+    } catch (err) {
+      console.error(err);
+    }
+  };
+
+  const loadEvaluations = async (offset: number) => {
+    try {
+      setLoadingEvaluations(true);
+      const slice = await api.getStepPayload(
+        executionId, step.stepId, 'metadata', '/evaluations', offset, EVALUATION_PAGE_SIZE
+      );
+      if (slice && slice.type === 'array') {
+        const page = (slice.items ?? []) as CandidateEvaluation[];
+        setEvaluations((current) => (offset === 0 || !current ? page : [...current, ...page]));
+        setEvaluationTotal(slice.total ?? 0);
+      } else if (slice && slice.value?.[TRUNCATED_MARKER]) {
+        // Over-budget array summarized by the tracer: only the head was kept
+        const head = (slice.value.head ?? []) as CandidateEvaluation[];
+        setEvaluations(head);
+        setEvaluationTotal(head.length);
+      }
+    } catch (err) {
+      console.error(err);
+    } finally {
+      setLoadingEvaluations(false);
+    }
+  };
+
+  useEffect(() => {
+    if (!isFilterStep) return;
+
+    api.getStepPayload(executionId, step.stepId, 'metadata', '/filters_applied')
+      .then((slice) => setFiltersApplied(sliceValue(slice)))
+      .catch((err) => console.error(err));
+    void loadEvaluations(0);
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [executionId, step.stepId]);
+
+  const renderPayload = (field: PayloadField) =>
+    payloads[field] === undefined ? 'Loading...' : JSON.stringify(payloads[field], null, 2);
 
   return (
     <div className="card border-l-4 border-blue-500">
@@ -33,7 +94,23 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
           
           <p className="text-sm text-gray-500">
             {new Date(step.timestamp).toLocaleString()}
+            {step.durationNanos != null && ` · took ${formatNanos(step.durationNanos)}`}
           </p>
+
+          {step.truncated && (
+            <span
+              className="badge-warning mt-1"
+              title="A payload exceeded its size budget. Cut-down values are marked with $xray:truncated."
+            >
+              Payload truncated
+            </span>
+          )}
+
+          {step.error && (
+            <span className="badge-error mt-1" title={step.error}>
+              Failed
+            </span>
+          )}
         </div>
       </div>
 
@@ -46,7 +123,10 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
       {/* Input/Output toggles */}
       <div className="grid grid-cols-2 gap-4 mb-4">
         <button
-          onClick={() => setShowInput(!showInput)}
+          onClick={() => {
+            setShowInput(!showInput);
+            void loadPayload('input');
+          }}
           className="text-left p-3 border border-gray-300 rounded-lg hover:bg-gray-50 transition-colors"
         >
           <span className="text-sm font-medium text-gray-700">
@@ -55,7 +135,10 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
         </button>
         
         <button
-          onClick={() => setShowOutput(!showOutput)}
+          onClick={() => {
+            setShowOutput(!showOutput);
+            void loadPayload('output');
+          }}
           className="text-left p-3 border border-gray-300 rounded-lg hover:bg-gray-50 transition-colors"
         >
           <span className="text-sm font-medium text-gray-700">
@@ -68,7 +151,7 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
       {showInput && (
         <div className="mb-4">
           <pre className="json-container text-xs">
-            {JSON.stringify(step.input, null, 2)}
+            {renderPayload('input')}
           </pre>
         </div>
       )}
@@ -77,31 +160,31 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
       {showOutput && (
         <div className="mb-4">
           <pre className="json-container text-xs">
-            {JSON.stringify(step.output, null, 2)}
+            {renderPayload('output')}
           </pre>
         </div>
       )}
 
       {/* Special rendering for filter step metadata */}
-      {isFilterStep && step.metadata && (
+      {isFilterStep && evaluations && (
         <div className="mt-4">
           <button
             onClick={() => setShowMetadata(!showMetadata)}
             className="text-left p-3 border border-gray-300 rounded-lg hover:bg-gray-50 transition-colors w-full mb-3"
           >
             <span className="text-sm font-medium text-gray-700">
-              {showMetadata ? '▼' : '▶'} Filter Evaluations ({evaluations?.length || 0} candidates)
+              {showMetadata ? '▼' : '▶'} Filter Evaluations ({evaluationTotal} candidates)
             </span>
           </button>
 
-          {showMetadata && evaluations && (
+          {showMetadata && (
             <div className="space-y-3">
               {/* Filter criteria summary */}
-              {step.metadata.filters_applied && (
+              {filtersApplied && (
                 <div className="bg-gray-50 p-4 rounded-lg">
                   <p className="font-medium text-gray-700 mb-2">Filters Applied:</p>
                   <div className="grid grid-cols-1 md:grid-cols-3 gap-3 text-sm">
-                    {Object.entries(step.metadata.filters_applied).map(([key, value]: [string, any]) => (
+                    {Object.entries(filtersApplied).map(([key, value]: [string, any]) => (
                       <div key={key}>
                         <p className="font-medium text-gray-600">
                           {key.split('_').join(' ')}:
@@ -163,19 +246,38 @@ const StepCard: React.FC<StepCardProps> = ({ step, stepNumber }) => {
                   </div>
                 ))}
               </div>
+
+              {evaluations.length < evaluationTotal && (
+                <button
+                  onClick={() => void loadEvaluations(evaluations.length)}
+                  disabled={loadingEvaluations}
+                  className="btn-secondary w-full disabled:opacity-50 disabled:cursor-not-allowed"
+                >
+                  {loadingEvaluations
+                    ? 'Loading...'
+                    : `Show more (${evaluations.length} of ${evaluationTotal})`}
+                </button>
+              )}
             </div>
           )}
         </div>
       )}
 
       {/* Metadata for non-filter steps */}
-      {!isFilterStep && step.metadata && (
-        <details className="mt-4">
+      {!isFilterStep && (
+        <details
+          className="mt-4"
+          onToggle={(e) => {
+            if ((e.target as HTMLDetailsElement).open) {
+              void loadPayload('metadata');
+            }
+          }}
+        >
           <summary className="cursor-pointer text-sm font-medium text-gray-700 hover:text-gray-900">
             View Metadata
           </summary>
           <pre className="json-container mt-2 text-xs">
-            {JSON.stringify(step.metadata, null, 2)}
+            {renderPayload('metadata')}
           </pre>
         </details>
       )}
@@ -0,0 +1,78 @@
+import React from 'react';
+import { Waterfall } from '../types';
+
+interface WaterfallChartProps {
+  waterfall: Waterfall;
+}
+
+export const formatNanos = (nanos: number): string => {
+  const ms = nanos / 1_000_000;
+  if (ms < 1) return `${(nanos / 1000).toFixed(0)}µs`;
+  if (ms < 1000) return `${ms.toFixed(1)}ms`;
+  return `${(ms / 1000).toFixed(2)}s`;
+};
+
+/**
+ * WaterfallChart component - step timings on a shared time axis, nested by parent span,
+ * with the critical path highlighted
+ */
+const WaterfallChart: React.FC<WaterfallChartProps> = ({ waterfall }) => {
+  const { steps } = waterfall;
+  const end = Math.max(
+    waterfall.totalNanos ?? 0,
+    ...steps.map((step) => step.offsetNanos + (step.durationNanos ?? 0))
+  );
+  const percent = (nanos: number): number => (end > 0 ? (nanos / end) * 100 : 0);
+
+  if (steps.length === 0) {
+    return <p className="text-sm text-gray-500">No steps recorded.</p>;
+  }
+
+  return (
+    <div>
+      <div className="space-y-1">
+        {steps.map((step) => {
+          const timed = step.durationNanos != null;
+          return (
+            <div key={step.stepId} className="flex items-center gap-3 text-xs">
+              <div
+                className="w-48 flex-shrink-0 truncate text-gray-700"
+                style={{ paddingLeft: `${step.depth * 12}px` }}
+                title={step.stepName}
+              >
+                {step.stepName.replace(/_/g, ' ')}
+              </div>
+              <div className="relative flex-1 h-5 bg-gray-100 rounded">
+                <div
+                  className={`absolute top-0 h-5 rounded ${
+                    step.criticalPath ? 'bg-red-500' : 'bg-blue-400'
+                  }`}
+                  style={{
+                    left: `${percent(step.offsetNanos)}%`,
+                    // untimed steps (recorded without a span) are drawn as a marker
+                    width: timed ? `max(${percent(step.durationNanos ?? 0)}%, 2px)` : '2px',
+                  }}
+                  title={`starts at +${formatNanos(step.offsetNanos)}`}
+                />
+              </div>
+              <div className="w-20 flex-shrink-0 text-right text-gray-600">
+                {timed ? formatNanos(step.durationNanos ?? 0) : '—'}
+              </div>
+            </div>
+          );
+        })}
+      </div>
+      <div className="flex gap-4 mt-3 text-xs text-gray-600">
+        <span className="inline-flex items-center gap-1">
+          <span className="inline-block w-3 h-3 rounded bg-red-500" /> Critical path
+        </span>
+        <span className="inline-flex items-center gap-1">
+          <span className="inline-block w-3 h-3 rounded bg-blue-400" /> Other steps
+        </span>
+        <span className="ml-auto">Total {formatNanos(end)}</span>
+      </div>
+    </div>
+  );
+};
+
+export default WaterfallChart;
@@ -1,17 +1,78 @@
-import { XRayExecution, DemoResponse } from '../types';
+import {
+  XRayExecution,
+  ExecutionFilters,
+  ExecutionPage,
+  ExecutionSummary,
+  StepSummary,
+  PayloadField,
+  PayloadSlice,
+  DemoResponse,
+  Waterfall,
+  ExecutionDiff,
+  LiveEvent,
+  LatencyReport,
+  FailureReport,
+  FunnelReport,
+} from '../types';
+
+const sliceParams = (pointer: string, offset: number, limit: number): string =>
+  new URLSearchParams({ pointer, offset: String(offset), limit: String(limit) }).toString();
 
 const API_BASE_URL = 'http://localhost:8080/api';
 
+const LIVE_EVENT_TYPES: LiveEvent['type'][] = [
+  'execution-started', 'step-appended', 'execution-ended', 'resync',
+];
+
+// Opens a server-sent event stream; the browser reconnects on its own. Returns a close function.
+const watch = (url: string, onEvent: (event: LiveEvent) => void): (() => void) => {
+  const source = new EventSource(url);
+  LIVE_EVENT_TYPES.forEach((type) =>
+    source.addEventListener(type, (message) => onEvent(JSON.parse((message as MessageEvent).data)))
+  );
+  return () => source.close();
+};
+
+const filterParams = (filters: ExecutionFilters): URLSearchParams => {
+  const params = new URLSearchParams();
+  Object.entries(filters).forEach(([key, value]) => {
+    if (value) {
+      params.set(key, value);
+    }
+  });
+  return params;
+};
+
 export const api = {
 
-  async getExecutions(): Promise<XRayExecution[]> {
-    const response = await fetch(`${API_BASE_URL}/executions`);
+  async getExecutions(
+    filters: ExecutionFilters = {},
+    cursor?: string | null,
+    limit = 50
+  ): Promise<ExecutionPage> {
+    const params = filterParams(filters);
+    params.set('limit', String(limit));
+    if (cursor) {
+      params.set('cursor', cursor);
+    }
+    const response = await fetch(`${API_BASE_URL}/executions?${params}`);
     if (!response.ok) {
       throw new Error('Failed to fetch executions');
     }
     return response.json();
   },
 
+  /**
+   * Download URL for every execution matching the filters, with steps, as one JSON array
+   */
+  exportUrl(filters: ExecutionFilters = {}): string {
+    return `${API_BASE_URL}/executions/export?${filterParams(filters)}`;
+  },
+
+  executionUrl(executionId: string): string {
+    return `${API_BASE_URL}/executions/${executionId}`;
+  },
+
   async getExecution(executionId: string): Promise<XRayExecution> {
     const response = await fetch(`${API_BASE_URL}/executions/${executionId}`);
     if (!response.ok) {
@@ -20,6 +81,83 @@ export const api = {
     return response.json();
   },
 
+  async getExecutionSummary(executionId: string): Promise<ExecutionSummary> {
+    const response = await fetch(`${API_BASE_URL}/executions/${executionId}/summary`);
+    if (!response.ok) {
+      throw new Error(`Failed to fetch execution: ${executionId}`);
+    }
+    return response.json();
+  },
+
+  async getSteps(executionId: string): Promise<StepSummary[]> {
+    const response = await fetch(`${API_BASE_URL}/executions/${executionId}/steps`);
+    if (!response.ok) {
+      throw new Error(`Failed to fetch steps for execution: ${executionId}`);
+    }
+    return response.json();
+  },
+
+  async getWaterfall(executionId: string): Promise<Waterfall> {
+    const response = await fetch(`${API_BASE_URL}/executions/${executionId}/waterfall`);
+    if (!response.ok) {
+      throw new Error(`Failed to fetch waterfall for execution: ${executionId}`);
+    }
+    return response.json();
+  },
+
+  async getDiff(executionIdA: string, executionIdB: string, maxOps = 200): Promise<ExecutionDiff> {
+    const response = await fetch(
+      `${API_BASE_URL}/executions/${executionIdA}/diff/${executionIdB}?maxOps=${maxOps}`
+    );
+    if (!response.ok) {
+      throw new Error(`Failed to diff executions: ${executionIdA}, ${executionIdB}`);
+    }
+    return response.json();
+  },
+
+  // Start and end of every execution
+  watchExecutions(onEvent: (event: LiveEvent) => void): () => void {
+    return watch(`${API_BASE_URL}/executions/stream`, onEvent);
+  },
+
+  // Steps and end of one execution
+  watchExecution(executionId: string, onEvent: (event: LiveEvent) => void): () => void {
+    return watch(`${API_BASE_URL}/executions/${executionId}/stream`, onEvent);
+  },
+
+  async getStepPayload(
+    executionId: string,
+    stepId: string,
+    field: PayloadField,
+    pointer = '',
+    offset = 0,
+    limit = 100
+  ): Promise<PayloadSlice | null> {
+    const response = await fetch(
+      `${API_BASE_URL}/executions/${executionId}/steps/${stepId}/${field}?${sliceParams(pointer, offset, limit)}`
+    );
+    if (response.status === 404) {
+      return null;
+    }
+    if (!response.ok) {
+      throw new Error(`Failed to fetch ${field} for step: ${stepId}`);
+    }
+    return response.json();
+  },
+
+  async getExecutionContext(executionId: string, pointer = ''): Promise<PayloadSlice | null> {
+    const response = await fetch(
+      `${API_BASE_URL}/executions/${executionId}/context?${sliceParams(pointer, 0, 100)}`
+    );
+    if (response.status === 404) {
+      return null;
+    }
+    if (!response.ok) {
+      throw new Error(`Failed to fetch context for execution: ${executionId}`);
+    }
+    return response.json();
+  },
+
   async deleteAllExecutions(): Promise<void> {
     const response = await fetch(`${API_BASE_URL}/executions`, {
       method: 'DELETE',
@@ -29,6 +167,36 @@ export const api = {
     }
   },
 
+  async getLatency(from: string, to?: string): Promise<LatencyReport> {
+    const params = new URLSearchParams({ from });
+    if (to) params.set('to', to);
+    const response = await fetch(`${API_BASE_URL}/analytics/latency?${params}`);
+    if (!response.ok) {
+      throw new Error('Failed to fetch latency analytics');
+    }
+    return response.json();
+  },
+
+  async getFailures(from: string, to?: string): Promise<FailureReport> {
+    const params = new URLSearchParams({ from });
+    if (to) params.set('to', to);
+    const response = await fetch(`${API_BASE_URL}/analytics/failures?${params}`);
+    if (!response.ok) {
+      throw new Error('Failed to fetch failure analytics');
+    }
+    return response.json();
+  },
+
+  async getFunnel(step: string, from: string, to?: string): Promise<FunnelReport> {
+    const params = new URLSearchParams({ step, from });
+    if (to) params.set('to', to);
+    const response = await fetch(`${API_BASE_URL}/analytics/funnel?${params}`);
+    if (!response.ok) {
+      throw new Error('Failed to fetch filter funnel');
+    }
+    return response.json();
+  },
+
   async runDemo(): Promise<DemoResponse> {
     const response = await fetch(`${API_BASE_URL}/demo/run-competitor-selection`, {
       method: 'POST',
@@ -8,17 +8,225 @@ export interface XRayExecution {
   createdAt: string;
 }
 
+export interface ExecutionSummary {
+  executionId: string;
+  status: string;
+  outcome: 'IN_PROGRESS' | 'COMPLETED' | 'FAILED';
+  failureReason?: string | null;
+  pipeline?: string;
+  startTime: string;
+  endTime?: string;
+  durationMs: number;
+  stepCount: number;
+  // SUMMARY: sampled out, only this row was stored (no context, steps or payloads)
+  // ARCHIVED: moved to the cold archive, only served whole by api.executionUrl
+  traceLevel: 'FULL' | 'SUMMARY' | 'ARCHIVED';
+  samplingReason?: string | null;
+}
+
+export interface ExecutionFilters {
+  status?: string;
+  pipeline?: string;
+  step?: string;
+  from?: string;
+  to?: string;
+}
+
+export interface ExecutionPage {
+  items: ExecutionSummary[];
+  nextCursor?: string | null;
+}
+
 export interface XRayStep {
   stepId: string;
   stepName: string;
   timestamp: string;
+  durationNanos?: number | null;
+  parentStepId?: string | null;
   input: any;
   output: any;
   reasoning: string;
   metadata?: any;
+  // Why the step failed; null if it did not
+  error?: string | null;
   createdAt: string;
 }
 
+export interface StepSummary {
+  stepId: string;
+  // Order within the execution; null on older or ingested steps
+  sequence?: number | null;
+  stepName: string;
+  timestamp: string;
+  // Only set for steps recorded as spans
+  durationNanos?: number | null;
+  parentStepId?: string | null;
+  reasoning: string;
+  // A payload exceeded its size budget; look for "$xray:truncated" markers in it
+  truncated: boolean;
+  // Why the step failed; null if it did not
+  error?: string | null;
+}
+
+export interface WaterfallBar {
+  stepId: string;
+  stepName: string;
+  parentStepId?: string | null;
+  depth: number;
+  offsetNanos: number;
+  durationNanos?: number | null;
+  criticalPath: boolean;
+}
+
+export interface Waterfall {
+  executionId: string;
+  startTime: string;
+  totalNanos?: number | null;
+  // Depth-first: children follow their parent
+  steps: WaterfallBar[];
+}
+
+// Paths are JSON pointers, except that array elements paired by an id-like field
+// appear as "asin=B0..." instead of an index. Large values are replaced by
+// { "$xray:omitted": { type, size } }.
+export interface DiffOp {
+  op: 'add' | 'remove' | 'replace';
+  path: string;
+  oldValue?: any;
+  newValue?: any;
+}
+
+export interface DiffPatch {
+  ops: DiffOp[];
+  // More differences than maxOps; only the first are listed
+  truncated: boolean;
+}
+
+export interface StepDiff {
+  stepName: string;
+  // 0 for the first step of this name in each execution, 1 for the second, ...
+  occurrence: number;
+  change: 'ADDED' | 'REMOVED' | 'CHANGED' | 'UNCHANGED';
+  stepIdA?: string | null;
+  stepIdB?: string | null;
+  durationNanosA?: number | null;
+  durationNanosB?: number | null;
+  // Only the payloads that differ
+  payloads?: Partial<Record<PayloadField, DiffPatch>> | null;
+}
+
+export interface ExecutionDiff {
+  a: ExecutionSummary;
+  b: ExecutionSummary;
+  context?: DiffPatch | null;
+  changedSteps: number;
+  addedSteps: number;
+  removedSteps: number;
+  unchangedSteps: number;
+  steps: StepDiff[];
+}
+
+// Pushed over /stream; 'resync' means events were dropped and the view should refetch
+export interface LiveEvent {
+  type: 'execution-started' | 'step-appended' | 'execution-ended' | 'resync';
+  executionId?: string;
+  execution?: ExecutionSummary;
+  step?: StepSummary;
+  status?: string;
+  outcome?: ExecutionSummary['outcome'];
+  failureReason?: string | null;
+  endTime?: string;
+}
+
+// Durations are in nanoseconds, within about 3% of the recorded values
+export interface Percentiles {
+  count: number;
+  failures: number;
+  p50Nanos?: number | null;
+  p95Nanos?: number | null;
+  p99Nanos?: number | null;
+  maxNanos?: number | null;
+}
+
+export interface LatencySeries {
+  pipeline?: string | null;
+  // Null for whole executions
+  stepName?: string | null;
+  latency: Percentiles;
+}
+
+export interface LatencyReport {
+  from: string;
+  to: string;
+  resolution: 'HOUR' | 'DAY';
+  series: LatencySeries[];
+}
+
+export interface PipelineFailures {
+  pipeline?: string | null;
+  executions: number;
+  failed: number;
+  failureRate: number;
+  topReasons: { reason: string; count: number }[];
+}
+
+export interface FailureReport {
+  from: string;
+  to: string;
+  resolution: 'HOUR' | 'DAY';
+  pipelines: PipelineFailures[];
+}
+
+export interface FilterStats {
+  name: string;
+  evaluated: number;
+  passed: number;
+  failed: number;
+  passRate: number;
+  // Candidates that failed this filter and no other
+  soleEliminations: number;
+}
+
+export interface FunnelStage {
+  filter: string;
+  remainingBefore: number;
+  eliminated: number;
+  remainingAfter: number;
+}
+
+export interface FunnelPoint {
+  bucketStart: string;
+  candidates: number;
+  qualified: number;
+  passRates: Record<string, number>;
+}
+
+export interface FunnelReport {
+  pipeline?: string | null;
+  stepName?: string | null;
+  from: string;
+  to: string;
+  resolution: 'HOUR' | 'DAY';
+  candidates: number;
+  qualified: number;
+  unattributed: number;
+  filters: FilterStats[];
+  stages: FunnelStage[];
+  points: FunnelPoint[];
+}
+
+export type PayloadField = 'input' | 'output' | 'metadata';
+
+export interface PayloadSlice {
+  pointer: string;
+  type: string;
+  value?: any;
+  total?: number;
+  offset?: number;
+  limit?: number;
+  items?: any[];
+}
+
 export interface DemoResponse {
   executionId: string;
   message: string;